@@ -0,0 +1,135 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source.local;
+
+import android.arch.persistence.room.Room;
+import android.arch.persistence.room.RoomDatabase;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.dogbuddy.android.code.test.dogsapp.util.Log2Histogram;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads a database in write-ahead logging mode while a bulk import is committed. The database is
+ * a file, in-memory databases have no write-ahead log.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DogsDatabaseStressTest {
+
+    private static final String TAG = "DogsDatabaseStressTest";
+
+    private static final String DATABASE_NAME = "DogsDatabaseStressTest.db";
+
+    private static final int IMPORTED_DOGS = 20000;
+
+    private static final int IMPORT_BATCH_SIZE = 500;
+
+    private static final int READER_COUNT = 3;
+
+    private DogBuddyDatabase mDatabase;
+
+    @Before
+    public void initDb() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        mDatabase = Room.databaseBuilder(context, DogBuddyDatabase.class, DATABASE_NAME)
+                .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
+                .build();
+        mDatabase.dogDao().insertDog(new Dog("read", "name", "breed", "male"));
+    }
+
+    @After
+    public void closeDb() {
+        mDatabase.close();
+        InstrumentationRegistry.getTargetContext().deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void read_doesNotWaitForAnOpenWriteTransaction() throws InterruptedException {
+        final CountDownLatch written = new CountDownLatch(1);
+        final CountDownLatch read = new CountDownLatch(1);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                mDatabase.beginTransaction();
+                try {
+                    mDatabase.dogDao().insertDog(new Dog("read", "renamed", "breed", "male"));
+                    written.countDown();
+                    read.await(10, TimeUnit.SECONDS);
+                    mDatabase.setTransactionSuccessful();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    mDatabase.endTransaction();
+                }
+            }
+        });
+        writer.start();
+        assertTrue(written.await(10, TimeUnit.SECONDS));
+
+        // The read completes while the write is not committed, and doesn't see it
+        Dog loaded = mDatabase.dogDao().getDogById("read");
+        read.countDown();
+        writer.join();
+
+        assertThat(loaded.getName(), is("name"));
+        assertThat(mDatabase.dogDao().getDogById("read").getName(), is("renamed"));
+    }
+
+    @Test
+    public void readLatency_underBulkImport() throws InterruptedException {
+        final Log2Histogram readMicros = new Log2Histogram();
+        final AtomicBoolean importing = new AtomicBoolean(true);
+        final CountDownLatch readersDone = new CountDownLatch(READER_COUNT);
+        for (int i = 0; i < READER_COUNT; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (importing.get()) {
+                        long startedAt = System.nanoTime();
+                        mDatabase.dogDao().getDogById("read");
+                        mDatabase.dogDao().getFirstDogsPage(25);
+                        readMicros.record((System.nanoTime() - startedAt) / 1000);
+                    }
+                    readersDone.countDown();
+                }
+            }).start();
+        }
+
+        // The import commits batches on a single writer, like the write-behind queue
+        long importStartedAt = System.nanoTime();
+        for (int start = 0; start < IMPORTED_DOGS; start += IMPORT_BATCH_SIZE) {
+            List<Dog> dogs = new ArrayList<>(IMPORT_BATCH_SIZE);
+            for (int i = start; i < start + IMPORT_BATCH_SIZE; i++) {
+                dogs.add(new Dog("dog" + i, "name" + i, "breed" + (i % 50), "female"));
+            }
+            mDatabase.dogDao().insertDogs(dogs);
+        }
+        long importMillis = (System.nanoTime() - importStartedAt) / 1000000;
+        importing.set(false);
+        assertTrue(readersDone.await(10, TimeUnit.SECONDS));
+
+        Log.i(TAG, "Imported " + IMPORTED_DOGS + " dogs in " + importMillis + "ms, "
+                + readMicros.getCount() + " reads, p50<=" + readMicros.getPercentile(0.5)
+                + "us p99<=" + readMicros.getPercentile(0.99) + "us max="
+                + readMicros.getMax() + "us");
+        assertTrue(readMicros.getCount() > 0);
+        assertThat(mDatabase.dogDao().getDogs().size(), is(IMPORTED_DOGS + 1));
+    }
+}
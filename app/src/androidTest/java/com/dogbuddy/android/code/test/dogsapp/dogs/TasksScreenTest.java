@@ -7,8 +7,8 @@ import android.support.test.filters.SdkSuppress;
 import android.support.test.rule.ActivityTestRule;
 import android.support.test.runner.AndroidJUnit4;
 import android.text.TextUtils;
+import android.support.v7.widget.RecyclerView;
 import android.view.View;
-import android.widget.ListView;
 
 import com.dogbuddy.android.code.test.dogsapp.Injection;
 import com.dogbuddy.android.code.test.dogsapp.R;
@@ -76,11 +76,11 @@ public class TasksScreenTest {
     }
 
     /**
-     * A custom {@link Matcher} which matches an item in a {@link ListView} by its text.
+     * A custom {@link Matcher} which matches an item in a {@link RecyclerView} by its text.
      * <p>
      * View constraints:
      * <ul>
-     * <li>View must be a child of a {@link ListView}
+     * <li>View must be a child of a {@link RecyclerView}
      * <ul>
      *
      * @param itemText the text to match
@@ -92,13 +92,13 @@ public class TasksScreenTest {
             @Override
             public boolean matchesSafely(View item) {
                 return allOf(
-                        isDescendantOfA(isAssignableFrom(ListView.class)),
+                        isDescendantOfA(isAssignableFrom(RecyclerView.class)),
                         withText(itemText)).matches(item);
             }
 
             @Override
             public void describeTo(Description description) {
-                description.appendText("is isDescendantOfA LV with text " + itemText);
+                description.appendText("is isDescendantOfA RV with text " + itemText);
             }
         };
     }
@@ -19,14 +19,20 @@ import com.dogbuddy.android.code.test.dogsapp.credits.CreditsViewModel;
 import com.dogbuddy.android.code.test.dogsapp.data.Breed;
 import com.dogbuddy.android.code.test.dogsapp.data.Dog;
 import com.dogbuddy.android.code.test.dogsapp.data.DogBuilder;
-import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDataSource;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsFutures;
 import com.dogbuddy.android.code.test.dogsapp.data.source.DogsRepository;
 import com.dogbuddy.android.code.test.dogsapp.dogs.BreedsAdapter;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * ViewModel for the Add/Edit screen.
@@ -37,7 +43,7 @@ import java.util.List;
  * how to deal with more complex scenarios.
  */
 
-public class AddEditDogViewModel extends AndroidViewModel implements DogsDataSource.GetDogCallback, DogsDataSource.LoadBreedsCallback {
+public class AddEditDogViewModel extends AndroidViewModel {
 
     public final ObservableField<String> name = new ObservableField<>();
     public final ObservableField<String> breed = new ObservableField<>();
@@ -60,6 +66,10 @@ public class AddEditDogViewModel extends AndroidViewModel implements DogsDataSou
 
     private final DogsRepository mDogsRepository;
 
+    // Cancelled when the ViewModel is cleared, so the loads it started stop.
+    @Nullable
+    private ListenableFuture<?> mLoad;
+
     private BreedsAdapter breedsAdapter;
     private static final int SPINNER_YEARS = 20; // the total birth year options shown in the birt year spinner
 
@@ -91,11 +101,34 @@ public class AddEditDogViewModel extends AndroidViewModel implements DogsDataSou
             return;
         }
         dataLoading.set(true);
-        mDogsRepository.getBreeds(this);
+        // The dog doesn't need the breeds, both are loaded at once.
+        final ListenableFuture<List<Breed>> breeds = DogsFutures.getBreeds(mDogsRepository);
+        final ListenableFuture<Dog> dog = mIsNewDog
+                ? Futures.<Dog>immediateFuture(null)
+                : DogsFutures.getDog(mDogsRepository, dogId);
+        mLoad = Futures.whenAllComplete(breeds, dog).call(new Callable<Void>() {
+            @Override
+            public Void call() {
+                onLoaded(getIfLoaded(breeds), getIfLoaded(dog));
+                return null;
+            }
+        }, MoreExecutors.directExecutor());
     }
 
-    @Override
-    public void onDogLoaded(Dog dog) {
+    private void onLoaded(@Nullable List<Breed> breeds, @Nullable Dog dog) {
+        if (breeds != null) {
+            this.breeds.clear();
+            this.breeds.addAll(breeds);
+        }
+        if (mIsNewDog) {
+            birthYearIdx.set(-1);
+        } else if (dog != null) {
+            showDog(dog);
+        }
+        dataLoading.set(false);
+    }
+
+    private void showDog(Dog dog) {
         name.set(dog.getName());
         breed.set(dog.getBreed());
         genderIdx.set(genders.indexOf(dog.getGender()));
@@ -103,31 +136,23 @@ public class AddEditDogViewModel extends AndroidViewModel implements DogsDataSou
         birthYearIdx.set(birthYears.indexOf(String.valueOf(dog.getBirthYear())));
 
         mIsDataLoaded = true;
-        dataLoading.set(false);
 
         // Note that there's no need to notify that the values changed because I´m using
         // ObservableFields.
     }
 
-    @Override
-    public void onBreedsLoaded(List<Breed> breeds) {
-        this.breeds.clear();
-        this.breeds.addAll(breeds);
-        dataLoading.set(false);
-
-        if (!mIsNewDog) {
-            dataLoading.set(true);
-            mDogsRepository.getDog(mDogId, this);
-        } else {
-            birthYearIdx.set(-1);
+    /**
+     * Returns what load loaded, null if the data wasn't available.
+     */
+    @Nullable
+    private static <V> V getIfLoaded(Future<V> load) {
+        try {
+            return Futures.getDone(load);
+        } catch (ExecutionException e) {
+            return null;
         }
     }
 
-    @Override
-    public void onDataNotAvailable() {
-        dataLoading.set(false);
-    }
-
     // Called when clicking on done icon.
     void saveDog() {
         Dog dog = new DogBuilder()
@@ -186,6 +211,13 @@ public class AddEditDogViewModel extends AndroidViewModel implements DogsDataSou
         }
     }
 
+    @Override
+    protected void onCleared() {
+        if (mLoad != null) {
+            mLoad.cancel(false);
+        }
+    }
+
     private boolean isNewDog() {
         return mIsNewDog;
     }
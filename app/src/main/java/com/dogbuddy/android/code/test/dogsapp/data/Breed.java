@@ -28,6 +28,18 @@ public final class Breed {
     @ColumnInfo(name = "breed")
     private final String mBreed;
 
+    /**
+     * Version of the breed on the server, growing with each change. 0 if it never reached it.
+     */
+    @ColumnInfo(name = "version")
+    private final long mVersion;
+
+    /**
+     * Time of the last change on the server, in milliseconds since the epoch.
+     */
+    @ColumnInfo(name = "updatedAt")
+    private final long mUpdatedAt;
+
     /**
      * Use this constructor to create a new Breed.
      *
@@ -45,9 +57,22 @@ public final class Breed {
      * @param breed breed of the dog
      * @param id    id of the dog
      */
+    @Ignore
     public Breed(@Nullable String breed, @NonNull String id) {
+        this(breed, id, 0, 0);
+    }
+
+    /**
+     * Use this constructor to create a Breed as known by the server.
+     *
+     * @param version   version of the breed on the server
+     * @param updatedAt time of the last change on the server
+     */
+    public Breed(@Nullable String breed, @NonNull String id, long version, long updatedAt) {
         this.mId = id;
         this.mBreed = breed;
+        this.mVersion = version;
+        this.mUpdatedAt = updatedAt;
     }
 
     @NonNull
@@ -60,6 +85,14 @@ public final class Breed {
         return mBreed;
     }
 
+    public long getVersion() {
+        return mVersion;
+    }
+
+    public long getUpdatedAt() {
+        return mUpdatedAt;
+    }
+
     public boolean isEmpty() {
         return Strings.isNullOrEmpty(mBreed);
     }
@@ -70,12 +103,14 @@ public final class Breed {
         if (o == null || getClass() != o.getClass()) return false;
         Breed breed = (Breed) o;
         return Objects.equal(mId, breed.mId) &&
-               Objects.equal(mBreed, breed.mBreed);
+               Objects.equal(mBreed, breed.mBreed) &&
+               mVersion == breed.mVersion &&
+               mUpdatedAt == breed.mUpdatedAt;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(mId, mBreed);
+        return Objects.hashCode(mId, mBreed, mVersion, mUpdatedAt);
     }
 
     @Override
@@ -4,6 +4,7 @@ package com.dogbuddy.android.code.test.dogsapp.data;
 import android.arch.persistence.room.ColumnInfo;
 import android.arch.persistence.room.Entity;
 import android.arch.persistence.room.Ignore;
+import android.arch.persistence.room.Index;
 import android.arch.persistence.room.PrimaryKey;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -17,8 +18,17 @@ import java.util.UUID;
 
 /**
  * Immutable model class for a Dog.
+ * <p>
+ * Every column dogs can be filtered or sorted by is indexed, so filtering is an index lookup
+ * instead of a table scan. The name is compared case insensitively.
  */
-@Entity(tableName = "dogs")
+@Entity(tableName = "dogs",
+        indices = {
+                @Index("name"),
+                @Index("breed"),
+                @Index("gender"),
+                @Index("size"),
+                @Index("birthYear")})
 public final class Dog {
 
     @PrimaryKey
@@ -27,7 +37,7 @@ public final class Dog {
     private final String mId;
 
     @NonNull
-    @ColumnInfo(name = "name")
+    @ColumnInfo(name = "name", collate = ColumnInfo.NOCASE)
     private final String mName;
 
     @NonNull
@@ -45,6 +55,18 @@ public final class Dog {
     @ColumnInfo(name = "size")
     private final String mSize;
 
+    /**
+     * Version of the dog on the server, growing with each change. 0 if it never reached it.
+     */
+    @ColumnInfo(name = "version")
+    private final long mVersion;
+
+    /**
+     * Time of the last change on the server, in milliseconds since the epoch.
+     */
+    @ColumnInfo(name = "updatedAt")
+    private final long mUpdatedAt;
+
     /**
      * Use this constructor to create a new Dog.
      *
@@ -74,14 +96,28 @@ public final class Dog {
      * @param breed     breed of the dog
      * @param gender    gender of the dog
      */
+    @Ignore
     public Dog(@NonNull String id, @NonNull String name, @NonNull String breed, @Nullable String gender,
                @NonNull Integer birthYear, @NonNull String size) {
+        this(id, name, breed, gender, birthYear, size, 0, 0);
+    }
+
+    /**
+     * Use this constructor to create a Dog as known by the server.
+     * @param version   version of the dog on the server
+     * @param updatedAt time of the last change on the server
+     */
+    public Dog(@NonNull String id, @NonNull String name, @NonNull String breed,
+               @Nullable String gender, @NonNull Integer birthYear, @NonNull String size,
+               long version, long updatedAt) {
         this.mName = name;
         this.mBreed = breed;
         this.mId = id;
         this.mGender = gender;
         this.mBirthYear = birthYear;
         this.mSize = size;
+        this.mVersion = version;
+        this.mUpdatedAt = updatedAt;
     }
 
     @NonNull
@@ -114,6 +150,14 @@ public final class Dog {
         return mBirthYear;
     }
 
+    public long getVersion() {
+        return mVersion;
+    }
+
+    public long getUpdatedAt() {
+        return mUpdatedAt;
+    }
+
     public boolean isRequiredInfoMissing() {
         return Strings.isNullOrEmpty(mName) ||
                Strings.isNullOrEmpty(mBreed) ||
@@ -128,12 +172,18 @@ public final class Dog {
         Dog dog = (Dog) o;
         return Objects.equal(mId, dog.mId) &&
                Objects.equal(mName, dog.mName) &&
-               Objects.equal(mBreed, dog.mBreed);
+               Objects.equal(mBreed, dog.mBreed) &&
+               Objects.equal(mGender, dog.mGender) &&
+               Objects.equal(mBirthYear, dog.mBirthYear) &&
+               Objects.equal(mSize, dog.mSize) &&
+               mVersion == dog.mVersion &&
+               mUpdatedAt == dog.mUpdatedAt;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(mId, mName, mBreed);
+        return Objects.hashCode(mId, mName, mBreed, mGender, mBirthYear, mSize, mVersion,
+                mUpdatedAt);
     }
 
     @Override
@@ -9,6 +9,8 @@ public class DogBuilder {
     private String size;
     private Integer birthYear;
     private String id = UUID.randomUUID().toString();
+    private long version;
+    private long updatedAt;
 
     public DogBuilder setName(String name) {
         this.name = name;
@@ -40,7 +42,17 @@ public class DogBuilder {
         return this;
     }
 
+    public DogBuilder setVersion(long version) {
+        this.version = version;
+        return this;
+    }
+
+    public DogBuilder setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+        return this;
+    }
+
     public Dog createDog() {
-        return new Dog(id, name, breed, gender, birthYear, size);
+        return new Dog(id, name, breed, gender, birthYear, size, version, updatedAt);
     }
 }
\ No newline at end of file
@@ -0,0 +1,170 @@
+package com.dogbuddy.android.code.test.dogsapp.data;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.common.base.Objects;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Immutable description of which dogs to list and in which order. Criteria left null match every
+ * dog.
+ */
+public final class DogsFilter {
+
+    /**
+     * Column the dogs are sorted by. Ties are broken by id, so the order is always stable.
+     */
+    public enum SortOrder {
+        NAME,
+        BREED,
+        BIRTH_YEAR
+    }
+
+    /**
+     * Lists all the dogs sorted by name.
+     */
+    public static final DogsFilter ALL = new Builder().build();
+
+    @Nullable
+    private final String mBreed;
+
+    @Nullable
+    private final String mGender;
+
+    @Nullable
+    private final String mSize;
+
+    @Nullable
+    private final Integer mMinBirthYear;
+
+    @Nullable
+    private final Integer mMaxBirthYear;
+
+    @NonNull
+    private final SortOrder mSortOrder;
+
+    private final boolean mDescending;
+
+    private DogsFilter(Builder builder) {
+        mBreed = builder.breed;
+        mGender = builder.gender;
+        mSize = builder.size;
+        mMinBirthYear = builder.minBirthYear;
+        mMaxBirthYear = builder.maxBirthYear;
+        mSortOrder = builder.sortOrder;
+        mDescending = builder.descending;
+    }
+
+    @Nullable
+    public String getBreed() {
+        return mBreed;
+    }
+
+    @Nullable
+    public String getGender() {
+        return mGender;
+    }
+
+    @Nullable
+    public String getSize() {
+        return mSize;
+    }
+
+    @Nullable
+    public Integer getMinBirthYear() {
+        return mMinBirthYear;
+    }
+
+    @Nullable
+    public Integer getMaxBirthYear() {
+        return mMaxBirthYear;
+    }
+
+    @NonNull
+    public SortOrder getSortOrder() {
+        return mSortOrder;
+    }
+
+    public boolean isDescending() {
+        return mDescending;
+    }
+
+    /**
+     * Returns a builder initialized with the criteria of this filter.
+     */
+    public Builder buildUpon() {
+        return new Builder()
+                .setBreed(mBreed)
+                .setGender(mGender)
+                .setSize(mSize)
+                .setBirthYearRange(mMinBirthYear, mMaxBirthYear)
+                .setSortOrder(mSortOrder, mDescending);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DogsFilter filter = (DogsFilter) o;
+        return mDescending == filter.mDescending &&
+               Objects.equal(mBreed, filter.mBreed) &&
+               Objects.equal(mGender, filter.mGender) &&
+               Objects.equal(mSize, filter.mSize) &&
+               Objects.equal(mMinBirthYear, filter.mMinBirthYear) &&
+               Objects.equal(mMaxBirthYear, filter.mMaxBirthYear) &&
+               mSortOrder == filter.mSortOrder;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(mBreed, mGender, mSize, mMinBirthYear, mMaxBirthYear, mSortOrder,
+                mDescending);
+    }
+
+    public static final class Builder {
+        private String breed;
+        private String gender;
+        private String size;
+        private Integer minBirthYear;
+        private Integer maxBirthYear;
+        private SortOrder sortOrder = SortOrder.NAME;
+        private boolean descending = false;
+
+        public Builder setBreed(@Nullable String breed) {
+            this.breed = breed;
+            return this;
+        }
+
+        public Builder setGender(@Nullable String gender) {
+            this.gender = gender;
+            return this;
+        }
+
+        public Builder setSize(@Nullable String size) {
+            this.size = size;
+            return this;
+        }
+
+        /**
+         * Both bounds are inclusive, a null bound leaves that side open.
+         */
+        public Builder setBirthYearRange(@Nullable Integer minBirthYear,
+                                         @Nullable Integer maxBirthYear) {
+            this.minBirthYear = minBirthYear;
+            this.maxBirthYear = maxBirthYear;
+            return this;
+        }
+
+        public Builder setSortOrder(@NonNull SortOrder sortOrder, boolean descending) {
+            this.sortOrder = checkNotNull(sortOrder);
+            this.descending = descending;
+            return this;
+        }
+
+        public DogsFilter build() {
+            return new DogsFilter(this);
+        }
+    }
+}
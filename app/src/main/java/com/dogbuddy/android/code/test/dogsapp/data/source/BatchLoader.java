@@ -0,0 +1,216 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source;
+
+import android.support.annotation.NonNull;
+
+import com.dogbuddy.android.code.test.dogsapp.util.CancellationToken;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Batches loads of single keys into loads of many.
+ * <p>
+ * The keys asked for with {@link #load(String, Callback)} are collected until the dispatcher gets
+ * to run the batch, then handed to the {@link BatchFunction} together, in chunks of at most the
+ * maximum batch size. With the main thread as dispatcher, all the keys asked for while handling
+ * the same message are loaded at once. The values the function returns are fanned back out to
+ * the callbacks of their key, and the keys it doesn't return are not found.
+ * <p>
+ * Loads asked for with a {@link CancellationToken} are dropped once it's cancelled: a key whose
+ * callbacks were all cancelled before the batch runs is left out of it, and a batch whose
+ * callbacks were all cancelled while it runs has its own token cancelled.
+ *
+ * @param <V> the type of the loaded values.
+ */
+final class BatchLoader<V> {
+
+    interface Callback<V> {
+
+        void onLoaded(@NonNull V value);
+
+        void onNotFound();
+    }
+
+    interface BatchCallback<V> {
+
+        /**
+         * @param values the values found, by key.
+         */
+        void onBatchLoaded(@NonNull Map<String, V> values);
+    }
+
+    interface BatchFunction<V> {
+
+        /**
+         * Loads keys, without duplicates, and calls callback once, unless token is cancelled.
+         */
+        void load(@NonNull List<String> keys, @NonNull CancellationToken token,
+                  @NonNull BatchCallback<V> callback);
+    }
+
+    private final Executor mDispatcher;
+
+    private final int mMaxBatchSize;
+
+    private final BatchFunction<V> mBatchFunction;
+
+    private final Runnable mDispatch = new Runnable() {
+        @Override
+        public void run() {
+            dispatch();
+        }
+    };
+
+    // Guarded by this. The callers waiting for each key of the next batch, in request order.
+    private Map<String, List<Waiter<V>>> mPending = new LinkedHashMap<>();
+
+    private long mBatchCount = 0;
+
+    private long mKeyCount = 0;
+
+    BatchLoader(@NonNull Executor dispatcher, int maxBatchSize,
+                @NonNull BatchFunction<V> batchFunction) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize < 1: " + maxBatchSize);
+        }
+        mDispatcher = checkNotNull(dispatcher);
+        mMaxBatchSize = maxBatchSize;
+        mBatchFunction = checkNotNull(batchFunction);
+    }
+
+    /**
+     * Adds key to the next batch. callback is called when the batch is loaded.
+     */
+    void load(@NonNull String key, @NonNull Callback<V> callback) {
+        load(key, CancellationToken.NONE, callback);
+    }
+
+    /**
+     * Adds key to the next batch. callback is called when the batch is loaded, unless token is
+     * cancelled first.
+     */
+    void load(@NonNull String key, @NonNull CancellationToken token,
+              @NonNull Callback<V> callback) {
+        checkNotNull(key);
+        checkNotNull(token);
+        checkNotNull(callback);
+        boolean first;
+        synchronized (this) {
+            first = mPending.isEmpty();
+            List<Waiter<V>> waiting = mPending.get(key);
+            if (waiting == null) {
+                waiting = new ArrayList<>(1);
+                mPending.put(key, waiting);
+            }
+            waiting.add(new Waiter<>(callback, token));
+        }
+        if (first) {
+            mDispatcher.execute(mDispatch);
+        }
+    }
+
+    /**
+     * Number of batches handed to the batch function.
+     */
+    synchronized long getBatchCount() {
+        return mBatchCount;
+    }
+
+    /**
+     * Number of keys loaded by the batches.
+     */
+    synchronized long getKeyCount() {
+        return mKeyCount;
+    }
+
+    private void dispatch() {
+        Map<String, List<Waiter<V>>> batch;
+        synchronized (this) {
+            batch = mPending;
+            mPending = new LinkedHashMap<>();
+        }
+        List<String> keys = new ArrayList<>(batch.size());
+        for (Map.Entry<String, List<Waiter<V>>> entry : batch.entrySet()) {
+            if (!allCancelled(entry.getValue())) {
+                keys.add(entry.getKey());
+            }
+        }
+        for (int start = 0; start < keys.size(); start += mMaxBatchSize) {
+            List<String> chunk = Collections.unmodifiableList(
+                    keys.subList(start, Math.min(start + mMaxBatchSize, keys.size())));
+            Map<String, List<Waiter<V>>> waiting = new LinkedHashMap<>();
+            List<CancellationToken> tokens = new ArrayList<>();
+            for (String key : chunk) {
+                waiting.put(key, batch.get(key));
+                for (Waiter<V> waiter : batch.get(key)) {
+                    tokens.add(waiter.mToken);
+                }
+            }
+            synchronized (this) {
+                mBatchCount++;
+                mKeyCount += chunk.size();
+            }
+            mBatchFunction.load(chunk, CancellationToken.allOf(tokens), new FanOut(waiting));
+        }
+    }
+
+    private static <V> boolean allCancelled(List<Waiter<V>> waiters) {
+        for (Waiter<V> waiter : waiters) {
+            if (!waiter.mToken.isCancelled()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Waiter<V> {
+
+        final Callback<V> mCallback;
+
+        final CancellationToken mToken;
+
+        Waiter(Callback<V> callback, CancellationToken token) {
+            mCallback = callback;
+            mToken = token;
+        }
+    }
+
+    private final class FanOut implements BatchCallback<V> {
+
+        private final Map<String, List<Waiter<V>>> mWaiting;
+
+        private boolean mDone = false;
+
+        FanOut(Map<String, List<Waiter<V>>> waiting) {
+            mWaiting = waiting;
+        }
+
+        @Override
+        public void onBatchLoaded(@NonNull Map<String, V> values) {
+            checkNotNull(values);
+            if (mDone) {
+                throw new IllegalStateException("Batch already loaded");
+            }
+            mDone = true;
+            for (Map.Entry<String, List<Waiter<V>>> entry : mWaiting.entrySet()) {
+                V value = values.get(entry.getKey());
+                for (Waiter<V> waiter : entry.getValue()) {
+                    if (waiter.mToken.isCancelled()) {
+                        continue;
+                    }
+                    if (value == null) {
+                        waiter.mCallback.onNotFound();
+                    } else {
+                        waiter.mCallback.onLoaded(value);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.dogbuddy.android.code.test.dogsapp.util.CancellationToken;
+
+import java.util.Collection;
+
+/**
+ * A data source whose loads can be cancelled while they are queued or in flight, so the disk and
+ * network work of a screen that went away stops instead of running to the end.
+ * <p>
+ * A load is dropped without calling back if its token is cancelled before the callback is
+ * called. Tokens are expected to be cancelled on the main thread, where callbacks are called, so
+ * a load is either delivered or dropped.
+ */
+public interface CancellableDogsDataSource extends DogsDataSource {
+
+    /**
+     * Like {@link #getDogs(LoadDogsCallback)}, dropped if token is cancelled first.
+     */
+    void getDogs(@NonNull CancellationToken token, @NonNull LoadDogsCallback callback);
+
+    /**
+     * Like {@link #getDogsPage(String, int, LoadDogsCallback)}, dropped if token is cancelled
+     * first.
+     */
+    void getDogsPage(@Nullable String afterDogId, int pageSize, @NonNull CancellationToken token,
+                     @NonNull LoadDogsCallback callback);
+
+    /**
+     * Like {@link #getDog(String, GetDogCallback)}, dropped if token is cancelled first.
+     */
+    void getDog(@NonNull String dogId, @NonNull CancellationToken token,
+                @NonNull GetDogCallback callback);
+
+    /**
+     * Like {@link #getDogsByIds(Collection, LoadDogsCallback)}, dropped if token is cancelled
+     * first.
+     */
+    void getDogsByIds(@NonNull Collection<String> dogIds, @NonNull CancellationToken token,
+                      @NonNull LoadDogsCallback callback);
+
+    /**
+     * Like {@link #getBreeds(LoadBreedsCallback)}, dropped if token is cancelled first.
+     */
+    void getBreeds(@NonNull CancellationToken token, @NonNull LoadBreedsCallback callback);
+}
@@ -0,0 +1,213 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Breed;
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDataSource.ConditionalLoadBreedsCallback;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDataSource.ConditionalLoadDogsCallback;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDataSource.GetDogCallback;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDataSource.LoadBreedsCallback;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDataSource.LoadDogsCallback;
+import com.dogbuddy.android.code.test.dogsapp.util.CancellationToken;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Loads from any {@link DogsDataSource} with a {@link CancellationToken}. A
+ * {@link CancellableDogsDataSource} stops the work of a cancelled load, other data sources do it
+ * all, but the callback is still dropped. Loads with {@link CancellationToken#NONE} are plain
+ * loads.
+ */
+final class CancellableLoads {
+
+    private CancellableLoads() {
+    }
+
+    static void getDogs(@NonNull DogsDataSource source, @NonNull CancellationToken token,
+                        @NonNull LoadDogsCallback callback) {
+        if (token == CancellationToken.NONE) {
+            source.getDogs(callback);
+        } else if (source instanceof CancellableDogsDataSource) {
+            ((CancellableDogsDataSource) source).getDogs(token, callback);
+        } else {
+            source.getDogs(dropIfCancelled(token, callback));
+        }
+    }
+
+    static void getDogsPage(@NonNull DogsDataSource source, @Nullable String afterDogId,
+                            int pageSize, @NonNull CancellationToken token,
+                            @NonNull LoadDogsCallback callback) {
+        if (token == CancellationToken.NONE) {
+            source.getDogsPage(afterDogId, pageSize, callback);
+        } else if (source instanceof CancellableDogsDataSource) {
+            ((CancellableDogsDataSource) source).getDogsPage(afterDogId, pageSize, token,
+                    callback);
+        } else {
+            source.getDogsPage(afterDogId, pageSize, dropIfCancelled(token, callback));
+        }
+    }
+
+    static void getDog(@NonNull DogsDataSource source, @NonNull String dogId,
+                       @NonNull CancellationToken token, @NonNull GetDogCallback callback) {
+        if (token == CancellationToken.NONE) {
+            source.getDog(dogId, callback);
+        } else if (source instanceof CancellableDogsDataSource) {
+            ((CancellableDogsDataSource) source).getDog(dogId, token, callback);
+        } else {
+            source.getDog(dogId, dropIfCancelled(token, callback));
+        }
+    }
+
+    static void getDogsByIds(@NonNull DogsDataSource source, @NonNull Collection<String> dogIds,
+                             @NonNull CancellationToken token,
+                             @NonNull LoadDogsCallback callback) {
+        if (token == CancellationToken.NONE) {
+            source.getDogsByIds(dogIds, callback);
+        } else if (source instanceof CancellableDogsDataSource) {
+            ((CancellableDogsDataSource) source).getDogsByIds(dogIds, token, callback);
+        } else {
+            source.getDogsByIds(dogIds, dropIfCancelled(token, callback));
+        }
+    }
+
+    static void getBreeds(@NonNull DogsDataSource source, @NonNull CancellationToken token,
+                          @NonNull LoadBreedsCallback callback) {
+        if (token == CancellationToken.NONE) {
+            source.getBreeds(callback);
+        } else if (source instanceof CancellableDogsDataSource) {
+            ((CancellableDogsDataSource) source).getBreeds(token, callback);
+        } else {
+            source.getBreeds(dropIfCancelled(token, callback));
+        }
+    }
+
+    /**
+     * Returns a callback that forwards to callback unless token is cancelled. Conditional
+     * callbacks stay conditional.
+     */
+    @NonNull
+    static LoadDogsCallback dropIfCancelled(@NonNull final CancellationToken token,
+                                            @NonNull final LoadDogsCallback callback) {
+        if (token == CancellationToken.NONE) {
+            return callback;
+        }
+        if (callback instanceof ConditionalLoadDogsCallback) {
+            return new ConditionalLoadDogsCallback() {
+                @Override
+                public void onNotModified() {
+                    if (!token.isCancelled()) {
+                        ((ConditionalLoadDogsCallback) callback).onNotModified();
+                    }
+                }
+
+                @Override
+                public void onDogsLoaded(List<Dog> dogs) {
+                    if (!token.isCancelled()) {
+                        callback.onDogsLoaded(dogs);
+                    }
+                }
+
+                @Override
+                public void onDataNotAvailable() {
+                    if (!token.isCancelled()) {
+                        callback.onDataNotAvailable();
+                    }
+                }
+            };
+        }
+        return new LoadDogsCallback() {
+            @Override
+            public void onDogsLoaded(List<Dog> dogs) {
+                if (!token.isCancelled()) {
+                    callback.onDogsLoaded(dogs);
+                }
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                if (!token.isCancelled()) {
+                    callback.onDataNotAvailable();
+                }
+            }
+        };
+    }
+
+    /**
+     * Like {@link #dropIfCancelled(CancellationToken, LoadDogsCallback)}, for a single dog.
+     */
+    @NonNull
+    static GetDogCallback dropIfCancelled(@NonNull final CancellationToken token,
+                                          @NonNull final GetDogCallback callback) {
+        if (token == CancellationToken.NONE) {
+            return callback;
+        }
+        return new GetDogCallback() {
+            @Override
+            public void onDogLoaded(Dog dog) {
+                if (!token.isCancelled()) {
+                    callback.onDogLoaded(dog);
+                }
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                if (!token.isCancelled()) {
+                    callback.onDataNotAvailable();
+                }
+            }
+        };
+    }
+
+    /**
+     * Like {@link #dropIfCancelled(CancellationToken, LoadDogsCallback)}, for breeds.
+     */
+    @NonNull
+    static LoadBreedsCallback dropIfCancelled(@NonNull final CancellationToken token,
+                                              @NonNull final LoadBreedsCallback callback) {
+        if (token == CancellationToken.NONE) {
+            return callback;
+        }
+        if (callback instanceof ConditionalLoadBreedsCallback) {
+            return new ConditionalLoadBreedsCallback() {
+                @Override
+                public void onNotModified() {
+                    if (!token.isCancelled()) {
+                        ((ConditionalLoadBreedsCallback) callback).onNotModified();
+                    }
+                }
+
+                @Override
+                public void onBreedsLoaded(List<Breed> breeds) {
+                    if (!token.isCancelled()) {
+                        callback.onBreedsLoaded(breeds);
+                    }
+                }
+
+                @Override
+                public void onDataNotAvailable() {
+                    if (!token.isCancelled()) {
+                        callback.onDataNotAvailable();
+                    }
+                }
+            };
+        }
+        return new LoadBreedsCallback() {
+            @Override
+            public void onBreedsLoaded(List<Breed> breeds) {
+                if (!token.isCancelled()) {
+                    callback.onBreedsLoaded(breeds);
+                }
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                if (!token.isCancelled()) {
+                    callback.onDataNotAvailable();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,73 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source;
+
+import android.support.annotation.NonNull;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Breed;
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.google.common.collect.ImmutableList;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable batch of writes sent to a {@link DogsSyncDataSource} in one request.
+ * <p>
+ * A batch holds at most one write per entity, so the writes can be applied in any order, except
+ * that wiping a table comes before the other writes to it.
+ */
+public final class DogsBatch {
+
+    private final boolean mDeleteAllDogs;
+
+    private final List<Dog> mSavedDogs;
+
+    private final List<String> mDeletedDogIds;
+
+    private final boolean mDeleteAllBreeds;
+
+    private final List<Breed> mSavedBreeds;
+
+    public DogsBatch(boolean deleteAllDogs, @NonNull Collection<Dog> savedDogs,
+                     @NonNull Collection<String> deletedDogIds, boolean deleteAllBreeds,
+                     @NonNull Collection<Breed> savedBreeds) {
+        mDeleteAllDogs = deleteAllDogs;
+        mSavedDogs = ImmutableList.copyOf(savedDogs);
+        mDeletedDogIds = ImmutableList.copyOf(deletedDogIds);
+        mDeleteAllBreeds = deleteAllBreeds;
+        mSavedBreeds = ImmutableList.copyOf(savedBreeds);
+    }
+
+    /**
+     * True if every dog has to be deleted before applying the other dog writes.
+     */
+    public boolean isDeleteAllDogs() {
+        return mDeleteAllDogs;
+    }
+
+    @NonNull
+    public List<Dog> getSavedDogs() {
+        return mSavedDogs;
+    }
+
+    @NonNull
+    public List<String> getDeletedDogIds() {
+        return mDeletedDogIds;
+    }
+
+    /**
+     * True if every breed has to be deleted before saving the breeds of this batch.
+     */
+    public boolean isDeleteAllBreeds() {
+        return mDeleteAllBreeds;
+    }
+
+    @NonNull
+    public List<Breed> getSavedBreeds() {
+        return mSavedBreeds;
+    }
+
+    public boolean isEmpty() {
+        return !mDeleteAllDogs && mSavedDogs.isEmpty() && mDeletedDogIds.isEmpty()
+                && !mDeleteAllBreeds && mSavedBreeds.isEmpty();
+    }
+}
@@ -0,0 +1,84 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source;
+
+import android.support.annotation.NonNull;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.google.common.collect.ImmutableList;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable description of one change made to the dogs through {@link DogsRepository}.
+ * <p>
+ * Changes are numbered by a version that grows by one with each change, so a listener that
+ * finds a gap knows it missed some and has to reload.
+ */
+public final class DogsChange {
+
+    private final long mVersion;
+
+    private final List<Dog> mInserted;
+
+    private final List<Dog> mUpdated;
+
+    private final List<String> mRemovedIds;
+
+    private final boolean mAllRemoved;
+
+    private DogsChange(long version, Collection<Dog> inserted, Collection<Dog> updated,
+                       Collection<String> removedIds, boolean allRemoved) {
+        mVersion = version;
+        mInserted = ImmutableList.copyOf(inserted);
+        mUpdated = ImmutableList.copyOf(updated);
+        mRemovedIds = ImmutableList.copyOf(removedIds);
+        mAllRemoved = allRemoved;
+    }
+
+    public static DogsChange saved(long version, @NonNull Collection<Dog> inserted,
+                            @NonNull Collection<Dog> updated) {
+        return new DogsChange(version, inserted, updated, ImmutableList.<String>of(), false);
+    }
+
+    public static DogsChange removed(long version, @NonNull Collection<String> removedIds) {
+        return new DogsChange(version, ImmutableList.<Dog>of(), ImmutableList.<Dog>of(),
+                removedIds, false);
+    }
+
+    public static DogsChange allRemoved(long version) {
+        return new DogsChange(version, ImmutableList.<Dog>of(), ImmutableList.<Dog>of(),
+                ImmutableList.<String>of(), true);
+    }
+
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Dogs that the repository didn't know before this change.
+     */
+    @NonNull
+    public List<Dog> getInserted() {
+        return mInserted;
+    }
+
+    /**
+     * New values of dogs that the repository already knew.
+     */
+    @NonNull
+    public List<Dog> getUpdated() {
+        return mUpdated;
+    }
+
+    @NonNull
+    public List<String> getRemovedIds() {
+        return mRemovedIds;
+    }
+
+    /**
+     * True if every dog was removed.
+     */
+    public boolean isAllRemoved() {
+        return mAllRemoved;
+    }
+}
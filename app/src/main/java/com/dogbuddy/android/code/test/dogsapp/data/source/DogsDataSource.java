@@ -2,10 +2,12 @@
 package com.dogbuddy.android.code.test.dogsapp.data.source;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.dogbuddy.android.code.test.dogsapp.data.Breed;
 import com.dogbuddy.android.code.test.dogsapp.data.Dog;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -20,6 +22,16 @@ public interface DogsDataSource {
         void onDataNotAvailable();
     }
 
+    /**
+     * A {@link LoadDogsCallback} for callers that still have the dogs of their previous load. A
+     * data source that can tell nothing changed since then calls {@link #onNotModified()} instead
+     * of loading them again. Other callbacks always get the dogs.
+     */
+    interface ConditionalLoadDogsCallback extends LoadDogsCallback {
+
+        void onNotModified();
+    }
+
     interface GetDogCallback {
 
         void onDogLoaded(Dog dog);
@@ -34,9 +46,32 @@ public interface DogsDataSource {
         void onDataNotAvailable();
     }
 
+    /**
+     * A {@link LoadBreedsCallback} for callers that still have the breeds of their previous load,
+     * see {@link ConditionalLoadDogsCallback}.
+     */
+    interface ConditionalLoadBreedsCallback extends LoadBreedsCallback {
+
+        void onNotModified();
+    }
+
     void getDogs(@NonNull LoadDogsCallback callback);
 
+    /**
+     * Loads the page of at most pageSize dogs, ordered by id, that follows the dog with
+     * afterDogId. Pass null to load the first page. A page shorter than pageSize means there are
+     * no more dogs.
+     */
+    void getDogsPage(@Nullable String afterDogId, int pageSize, @NonNull LoadDogsCallback callback);
+
     void getDog(@NonNull String dogId, @NonNull GetDogCallback callback);
+
+    /**
+     * Loads the dogs with dogIds in one go, in no particular order. The ids that aren't found are
+     * left out, and {@link LoadDogsCallback#onDataNotAvailable()} is fired if none is found or the
+     * dogs can't be loaded.
+     */
+    void getDogsByIds(@NonNull Collection<String> dogIds, @NonNull LoadDogsCallback callback);
     
     void getBreeds(@NonNull LoadBreedsCallback callback);
     
@@ -44,6 +79,16 @@ public interface DogsDataSource {
 
     void saveBreed(@NonNull Breed breed);
 
+    /**
+     * Saves all the dogs in one batch, replacing the ones that already exist.
+     */
+    void saveDogs(@NonNull List<Dog> dogs);
+
+    /**
+     * Saves all the breeds in one batch, replacing the ones that already exist.
+     */
+    void saveBreeds(@NonNull List<Breed> breeds);
+
     void refreshDogs();
 
     void deleteAllDogs();
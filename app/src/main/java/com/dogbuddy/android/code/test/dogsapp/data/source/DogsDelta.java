@@ -0,0 +1,95 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source;
+
+import android.support.annotation.NonNull;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Breed;
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.google.common.collect.ImmutableList;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable set of changes made on the server since a sync cursor, returned by
+ * {@link DogsSyncDataSource#getChangesSince(String, DogsSyncDataSource.LoadChangesCallback)}.
+ * <p>
+ * Changed entities come with their new value, deleted ones as tombstones holding just their id.
+ * A reset delta holds the whole content of the server instead: the local tables are wiped before
+ * it's applied, because the tombstones of what was deleted before aren't part of it.
+ */
+public final class DogsDelta {
+
+    private final String mCursor;
+
+    private final boolean mReset;
+
+    private final boolean mHasMore;
+
+    private final List<Dog> mChangedDogs;
+
+    private final List<String> mDeletedDogIds;
+
+    private final List<Breed> mChangedBreeds;
+
+    private final List<String> mDeletedBreedIds;
+
+    /**
+     * @param cursor  the cursor to ask the next changes with
+     * @param reset   whether this delta replaces everything instead of being applied on top
+     * @param hasMore whether there are more changes after cursor already
+     */
+    public DogsDelta(@NonNull String cursor, boolean reset, boolean hasMore,
+                     @NonNull Collection<Dog> changedDogs,
+                     @NonNull Collection<String> deletedDogIds,
+                     @NonNull Collection<Breed> changedBreeds,
+                     @NonNull Collection<String> deletedBreedIds) {
+        mCursor = cursor;
+        mReset = reset;
+        mHasMore = hasMore;
+        mChangedDogs = ImmutableList.copyOf(changedDogs);
+        mDeletedDogIds = ImmutableList.copyOf(deletedDogIds);
+        mChangedBreeds = ImmutableList.copyOf(changedBreeds);
+        mDeletedBreedIds = ImmutableList.copyOf(deletedBreedIds);
+    }
+
+    @NonNull
+    public String getCursor() {
+        return mCursor;
+    }
+
+    public boolean isReset() {
+        return mReset;
+    }
+
+    public boolean hasMore() {
+        return mHasMore;
+    }
+
+    @NonNull
+    public List<Dog> getChangedDogs() {
+        return mChangedDogs;
+    }
+
+    @NonNull
+    public List<String> getDeletedDogIds() {
+        return mDeletedDogIds;
+    }
+
+    @NonNull
+    public List<Breed> getChangedBreeds() {
+        return mChangedBreeds;
+    }
+
+    @NonNull
+    public List<String> getDeletedBreedIds() {
+        return mDeletedBreedIds;
+    }
+
+    /**
+     * Number of entities changed or deleted.
+     */
+    public int size() {
+        return mChangedDogs.size() + mDeletedDogIds.size() + mChangedBreeds.size()
+                + mDeletedBreedIds.size();
+    }
+}
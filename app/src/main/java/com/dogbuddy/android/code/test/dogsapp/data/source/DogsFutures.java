@@ -0,0 +1,216 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Breed;
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDataSource.GetDogCallback;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDataSource.LoadBreedsCallback;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDataSource.LoadDogsCallback;
+import com.dogbuddy.android.code.test.dogsapp.util.CancellationToken;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Loads from any {@link DogsDataSource} as {@link ListenableFuture}s, so loads compose instead of
+ * nesting callbacks: they can run in parallel with {@link Futures#whenAllComplete}, race with
+ * {@link #firstSuccessful(List)} or be bounded with {@link Futures#withTimeout}.
+ * <p>
+ * A future completes on the thread the data source calls back on, the main thread for the data
+ * sources of the app, so listeners that update the UI can run on
+ * {@link MoreExecutors#directExecutor()}. A load that finds nothing fails with
+ * {@link DataNotAvailableException}. Cancelling a future cancels its load, like cancelling the
+ * token of a {@link CancellableDogsDataSource} load.
+ */
+public final class DogsFutures {
+
+    /**
+     * The data source called {@code onDataNotAvailable()}.
+     */
+    public static final class DataNotAvailableException extends Exception {
+
+        DataNotAvailableException() {
+            super("Data not available");
+        }
+    }
+
+    private DogsFutures() {
+    }
+
+    @NonNull
+    public static ListenableFuture<List<Dog>> getDogs(@NonNull DogsDataSource source) {
+        checkNotNull(source);
+        DogsLoad load = new DogsLoad();
+        CancellableLoads.getDogs(source, load.mToken, load);
+        return load;
+    }
+
+    @NonNull
+    public static ListenableFuture<List<Dog>> getDogsPage(@NonNull DogsDataSource source,
+                                                          @Nullable String afterDogId,
+                                                          int pageSize) {
+        checkNotNull(source);
+        DogsLoad load = new DogsLoad();
+        CancellableLoads.getDogsPage(source, afterDogId, pageSize, load.mToken, load);
+        return load;
+    }
+
+    @NonNull
+    public static ListenableFuture<List<Dog>> getDogsByIds(@NonNull DogsDataSource source,
+                                                           @NonNull Collection<String> dogIds) {
+        checkNotNull(source);
+        checkNotNull(dogIds);
+        DogsLoad load = new DogsLoad();
+        CancellableLoads.getDogsByIds(source, dogIds, load.mToken, load);
+        return load;
+    }
+
+    @NonNull
+    public static ListenableFuture<Dog> getDog(@NonNull DogsDataSource source,
+                                               @NonNull String dogId) {
+        checkNotNull(source);
+        checkNotNull(dogId);
+        DogLoad load = new DogLoad();
+        CancellableLoads.getDog(source, dogId, load.mToken, load);
+        return load;
+    }
+
+    @NonNull
+    public static ListenableFuture<List<Breed>> getBreeds(@NonNull DogsDataSource source) {
+        checkNotNull(source);
+        BreedsLoad load = new BreedsLoad();
+        CancellableLoads.getBreeds(source, load.mToken, load);
+        return load;
+    }
+
+    /**
+     * Returns a future with the value of the first of futures to succeed, which cancels the
+     * others. It fails like the last of them if none succeeds, and cancelling it cancels them
+     * all.
+     */
+    @NonNull
+    public static <V> ListenableFuture<V> firstSuccessful(
+            @NonNull List<? extends ListenableFuture<? extends V>> futures) {
+        checkArgument(!futures.isEmpty(), "No future to race");
+        final Race<V> race = new Race<>(futures);
+        for (final ListenableFuture<? extends V> future : race.mFutures) {
+            future.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    race.onDone(future);
+                }
+            }, MoreExecutors.directExecutor());
+        }
+        return race;
+    }
+
+    /**
+     * A load whose token is cancelled when the future is.
+     */
+    private abstract static class Load<V> extends AbstractFuture<V> {
+
+        final CancellationToken mToken = new CancellationToken();
+
+        @Override
+        protected void afterDone() {
+            if (isCancelled()) {
+                mToken.cancel();
+            }
+        }
+
+        void setNotAvailable() {
+            setException(new DataNotAvailableException());
+        }
+    }
+
+    private static final class DogsLoad extends Load<List<Dog>> implements LoadDogsCallback {
+
+        @Override
+        public void onDogsLoaded(List<Dog> dogs) {
+            set(dogs);
+        }
+
+        @Override
+        public void onDataNotAvailable() {
+            setNotAvailable();
+        }
+    }
+
+    private static final class DogLoad extends Load<Dog> implements GetDogCallback {
+
+        @Override
+        public void onDogLoaded(Dog dog) {
+            set(dog);
+        }
+
+        @Override
+        public void onDataNotAvailable() {
+            setNotAvailable();
+        }
+    }
+
+    private static final class BreedsLoad extends Load<List<Breed>>
+            implements LoadBreedsCallback {
+
+        @Override
+        public void onBreedsLoaded(List<Breed> breeds) {
+            set(breeds);
+        }
+
+        @Override
+        public void onDataNotAvailable() {
+            setNotAvailable();
+        }
+    }
+
+    private static final class Race<V> extends AbstractFuture<V> {
+
+        final List<ListenableFuture<? extends V>> mFutures;
+
+        // Guarded by this.
+        private int mRemaining;
+
+        Race(List<? extends ListenableFuture<? extends V>> futures) {
+            mFutures = ImmutableList.<ListenableFuture<? extends V>>copyOf(futures);
+            mRemaining = mFutures.size();
+        }
+
+        void onDone(ListenableFuture<? extends V> future) {
+            boolean last;
+            synchronized (this) {
+                last = --mRemaining == 0;
+            }
+            try {
+                set(Futures.getDone(future));
+            } catch (ExecutionException e) {
+                if (last) {
+                    setException(e.getCause());
+                }
+            } catch (CancellationException e) {
+                if (last) {
+                    cancel(false);
+                }
+            }
+        }
+
+        @Override
+        protected void afterDone() {
+            // The race is won, lost or cancelled, the futures still running are of no use.
+            for (ListenableFuture<? extends V> future : mFutures) {
+                future.cancel(false);
+            }
+        }
+    }
+}
@@ -1,17 +1,41 @@
 
 package com.dogbuddy.android.code.test.dogsapp.data.source;
 
+import android.arch.core.util.Function;
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MediatorLiveData;
+import android.arch.lifecycle.Observer;
+import android.arch.lifecycle.Transformations;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import com.dogbuddy.android.code.test.dogsapp.data.Breed;
 import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.dogbuddy.android.code.test.dogsapp.data.DogsFilter;
+import com.dogbuddy.android.code.test.dogsapp.data.source.local.DogsLocalDataSource;
+import com.dogbuddy.android.code.test.dogsapp.util.CancellationToken;
 import com.dogbuddy.android.code.test.dogsapp.util.EspressoIdlingResource;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -20,35 +44,275 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * <p>
  * For simplicity, this implements a dumb synchronisation between locally persisted data and data
  * obtained from the server, by using the remote data source only if the local database doesn't
- * exist or is empty.
- *
- * //TODO: Implement this class using LiveData.
+ * exist or is empty. When the remote data source is a {@link DogsSyncDataSource}, it's synced
+ * incrementally: only the changes made on the server since the last sync are fetched and applied.
+ * <p>
+ * Besides the callback based {@link DogsDataSource} API, the repository exposes {@link LiveData}
+ * streams backed by Room observable queries. Subscribers are pushed a new snapshot only when the
+ * underlying table changes, so screens don't need to reload on every resume.
+ * <p>
+ * Loads started with a {@link CancellationToken} are dropped once it's cancelled. A load shared by
+ * several callers keeps going until all of them cancelled, then its queued disk work and its
+ * remote requests are cancelled too.
+ * <p>
+ * Loads can be made as futures with {@link DogsFutures}, to compose them.
  */
-public class DogsRepository implements DogsDataSource {
+public class DogsRepository implements CancellableDogsDataSource {
+
+    /**
+     * Callback for {@link #getDogsRevalidating(CancellationToken, RevalidateDogsCallback)}.
+     */
+    public interface RevalidateDogsCallback {
+
+        /**
+         * @param stale true if dogs come from the cache or the local data source and are being
+         *              refreshed from the remote data source, false if they are the refreshed dogs
+         */
+        void onDogsLoaded(@NonNull List<Dog> dogs, boolean stale);
+
+        /**
+         * The refresh finished and the remote dogs are the same as the stale ones already
+         * delivered.
+         */
+        void onDogsUnchanged();
+
+        /**
+         * The refresh failed. Stale dogs already delivered, if any, are still the best available.
+         */
+        void onDataNotAvailable();
+    }
+
+    /**
+     * Listener of the changes made to the dogs through the repository.
+     */
+    public interface DogsChangeListener {
+
+        /**
+         * Called on the thread that made the change, right after the cache was updated.
+         */
+        void onDogsChanged(@NonNull DogsChange change);
+    }
+
+    /**
+     * Callback of a delta sync with the remote data source.
+     */
+    private interface SyncCallback {
+
+        /**
+         * @param changed whether the sync applied any change. If not, the server answered that
+         *                nothing changed since the last sync, and no row was written.
+         */
+        void onSynced(boolean changed);
+
+        void onSyncFailed();
+    }
 
     private volatile static DogsRepository INSTANCE = null;
 
+    private static final long DOG_CACHE_MAXIMUM_SIZE = 500;
+
+    private static final long DOG_CACHE_EXPIRE_MINUTES = 10;
+
+    /**
+     * Most dogs {@link #getDogs} keeps in memory. A bigger list is loaded from the local data
+     * source on every call instead.
+     */
+    private static final long DOGS_CACHE_MAXIMUM_SIZE = 5000;
+
+    /**
+     * Most dogs looked up by one batch of {@link #getDog} misses, which keeps the remote request
+     * for their ids short.
+     */
+    private static final int MAX_DOG_BATCH_SIZE = 100;
+
     private final DogsDataSource mDogsRemoteDataSource;
 
-    private final DogsDataSource mDogsLocalDataSource;
+    /**
+     * The remote data source, if it can tell what changed since the last sync. Null if the dogs
+     * have to be fetched in full.
+     */
+    @Nullable
+    private final DogsSyncDataSource mDogsSyncDataSource;
+
+    private final DogsLocalDataSource mDogsLocalDataSource;
+
+    private static final SnapshotCache.KeyFunction<Dog> DOG_ID =
+            new SnapshotCache.KeyFunction<Dog>() {
+                @NonNull
+                @Override
+                public String keyOf(@NonNull Dog dog) {
+                    return dog.getId();
+                }
+            };
+
+    private static final SnapshotCache.KeyFunction<Breed> BREED_ID =
+            new SnapshotCache.KeyFunction<Breed>() {
+                @NonNull
+                @Override
+                public String keyOf(@NonNull Breed breed) {
+                    return breed.getId();
+                }
+            };
+
+    /**
+     * This variables have package local visibility so it can be accessed from tests. Both caches
+     * can be read and written from any thread. The dogs are bounded like {@link #mDogCache}, the
+     * breeds are a short list that doesn't grow with browsing.
+     */
+    final SnapshotCache<Dog> mCachedDogs = new SnapshotCache<>(DOG_ID, DOGS_CACHE_MAXIMUM_SIZE,
+            TimeUnit.MINUTES.toNanos(DOG_CACHE_EXPIRE_MINUTES), Ticker.systemTicker());
+    final SnapshotCache<Breed> mCachedBreeds = new SnapshotCache<>(BREED_ID);
+
+    /**
+     * Bounded cache of the dogs looked up by id. Dogs loaded one by one only go here, so browsing
+     * many dogs doesn't grow {@link #mCachedDogs}.
+     */
+    private final EntityCache<Dog> mDogCache;
+
+    /**
+     * Marks the cache as invalid, to force an update from the remote data source the next time
+     * data is requested. Written and read from different threads.
+     */
+    private volatile boolean mCacheIsDirty = false;
+
+    /**
+     * Set when the dogs or breeds tables change behind the cache, so the affected cache is
+     * reloaded from the local data source the next time it's requested. Written and read from
+     * different threads.
+     */
+    private volatile boolean mDogsCacheIsStale = false;
+    private volatile boolean mBreedsCacheIsStale = false;
+
+    /**
+     * Invalidates only the cache of the table that changed. Writes that don't go through the
+     * repository, like a background sync, are caught too.
+     * <p>
+     * The repository's own writes are reported as well, and mark the cache stale even though it
+     * was already patched for them. Room merges reports and skips writes that changed no row, so
+     * a report can't be told apart from an outside write made around it. The stale cache is only
+     * reloaded, from the local data source, the next time it's requested.
+     */
+    private final DogsLocalDataSource.TablesObserver mTablesObserver =
+            new DogsLocalDataSource.TablesObserver() {
+                @Override
+                public void onDogsTableChanged() {
+                    mDogsCacheIsStale = true;
+                    mDogCache.invalidateAll();
+                }
+
+                @Override
+                public void onBreedsTableChanged() {
+                    mBreedsCacheIsStale = true;
+                }
+            };
+
+    private static final String LOAD_KEY_DOGS = "dogs";
+
+    private static final String LOAD_KEY_REMOTE_DOGS = "remote_dogs";
+
+    private static final String LOAD_KEY_BREEDS = "breeds";
+
+    /**
+     * Loads in flight. Concurrent requests for the same data are attached to the pending load
+     * instead of starting their own.
+     */
+    private final SingleFlight<LoadDogsCallback> mDogsLoads = new SingleFlight<>();
+    private final SingleFlight<LoadBreedsCallback> mBreedsLoads = new SingleFlight<>();
+    private final SingleFlight<GetDogCallback> mDogLoads = new SingleFlight<>();
+    private final SingleFlight<LoadDogsCallback> mPageLoads = new SingleFlight<>();
+
+    /**
+     * Batches the dogs {@link #getDog} doesn't find in the cache, so they are looked up with one
+     * local query, then the ones still missing with one remote request.
+     */
+    private final BatchLoader<Dog> mDogBatches;
 
     /**
-     * This variables have package local visibility so it can be accessed from tests.
+     * Version of the last {@link DogsChange} published. Only changed while holding
+     * {@link #mDogsChangeListeners}, so changes are published in version order.
      */
-    Map<String, Dog> mCachedDogs;
-    Map<String, Breed> mCachedBreeds;
+    private long mDogsVersion = 0;
+
+    private final List<DogsChangeListener> mDogsChangeListeners = new CopyOnWriteArrayList<>();
+
+    private MediatorLiveData<List<Dog>> mObservableDogs;
 
     /**
-     * Marks the cache as invalid, to force an update the next time data is requested. This variable
-     * has package local visibility so it can be accessed from tests.
+     * Whether {@link #observeDogs()} already fell back to the remote data source because the local
+     * one was empty. Only accessed from the main thread.
      */
-    private boolean mCacheIsDirty = false;
+    private boolean mObservableDogsFetchedRemote = false;
 
     // Prevent direct instantiation.
     private DogsRepository(@NonNull DogsDataSource dogsRemoteDataSource,
-                           @NonNull DogsDataSource dogsLocalDataSource) {
+                           @NonNull DogsLocalDataSource dogsLocalDataSource,
+                           @NonNull EntityCache<Dog> dogCache,
+                           @NonNull Executor batchDispatcher) {
         mDogsRemoteDataSource = checkNotNull(dogsRemoteDataSource);
+        mDogsSyncDataSource = dogsRemoteDataSource instanceof DogsSyncDataSource
+                ? (DogsSyncDataSource) dogsRemoteDataSource
+                : null;
         mDogsLocalDataSource = checkNotNull(dogsLocalDataSource);
+        mDogCache = checkNotNull(dogCache);
+        mDogBatches = new BatchLoader<>(batchDispatcher, MAX_DOG_BATCH_SIZE,
+                new BatchLoader.BatchFunction<Dog>() {
+                    @Override
+                    public void load(@NonNull List<String> dogIds,
+                                     @NonNull CancellationToken token,
+                                     @NonNull BatchLoader.BatchCallback<Dog> callback) {
+                        loadDogsBatch(dogIds, token, callback);
+                    }
+                });
+        mDogsLocalDataSource.addTablesObserver(mTablesObserver);
+    }
+
+    /**
+     * Returns the single instance of this class, creating it if necessary.
+     *
+     * @param dogsRemoteDataSource the backend data source
+     * @param dogsLocalDataSource  the device storage data source
+     * @return the {@link DogsRepository} instance
+     */
+    public static DogsRepository getInstance(DogsDataSource dogsRemoteDataSource,
+                                             DogsLocalDataSource dogsLocalDataSource) {
+        return getInstance(dogsRemoteDataSource, dogsLocalDataSource,
+                MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Returns the single instance of this class, creating it if necessary.
+     *
+     * @param dogsRemoteDataSource the backend data source
+     * @param dogsLocalDataSource  the device storage data source
+     * @param batchDispatcher      runs the batches of dogs looked up by id. The ids asked for
+     *                             before it runs a batch are loaded together, so the main thread
+     *                             batches the ones asked for while handling the same message
+     * @return the {@link DogsRepository} instance
+     */
+    public static DogsRepository getInstance(DogsDataSource dogsRemoteDataSource,
+                                             DogsLocalDataSource dogsLocalDataSource,
+                                             Executor batchDispatcher) {
+        return getInstance(dogsRemoteDataSource, dogsLocalDataSource,
+                new LruEntityCache.Builder<Dog>()
+                        .setMaximumSize(DOG_CACHE_MAXIMUM_SIZE)
+                        .setExpireAfterWrite(DOG_CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES)
+                        .build(),
+                batchDispatcher);
+    }
+
+    /**
+     * Returns the single instance of this class, creating it if necessary.
+     *
+     * @param dogsRemoteDataSource the backend data source
+     * @param dogsLocalDataSource  the device storage data source
+     * @param dogCache             the cache of dogs looked up by id
+     * @return the {@link DogsRepository} instance
+     */
+    public static DogsRepository getInstance(DogsDataSource dogsRemoteDataSource,
+                                             DogsLocalDataSource dogsLocalDataSource,
+                                             EntityCache<Dog> dogCache) {
+        return getInstance(dogsRemoteDataSource, dogsLocalDataSource, dogCache,
+                MoreExecutors.directExecutor());
     }
 
     /**
@@ -56,14 +320,19 @@ public class DogsRepository implements DogsDataSource {
      *
      * @param dogsRemoteDataSource the backend data source
      * @param dogsLocalDataSource  the device storage data source
+     * @param dogCache             the cache of dogs looked up by id
+     * @param batchDispatcher      runs the batches of dogs looked up by id
      * @return the {@link DogsRepository} instance
      */
     public static DogsRepository getInstance(DogsDataSource dogsRemoteDataSource,
-                                             DogsDataSource dogsLocalDataSource) {
+                                             DogsLocalDataSource dogsLocalDataSource,
+                                             EntityCache<Dog> dogCache,
+                                             Executor batchDispatcher) {
         if (INSTANCE == null) {
             synchronized (DogsRepository.class) {
                 if (INSTANCE == null) {
-                    INSTANCE = new DogsRepository(dogsRemoteDataSource, dogsLocalDataSource);
+                    INSTANCE = new DogsRepository(dogsRemoteDataSource, dogsLocalDataSource,
+                            dogCache, batchDispatcher);
                 }
             }
         }
@@ -71,10 +340,13 @@ public class DogsRepository implements DogsDataSource {
     }
 
     /**
-     * Used to force {@link #getInstance(DogsDataSource, DogsDataSource)} to create a new instance
-     * next time it's called.
+     * Used to force {@link #getInstance(DogsDataSource, DogsLocalDataSource)} to create a new
+     * instance next time it's called.
      */
     public static void destroyInstance() {
+        if (INSTANCE != null) {
+            INSTANCE.mDogsLocalDataSource.removeTablesObserver(INSTANCE.mTablesObserver);
+        }
         INSTANCE = null;
     }
 
@@ -86,281 +358,1224 @@ public class DogsRepository implements DogsDataSource {
      * get the data.
      */
     @Override
-    public void getDogs(@NonNull final LoadDogsCallback callback) {
+    public void getDogs(@NonNull LoadDogsCallback callback) {
+        getDogs(CancellationToken.NONE, callback);
+    }
+
+    /**
+     * Like {@link #getDogs(LoadDogsCallback)}, dropped if token is cancelled first.
+     */
+    @Override
+    public void getDogs(@NonNull CancellationToken token,
+                        @NonNull final LoadDogsCallback callback) {
+        checkNotNull(token);
         checkNotNull(callback);
 
-        // Respond immediately with cache if available and not dirty
-        if (mCachedDogs != null && !mCacheIsDirty) {
-            callback.onDogsLoaded(new ArrayList<>(mCachedDogs.values()));
+        // Respond immediately with cache if available and neither dirty nor stale
+        List<Dog> cachedDogs = mCachedDogs.getAll();
+        if (cachedDogs != null && !mCacheIsDirty && !mDogsCacheIsStale) {
+            mCachedDogs.recordHit();
+            callback.onDogsLoaded(cachedDogs);
+            return;
+        }
+        mCachedDogs.recordMiss();
+
+        // A dirty cache is reloaded from the network, so it can't share a local load.
+        final boolean refresh = mCacheIsDirty;
+        String key = refresh ? LOAD_KEY_REMOTE_DOGS : LOAD_KEY_DOGS;
+        final CancellationToken loadToken = mDogsLoads.join(key, token, callback);
+        if (loadToken == null) {
+            // The same load is already in flight, callback is completed with its result.
             return;
         }
+        final LoadDogsCallback loadCallback = completeDogsLoad(key);
+        // Cleared before loading, so a change made while loading marks the cache stale again.
+        mDogsCacheIsStale = false;
 
         EspressoIdlingResource.increment(); // App is busy until further notice
+        idleWhenCancelled(loadToken);
 
-        if (mCacheIsDirty) {
+        if (refresh) {
             // If the cache is dirty we need to fetch new data from the network.
-            getDogsFromRemoteDataSource(callback);
+            getDogsFromRemoteDataSource(loadToken, loadCallback);
         } else {
             // Query the local storage if available. If not, query the network.
-            mDogsLocalDataSource.getDogs(new LoadDogsCallback() {
+            CancellableLoads.getDogs(mDogsLocalDataSource, loadToken, new LoadDogsCallback() {
                 @Override
                 public void onDogsLoaded(List<Dog> dogs) {
-                    refreshDogsCache(dogs);
+                    List<Dog> cachedDogs = refreshDogsCache(dogs);
 
                     EspressoIdlingResource.decrement(); // Set app as idle.
-                    callback.onDogsLoaded(new ArrayList<>(mCachedDogs.values()));
+                    loadCallback.onDogsLoaded(cachedDogs);
                 }
 
                 @Override
                 public void onDataNotAvailable() {
-                    getDogsFromRemoteDataSource(callback);
+                    getDogsFromRemoteDataSource(loadToken, loadCallback);
                 }
             });
         }
     }
 
-    @Override
-    public void saveDog(@NonNull Dog dog) {
-        checkNotNull(dog);
-        mDogsRemoteDataSource.saveDog(dog);
-        mDogsLocalDataSource.saveDog(dog);
-
-        // Do in memory cache update to keep the app UI up to date
-        if (mCachedDogs == null) {
-            mCachedDogs = new LinkedHashMap<>();
-        }
-        mCachedDogs.put(dog.getId(), dog);
+    /**
+     * Stale-while-revalidate load of all the dogs. Dogs in the cache or the local data source are
+     * delivered right away as stale, without waiting for the network, then they are refreshed from
+     * the remote data source in the background. The refreshed dogs are delivered again only if
+     * they changed, otherwise {@link RevalidateDogsCallback#onDogsUnchanged()} is fired.
+     */
+    public void getDogsRevalidating(@NonNull RevalidateDogsCallback callback) {
+        getDogsRevalidating(CancellationToken.NONE, callback);
     }
 
-    @Override
-    public void getBreeds(@NonNull final LoadBreedsCallback callback) {
+    /**
+     * Like {@link #getDogsRevalidating(RevalidateDogsCallback)}, dropped if token is cancelled
+     * first, even between the stale and the refreshed dogs.
+     */
+    public void getDogsRevalidating(@NonNull final CancellationToken token,
+                                    @NonNull final RevalidateDogsCallback callback) {
+        checkNotNull(token);
         checkNotNull(callback);
 
-        // Respond immediately with cache if available
-        if (mCachedBreeds != null) {
-            callback.onBreedsLoaded(new ArrayList<>(mCachedBreeds.values()));
+        List<Dog> cachedDogs = mCachedDogs.getAll();
+        if (cachedDogs != null && !mDogsCacheIsStale) {
+            callback.onDogsLoaded(cachedDogs, true);
+            revalidateDogs(cachedDogs, token, callback);
             return;
         }
 
+        mDogsCacheIsStale = false;
         EspressoIdlingResource.increment(); // App is busy until further notice
+        final Runnable idle = idleWhenCancelled(token);
 
-        // Query the local storage if available. If not, query the network.
-        mDogsLocalDataSource.getBreeds(new LoadBreedsCallback() {
+        CancellableLoads.getDogs(mDogsLocalDataSource, token, new LoadDogsCallback() {
             @Override
-            public void onBreedsLoaded(List<Breed> breeds) {
-                refreshBreedsCache(breeds);
+            public void onDogsLoaded(List<Dog> dogs) {
+                // Local dogs are not fresh, so the cache is filled but keeps its dirty flag.
+                List<Dog> staleDogs = refreshDogsCache(dogs);
 
+                token.removeListener(idle);
                 EspressoIdlingResource.decrement(); // Set app as idle.
-                callback.onBreedsLoaded(new ArrayList<>(mCachedBreeds.values()));
+                callback.onDogsLoaded(staleDogs, true);
+                revalidateDogs(staleDogs, token, callback);
             }
 
             @Override
             public void onDataNotAvailable() {
-                getBreedsFromRemoteDataSource(callback);
+                token.removeListener(idle);
+                EspressoIdlingResource.decrement(); // Set app as idle.
+                revalidateDogs(null, token, callback);
             }
         });
     }
 
+    /**
+     * Gets a page of dogs from the local data source. The local data source is trusted once it
+     * was synced, so a short or empty page is the end of the dogs. Only before the first sync, or
+     * if the local page is empty and the remote data source can't sync, the page is merged with
+     * the same page from the remote data source. Remote pages are only persisted if the remote
+     * data source can't sync: otherwise the sync is what writes remote dogs, so a page can't bring
+     * back a dog deleted locally.
+     * <p>
+     * Paged loads don't touch the in memory cache, which is only meant for the whole list.
+     * <p>
+     * Note: {@link LoadDogsCallback#onDataNotAvailable()} is fired if both data sources have no
+     * dogs after afterDogId.
+     */
     @Override
-    public void saveBreed(@NonNull Breed breed) {
-        checkNotNull(breed);
-        mDogsRemoteDataSource.saveBreed(breed);
-        mDogsLocalDataSource.saveBreed(breed);
-
-        // Do in memory cache update to keep the app UI up to date
-        if (mCachedBreeds == null) {
-            mCachedBreeds = new LinkedHashMap<>();
-        }
-        mCachedBreeds.put(breed.getId(), breed);
+    public void getDogsPage(@Nullable String afterDogId, int pageSize,
+                            @NonNull LoadDogsCallback callback) {
+        getDogsPage(afterDogId, pageSize, CancellationToken.NONE, callback);
     }
 
-
     /**
-     * Gets dogs from local data source (sqlite) unless the table is new or empty. In that case it
-     * uses the network data source. This is done to simplify the sample.
-     * <p>
-     * Note: {@link GetDogCallback#onDataNotAvailable()} is fired if both data sources fail to
-     * get the data.
+     * Like {@link #getDogsPage(String, int, LoadDogsCallback)}, dropped if token is cancelled
+     * first. Concurrent loads of the same page share their load.
      */
     @Override
-    public void getDog(@NonNull final String dogId, @NonNull final GetDogCallback callback) {
-        checkNotNull(dogId);
+    public void getDogsPage(@Nullable final String afterDogId, final int pageSize,
+                            @NonNull CancellationToken token,
+                            @NonNull LoadDogsCallback callback) {
+        checkNotNull(token);
         checkNotNull(callback);
 
-        Dog cachedDog = getDogWithId(dogId);
-
-        // Respond immediately with cache if available
-        if (cachedDog != null) {
-            callback.onDogLoaded(cachedDog);
+        final String key = afterDogId + "/" + pageSize;
+        final CancellationToken loadToken = mPageLoads.join(key, token, callback);
+        if (loadToken == null) {
+            // The same page is already being loaded, callback is completed with its result.
             return;
         }
+        final LoadDogsCallback loadCallback = completePageLoad(key);
 
         EspressoIdlingResource.increment(); // App is busy until further notice
+        idleWhenCancelled(loadToken);
 
-        // Load from server/persisted if needed.
-
-        // Is the dog in the local data source? If not, query the network.
-        mDogsLocalDataSource.getDog(dogId, new GetDogCallback() {
-            @Override
-            public void onDogLoaded(Dog dog) {
-                // Do in memory cache update to keep the app UI up to date
-                if (mCachedDogs == null) {
-                    mCachedDogs = new LinkedHashMap<>();
-                }
-                mCachedDogs.put(dog.getId(), dog);
-
-                EspressoIdlingResource.decrement(); // Set app as idle.
-
-                callback.onDogLoaded(dog);
-            }
-
-            @Override
-            public void onDataNotAvailable() {
-                mDogsRemoteDataSource.getDog(dogId, new GetDogCallback() {
+        CancellableLoads.getDogsPage(mDogsLocalDataSource, afterDogId, pageSize, loadToken,
+                new LoadDogsCallback() {
                     @Override
-                    public void onDogLoaded(Dog dog) {
-                        if (dog == null) {
-                            onDataNotAvailable();
-                            return;
-                        }
-                        // Do in memory cache update to keep the app UI up to date
-                        if (mCachedDogs == null) {
-                            mCachedDogs = new LinkedHashMap<>();
+                    public void onDogsLoaded(List<Dog> dogs) {
+                        if (dogs.size() >= pageSize || mDogsSyncDataSource == null) {
+                            EspressoIdlingResource.decrement(); // Set app as idle.
+                            loadCallback.onDogsLoaded(dogs);
+                        } else {
+                            getDogsPageUnlessSynced(afterDogId, pageSize, dogs, loadToken,
+                                    loadCallback);
                         }
-                        mCachedDogs.put(dog.getId(), dog);
-                        EspressoIdlingResource.decrement(); // Set app as idle.
-
-                        callback.onDogLoaded(dog);
                     }
 
                     @Override
                     public void onDataNotAvailable() {
-                        EspressoIdlingResource.decrement(); // Set app as idle.
-
-                        callback.onDataNotAvailable();
+                        List<Dog> none = Collections.emptyList();
+                        if (mDogsSyncDataSource == null) {
+                            getDogsPageFromRemoteDataSource(afterDogId, pageSize, none,
+                                    loadToken, loadCallback);
+                        } else {
+                            getDogsPageUnlessSynced(afterDogId, pageSize, none, loadToken,
+                                    loadCallback);
+                        }
                     }
                 });
-            }
-        });
     }
 
-    @Override
-    public void refreshDogs() {
-        mCacheIsDirty = true;
+    /**
+     * Completes a short local page from the remote data source if the dogs were never synced, so
+     * the local data source may just not have them yet. Once synced, the local page is final.
+     */
+    private void getDogsPageUnlessSynced(@Nullable final String afterDogId, final int pageSize,
+                                         @NonNull final List<Dog> localPage,
+                                         @NonNull final CancellationToken token,
+                                         @NonNull final LoadDogsCallback callback) {
+        mDogsLocalDataSource.getSyncCursor(new DogsLocalDataSource.GetSyncCursorCallback() {
+            @Override
+            public void onSyncCursorLoaded(@Nullable String cursor) {
+                if (token.isCancelled()) {
+                    return;
+                }
+                if (cursor == null) {
+                    getDogsPageFromRemoteDataSource(afterDogId, pageSize, localPage, token,
+                            callback);
+                    return;
+                }
+                EspressoIdlingResource.decrement(); // Set app as idle.
+                if (localPage.isEmpty()) {
+                    callback.onDataNotAvailable();
+                } else {
+                    callback.onDogsLoaded(localPage);
+                }
+            }
+        });
     }
 
-    @Override
-    public void deleteAllDogs() {
-        mDogsRemoteDataSource.deleteAllDogs();
-        mDogsLocalDataSource.deleteAllDogs();
+    /**
+     * Returns a {@link LiveData} with all the dogs, backed by the local data source. A new list is
+     * pushed every time the dogs table changes. If the local data source is empty the remote data
+     * source is queried once and its dogs are persisted, which in turn updates the stream.
+     * <p>
+     * The same {@link LiveData} instance is shared by all the subscribers.
+     */
+    public LiveData<List<Dog>> observeDogs() {
+        if (mObservableDogs == null) {
+            mObservableDogs = new MediatorLiveData<>();
+            LiveData<List<Dog>> localDogs = mDogsLocalDataSource.observeDogs();
+            mObservableDogs.addSource(localDogs, new Observer<List<Dog>>() {
+                @Override
+                public void onChanged(@Nullable List<Dog> dogs) {
+                    if ((dogs == null || dogs.isEmpty()) && !mObservableDogsFetchedRemote) {
+                        mObservableDogsFetchedRemote = true;
+                        EspressoIdlingResource.increment(); // App is busy until further notice
+                        getDogsFromRemoteDataSource(CancellationToken.NONE,
+                                new LoadDogsCallback() {
+                                    @Override
+                                    public void onDogsLoaded(List<Dog> dogs) {
+                                        mObservableDogs.setValue(dogs);
+                                    }
 
-        if (mCachedDogs == null) {
-            mCachedDogs = new LinkedHashMap<>();
+                                    @Override
+                                    public void onDataNotAvailable() {
+                                        mObservableDogs.setValue(new ArrayList<Dog>(0));
+                                    }
+                                });
+                        return;
+                    }
+                    if (dogs != null) {
+                        // A new snapshot of the table, the cache is up to date again.
+                        mDogsCacheIsStale = false;
+                        refreshDogsCache(dogs);
+                    }
+                    mObservableDogs.setValue(dogs);
+                }
+            });
         }
-        mCachedDogs.clear();
+        return mObservableDogs;
     }
 
-    @Override
-    public void deleteAllBreeds() {
-        mDogsRemoteDataSource.deleteAllBreeds();
-        mDogsLocalDataSource.deleteAllBreeds();
-
-        if (mCachedBreeds == null) {
-            mCachedBreeds = new LinkedHashMap<>();
-        }
-        mCachedBreeds.clear();
+    /**
+     * Returns a {@link LiveData} with the dogs that match filter, filtered and sorted in SQL by
+     * the local data source. Filtered lists are not cached, Room pushes a new one every time the
+     * dogs table changes.
+     */
+    public LiveData<List<Dog>> observeDogs(@NonNull DogsFilter filter) {
+        checkNotNull(filter);
+        return mDogsLocalDataSource.observeDogs(filter);
     }
 
-    @Override
-    public void deleteDog(@NonNull String dogId) {
-        mDogsRemoteDataSource.deleteDog(checkNotNull(dogId));
-        mDogsLocalDataSource.deleteDog(checkNotNull(dogId));
-
-        mCachedDogs.remove(dogId);
+    /**
+     * Gets the dogs that match filter from the local data source.
+     * <p>
+     * Note: {@link LoadDogsCallback#onDataNotAvailable()} is fired if no dog matches filter.
+     */
+    public void getDogs(@NonNull DogsFilter filter, @NonNull LoadDogsCallback callback) {
+        checkNotNull(filter);
+        checkNotNull(callback);
+        mDogsLocalDataSource.getDogs(filter, callback);
     }
 
-    private void getDogsFromRemoteDataSource(@NonNull final LoadDogsCallback callback) {
-        mDogsRemoteDataSource.getDogs(new LoadDogsCallback() {
-            @Override
-            public void onDogsLoaded(List<Dog> dogs) {
-                refreshDogsCache(dogs);
-                refreshDogsLocalDataSource(dogs);
-
-                EspressoIdlingResource.decrement(); // Set app as idle.
-                callback.onDogsLoaded(new ArrayList<>(mCachedDogs.values()));
-            }
-
-            @Override
-            public void onDataNotAvailable() {
-
-                EspressoIdlingResource.decrement(); // Set app as idle.
-                callback.onDataNotAvailable();
-            }
-        });
+    /**
+     * Full-text search of the dogs by prefixes of their name or breed words, run by the local data
+     * source. A search superseded by a newer one before it starts is dropped without calling back.
+     * <p>
+     * Note: {@link LoadDogsCallback#onDataNotAvailable()} is fired if no dog matches.
+     */
+    public void searchDogs(@NonNull String text, int limit, @NonNull LoadDogsCallback callback) {
+        searchDogs(text, limit, CancellationToken.NONE, callback);
     }
 
-    private void getBreedsFromRemoteDataSource(@NonNull final LoadBreedsCallback callback) {
-        mDogsRemoteDataSource.getBreeds(new LoadBreedsCallback() {
-            @Override
-            public void onBreedsLoaded(List<Breed> breeds) {
-                refreshBreedsCache(breeds);
-                refreshBreedsLocalDataSource(breeds);
-
-                EspressoIdlingResource.decrement(); // Set app as idle.
-                callback.onBreedsLoaded(new ArrayList<>(mCachedBreeds.values()));
-            }
+    /**
+     * Like {@link #searchDogs(String, int, LoadDogsCallback)}, dropped if token is cancelled
+     * first.
+     */
+    public void searchDogs(@NonNull String text, int limit, @NonNull CancellationToken token,
+                           @NonNull LoadDogsCallback callback) {
+        checkNotNull(text);
+        checkNotNull(token);
+        checkNotNull(callback);
+        mDogsLocalDataSource.searchDogs(text, limit, token, callback);
+    }
 
+    /**
+     * Returns a {@link LiveData} that emits the {@link Dog} with dogId every time it changes in
+     * the local data source, keeping the in memory cache up to date.
+     */
+    public LiveData<Dog> observeDog(@NonNull String dogId) {
+        checkNotNull(dogId);
+        LiveData<Dog> localDog = mDogsLocalDataSource.observeDog(dogId);
+        return Transformations.map(localDog, new Function<Dog, Dog>() {
             @Override
-            public void onDataNotAvailable() {
-
-                EspressoIdlingResource.decrement(); // Set app as idle.
-                callback.onDataNotAvailable();
+            public Dog apply(Dog dog) {
+                if (dog != null) {
+                    mDogCache.put(dog.getId(), dog);
+                }
+                return dog;
             }
         });
     }
 
-    private void refreshDogsCache(List<Dog> dogs) {
-        if (mCachedDogs == null) {
-            mCachedDogs = new LinkedHashMap<>();
-        }
-        mCachedDogs.clear();
+    /**
+     * Returns a {@link LiveData} with all the breeds, backed by the local data source.
+     */
+    public LiveData<List<Breed>> observeBreeds() {
+        return Transformations.map(mDogsLocalDataSource.observeBreeds(),
+                new Function<List<Breed>, List<Breed>>() {
+                    @Override
+                    public List<Breed> apply(List<Breed> breeds) {
+                        if (breeds != null) {
+                            refreshBreedsCache(breeds);
+                        }
+                        return breeds;
+                    }
+                });
+    }
+
+    @Override
+    public void saveDog(@NonNull Dog dog) {
+        checkNotNull(dog);
+        mDogsRemoteDataSource.saveDog(dog);
+        mDogsLocalDataSource.saveDog(dog);
+
+        // Do in memory cache update to keep the app UI up to date
+        boolean known = isKnownDog(dog.getId());
+        mCachedDogs.put(dog);
+        mDogCache.put(dog.getId(), dog);
+
+        List<Dog> saved = Collections.singletonList(dog);
+        List<Dog> none = Collections.emptyList();
+        publishSavedDogs(known ? none : saved, known ? saved : none);
+    }
+
+    @Override
+    public void saveDogs(@NonNull List<Dog> dogs) {
+        checkNotNull(dogs);
+        mDogsRemoteDataSource.saveDogs(dogs);
+        mDogsLocalDataSource.saveDogs(dogs);
+
+        // Do in memory cache update to keep the app UI up to date
+        List<Dog> inserted = new ArrayList<>();
+        List<Dog> updated = new ArrayList<>();
         for (Dog dog : dogs) {
-            mCachedDogs.put(dog.getId(), dog);
+            if (isKnownDog(dog.getId())) {
+                updated.add(dog);
+            } else {
+                inserted.add(dog);
+            }
         }
-        mCacheIsDirty = false;
+        mCachedDogs.putAll(dogs);
+        for (Dog dog : dogs) {
+            mDogCache.put(dog.getId(), dog);
+        }
+
+        publishSavedDogs(inserted, updated);
     }
 
-    private void refreshBreedsCache(List<Breed> breeds) {
-        if (mCachedBreeds == null) {
-            mCachedBreeds = new LinkedHashMap<>();
+    @Override
+    public void getBreeds(@NonNull LoadBreedsCallback callback) {
+        getBreeds(CancellationToken.NONE, callback);
+    }
+
+    /**
+     * Like {@link #getBreeds(LoadBreedsCallback)}, dropped if token is cancelled first.
+     */
+    @Override
+    public void getBreeds(@NonNull CancellationToken token,
+                          @NonNull final LoadBreedsCallback callback) {
+        checkNotNull(token);
+        checkNotNull(callback);
+
+        // Respond immediately with cache if available
+        List<Breed> cachedBreeds = mCachedBreeds.getAll();
+        if (cachedBreeds != null && !mBreedsCacheIsStale) {
+            callback.onBreedsLoaded(cachedBreeds);
+            return;
         }
-        mCachedBreeds.clear();
-        for (Breed breed : breeds) {
-            mCachedBreeds.put(breed.getId(), breed);
+
+        final CancellationToken loadToken = mBreedsLoads.join(LOAD_KEY_BREEDS, token, callback);
+        if (loadToken == null) {
+            // The same load is already in flight, callback is completed with its result.
+            return;
         }
+        final LoadBreedsCallback loadCallback = completeBreedsLoad(LOAD_KEY_BREEDS);
+        mBreedsCacheIsStale = false;
+
+        EspressoIdlingResource.increment(); // App is busy until further notice
+        idleWhenCancelled(loadToken);
+
+        // Query the local storage if available. If not, query the network.
+        CancellableLoads.getBreeds(mDogsLocalDataSource, loadToken, new LoadBreedsCallback() {
+            @Override
+            public void onBreedsLoaded(List<Breed> breeds) {
+                refreshBreedsCache(breeds);
+
+                EspressoIdlingResource.decrement(); // Set app as idle.
+                loadCallback.onBreedsLoaded(mCachedBreeds.getAll());
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                getBreedsFromRemoteDataSource(loadToken, loadCallback);
+            }
+        });
     }
 
-    private void refreshDogsLocalDataSource(List<Dog> dogs) {
+    @Override
+    public void saveBreed(@NonNull Breed breed) {
+        checkNotNull(breed);
+        mDogsRemoteDataSource.saveBreed(breed);
+        mDogsLocalDataSource.saveBreed(breed);
+
+        // Do in memory cache update to keep the app UI up to date
+        mCachedBreeds.put(breed);
+    }
+
+
+    @Override
+    public void saveBreeds(@NonNull List<Breed> breeds) {
+        checkNotNull(breeds);
+        mDogsRemoteDataSource.saveBreeds(breeds);
+        mDogsLocalDataSource.saveBreeds(breeds);
+
+        // Do in memory cache update to keep the app UI up to date
+        mCachedBreeds.putAll(breeds);
+    }
+
+    /**
+     * Gets dogs from local data source (sqlite) unless the table is new or empty. In that case it
+     * uses the network data source. This is done to simplify the sample.
+     * <p>
+     * The dogs missing from the cache aren't loaded one by one: they are batched, see
+     * {@link #loadDogsBatch(List, CancellationToken, BatchLoader.BatchCallback)}.
+     * <p>
+     * Note: {@link GetDogCallback#onDataNotAvailable()} is fired if both data sources fail to
+     * get the data.
+     */
+    @Override
+    public void getDog(@NonNull String dogId, @NonNull GetDogCallback callback) {
+        getDog(dogId, CancellationToken.NONE, callback);
+    }
+
+    /**
+     * Like {@link #getDog(String, GetDogCallback)}, dropped if token is cancelled first.
+     */
+    @Override
+    public void getDog(@NonNull final String dogId, @NonNull CancellationToken token,
+                       @NonNull final GetDogCallback callback) {
+        checkNotNull(dogId);
+        checkNotNull(token);
+        checkNotNull(callback);
+
+        Dog cachedDog = getDogWithId(dogId);
+
+        // Respond immediately with cache if available
+        if (cachedDog != null) {
+            callback.onDogLoaded(cachedDog);
+            return;
+        }
+
+        CancellationToken loadToken = mDogLoads.join(dogId, token, callback);
+        if (loadToken == null) {
+            // The same dog is already being loaded, callback is completed with its result.
+            return;
+        }
+        final GetDogCallback loadCallback = completeDogLoad(dogId);
+
+        EspressoIdlingResource.increment(); // App is busy until further notice
+        idleWhenCancelled(loadToken);
+
+        // Load from server/persisted if needed, together with the other dogs missing.
+        mDogBatches.load(dogId, loadToken, new BatchLoader.Callback<Dog>() {
+            @Override
+            public void onLoaded(@NonNull Dog dog) {
+                EspressoIdlingResource.decrement(); // Set app as idle.
+
+                loadCallback.onDogLoaded(dog);
+            }
+
+            @Override
+            public void onNotFound() {
+                EspressoIdlingResource.decrement(); // Set app as idle.
+
+                loadCallback.onDataNotAvailable();
+            }
+        });
+    }
+
+    /**
+     * Looks dogId up in the local and the remote data source at once, and returns the dog found
+     * first. For screens that would rather use the network than wait for a busy disk, or the
+     * other way round: the slower lookup is cancelled.
+     * <p>
+     * The cache is checked first, and updated with the dog found. Unlike {@link #getDog}, the
+     * lookups are neither batched nor shared with other calls.
+     *
+     * @param scheduler runs the timeout, like {@link
+     *                  com.dogbuddy.android.code.test.dogsapp.util.AppExecutors#scheduler()}
+     * @return a future that fails with {@link DogsFutures.DataNotAvailableException} if neither
+     * data source has the dog, or with a {@link java.util.concurrent.TimeoutException} if neither
+     * found it within timeout
+     */
+    @NonNull
+    public ListenableFuture<Dog> getDogRacing(@NonNull String dogId, long timeout,
+                                              @NonNull TimeUnit unit,
+                                              @NonNull ScheduledExecutorService scheduler) {
+        checkNotNull(dogId);
+        checkNotNull(unit);
+        checkNotNull(scheduler);
+
+        Dog cachedDog = getDogWithId(dogId);
+        if (cachedDog != null) {
+            return Futures.immediateFuture(cachedDog);
+        }
+
+        EspressoIdlingResource.increment(); // App is busy until further notice
+
+        List<ListenableFuture<Dog>> lookups = new ArrayList<>(2);
+        lookups.add(DogsFutures.getDog(mDogsLocalDataSource, dogId));
+        lookups.add(DogsFutures.getDog(mDogsRemoteDataSource, dogId));
+        ListenableFuture<Dog> dog = Futures.withTimeout(DogsFutures.firstSuccessful(lookups),
+                timeout, unit, scheduler);
+        Futures.addCallback(dog, new FutureCallback<Dog>() {
+            @Override
+            public void onSuccess(Dog dog) {
+                EspressoIdlingResource.decrement(); // Set app as idle.
+                if (dog != null) {
+                    // Do in memory cache update to keep the app UI up to date
+                    mDogCache.put(dog.getId(), dog);
+                }
+            }
+
+            @Override
+            public void onFailure(@NonNull Throwable t) {
+                EspressoIdlingResource.decrement(); // Set app as idle.
+            }
+        }, MoreExecutors.directExecutor());
+        return dog;
+    }
+
+    /**
+     * Gets each dog like {@link #getDog}, so the ones missing from the cache are loaded in
+     * batches.
+     * <p>
+     * Note: {@link LoadDogsCallback#onDataNotAvailable()} is fired if none of the dogs is found.
+     */
+    @Override
+    public void getDogsByIds(@NonNull Collection<String> dogIds,
+                             @NonNull LoadDogsCallback callback) {
+        getDogsByIds(dogIds, CancellationToken.NONE, callback);
+    }
+
+    /**
+     * Like {@link #getDogsByIds(Collection, LoadDogsCallback)}, dropped if token is cancelled
+     * first.
+     */
+    @Override
+    public void getDogsByIds(@NonNull Collection<String> dogIds, @NonNull CancellationToken token,
+                             @NonNull final LoadDogsCallback callback) {
+        final Set<String> ids = new LinkedHashSet<>(checkNotNull(dogIds));
+        checkNotNull(token);
+        checkNotNull(callback);
+        if (ids.isEmpty()) {
+            callback.onDataNotAvailable();
+            return;
+        }
+        final List<Dog> dogs = new ArrayList<>(ids.size());
+        GetDogCallback collect = new GetDogCallback() {
+
+            private int mRemaining = ids.size();
+
+            @Override
+            public void onDogLoaded(Dog dog) {
+                dogs.add(dog);
+                onDone();
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                onDone();
+            }
+
+            private void onDone() {
+                if (--mRemaining > 0) {
+                    return;
+                }
+                if (dogs.isEmpty()) {
+                    callback.onDataNotAvailable();
+                } else {
+                    callback.onDogsLoaded(dogs);
+                }
+            }
+        };
+        for (String dogId : ids) {
+            getDog(dogId, token, collect);
+        }
+    }
+
+    /**
+     * Looks dogIds up with one query of the local data source, then the ones it doesn't have with
+     * one request to the remote data source.
+     */
+    private void loadDogsBatch(@NonNull final List<String> dogIds,
+                               @NonNull final CancellationToken token,
+                               @NonNull final BatchLoader.BatchCallback<Dog> callback) {
+        final Map<String, Dog> found = new HashMap<>();
+        CancellableLoads.getDogsByIds(mDogsLocalDataSource, dogIds, token, new LoadDogsCallback() {
+            @Override
+            public void onDogsLoaded(List<Dog> dogs) {
+                addDogs(dogs);
+                List<String> missing = new ArrayList<>(dogIds.size() - found.size());
+                for (String dogId : dogIds) {
+                    if (!found.containsKey(dogId)) {
+                        missing.add(dogId);
+                    }
+                }
+                if (missing.isEmpty()) {
+                    callback.onBatchLoaded(found);
+                } else {
+                    getDogsBatchFromRemoteDataSource(missing);
+                }
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                getDogsBatchFromRemoteDataSource(dogIds);
+            }
+
+            private void getDogsBatchFromRemoteDataSource(@NonNull List<String> missing) {
+                CancellableLoads.getDogsByIds(mDogsRemoteDataSource, missing, token,
+                        new LoadDogsCallback() {
+                            @Override
+                            public void onDogsLoaded(List<Dog> dogs) {
+                                addDogs(dogs);
+                                callback.onBatchLoaded(found);
+                            }
+
+                            @Override
+                            public void onDataNotAvailable() {
+                                callback.onBatchLoaded(found);
+                            }
+                        });
+            }
+
+            private void addDogs(@NonNull List<Dog> dogs) {
+                for (Dog dog : dogs) {
+                    if (dog != null) {
+                        // Do in memory cache update to keep the app UI up to date
+                        mDogCache.put(dog.getId(), dog);
+                        found.put(dog.getId(), dog);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts publishing the changes made to the dogs through the repository to listener. Together
+     * with {@link #getDogsVersion()}, lets screens patch what they show instead of reloading it.
+     */
+    public void addDogsChangeListener(@NonNull DogsChangeListener listener) {
+        mDogsChangeListeners.add(checkNotNull(listener));
+    }
+
+    public void removeDogsChangeListener(@NonNull DogsChangeListener listener) {
+        mDogsChangeListeners.remove(checkNotNull(listener));
+    }
+
+    /**
+     * Returns the version of the last {@link DogsChange} published, 0 if there was none.
+     */
+    public long getDogsVersion() {
+        synchronized (mDogsChangeListeners) {
+            return mDogsVersion;
+        }
+    }
+
+    /**
+     * Returns the hit, miss and eviction counts of the cache of dogs looked up by id.
+     */
+    @NonNull
+    public CacheStats getDogCacheStats() {
+        return mDogCache.stats();
+    }
+
+    /**
+     * Returns the hit, miss and eviction counts of the cache of all the dogs served by getDogs.
+     */
+    @NonNull
+    public CacheStats getDogsCacheStats() {
+        return mCachedDogs.stats();
+    }
+
+    /**
+     * Returns how many getDogs, getBreeds and getDog calls started a load from the data sources.
+     */
+    public long getStartedLoadCount() {
+        return mDogsLoads.getStartedCount() + mBreedsLoads.getStartedCount()
+                + mDogLoads.getStartedCount();
+    }
+
+    /**
+     * Returns how many getDogs, getBreeds and getDog calls were attached to a load already in
+     * flight instead of starting their own.
+     */
+    public long getCoalescedLoadCount() {
+        return mDogsLoads.getCoalescedCount() + mBreedsLoads.getCoalescedCount()
+                + mDogLoads.getCoalescedCount();
+    }
+
+    /**
+     * Returns how many loads were cancelled because every caller waiting for them cancelled.
+     */
+    public long getAbandonedLoadCount() {
+        return mDogsLoads.getAbandonedCount() + mBreedsLoads.getAbandonedCount()
+                + mDogLoads.getAbandonedCount() + mPageLoads.getAbandonedCount();
+    }
+
+    /**
+     * Forces the next load to go to the remote data source. Changes to the local data source
+     * don't need this, they are picked up through {@link DogsLocalDataSource.TablesObserver}.
+     */
+    @Override
+    public void refreshDogs() {
+        mCacheIsDirty = true;
+    }
+
+    @Override
+    public void deleteAllDogs() {
+        mDogsRemoteDataSource.deleteAllDogs();
         mDogsLocalDataSource.deleteAllDogs();
-        for (Dog dog : dogs) {
-            mDogsLocalDataSource.saveDog(dog);
+
+        mCachedDogs.clear();
+        mDogCache.invalidateAll();
+
+        synchronized (mDogsChangeListeners) {
+            publishDogsChange(DogsChange.allRemoved(++mDogsVersion));
         }
     }
 
-    private void refreshBreedsLocalDataSource(List<Breed> breeds) {
+    @Override
+    public void deleteAllBreeds() {
+        mDogsRemoteDataSource.deleteAllBreeds();
         mDogsLocalDataSource.deleteAllBreeds();
-        for (Breed breed : breeds) {
-            mDogsLocalDataSource.saveBreed(breed);
+
+        mCachedBreeds.clear();
+    }
+
+    @Override
+    public void deleteDog(@NonNull String dogId) {
+        mDogsRemoteDataSource.deleteDog(checkNotNull(dogId));
+        mDogsLocalDataSource.deleteDog(checkNotNull(dogId));
+
+        mCachedDogs.remove(dogId);
+        mDogCache.invalidate(dogId);
+
+        synchronized (mDogsChangeListeners) {
+            publishDogsChange(
+                    DogsChange.removed(++mDogsVersion, Collections.singletonList(dogId)));
         }
     }
 
+    private void getDogsFromRemoteDataSource(@NonNull final CancellationToken token,
+                                             @NonNull final LoadDogsCallback callback) {
+        if (mDogsSyncDataSource != null) {
+            syncWithRemoteDataSource(token, new SyncCallback() {
+                @Override
+                public void onSynced(boolean changed) {
+                    mCacheIsDirty = false;
+                    List<Dog> cachedDogs = mCachedDogs.getAll();
+                    if (!changed && cachedDogs != null && !mDogsCacheIsStale) {
+                        // Neither the server nor the table changed, the cache is up to date.
+                        EspressoIdlingResource.decrement(); // Set app as idle.
+                        callback.onDogsLoaded(cachedDogs);
+                        return;
+                    }
+                    getDogsFromLocalDataSourceAfterRemote(token, callback);
+                }
+
+                @Override
+                public void onSyncFailed() {
+                    EspressoIdlingResource.decrement(); // Set app as idle.
+                    callback.onDataNotAvailable();
+                }
+            });
+            return;
+        }
+        CancellableLoads.getDogs(mDogsRemoteDataSource, token, new ConditionalLoadDogsCallback() {
+            @Override
+            public void onDogsLoaded(List<Dog> dogs) {
+                mCacheIsDirty = false;
+                List<Dog> cachedDogs = refreshDogsCache(dogs);
+                refreshDogsLocalDataSource(dogs);
+
+                EspressoIdlingResource.decrement(); // Set app as idle.
+                callback.onDogsLoaded(cachedDogs);
+            }
+
+            @Override
+            public void onNotModified() {
+                // The local data source already has the dogs, nothing to write.
+                mCacheIsDirty = false;
+                getDogsFromLocalDataSourceAfterRemote(token, callback);
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+
+                EspressoIdlingResource.decrement(); // Set app as idle.
+                callback.onDataNotAvailable();
+            }
+        });
+    }
+
+    /**
+     * Loads the dogs from the local data source once it's known to be up to date with the remote
+     * one, and ends the load started by getDogs.
+     */
+    private void getDogsFromLocalDataSourceAfterRemote(@NonNull CancellationToken token,
+                                                       @NonNull final LoadDogsCallback callback) {
+        CancellableLoads.getDogs(mDogsLocalDataSource, token, new LoadDogsCallback() {
+            @Override
+            public void onDogsLoaded(List<Dog> dogs) {
+                List<Dog> cachedDogs = refreshDogsCache(dogs);
+
+                EspressoIdlingResource.decrement(); // Set app as idle.
+                callback.onDogsLoaded(cachedDogs);
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                refreshDogsCache(Collections.<Dog>emptyList());
+
+                EspressoIdlingResource.decrement(); // Set app as idle.
+                callback.onDataNotAvailable();
+            }
+        });
+    }
+
+    private void getDogsPageFromRemoteDataSource(@Nullable String afterDogId, final int pageSize,
+                                                 @NonNull final List<Dog> localPage,
+                                                 @NonNull CancellationToken token,
+                                                 @NonNull final LoadDogsCallback callback) {
+        CancellableLoads.getDogsPage(mDogsRemoteDataSource, afterDogId, pageSize, token,
+                new LoadDogsCallback() {
+                    @Override
+                    public void onDogsLoaded(List<Dog> dogs) {
+                        if (mDogsSyncDataSource == null) {
+                            // Without a sync, the page is how remote dogs get persisted.
+                            mDogsLocalDataSource.saveDogs(dogs);
+                        }
+
+                        EspressoIdlingResource.decrement(); // Set app as idle.
+                        callback.onDogsLoaded(mergePages(localPage, dogs, pageSize));
+                    }
+
+                    @Override
+                    public void onDataNotAvailable() {
+                        EspressoIdlingResource.decrement(); // Set app as idle.
+                        if (localPage.isEmpty()) {
+                            callback.onDataNotAvailable();
+                        } else {
+                            callback.onDogsLoaded(localPage);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Merges a local and a remote page that start at the same key. Remote dogs win over local dogs
+     * with the same id, and the result keeps the id order and the page size.
+     */
+    static List<Dog> mergePages(List<Dog> localPage, List<Dog> remotePage, int pageSize) {
+        TreeMap<String, Dog> merged = new TreeMap<>();
+        for (Dog dog : localPage) {
+            merged.put(dog.getId(), dog);
+        }
+        for (Dog dog : remotePage) {
+            merged.put(dog.getId(), dog);
+        }
+        List<Dog> page = new ArrayList<>(Math.min(merged.size(), pageSize));
+        for (Dog dog : merged.values()) {
+            if (page.size() == pageSize) {
+                break;
+            }
+            page.add(dog);
+        }
+        return page;
+    }
+
+    private void getBreedsFromRemoteDataSource(@NonNull final CancellationToken token,
+                                               @NonNull final LoadBreedsCallback callback) {
+        if (mDogsSyncDataSource != null) {
+            syncWithRemoteDataSource(token, new SyncCallback() {
+                @Override
+                public void onSynced(boolean changed) {
+                    // Breeds are only fetched when the local data source has none, read them.
+                    getBreedsFromLocalDataSourceAfterRemote(token, callback);
+                }
+
+                @Override
+                public void onSyncFailed() {
+                    EspressoIdlingResource.decrement(); // Set app as idle.
+                    callback.onDataNotAvailable();
+                }
+            });
+            return;
+        }
+        CancellableLoads.getBreeds(mDogsRemoteDataSource, token,
+                new ConditionalLoadBreedsCallback() {
+                    @Override
+                    public void onBreedsLoaded(List<Breed> breeds) {
+                        refreshBreedsCache(breeds);
+                        refreshBreedsLocalDataSource(breeds);
+
+                        EspressoIdlingResource.decrement(); // Set app as idle.
+                        callback.onBreedsLoaded(mCachedBreeds.getAll());
+                    }
+
+                    @Override
+                    public void onNotModified() {
+                        // The local data source already has the breeds, nothing to write.
+                        getBreedsFromLocalDataSourceAfterRemote(token, callback);
+                    }
+
+                    @Override
+                    public void onDataNotAvailable() {
+
+                        EspressoIdlingResource.decrement(); // Set app as idle.
+                        callback.onDataNotAvailable();
+                    }
+                });
+    }
+
+    /**
+     * Loads the breeds from the local data source once it's known to be up to date with the
+     * remote one, and ends the load started by getBreeds.
+     */
+    private void getBreedsFromLocalDataSourceAfterRemote(
+            @NonNull CancellationToken token, @NonNull final LoadBreedsCallback callback) {
+        CancellableLoads.getBreeds(mDogsLocalDataSource, token, new LoadBreedsCallback() {
+            @Override
+            public void onBreedsLoaded(List<Breed> breeds) {
+                refreshBreedsCache(breeds);
+
+                EspressoIdlingResource.decrement(); // Set app as idle.
+                callback.onBreedsLoaded(mCachedBreeds.getAll());
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                EspressoIdlingResource.decrement(); // Set app as idle.
+                callback.onDataNotAvailable();
+            }
+        });
+    }
+
+    /**
+     * Brings the local data source up to date with the changes made on the server since the last
+     * sync. Each delta is applied in one transaction along with its cursor, so the cost of a sync
+     * grows with the number of changes, not with the number of dogs.
+     * <p>
+     * A cancelled sync stops between steps, without calling back. The delta already applied stays
+     * applied, the next sync goes on from its cursor.
+     */
+    private void syncWithRemoteDataSource(@NonNull final CancellationToken token,
+                                          @NonNull SyncCallback callback) {
+        checkNotNull(mDogsSyncDataSource);
+        final SyncCallback syncCallback = checkNotNull(callback);
+        mDogsLocalDataSource.getSyncCursor(new DogsLocalDataSource.GetSyncCursorCallback() {
+            @Override
+            public void onSyncCursorLoaded(@Nullable String cursor) {
+                if (token.isCancelled()) {
+                    return;
+                }
+                loadChangesSince(cursor, false, token, syncCallback);
+            }
+        });
+    }
+
+    /**
+     * @param changed whether the pages before this one applied changes.
+     */
+    private void loadChangesSince(@Nullable final String cursor, final boolean changed,
+                                  @NonNull final CancellationToken token,
+                                  @NonNull final SyncCallback callback) {
+        mDogsSyncDataSource.getChangesSince(cursor, new DogsSyncDataSource.LoadChangesCallback() {
+            @Override
+            public void onChangesLoaded(@NonNull final DogsDelta delta) {
+                if (token.isCancelled()) {
+                    return;
+                }
+                if (delta.size() == 0 && !delta.isReset() && delta.getCursor().equals(cursor)) {
+                    // Nothing changed since the last sync, don't even rewrite the cursor.
+                    callback.onSynced(changed);
+                    return;
+                }
+                mDogsLocalDataSource.applyDelta(delta,
+                        new DogsLocalDataSource.ApplyDeltaCallback() {
+                            @Override
+                            public void onDeltaApplied() {
+                                if (token.isCancelled()) {
+                                    return;
+                                }
+                                if (delta.hasMore()) {
+                                    loadChangesSince(delta.getCursor(), true, token,
+                                            callback);
+                                } else {
+                                    callback.onSynced(true);
+                                }
+                            }
+                        });
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                if (!token.isCancelled()) {
+                    callback.onSyncFailed();
+                }
+            }
+        });
+    }
+
+    /**
+     * Refreshes the dogs from the remote data source, sharing the load with any forced getDogs
+     * call in flight, and tells callback whether they changed from staleDogs.
+     */
+    private void revalidateDogs(@Nullable final List<Dog> staleDogs,
+                                @NonNull CancellationToken token,
+                                @NonNull final RevalidateDogsCallback callback) {
+        LoadDogsCallback revalidation = new LoadDogsCallback() {
+            @Override
+            public void onDogsLoaded(List<Dog> dogs) {
+                if (staleDogs != null && sameDogs(staleDogs, dogs)) {
+                    callback.onDogsUnchanged();
+                } else {
+                    callback.onDogsLoaded(dogs, false);
+                }
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                callback.onDataNotAvailable();
+            }
+        };
+        CancellationToken loadToken = mDogsLoads.join(LOAD_KEY_REMOTE_DOGS, token, revalidation);
+        if (loadToken == null) {
+            return;
+        }
+
+        EspressoIdlingResource.increment(); // App is busy until further notice
+        idleWhenCancelled(loadToken);
+
+        getDogsFromRemoteDataSource(loadToken, completeDogsLoad(LOAD_KEY_REMOTE_DOGS));
+    }
+
+    /**
+     * Sets the app as idle if token is cancelled, since the load busy with it is then dropped
+     * without reaching its own decrement.
+     *
+     * @return the listener, to remove once the load is done if token may be cancelled later.
+     */
+    private static Runnable idleWhenCancelled(@NonNull CancellationToken token) {
+        Runnable idle = new Runnable() {
+            @Override
+            public void run() {
+                EspressoIdlingResource.decrement(); // Set app as idle.
+            }
+        };
+        token.addListener(idle);
+        return idle;
+    }
+
+    /**
+     * Dogs are compared regardless of order, data sources don't agree on it.
+     */
+    private static boolean sameDogs(@NonNull List<Dog> dogs, @NonNull List<Dog> otherDogs) {
+        return dogs.size() == otherDogs.size()
+                && new HashSet<>(dogs).equals(new HashSet<>(otherDogs));
+    }
+
+    /**
+     * Returns a callback that completes every caller waiting for the dogs load of key.
+     */
+    private LoadDogsCallback completeDogsLoad(final String key) {
+        return new LoadDogsCallback() {
+            @Override
+            public void onDogsLoaded(List<Dog> dogs) {
+                for (LoadDogsCallback callback : mDogsLoads.complete(key)) {
+                    callback.onDogsLoaded(dogs);
+                }
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                for (LoadDogsCallback callback : mDogsLoads.complete(key)) {
+                    callback.onDataNotAvailable();
+                }
+            }
+        };
+    }
+
+    private LoadBreedsCallback completeBreedsLoad(final String key) {
+        return new LoadBreedsCallback() {
+            @Override
+            public void onBreedsLoaded(List<Breed> breeds) {
+                for (LoadBreedsCallback callback : mBreedsLoads.complete(key)) {
+                    callback.onBreedsLoaded(breeds);
+                }
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                for (LoadBreedsCallback callback : mBreedsLoads.complete(key)) {
+                    callback.onDataNotAvailable();
+                }
+            }
+        };
+    }
+
+    private LoadDogsCallback completePageLoad(final String key) {
+        return new LoadDogsCallback() {
+            @Override
+            public void onDogsLoaded(List<Dog> dogs) {
+                for (LoadDogsCallback callback : mPageLoads.complete(key)) {
+                    callback.onDogsLoaded(dogs);
+                }
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                for (LoadDogsCallback callback : mPageLoads.complete(key)) {
+                    callback.onDataNotAvailable();
+                }
+            }
+        };
+    }
+
+    private GetDogCallback completeDogLoad(final String dogId) {
+        return new GetDogCallback() {
+            @Override
+            public void onDogLoaded(Dog dog) {
+                for (GetDogCallback callback : mDogLoads.complete(dogId)) {
+                    callback.onDogLoaded(dog);
+                }
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                for (GetDogCallback callback : mDogLoads.complete(dogId)) {
+                    callback.onDataNotAvailable();
+                }
+            }
+        };
+    }
+
+    private boolean isKnownDog(@NonNull String dogId) {
+        return mCachedDogs.containsKey(dogId) || mDogCache.get(dogId) != null;
+    }
+
+    private void publishSavedDogs(List<Dog> inserted, List<Dog> updated) {
+        synchronized (mDogsChangeListeners) {
+            publishDogsChange(DogsChange.saved(++mDogsVersion, inserted, updated));
+        }
+    }
+
+    private void publishDogsChange(DogsChange change) {
+        for (DogsChangeListener listener : mDogsChangeListeners) {
+            listener.onDogsChanged(change);
+        }
+    }
+
+    /**
+     * Returns an immutable list of the dogs, to deliver even if there were too many to cache.
+     */
+    private List<Dog> refreshDogsCache(List<Dog> dogs) {
+        List<Dog> cachedDogs = mCachedDogs.replaceAll(dogs);
+        // Dogs looked up by id may be older than the new list, they are found there again.
+        mDogCache.invalidateAll();
+        return cachedDogs;
+    }
+
+    private void refreshBreedsCache(List<Breed> breeds) {
+        mCachedBreeds.replaceAll(breeds);
+    }
+
+    private void refreshDogsLocalDataSource(List<Dog> dogs) {
+        mDogsLocalDataSource.replaceDogs(dogs);
+    }
+
+    private void refreshBreedsLocalDataSource(List<Breed> breeds) {
+        mDogsLocalDataSource.replaceBreeds(breeds);
+    }
+
+    /**
+     * Looks the dog up in the dog cache, then in the list of all dogs if it was loaded. Dogs
+     * found in the list are put in the dog cache so they stay hot after the list is reloaded.
+     */
     @Nullable
     private Dog getDogWithId(@NonNull String id) {
         checkNotNull(id);
-        if (mCachedDogs == null || mCachedDogs.isEmpty()) {
-            return null;
-        } else {
-            return mCachedDogs.get(id);
+        Dog dog = mDogCache.get(id);
+        if (dog == null && !mDogsCacheIsStale) {
+            dog = mCachedDogs.get(id);
+            if (dog != null) {
+                mDogCache.put(id, dog);
+            }
         }
+        return dog;
     }
 }
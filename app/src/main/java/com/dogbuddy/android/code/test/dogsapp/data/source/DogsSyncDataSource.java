@@ -0,0 +1,37 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * A data source that can receive many writes in one request, and tell what changed since a
+ * previous sync.
+ */
+public interface DogsSyncDataSource extends DogsDataSource {
+
+    interface ApplyBatchCallback {
+
+        void onBatchApplied();
+
+        void onBatchFailed();
+    }
+
+    interface LoadChangesCallback {
+
+        void onChangesLoaded(@NonNull DogsDelta delta);
+
+        void onDataNotAvailable();
+    }
+
+    /**
+     * Applies all the writes of batch, or none of them. The callback may be called on any thread.
+     */
+    void applyBatch(@NonNull DogsBatch batch, @NonNull ApplyBatchCallback callback);
+
+    /**
+     * Loads the changes made after cursor, oldest first. Pass null to get everything, as a reset
+     * {@link DogsDelta}. A delta may hold only part of the changes, in which case
+     * {@link DogsDelta#hasMore()} is true and the rest is loaded with its cursor.
+     */
+    void getChangesSince(@Nullable String cursor, @NonNull LoadChangesCallback callback);
+}
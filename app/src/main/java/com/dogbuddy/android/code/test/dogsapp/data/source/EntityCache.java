@@ -0,0 +1,35 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * In memory cache of entities by id, used by {@link DogsRepository} to serve single entity
+ * lookups without going to the data sources.
+ * <p>
+ * Implementations decide how many entries are kept and for how long, so lookups may miss even
+ * for entities that were put before.
+ *
+ * @param <V> the type of the cached entities.
+ */
+public interface EntityCache<V> {
+
+    @Nullable
+    V get(@NonNull String id);
+
+    void put(@NonNull String id, @NonNull V value);
+
+    void invalidate(@NonNull String id);
+
+    void invalidateAll();
+
+    long size();
+
+    /**
+     * Returns a snapshot of the hit, miss and eviction counts of this cache.
+     */
+    @NonNull
+    CacheStats stats();
+}
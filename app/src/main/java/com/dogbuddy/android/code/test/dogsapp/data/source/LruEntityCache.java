@@ -0,0 +1,142 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * {@link EntityCache} bounded by entry count or by weight, evicting the least recently used
+ * entries first. Entries also expire a fixed time after they were written, so a long session
+ * doesn't keep serving dogs that were loaded hours ago.
+ * <p>
+ * Backed by a Guava {@link Cache}, so it's safe to use from any thread.
+ *
+ * @param <V> the type of the cached entities.
+ */
+public final class LruEntityCache<V> implements EntityCache<V> {
+
+    private final Cache<String, V> mCache;
+
+    private LruEntityCache(@NonNull Cache<String, V> cache) {
+        mCache = cache;
+    }
+
+    @Nullable
+    @Override
+    public V get(@NonNull String id) {
+        return mCache.getIfPresent(checkNotNull(id));
+    }
+
+    @Override
+    public void put(@NonNull String id, @NonNull V value) {
+        mCache.put(checkNotNull(id), checkNotNull(value));
+    }
+
+    @Override
+    public void invalidate(@NonNull String id) {
+        mCache.invalidate(checkNotNull(id));
+    }
+
+    @Override
+    public void invalidateAll() {
+        mCache.invalidateAll();
+    }
+
+    @Override
+    public long size() {
+        return mCache.size();
+    }
+
+    @NonNull
+    @Override
+    public CacheStats stats() {
+        return mCache.stats();
+    }
+
+    /**
+     * Builds an {@link LruEntityCache}. Either a maximum size or a maximum weight must be set.
+     */
+    public static final class Builder<V> {
+
+        private long mMaximumSize = -1;
+
+        private long mMaximumWeight = -1;
+
+        private Weigher<String, V> mWeigher;
+
+        private long mExpireAfterWriteNanos = -1;
+
+        private Ticker mTicker = Ticker.systemTicker();
+
+        /**
+         * Keeps at most maximumSize entries.
+         */
+        public Builder<V> setMaximumSize(long maximumSize) {
+            checkArgument(maximumSize >= 0);
+            mMaximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Keeps entries up to a total weight of maximumWeight, for example an estimate of their
+         * size in bytes.
+         */
+        public Builder<V> setMaximumWeight(long maximumWeight,
+                                           @NonNull Weigher<String, V> weigher) {
+            checkArgument(maximumWeight >= 0);
+            mMaximumWeight = maximumWeight;
+            mWeigher = checkNotNull(weigher);
+            return this;
+        }
+
+        /**
+         * Expires each entry the given time after it was written.
+         */
+        public Builder<V> setExpireAfterWrite(long duration, @NonNull TimeUnit unit) {
+            checkArgument(duration >= 0);
+            mExpireAfterWriteNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Source of time for expiration, only meant to be replaced in tests.
+         */
+        public Builder<V> setTicker(@NonNull Ticker ticker) {
+            mTicker = checkNotNull(ticker);
+            return this;
+        }
+
+        public LruEntityCache<V> build() {
+            checkState(mMaximumSize >= 0 ^ mMaximumWeight >= 0,
+                    "Exactly one of maximum size or maximum weight must be set");
+
+            // A single segment keeps eviction in strict LRU order over the whole cache, instead
+            // of per segment. Contention is low, the cache is only hit from a few threads.
+            CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                    .concurrencyLevel(1)
+                    .recordStats()
+                    .ticker(mTicker);
+            if (mExpireAfterWriteNanos >= 0) {
+                builder.expireAfterWrite(mExpireAfterWriteNanos, TimeUnit.NANOSECONDS);
+            }
+            Cache<String, V> cache;
+            if (mMaximumSize >= 0) {
+                cache = builder.maximumSize(mMaximumSize).build();
+            } else {
+                cache = builder.maximumWeight(mMaximumWeight).weigher(mWeigher).build();
+            }
+            return new LruEntityCache<>(cache);
+        }
+    }
+}
@@ -0,0 +1,870 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Breed;
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.dogbuddy.android.code.test.dogsapp.data.source.local.OutboxDao;
+import com.dogbuddy.android.code.test.dogsapp.data.source.local.OutboxOp;
+import com.dogbuddy.android.code.test.dogsapp.data.source.remote.DogsJson;
+import com.dogbuddy.android.code.test.dogsapp.util.AppExecutors;
+import com.dogbuddy.android.code.test.dogsapp.util.CancellationToken;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Remote data source that doesn't send writes right away but records them in an outbox table,
+ * and replays them to the remote data source it wraps in batches.
+ * <p>
+ * Writes return as soon as they are queued to the disk executor, so the UI never waits on the
+ * network. Operations on the same entity are collapsed by the {@link OutboxDao}, so an entity
+ * edited many times while offline is sent once. A batch that fails is retried with exponential
+ * backoff; the outbox survives the process, and whatever is left is replayed on start.
+ * <p>
+ * Reads go to the remote data source, with the writes it didn't receive yet applied on top, so a
+ * refresh doesn't bring back what was deleted locally or undo local edits. The same goes for the
+ * deltas of a sync. Reads can be cancelled, which cancels them on the remote data source too if it
+ * supports it.
+ */
+public class OutboxDogsDataSource implements DogsSyncDataSource, CancellableDogsDataSource {
+
+    /**
+     * Maximum number of operations sent in one batch. Keeps the delete of the sent operations
+     * under the SQLite limit of bound variables.
+     */
+    static final int BATCH_SIZE = 100;
+
+    static final long INITIAL_BACKOFF_MILLIS = 1000;
+
+    static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static volatile OutboxDogsDataSource INSTANCE;
+
+    private final DogsSyncDataSource mRemote;
+
+    private final OutboxDao mOutboxDao;
+
+    private final Executor mDiskIO;
+
+    private final Executor mNetworkIO;
+
+    private final Executor mMainThread;
+
+    private final ScheduledExecutorService mScheduler;
+
+    // Replay state, guarded by this.
+    private boolean mReplaying = false;
+    private boolean mReplayRequested = false;
+    private int mFailedAttempts = 0;
+    private ScheduledFuture<?> mRetry;
+
+    private final Runnable mReplayRunnable = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                replayNextBatch();
+            } catch (RuntimeException e) {
+                // Like a failed batch, so an outbox that can't be read doesn't stop the replay.
+                scheduleRetry();
+            }
+        }
+    };
+
+    @VisibleForTesting
+    OutboxDogsDataSource(@NonNull DogsSyncDataSource remote, @NonNull OutboxDao outboxDao,
+                         @NonNull Executor diskIO, @NonNull Executor networkIO,
+                         @NonNull Executor mainThread,
+                         @NonNull ScheduledExecutorService scheduler) {
+        mRemote = checkNotNull(remote);
+        mOutboxDao = checkNotNull(outboxDao);
+        mDiskIO = checkNotNull(diskIO);
+        mNetworkIO = checkNotNull(networkIO);
+        mMainThread = checkNotNull(mainThread);
+        mScheduler = checkNotNull(scheduler);
+        // Send what was left by a previous run.
+        requestReplay();
+    }
+
+    /**
+     * Returns the single instance of this class, creating it if necessary.
+     *
+     * @param remote    the remote data source the writes are replayed to
+     * @param outboxDao the DAO of the outbox table
+     */
+    public static OutboxDogsDataSource getInstance(@NonNull AppExecutors appExecutors,
+                                                   @NonNull DogsSyncDataSource remote,
+                                                   @NonNull OutboxDao outboxDao) {
+        if (INSTANCE == null) {
+            synchronized (OutboxDogsDataSource.class) {
+                if (INSTANCE == null) {
+                    ScheduledExecutorService scheduler =
+                            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                                @Override
+                                public Thread newThread(@NonNull Runnable runnable) {
+                                    Thread thread = new Thread(runnable, "outbox-retry");
+                                    thread.setDaemon(true);
+                                    return thread;
+                                }
+                            });
+                    INSTANCE = new OutboxDogsDataSource(remote, outboxDao, appExecutors.diskIO(),
+                            appExecutors.networkIO(), appExecutors.mainThread(), scheduler);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    @Override
+    public void getDogs(@NonNull LoadDogsCallback callback) {
+        getDogs(CancellationToken.NONE, callback);
+    }
+
+    @Override
+    public void getDogs(@NonNull final CancellationToken token,
+                        @NonNull LoadDogsCallback callback) {
+        checkNotNull(token);
+        final LoadDogsCallback delivery =
+                CancellableLoads.dropIfCancelled(token, checkNotNull(callback));
+        final LoadDogsCallback remoteCallback = new LoadDogsCallback() {
+            @Override
+            public void onDogsLoaded(List<Dog> dogs) {
+                deliverWithPendingDogs(dogs, true, token, delivery);
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                delivery.onDataNotAvailable();
+            }
+        };
+        if (!(delivery instanceof ConditionalLoadDogsCallback)) {
+            CancellableLoads.getDogs(mRemote, token, remoteCallback);
+            return;
+        }
+        // The pending writes are already in what the caller has, so not modified stays true.
+        CancellableLoads.getDogs(mRemote, token, new ConditionalLoadDogsCallback() {
+            @Override
+            public void onNotModified() {
+                ((ConditionalLoadDogsCallback) delivery).onNotModified();
+            }
+
+            @Override
+            public void onDogsLoaded(List<Dog> dogs) {
+                remoteCallback.onDogsLoaded(dogs);
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                remoteCallback.onDataNotAvailable();
+            }
+        });
+    }
+
+    /**
+     * Dogs saved locally that belong to the page are not added to it: only the dogs the remote
+     * returned are updated or removed.
+     */
+    @Override
+    public void getDogsPage(@Nullable String afterDogId, int pageSize,
+                            @NonNull LoadDogsCallback callback) {
+        getDogsPage(afterDogId, pageSize, CancellationToken.NONE, callback);
+    }
+
+    @Override
+    public void getDogsPage(@Nullable String afterDogId, int pageSize,
+                            @NonNull final CancellationToken token,
+                            @NonNull LoadDogsCallback callback) {
+        checkNotNull(token);
+        final LoadDogsCallback delivery =
+                CancellableLoads.dropIfCancelled(token, checkNotNull(callback));
+        CancellableLoads.getDogsPage(mRemote, afterDogId, pageSize, token,
+                new LoadDogsCallback() {
+                    @Override
+                    public void onDogsLoaded(List<Dog> dogs) {
+                        deliverWithPendingDogs(dogs, false, token, delivery);
+                    }
+
+                    @Override
+                    public void onDataNotAvailable() {
+                        delivery.onDataNotAvailable();
+                    }
+                });
+    }
+
+    /**
+     * The dogs with pending saves are added, even when the remote data source doesn't have them
+     * yet or can't be reached, and the ones with pending deletes are left out.
+     */
+    @Override
+    public void getDogsByIds(@NonNull Collection<String> dogIds,
+                             @NonNull LoadDogsCallback callback) {
+        getDogsByIds(dogIds, CancellationToken.NONE, callback);
+    }
+
+    @Override
+    public void getDogsByIds(@NonNull Collection<String> dogIds,
+                             @NonNull final CancellationToken token,
+                             @NonNull LoadDogsCallback callback) {
+        final Set<String> ids = new HashSet<>(checkNotNull(dogIds));
+        checkNotNull(token);
+        final LoadDogsCallback delivery =
+                CancellableLoads.dropIfCancelled(token, checkNotNull(callback));
+        CancellableLoads.getDogsByIds(mRemote, ids, token, new LoadDogsCallback() {
+            @Override
+            public void onDogsLoaded(List<Dog> dogs) {
+                deliverWithPendingDogs(dogs, ids, token, delivery);
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                deliverWithPendingDogs(Collections.<Dog>emptyList(), ids, token, delivery);
+            }
+        });
+    }
+
+    @Override
+    public void getDog(@NonNull String dogId, @NonNull GetDogCallback callback) {
+        getDog(dogId, CancellationToken.NONE, callback);
+    }
+
+    @Override
+    public void getDog(@NonNull final String dogId, @NonNull final CancellationToken token,
+                       @NonNull GetDogCallback callback) {
+        checkNotNull(dogId);
+        checkNotNull(token);
+        final GetDogCallback delivery =
+                CancellableLoads.dropIfCancelled(token, checkNotNull(callback));
+        CancellableLoads.getDog(mRemote, dogId, token, new GetDogCallback() {
+            @Override
+            public void onDogLoaded(final Dog dog) {
+                mDiskIO.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (token.isCancelled()) {
+                            return;
+                        }
+                        List<Dog> dogs = new ArrayList<>(1);
+                        if (dog != null) {
+                            dogs.add(dog);
+                        }
+                        final Dog result = findDog(applyPendingDogs(dogs,
+                                mOutboxDao.getPendingOpsFor(OutboxOp.ENTITY_DOG), true), dogId);
+                        mMainThread.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (result == null) {
+                                    delivery.onDataNotAvailable();
+                                } else {
+                                    delivery.onDogLoaded(result);
+                                }
+                            }
+                        });
+                    }
+                });
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                delivery.onDataNotAvailable();
+            }
+        });
+    }
+
+    @Override
+    public void getBreeds(@NonNull LoadBreedsCallback callback) {
+        getBreeds(CancellationToken.NONE, callback);
+    }
+
+    @Override
+    public void getBreeds(@NonNull final CancellationToken token,
+                          @NonNull LoadBreedsCallback callback) {
+        checkNotNull(token);
+        final LoadBreedsCallback delivery =
+                CancellableLoads.dropIfCancelled(token, checkNotNull(callback));
+        final LoadBreedsCallback remoteCallback = new LoadBreedsCallback() {
+            @Override
+            public void onBreedsLoaded(final List<Breed> breeds) {
+                mDiskIO.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (token.isCancelled()) {
+                            return;
+                        }
+                        final List<Breed> result = applyPendingBreeds(breeds,
+                                mOutboxDao.getPendingOpsFor(OutboxOp.ENTITY_BREED));
+                        mMainThread.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (result.isEmpty()) {
+                                    delivery.onDataNotAvailable();
+                                } else {
+                                    delivery.onBreedsLoaded(result);
+                                }
+                            }
+                        });
+                    }
+                });
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                delivery.onDataNotAvailable();
+            }
+        };
+        if (!(delivery instanceof ConditionalLoadBreedsCallback)) {
+            CancellableLoads.getBreeds(mRemote, token, remoteCallback);
+            return;
+        }
+        CancellableLoads.getBreeds(mRemote, token, new ConditionalLoadBreedsCallback() {
+            @Override
+            public void onNotModified() {
+                ((ConditionalLoadBreedsCallback) delivery).onNotModified();
+            }
+
+            @Override
+            public void onBreedsLoaded(List<Breed> breeds) {
+                remoteCallback.onBreedsLoaded(breeds);
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                remoteCallback.onDataNotAvailable();
+            }
+        });
+    }
+
+    /**
+     * Records the writes of batch in the outbox, they are sent with the other pending writes.
+     * The callback is called once they are recorded.
+     */
+    @Override
+    public void applyBatch(@NonNull DogsBatch batch, @NonNull final ApplyBatchCallback callback) {
+        checkNotNull(callback);
+        final List<OutboxOp> ops = new ArrayList<>();
+        if (batch.isDeleteAllDogs()) {
+            ops.add(new OutboxOp(OutboxOp.TYPE_DELETE_ALL, OutboxOp.ENTITY_DOG, null, null));
+        }
+        for (Dog dog : batch.getSavedDogs()) {
+            ops.add(saveDogOp(dog));
+        }
+        for (String dogId : batch.getDeletedDogIds()) {
+            ops.add(new OutboxOp(OutboxOp.TYPE_DELETE, OutboxOp.ENTITY_DOG, dogId, null));
+        }
+        if (batch.isDeleteAllBreeds()) {
+            ops.add(new OutboxOp(OutboxOp.TYPE_DELETE_ALL, OutboxOp.ENTITY_BREED, null, null));
+        }
+        for (Breed breed : batch.getSavedBreeds()) {
+            ops.add(saveBreedOp(breed));
+        }
+        mDiskIO.execute(new Runnable() {
+            @Override
+            public void run() {
+                mOutboxDao.enqueueAll(ops);
+                requestReplay();
+                callback.onBatchApplied();
+            }
+        });
+    }
+
+    /**
+     * Entities with pending writes are left out of the delta and replaced by the pending writes,
+     * so the sync doesn't undo them before they are sent.
+     */
+    @Override
+    public void getChangesSince(@Nullable String cursor,
+                                @NonNull final LoadChangesCallback callback) {
+        checkNotNull(callback);
+        mRemote.getChangesSince(cursor, new LoadChangesCallback() {
+            @Override
+            public void onChangesLoaded(@NonNull final DogsDelta delta) {
+                mDiskIO.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        final DogsDelta result = applyPendingOps(delta,
+                                mOutboxDao.getPendingOpsFor(OutboxOp.ENTITY_DOG),
+                                mOutboxDao.getPendingOpsFor(OutboxOp.ENTITY_BREED));
+                        mMainThread.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onChangesLoaded(result);
+                            }
+                        });
+                    }
+                });
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                callback.onDataNotAvailable();
+            }
+        });
+    }
+
+    @Override
+    public void saveDog(@NonNull Dog dog) {
+        enqueue(saveDogOp(checkNotNull(dog)));
+    }
+
+    @Override
+    public void saveDogs(@NonNull List<Dog> dogs) {
+        List<OutboxOp> ops = new ArrayList<>(dogs.size());
+        for (Dog dog : dogs) {
+            ops.add(saveDogOp(dog));
+        }
+        enqueueAll(ops);
+    }
+
+    @Override
+    public void saveBreed(@NonNull Breed breed) {
+        enqueue(saveBreedOp(checkNotNull(breed)));
+    }
+
+    @Override
+    public void saveBreeds(@NonNull List<Breed> breeds) {
+        List<OutboxOp> ops = new ArrayList<>(breeds.size());
+        for (Breed breed : breeds) {
+            ops.add(saveBreedOp(breed));
+        }
+        enqueueAll(ops);
+    }
+
+    @Override
+    public void refreshDogs() {
+        mRemote.refreshDogs();
+    }
+
+    @Override
+    public void deleteAllDogs() {
+        enqueue(new OutboxOp(OutboxOp.TYPE_DELETE_ALL, OutboxOp.ENTITY_DOG, null, null));
+    }
+
+    @Override
+    public void deleteAllBreeds() {
+        enqueue(new OutboxOp(OutboxOp.TYPE_DELETE_ALL, OutboxOp.ENTITY_BREED, null, null));
+    }
+
+    @Override
+    public void deleteDog(@NonNull String dogId) {
+        enqueue(new OutboxOp(OutboxOp.TYPE_DELETE, OutboxOp.ENTITY_DOG, checkNotNull(dogId),
+                null));
+    }
+
+    /**
+     * Replays the outbox now instead of waiting for the backoff of a failed batch to expire.
+     * Call it when the network comes back.
+     */
+    public void replayNow() {
+        synchronized (this) {
+            if (mRetry != null) {
+                mRetry.cancel(false);
+                mRetry = null;
+            }
+        }
+        requestReplay();
+    }
+
+    private void enqueue(@NonNull final OutboxOp op) {
+        mDiskIO.execute(new Runnable() {
+            @Override
+            public void run() {
+                mOutboxDao.enqueue(op);
+                requestReplay();
+            }
+        });
+    }
+
+    private void enqueueAll(@NonNull final List<OutboxOp> ops) {
+        if (ops.isEmpty()) {
+            return;
+        }
+        mDiskIO.execute(new Runnable() {
+            @Override
+            public void run() {
+                mOutboxDao.enqueueAll(ops);
+                requestReplay();
+            }
+        });
+    }
+
+    /**
+     * Starts replaying the outbox, unless a replay is running, in which case it goes on until the
+     * outbox is empty, or a failed batch is waiting for its retry.
+     */
+    private void requestReplay() {
+        synchronized (this) {
+            if (mReplaying) {
+                mReplayRequested = true;
+                return;
+            }
+            if (mRetry != null) {
+                return;
+            }
+            mReplaying = true;
+        }
+        mDiskIO.execute(mReplayRunnable);
+    }
+
+    private void replayNextBatch() {
+        final List<OutboxOp> ops = mOutboxDao.getPendingOps(BATCH_SIZE);
+        if (ops.isEmpty()) {
+            boolean again;
+            synchronized (this) {
+                again = mReplayRequested;
+                mReplayRequested = false;
+                mReplaying = again;
+            }
+            if (again) {
+                mDiskIO.execute(mReplayRunnable);
+            }
+            return;
+        }
+        final DogsBatch batch;
+        try {
+            batch = toBatch(ops);
+        } catch (RuntimeException e) {
+            List<Long> undecodable = undecodableSeqs(ops);
+            if (undecodable.isEmpty()) {
+                throw e;
+            }
+            // They can never be sent, drop them so they don't hold back the ops queued after them.
+            mOutboxDao.deleteOps(undecodable);
+            replayNextBatch();
+            return;
+        }
+        mNetworkIO.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mRemote.applyBatch(batch, new DogsSyncDataSource.ApplyBatchCallback() {
+                        @Override
+                        public void onBatchApplied() {
+                            mDiskIO.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    try {
+                                        onBatchSent(ops);
+                                    } catch (RuntimeException e) {
+                                        scheduleRetry();
+                                    }
+                                }
+                            });
+                        }
+
+                        @Override
+                        public void onBatchFailed() {
+                            scheduleRetry();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    scheduleRetry();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the seqs of the ops {@link #toBatch} can't build a batch with, like a save whose
+     * payload isn't an entity.
+     */
+    private static List<Long> undecodableSeqs(@NonNull List<OutboxOp> ops) {
+        List<Long> seqs = new ArrayList<>();
+        for (OutboxOp op : ops) {
+            try {
+                toBatch(Collections.singletonList(op));
+            } catch (RuntimeException e) {
+                seqs.add(op.getSeq());
+            }
+        }
+        return seqs;
+    }
+
+    private void onBatchSent(@NonNull List<OutboxOp> ops) {
+        // Operations that superseded the sent ones while they were in flight have their own seq
+        // and are kept.
+        List<Long> seqs = new ArrayList<>(ops.size());
+        for (OutboxOp op : ops) {
+            seqs.add(op.getSeq());
+        }
+        mOutboxDao.deleteOps(seqs);
+        synchronized (this) {
+            mFailedAttempts = 0;
+            // The next batch is read anyway.
+            mReplayRequested = false;
+        }
+        replayNextBatch();
+    }
+
+    private void scheduleRetry() {
+        synchronized (this) {
+            mReplaying = false;
+            mReplayRequested = false;
+            long delayMillis = backoffMillis(mFailedAttempts++);
+            mRetry = mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (OutboxDogsDataSource.this) {
+                        mRetry = null;
+                    }
+                    requestReplay();
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void deliverWithPendingDogs(final List<Dog> dogs, final boolean addSaved,
+                                        final CancellationToken token,
+                                        final LoadDogsCallback callback) {
+        mDiskIO.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (token.isCancelled()) {
+                    return;
+                }
+                final List<Dog> result = applyPendingDogs(dogs,
+                        mOutboxDao.getPendingOpsFor(OutboxOp.ENTITY_DOG), addSaved);
+                mMainThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (result.isEmpty()) {
+                            callback.onDataNotAvailable();
+                        } else {
+                            callback.onDogsLoaded(result);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Like {@link #deliverWithPendingDogs(List, boolean, CancellationToken, LoadDogsCallback)},
+     * adding the saved dogs but keeping only the ones with dogIds.
+     */
+    private void deliverWithPendingDogs(final List<Dog> dogs, final Set<String> dogIds,
+                                        final CancellationToken token,
+                                        final LoadDogsCallback callback) {
+        mDiskIO.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (token.isCancelled()) {
+                    return;
+                }
+                final List<Dog> result = new ArrayList<>(dogIds.size());
+                for (Dog dog : applyPendingDogs(dogs,
+                        mOutboxDao.getPendingOpsFor(OutboxOp.ENTITY_DOG), true)) {
+                    if (dogIds.contains(dog.getId())) {
+                        result.add(dog);
+                    }
+                }
+                mMainThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (result.isEmpty()) {
+                            callback.onDataNotAvailable();
+                        } else {
+                            callback.onDogsLoaded(result);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Delay before retrying after failedAttempts batches failed in a row: doubles with each
+     * failure, up to {@link #MAX_BACKOFF_MILLIS}.
+     */
+    @VisibleForTesting
+    static long backoffMillis(int failedAttempts) {
+        int shift = Math.min(failedAttempts, 20);
+        return Math.min(INITIAL_BACKOFF_MILLIS << shift, MAX_BACKOFF_MILLIS);
+    }
+
+    /**
+     * Builds the batch of ops. There is at most one op per entity, and wiping a table is the
+     * first op of that table, see {@link OutboxDao}.
+     */
+    @VisibleForTesting
+    static DogsBatch toBatch(@NonNull List<OutboxOp> ops) {
+        boolean deleteAllDogs = false;
+        List<Dog> savedDogs = new ArrayList<>();
+        List<String> deletedDogIds = new ArrayList<>();
+        boolean deleteAllBreeds = false;
+        List<Breed> savedBreeds = new ArrayList<>();
+        for (OutboxOp op : ops) {
+            boolean dogOp = OutboxOp.ENTITY_DOG.equals(op.getEntity());
+            switch (op.getType()) {
+                case OutboxOp.TYPE_SAVE:
+                    if (dogOp) {
+                        savedDogs.add(DogsJson.dogFromJson(op.getPayload()));
+                    } else {
+                        savedBreeds.add(DogsJson.breedFromJson(op.getPayload()));
+                    }
+                    break;
+                case OutboxOp.TYPE_DELETE:
+                    deletedDogIds.add(op.getEntityId());
+                    break;
+                case OutboxOp.TYPE_DELETE_ALL:
+                    if (dogOp) {
+                        deleteAllDogs = true;
+                    } else {
+                        deleteAllBreeds = true;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown outbox op " + op);
+            }
+        }
+        return new DogsBatch(deleteAllDogs, savedDogs, deletedDogIds, deleteAllBreeds,
+                savedBreeds);
+    }
+
+    /**
+     * Applies the pending dog ops, oldest first, to dogs.
+     *
+     * @param addSaved whether saved dogs missing from dogs are added, or only replace the ones in
+     *                 dogs.
+     */
+    @VisibleForTesting
+    static List<Dog> applyPendingDogs(@NonNull List<Dog> dogs, @NonNull List<OutboxOp> pending,
+                                      boolean addSaved) {
+        if (pending.isEmpty()) {
+            return dogs;
+        }
+        Map<String, Dog> byId = new LinkedHashMap<>();
+        for (Dog dog : dogs) {
+            byId.put(dog.getId(), dog);
+        }
+        for (OutboxOp op : pending) {
+            switch (op.getType()) {
+                case OutboxOp.TYPE_SAVE:
+                    if (addSaved || byId.containsKey(op.getEntityId())) {
+                        byId.put(op.getEntityId(), DogsJson.dogFromJson(op.getPayload()));
+                    }
+                    break;
+                case OutboxOp.TYPE_DELETE:
+                    byId.remove(op.getEntityId());
+                    break;
+                case OutboxOp.TYPE_DELETE_ALL:
+                    byId.clear();
+                    break;
+            }
+        }
+        return new ArrayList<>(byId.values());
+    }
+
+    /**
+     * Replaces what delta says about the entities that have pending ops with the pending ops. A
+     * pending wipe of a table drops everything the delta says about that table.
+     */
+    @VisibleForTesting
+    static DogsDelta applyPendingOps(@NonNull DogsDelta delta, @NonNull List<OutboxOp> dogOps,
+                                     @NonNull List<OutboxOp> breedOps) {
+        if (dogOps.isEmpty() && breedOps.isEmpty()) {
+            return delta;
+        }
+        Map<String, Dog> changedDogs = new LinkedHashMap<>();
+        Map<String, Boolean> deletedDogIds = new LinkedHashMap<>();
+        if (!hasDeleteAll(dogOps)) {
+            for (Dog dog : delta.getChangedDogs()) {
+                changedDogs.put(dog.getId(), dog);
+            }
+            for (String dogId : delta.getDeletedDogIds()) {
+                deletedDogIds.put(dogId, true);
+            }
+        }
+        for (OutboxOp op : dogOps) {
+            changedDogs.remove(op.getEntityId());
+            deletedDogIds.remove(op.getEntityId());
+            if (OutboxOp.TYPE_SAVE.equals(op.getType())) {
+                changedDogs.put(op.getEntityId(), DogsJson.dogFromJson(op.getPayload()));
+            } else if (OutboxOp.TYPE_DELETE.equals(op.getType())) {
+                deletedDogIds.put(op.getEntityId(), true);
+            }
+        }
+        Map<String, Breed> changedBreeds = new LinkedHashMap<>();
+        Map<String, Boolean> deletedBreedIds = new LinkedHashMap<>();
+        if (!hasDeleteAll(breedOps)) {
+            for (Breed breed : delta.getChangedBreeds()) {
+                changedBreeds.put(breed.getId(), breed);
+            }
+            for (String breedId : delta.getDeletedBreedIds()) {
+                deletedBreedIds.put(breedId, true);
+            }
+        }
+        for (OutboxOp op : breedOps) {
+            if (OutboxOp.TYPE_SAVE.equals(op.getType())) {
+                deletedBreedIds.remove(op.getEntityId());
+                changedBreeds.put(op.getEntityId(), DogsJson.breedFromJson(op.getPayload()));
+            }
+        }
+        return new DogsDelta(delta.getCursor(), delta.isReset(), delta.hasMore(),
+                changedDogs.values(), deletedDogIds.keySet(), changedBreeds.values(),
+                deletedBreedIds.keySet());
+    }
+
+    private static boolean hasDeleteAll(@NonNull List<OutboxOp> ops) {
+        // A wipe is always the first op of its table.
+        return !ops.isEmpty() && OutboxOp.TYPE_DELETE_ALL.equals(ops.get(0).getType());
+    }
+
+    private static List<Breed> applyPendingBreeds(@NonNull List<Breed> breeds,
+                                                  @NonNull List<OutboxOp> pending) {
+        if (pending.isEmpty()) {
+            return breeds;
+        }
+        Map<String, Breed> byId = new LinkedHashMap<>();
+        for (Breed breed : breeds) {
+            byId.put(breed.getId(), breed);
+        }
+        for (OutboxOp op : pending) {
+            if (OutboxOp.TYPE_DELETE_ALL.equals(op.getType())) {
+                byId.clear();
+            } else if (OutboxOp.TYPE_SAVE.equals(op.getType())) {
+                byId.put(op.getEntityId(), DogsJson.breedFromJson(op.getPayload()));
+            }
+        }
+        return new ArrayList<>(byId.values());
+    }
+
+    @Nullable
+    private static Dog findDog(@NonNull List<Dog> dogs, @NonNull String dogId) {
+        for (Dog dog : dogs) {
+            if (dog.getId().equals(dogId)) {
+                return dog;
+            }
+        }
+        return null;
+    }
+
+    private static OutboxOp saveDogOp(@NonNull Dog dog) {
+        return new OutboxOp(OutboxOp.TYPE_SAVE, OutboxOp.ENTITY_DOG, dog.getId(),
+                DogsJson.dogToJson(dog));
+    }
+
+    private static OutboxOp saveBreedOp(@NonNull Breed breed) {
+        return new OutboxOp(OutboxOp.TYPE_SAVE, OutboxOp.ENTITY_BREED, breed.getId(),
+                DogsJson.breedToJson(breed));
+    }
+
+    @VisibleForTesting
+    static void destroyInstance() {
+        INSTANCE = null;
+    }
+}
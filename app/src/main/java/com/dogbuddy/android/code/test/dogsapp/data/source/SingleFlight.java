@@ -0,0 +1,195 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.dogbuddy.android.code.test.dogsapp.util.CancellationToken;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Deduplicates concurrent loads of the same key.
+ * <p>
+ * The first caller to {@link #join(String, Object)} a key starts the load; callers that join while
+ * it is in flight are attached to it instead of starting their own. When the load finishes, the
+ * loader calls {@link #complete(String)} and delivers the result to every attached callback.
+ * <p>
+ * Callers that join with a {@link CancellationToken} stop waiting once it's cancelled. When every
+ * caller of a load stopped waiting, the load is abandoned: it's forgotten, so the next caller
+ * starts a new one, and its own token is cancelled, so the loader stops its work. Callers' tokens
+ * are only listened to while the load is in flight, so they can outlive it.
+ *
+ * @param <C> the type of the callbacks waiting for a load.
+ */
+final class SingleFlight<C> {
+
+    private final Map<String, Load<C>> mInFlight = new HashMap<>();
+
+    private long mStartedCount = 0;
+
+    private long mCoalescedCount = 0;
+
+    private long mAbandonedCount = 0;
+
+    /**
+     * Attaches callback to the load of key.
+     *
+     * @return true if there was no load of key in flight, so the caller must start it.
+     */
+    boolean join(@NonNull String key, @NonNull C callback) {
+        return join(key, CancellationToken.NONE, callback) != null;
+    }
+
+    /**
+     * Attaches callback to the load of key until token is cancelled.
+     *
+     * @return the token to load with if there was no load of key in flight, so the caller must
+     * start it, null otherwise. It's cancelled if the load is abandoned, and is
+     * {@link CancellationToken#NONE} if the load can't be, because its first caller can't cancel.
+     */
+    @Nullable
+    CancellationToken join(@NonNull String key, @NonNull CancellationToken token,
+                           @NonNull C callback) {
+        checkNotNull(key);
+        checkNotNull(token);
+        checkNotNull(callback);
+        Load<C> load;
+        boolean started;
+        Abandon abandon;
+        synchronized (this) {
+            load = mInFlight.get(key);
+            started = load == null;
+            if (started) {
+                load = new Load<>(token == CancellationToken.NONE
+                        ? CancellationToken.NONE : new CancellationToken());
+                mInFlight.put(key, load);
+                mStartedCount++;
+            } else {
+                mCoalescedCount++;
+            }
+            abandon = new Abandon(key, load);
+            load.mWaiters.add(new Waiter<>(callback, token, abandon));
+        }
+        token.addListener(abandon);
+        return started ? load.mToken : null;
+    }
+
+    /**
+     * Ends the load of key.
+     *
+     * @return the callbacks that were waiting for it and didn't cancel, in the order they joined.
+     */
+    @NonNull
+    List<C> complete(@NonNull String key) {
+        Load<C> load;
+        synchronized (this) {
+            load = mInFlight.remove(checkNotNull(key));
+        }
+        if (load == null) {
+            return Collections.emptyList();
+        }
+        List<C> callbacks = new ArrayList<>(load.mWaiters.size());
+        for (Waiter<C> waiter : load.mWaiters) {
+            // The token may outlive the load, like the one of a ViewModel.
+            waiter.mToken.removeListener(waiter.mAbandon);
+            if (!waiter.mToken.isCancelled()) {
+                callbacks.add(waiter.mCallback);
+            }
+        }
+        return callbacks;
+    }
+
+    /**
+     * Number of loads actually started.
+     */
+    synchronized long getStartedCount() {
+        return mStartedCount;
+    }
+
+    /**
+     * Number of calls that were attached to a load already in flight instead of starting one.
+     */
+    synchronized long getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    /**
+     * Number of loads abandoned by all their callers before they completed.
+     */
+    synchronized long getAbandonedCount() {
+        return mAbandonedCount;
+    }
+
+    /**
+     * Abandons the load of key if it's still in flight and none of its callers wait for it.
+     */
+    private void abandonIfUnwanted(@NonNull String key, @NonNull Load<C> load) {
+        synchronized (this) {
+            if (mInFlight.get(key) != load) {
+                return;
+            }
+            for (Waiter<C> waiter : load.mWaiters) {
+                if (!waiter.mToken.isCancelled()) {
+                    return;
+                }
+            }
+            mInFlight.remove(key);
+            mAbandonedCount++;
+        }
+        for (Waiter<C> waiter : load.mWaiters) {
+            waiter.mToken.removeListener(waiter.mAbandon);
+        }
+        load.mToken.cancel();
+    }
+
+    private static final class Load<C> {
+
+        final CancellationToken mToken;
+
+        // Guarded by the SingleFlight.
+        final List<Waiter<C>> mWaiters = new ArrayList<>(1);
+
+        Load(CancellationToken token) {
+            mToken = token;
+        }
+    }
+
+    private static final class Waiter<C> {
+
+        final C mCallback;
+
+        final CancellationToken mToken;
+
+        // Listens to mToken until the load is done.
+        final Runnable mAbandon;
+
+        Waiter(C callback, CancellationToken token, Runnable abandon) {
+            mCallback = callback;
+            mToken = token;
+            mAbandon = abandon;
+        }
+    }
+
+    private final class Abandon implements Runnable {
+
+        private final String mKey;
+
+        private final Load<C> mLoad;
+
+        Abandon(String key, Load<C> load) {
+            mKey = key;
+            mLoad = load;
+        }
+
+        @Override
+        public void run() {
+            abandonIfUnwanted(mKey, mLoad);
+        }
+    }
+}
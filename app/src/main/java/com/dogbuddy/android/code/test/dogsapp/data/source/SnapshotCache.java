@@ -0,0 +1,289 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.AbstractCache;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * In memory cache of entities keyed by id, safe to use from any thread without locking.
+ * <p>
+ * The content is held in an immutable snapshot published through an {@link AtomicReference}.
+ * Readers get a consistent view of the snapshot that was current when they read it, without
+ * copying. Writers build a new snapshot from the current one and swap it in, retrying if another
+ * writer got there first. Writes are O(n), which is fine for a cache that is read far more often
+ * than it's written.
+ * <p>
+ * The cache can be bounded by entry count and by age. It answers for all its entities at once, so
+ * it can't drop single entries like {@link LruEntityCache}: content over the maximum size isn't
+ * kept at all, and the whole snapshot expires a fixed time after it was filled. Either way the
+ * cache is no longer filled and {@link #getAll()} returns null until it's replaced in full.
+ *
+ * @param <V> the type of the cached entities.
+ */
+final class SnapshotCache<V> {
+
+    /**
+     * Extracts the key an entity is cached under.
+     */
+    interface KeyFunction<V> {
+
+        @NonNull
+        String keyOf(@NonNull V value);
+    }
+
+    private final KeyFunction<V> mKeyFunction;
+
+    private final long mMaximumSize;
+
+    private final long mExpireAfterWriteNanos;
+
+    private final Ticker mTicker;
+
+    private final AbstractCache.SimpleStatsCounter mStats = new AbstractCache.SimpleStatsCounter();
+
+    /**
+     * The current snapshot, null if the cache was never filled and {@link #mEvicted} if it was
+     * evicted.
+     */
+    private final AtomicReference<Snapshot<V>> mSnapshot = new AtomicReference<>();
+
+    /**
+     * Stands for the content dropped by an eviction. Unlike a cache that was never filled, an
+     * evicted one isn't filled again by {@link #put} or {@link #putAll}: it would then look like
+     * it held all the entities.
+     */
+    private final Snapshot<V> mEvicted =
+            new Snapshot<>(Collections.<String, V>emptyMap(), Long.MIN_VALUE);
+
+    /**
+     * Creates an unbounded cache.
+     */
+    SnapshotCache(@NonNull KeyFunction<V> keyFunction) {
+        this(keyFunction, Long.MAX_VALUE, Long.MAX_VALUE, Ticker.systemTicker());
+    }
+
+    /**
+     * Creates a cache that keeps at most maximumSize entities, for expireAfterWriteNanos after it
+     * was filled.
+     */
+    SnapshotCache(@NonNull KeyFunction<V> keyFunction, long maximumSize,
+                  long expireAfterWriteNanos, @NonNull Ticker ticker) {
+        checkArgument(maximumSize >= 0);
+        checkArgument(expireAfterWriteNanos >= 0);
+        mKeyFunction = checkNotNull(keyFunction);
+        mMaximumSize = maximumSize;
+        mExpireAfterWriteNanos = expireAfterWriteNanos;
+        mTicker = checkNotNull(ticker);
+    }
+
+    /**
+     * Returns an immutable list with all the cached entities, in insertion order, or null if the
+     * cache isn't filled. The list is shared and never changes, so it can be handed to any
+     * thread.
+     */
+    @Nullable
+    List<V> getAll() {
+        Snapshot<V> snapshot = filled();
+        return snapshot == null ? null : snapshot.values;
+    }
+
+    @Nullable
+    V get(@NonNull String key) {
+        Snapshot<V> snapshot = filled();
+        return snapshot == null ? null : snapshot.byKey.get(key);
+    }
+
+    int size() {
+        Snapshot<V> snapshot = filled();
+        return snapshot == null ? 0 : snapshot.values.size();
+    }
+
+    boolean containsKey(@NonNull String key) {
+        Snapshot<V> snapshot = filled();
+        return snapshot != null && snapshot.byKey.containsKey(key);
+    }
+
+    void put(@NonNull V value) {
+        String key = mKeyFunction.keyOf(checkNotNull(value));
+        while (true) {
+            Snapshot<V> current = current();
+            if (current == mEvicted) {
+                return;
+            }
+            Map<String, V> next = copyOf(current);
+            next.put(key, value);
+            if (compareAndSet(current, next, writeNanosOf(current))) {
+                return;
+            }
+        }
+    }
+
+    void putAll(@NonNull Collection<V> values) {
+        checkNotNull(values);
+        while (true) {
+            Snapshot<V> current = current();
+            if (current == mEvicted) {
+                return;
+            }
+            Map<String, V> next = copyOf(current);
+            for (V value : values) {
+                next.put(mKeyFunction.keyOf(value), value);
+            }
+            if (compareAndSet(current, next, writeNanosOf(current))) {
+                return;
+            }
+        }
+    }
+
+    void remove(@NonNull String key) {
+        while (true) {
+            Snapshot<V> current = current();
+            if (current == null || !current.byKey.containsKey(key)) {
+                return;
+            }
+            Map<String, V> next = copyOf(current);
+            next.remove(key);
+            if (mSnapshot.compareAndSet(current, new Snapshot<>(next, current.writeNanos))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Replaces the whole content of the cache with values.
+     *
+     * @return an immutable list with the new content, in the order {@link #getAll()} would return
+     * it. It's returned even if the content is over the maximum size and wasn't kept.
+     */
+    @NonNull
+    List<V> replaceAll(@NonNull Collection<V> values) {
+        Map<String, V> next = new LinkedHashMap<>();
+        for (V value : values) {
+            next.put(mKeyFunction.keyOf(value), value);
+        }
+        Snapshot<V> snapshot = new Snapshot<>(next, mTicker.read());
+        if (snapshot.values.size() > mMaximumSize) {
+            mSnapshot.set(mEvicted);
+            mStats.recordEviction();
+        } else {
+            mSnapshot.set(snapshot);
+        }
+        return snapshot.values;
+    }
+
+    /**
+     * Empties the cache. An empty cache is still filled: {@link #getAll()} returns an empty list.
+     */
+    void clear() {
+        mSnapshot.set(new Snapshot<>(new LinkedHashMap<String, V>(), mTicker.read()));
+    }
+
+    /**
+     * Counts a lookup of the whole content that was served from the cache. Only the owner knows
+     * whether the content it got was usable, so it records the lookups itself.
+     */
+    void recordHit() {
+        mStats.recordHits(1);
+    }
+
+    /**
+     * Counts a lookup of the whole content that had to be loaded.
+     */
+    void recordMiss() {
+        mStats.recordMisses(1);
+    }
+
+    /**
+     * Returns a snapshot of the hit, miss and eviction counts of this cache. An eviction is the
+     * whole content dropped, for being too big or too old.
+     */
+    @NonNull
+    CacheStats stats() {
+        return mStats.snapshot();
+    }
+
+    /**
+     * Returns the current snapshot if the cache is filled, null otherwise.
+     */
+    @Nullable
+    private Snapshot<V> filled() {
+        Snapshot<V> snapshot = current();
+        return snapshot == mEvicted ? null : snapshot;
+    }
+
+    /**
+     * Returns the current snapshot, evicting it first if it expired.
+     */
+    @Nullable
+    private Snapshot<V> current() {
+        Snapshot<V> snapshot = mSnapshot.get();
+        if (snapshot == null || snapshot == mEvicted
+                || mTicker.read() - snapshot.writeNanos < mExpireAfterWriteNanos) {
+            return snapshot;
+        }
+        if (mSnapshot.compareAndSet(snapshot, mEvicted)) {
+            mStats.recordEviction();
+        }
+        return mEvicted;
+    }
+
+    private long writeNanosOf(@Nullable Snapshot<V> snapshot) {
+        return snapshot == null ? mTicker.read() : snapshot.writeNanos;
+    }
+
+    /**
+     * Swaps content in for current, unless another writer got there first. Content over the
+     * maximum size isn't kept, the cache is evicted instead.
+     */
+    private boolean compareAndSet(@Nullable Snapshot<V> current, @NonNull Map<String, V> content,
+                                  long writeNanos) {
+        if (content.size() <= mMaximumSize) {
+            return mSnapshot.compareAndSet(current, new Snapshot<>(content, writeNanos));
+        }
+        if (!mSnapshot.compareAndSet(current, mEvicted)) {
+            return false;
+        }
+        mStats.recordEviction();
+        return true;
+    }
+
+    private static <V> Map<String, V> copyOf(@Nullable Snapshot<V> snapshot) {
+        return snapshot == null
+                ? new LinkedHashMap<String, V>()
+                : new LinkedHashMap<>(snapshot.byKey);
+    }
+
+    private static final class Snapshot<V> {
+
+        final ImmutableMap<String, V> byKey;
+
+        final ImmutableList<V> values;
+
+        /**
+         * When the content was loaded, in {@link Ticker} nanos. Patches keep the time of the
+         * content they patch.
+         */
+        final long writeNanos;
+
+        Snapshot(Map<String, V> content, long writeNanos) {
+            byKey = ImmutableMap.copyOf(content);
+            values = byKey.values().asList();
+            this.writeNanos = writeNanos;
+        }
+    }
+}
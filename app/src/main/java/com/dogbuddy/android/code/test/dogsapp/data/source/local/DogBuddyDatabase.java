@@ -16,10 +16,13 @@
 
 package com.dogbuddy.android.code.test.dogsapp.data.source.local;
 
+import android.arch.persistence.db.SupportSQLiteDatabase;
 import android.arch.persistence.room.Database;
 import android.arch.persistence.room.Room;
 import android.arch.persistence.room.RoomDatabase;
+import android.arch.persistence.room.migration.Migration;
 import android.content.Context;
+import android.support.annotation.NonNull;
 
 import com.dogbuddy.android.code.test.dogsapp.data.Breed;
 import com.dogbuddy.android.code.test.dogsapp.data.Dog;
@@ -27,20 +30,121 @@ import com.dogbuddy.android.code.test.dogsapp.data.Dog;
 /**
  * The Room Database that contains the app tables.
  */
-@Database(entities = {Dog.class, Breed.class}, version = 1, exportSchema = false)
+@Database(entities = {Dog.class, Breed.class, OutboxOp.class, SyncState.class}, version = 5,
+        exportSchema = false)
 public abstract class DogBuddyDatabase extends RoomDatabase {
 
+    /**
+     * Adds the indices of the dogs table and makes the name case insensitive. SQLite can't change
+     * the collation of a column, so the table is recreated.
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `dogs_new` ("
+                    + "`entryid` TEXT NOT NULL, "
+                    + "`name` TEXT NOT NULL COLLATE NOCASE, "
+                    + "`breed` TEXT NOT NULL, "
+                    + "`gender` TEXT, "
+                    + "`birthYear` INTEGER, "
+                    + "`size` TEXT, "
+                    + "PRIMARY KEY(`entryid`))");
+            database.execSQL("INSERT INTO `dogs_new` "
+                    + "(`entryid`, `name`, `breed`, `gender`, `birthYear`, `size`) "
+                    + "SELECT `entryid`, `name`, `breed`, `gender`, `birthYear`, `size` "
+                    + "FROM `dogs`");
+            database.execSQL("DROP TABLE `dogs`");
+            database.execSQL("ALTER TABLE `dogs_new` RENAME TO `dogs`");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_dogs_name` ON `dogs` (`name`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_dogs_breed` ON `dogs` (`breed`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_dogs_gender` ON `dogs` (`gender`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_dogs_size` ON `dogs` (`size`)");
+            database.execSQL(
+                    "CREATE INDEX IF NOT EXISTS `index_dogs_birthYear` ON `dogs` (`birthYear`)");
+        }
+    };
+
+    /**
+     * Adds the full-text index of the dogs.
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            DogsFts.create(database);
+        }
+    };
+
+    /**
+     * Adds the outbox of the writes waiting to be sent to the remote data source.
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `outbox` ("
+                    + "`seq` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`type` TEXT NOT NULL, "
+                    + "`entity` TEXT NOT NULL, "
+                    + "`entity_id` TEXT, "
+                    + "`payload` TEXT)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_outbox_entity_entity_id` "
+                    + "ON `outbox` (`entity`, `entity_id`)");
+        }
+    };
+
+    /**
+     * Adds the server version of the dogs and breeds, and the sync cursor. Rows already stored
+     * get version 0, as if they never reached the server.
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL(
+                    "ALTER TABLE `dogs` ADD COLUMN `version` INTEGER NOT NULL DEFAULT 0");
+            database.execSQL(
+                    "ALTER TABLE `dogs` ADD COLUMN `updatedAt` INTEGER NOT NULL DEFAULT 0");
+            database.execSQL(
+                    "ALTER TABLE `breeds` ADD COLUMN `version` INTEGER NOT NULL DEFAULT 0");
+            database.execSQL(
+                    "ALTER TABLE `breeds` ADD COLUMN `updatedAt` INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `sync_state` ("
+                    + "`key` TEXT NOT NULL, "
+                    + "`cursor` TEXT, "
+                    + "PRIMARY KEY(`key`))");
+        }
+    };
+
+    /**
+     * Creates what Room can't declare on new databases. Existing ones get it from the migrations.
+     */
+    private static final Callback CREATE_CALLBACK = new Callback() {
+        @Override
+        public void onCreate(@NonNull SupportSQLiteDatabase db) {
+            DogsFts.create(db);
+        }
+    };
+
     private static DogBuddyDatabase INSTANCE;
 
     public abstract DogsDao dogDao();
 
+    public abstract OutboxDao outboxDao();
+
     private static final Object sLock = new Object();
 
+    /**
+     * The database is opened in write-ahead logging mode: readers don't block the writer nor each
+     * other, so the disk reads run while the single writer commits a bulk import. Room keeps the
+     * default journal below API 16, which has no write-ahead logging.
+     */
     public static DogBuddyDatabase getInstance(Context context) {
         synchronized (sLock) {
             if (INSTANCE == null) {
                 INSTANCE = Room.databaseBuilder(context.getApplicationContext(),
                         DogBuddyDatabase.class, "DogBuddy.db")
+                        .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4,
+                                MIGRATION_4_5)
+                        .addCallback(CREATE_CALLBACK)
+                        .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
                         .build();
             }
             return INSTANCE;
@@ -16,22 +16,30 @@
 
 package com.dogbuddy.android.code.test.dogsapp.data.source.local;
 
+import android.arch.lifecycle.LiveData;
+import android.arch.persistence.db.SimpleSQLiteQuery;
+import android.arch.persistence.db.SupportSQLiteQuery;
 import android.arch.persistence.room.Dao;
 import android.arch.persistence.room.Insert;
 import android.arch.persistence.room.OnConflictStrategy;
 import android.arch.persistence.room.Query;
+import android.arch.persistence.room.RawQuery;
+import android.arch.persistence.room.Transaction;
 import android.arch.persistence.room.Update;
 
 import com.dogbuddy.android.code.test.dogsapp.data.Breed;
 import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.dogbuddy.android.code.test.dogsapp.data.DogsFilter;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDelta;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
- * Data Access Object for the dogs table.
+ * Data Access Object for the dogs and breeds tables.
  */
 @Dao
-public interface DogsDao {
+public abstract class DogsDao {
 
     /**
      * Select all dogs from the dogs table.
@@ -39,7 +47,82 @@ public interface DogsDao {
      * @return all dogs.
      */
     @Query("SELECT * FROM dogs")
-    List<Dog> getDogs();
+    public abstract List<Dog> getDogs();
+
+    /**
+     * Select the first page of dogs, ordered by id.
+     *
+     * @param limit the page size.
+     * @return at most limit dogs.
+     */
+    @Query("SELECT * FROM dogs ORDER BY entryid LIMIT :limit")
+    public abstract List<Dog> getFirstDogsPage(int limit);
+
+    /**
+     * Select the page of dogs that follows afterDogId, ordered by id. This is a keyset query: it
+     * seeks the primary key index instead of skipping rows with an OFFSET, so every page costs the
+     * same regardless of how deep the user has scrolled.
+     *
+     * @param afterDogId the id of the last dog of the previous page.
+     * @param limit      the page size.
+     * @return at most limit dogs whose id is greater than afterDogId.
+     */
+    @Query("SELECT * FROM dogs WHERE entryid > :afterDogId ORDER BY entryid LIMIT :limit")
+    public abstract List<Dog> getDogsPageAfter(String afterDogId, int limit);
+
+    /**
+     * Observe all dogs from the dogs table. The returned {@link LiveData} emits a new list every
+     * time the dogs table changes.
+     *
+     * @return all dogs.
+     */
+    @Query("SELECT * FROM dogs")
+    public abstract LiveData<List<Dog>> observeDogs();
+
+    /**
+     * Select the dogs that match filter, in the order it asks for. The filter is run by SQLite on
+     * the dogs indices.
+     *
+     * @param filter the criteria and order of the dogs.
+     * @return the matching dogs.
+     */
+    public List<Dog> getDogs(DogsFilter filter) {
+        return getDogsByQuery(DogsFilterQuery.of(filter));
+    }
+
+    /**
+     * Observe the dogs that match filter. The returned {@link LiveData} emits a new list every
+     * time the dogs table changes.
+     *
+     * @param filter the criteria and order of the dogs.
+     * @return the matching dogs.
+     */
+    public LiveData<List<Dog>> observeDogs(DogsFilter filter) {
+        return observeDogsByQuery(DogsFilterQuery.of(filter));
+    }
+
+    /**
+     * Select the dogs whose name or breed have words starting with the words of text, using the
+     * dogs_fts full-text index.
+     *
+     * @param text  what the user typed.
+     * @param limit the maximum number of dogs returned.
+     * @return the matching dogs, sorted by name.
+     */
+    public List<Dog> searchDogs(String text, int limit) {
+        String match = DogsFts.toMatchQuery(text);
+        if (match == null) {
+            return Collections.emptyList();
+        }
+        return getDogsByQuery(new SimpleSQLiteQuery(DogsFts.SEARCH_QUERY,
+                new Object[]{match, limit}));
+    }
+
+    @RawQuery(observedEntities = Dog.class)
+    abstract List<Dog> getDogsByQuery(SupportSQLiteQuery query);
+
+    @RawQuery(observedEntities = Dog.class)
+    abstract LiveData<List<Dog>> observeDogsByQuery(SupportSQLiteQuery query);
 
     /**
      * Select all breeds from the breeds table.
@@ -47,7 +130,16 @@ public interface DogsDao {
      * @return all breeds.
      */
     @Query("SELECT * FROM breeds")
-    List<Breed> getBreeds();
+    public abstract List<Breed> getBreeds();
+
+    /**
+     * Observe all breeds from the breeds table. The returned {@link LiveData} emits a new list
+     * every time the breeds table changes.
+     *
+     * @return all breeds.
+     */
+    @Query("SELECT * FROM breeds")
+    public abstract LiveData<List<Breed>> observeBreeds();
 
     /**
      * Select a dog by id.
@@ -56,7 +148,25 @@ public interface DogsDao {
      * @return the dog with dogId.
      */
     @Query("SELECT * FROM dogs WHERE entryid = :dogId")
-    Dog getDogById(String dogId);
+    public abstract Dog getDogById(String dogId);
+
+    /**
+     * Select the dogs with the given ids. SQLite takes at most 999 arguments, pass fewer ids.
+     *
+     * @param dogIds the dog ids.
+     * @return the dogs found, in no particular order.
+     */
+    @Query("SELECT * FROM dogs WHERE entryid IN (:dogIds)")
+    public abstract List<Dog> getDogsByIds(List<String> dogIds);
+
+    /**
+     * Observe a dog by id.
+     *
+     * @param dogId the dog id.
+     * @return the dog with dogId, re-emitted every time the dogs table changes.
+     */
+    @Query("SELECT * FROM dogs WHERE entryid = :dogId")
+    public abstract LiveData<Dog> observeDogById(String dogId);
 
     /**
      * Insert a dog in the database. If the dog already exists, replace it.
@@ -64,7 +174,15 @@ public interface DogsDao {
      * @param dog the dog to be inserted.
      */
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void insertDog(Dog dog);
+    public abstract void insertDog(Dog dog);
+
+    /**
+     * Insert dogs in the database in a single transaction. Dogs that already exist are replaced.
+     *
+     * @param dogs the dogs to be inserted.
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    public abstract void insertDogs(List<Dog> dogs);
 
     /**
      * Insert a breed in the database. If the breed already exists, replace it.
@@ -72,7 +190,16 @@ public interface DogsDao {
      * @param breed the breed to be inserted.
      */
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void insertBreed(Breed breed);
+    public abstract void insertBreed(Breed breed);
+
+    /**
+     * Insert breeds in the database in a single transaction. Breeds that already exist are
+     * replaced.
+     *
+     * @param breeds the breeds to be inserted.
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    public abstract void insertBreeds(List<Breed> breeds);
 
     /**
      * Update a dog.
@@ -81,7 +208,7 @@ public interface DogsDao {
      * @return the number of dogs updated. This should always be 1.
      */
     @Update
-    int updateDog(Dog dog);
+    public abstract int updateDog(Dog dog);
 
     /**
      * Delete a dog by id.
@@ -89,17 +216,111 @@ public interface DogsDao {
      * @return the number of dogs deleted. This should always be 1.
      */
     @Query("DELETE FROM dogs WHERE entryid = :dogId")
-    int deleteDogById(String dogId);
+    public abstract int deleteDogById(String dogId);
+
+    /**
+     * Delete a breed by id.
+     *
+     * @return the number of breeds deleted.
+     */
+    @Query("DELETE FROM breeds WHERE entryid = :breedId")
+    public abstract int deleteBreedById(String breedId);
 
     /**
      * Delete all dogs.
      */
     @Query("DELETE FROM dogs")
-    void deleteDogs();
+    public abstract void deleteDogs();
 
     /**
      * Delete all breeds.
      */
     @Query("DELETE FROM breeds")
-    void deleteBreeds();
+    public abstract void deleteBreeds();
+
+    /**
+     * Replace all the dogs with dogs. The delete and the inserts run in one transaction, so readers
+     * see either the old or the new table, never an empty one.
+     *
+     * @param dogs the dogs that will be the content of the table.
+     */
+    @Transaction
+    public void replaceDogs(List<Dog> dogs) {
+        deleteDogs();
+        insertDogs(dogs);
+    }
+
+    /**
+     * Replace all the breeds with breeds in one transaction.
+     *
+     * @param breeds the breeds that will be the content of the table.
+     */
+    @Transaction
+    public void replaceBreeds(List<Breed> breeds) {
+        deleteBreeds();
+        insertBreeds(breeds);
+    }
+
+    /**
+     * Commit a batch of writes taken from the {@link WriteBehindQueue} in one transaction.
+     *
+     * @param batch the merged writes.
+     */
+    @Transaction
+    void applyWriteBatch(WriteBatch batch) {
+        if (batch.deleteAllDogs) {
+            deleteDogs();
+        }
+        if (!batch.dogUpserts.isEmpty()) {
+            insertDogs(batch.dogUpserts);
+        }
+        for (String dogId : batch.dogDeletes) {
+            deleteDogById(dogId);
+        }
+        if (batch.deleteAllBreeds) {
+            deleteBreeds();
+        }
+        if (!batch.breedUpserts.isEmpty()) {
+            insertBreeds(batch.breedUpserts);
+        }
+    }
+
+    /**
+     * Select the cursor the next delta sync of key starts from.
+     *
+     * @return the cursor, or null if key was never synced.
+     */
+    @Query("SELECT cursor FROM sync_state WHERE `key` = :key")
+    public abstract String getSyncCursor(String key);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    abstract void saveSyncState(SyncState syncState);
+
+    /**
+     * Apply a delta received from the server and save its cursor in one transaction, so the
+     * cursor never gets ahead of the data.
+     *
+     * @param delta   the changes
+     * @param syncKey the key the cursor is saved under
+     */
+    @Transaction
+    public void applyDelta(DogsDelta delta, String syncKey) {
+        if (delta.isReset()) {
+            deleteDogs();
+            deleteBreeds();
+        }
+        if (!delta.getChangedDogs().isEmpty()) {
+            insertDogs(delta.getChangedDogs());
+        }
+        for (String dogId : delta.getDeletedDogIds()) {
+            deleteDogById(dogId);
+        }
+        if (!delta.getChangedBreeds().isEmpty()) {
+            insertBreeds(delta.getChangedBreeds());
+        }
+        for (String breedId : delta.getDeletedBreedIds()) {
+            deleteBreedById(breedId);
+        }
+        saveSyncState(new SyncState(syncKey, delta.getCursor()));
+    }
 }
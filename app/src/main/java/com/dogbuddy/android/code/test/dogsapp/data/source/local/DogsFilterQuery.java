@@ -0,0 +1,71 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source.local;
+
+import android.arch.persistence.db.SimpleSQLiteQuery;
+import android.arch.persistence.db.SupportSQLiteQuery;
+import android.support.annotation.NonNull;
+
+import com.dogbuddy.android.code.test.dogsapp.data.DogsFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Translates a {@link DogsFilter} to SQL. Only the criteria that are set end up in the WHERE
+ * clause, so SQLite can pick the index of the most selective one instead of evaluating
+ * "column = ? OR ? IS NULL" on every row.
+ */
+final class DogsFilterQuery {
+
+    private DogsFilterQuery() {
+    }
+
+    @NonNull
+    static SupportSQLiteQuery of(@NonNull DogsFilter filter) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM dogs");
+        List<Object> args = new ArrayList<>();
+
+        List<String> conditions = new ArrayList<>();
+        if (filter.getBreed() != null) {
+            conditions.add("breed = ?");
+            args.add(filter.getBreed());
+        }
+        if (filter.getGender() != null) {
+            conditions.add("gender = ?");
+            args.add(filter.getGender());
+        }
+        if (filter.getSize() != null) {
+            conditions.add("size = ?");
+            args.add(filter.getSize());
+        }
+        if (filter.getMinBirthYear() != null) {
+            conditions.add("birthYear >= ?");
+            args.add(filter.getMinBirthYear());
+        }
+        if (filter.getMaxBirthYear() != null) {
+            conditions.add("birthYear <= ?");
+            args.add(filter.getMaxBirthYear());
+        }
+        for (int i = 0; i < conditions.size(); i++) {
+            sql.append(i == 0 ? " WHERE " : " AND ").append(conditions.get(i));
+        }
+
+        String direction = filter.isDescending() ? " DESC" : " ASC";
+        sql.append(" ORDER BY ").append(sortColumn(filter.getSortOrder())).append(direction)
+                .append(", entryid").append(direction);
+
+        return new SimpleSQLiteQuery(sql.toString(), args.toArray());
+    }
+
+    private static String sortColumn(DogsFilter.SortOrder sortOrder) {
+        switch (sortOrder) {
+            case BREED:
+                return "breed";
+            case BIRTH_YEAR:
+                return "birthYear";
+            case NAME:
+            default:
+                // The column is declared COLLATE NOCASE, so this sort uses its index.
+                return "name";
+        }
+    }
+}
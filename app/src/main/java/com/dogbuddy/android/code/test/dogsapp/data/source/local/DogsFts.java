@@ -0,0 +1,80 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source.local;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Locale;
+
+/**
+ * The dogs_fts full-text index over the name and breed of the dogs.
+ * <p>
+ * This version of Room can't declare virtual tables, so the table and the triggers that keep it
+ * in sync with the dogs table are created here, from {@link DogBuddyDatabase}. Each row has the
+ * rowid of its dog as docid. Prefixes of 2 and 3 characters are indexed too, which are the
+ * queries typed most while searching.
+ */
+final class DogsFts {
+
+    static final String TABLE = "dogs_fts";
+
+    private static final String[] CREATE_STATEMENTS = {
+            "CREATE VIRTUAL TABLE IF NOT EXISTS `dogs_fts` "
+                    + "USING fts4(`name`, `breed`, prefix=\"2,3\")",
+            // Dogs are inserted with REPLACE, which doesn't fire the delete triggers, so the row
+            // being replaced is removed from the index before the insert.
+            "CREATE TRIGGER IF NOT EXISTS `dogs_fts_before_insert` BEFORE INSERT ON `dogs` BEGIN "
+                    + "DELETE FROM `dogs_fts` WHERE docid IN "
+                    + "(SELECT rowid FROM `dogs` WHERE `entryid` = NEW.`entryid`); END",
+            "CREATE TRIGGER IF NOT EXISTS `dogs_fts_after_insert` AFTER INSERT ON `dogs` BEGIN "
+                    + "INSERT INTO `dogs_fts`(docid, `name`, `breed`) "
+                    + "VALUES (NEW.rowid, NEW.`name`, NEW.`breed`); END",
+            "CREATE TRIGGER IF NOT EXISTS `dogs_fts_after_update` AFTER UPDATE ON `dogs` BEGIN "
+                    + "DELETE FROM `dogs_fts` WHERE docid = OLD.rowid; "
+                    + "INSERT INTO `dogs_fts`(docid, `name`, `breed`) "
+                    + "VALUES (NEW.rowid, NEW.`name`, NEW.`breed`); END",
+            "CREATE TRIGGER IF NOT EXISTS `dogs_fts_after_delete` AFTER DELETE ON `dogs` BEGIN "
+                    + "DELETE FROM `dogs_fts` WHERE docid = OLD.rowid; END"
+    };
+
+    static final String SEARCH_QUERY = "SELECT `dogs`.* FROM `dogs` "
+            + "JOIN `dogs_fts` ON `dogs`.rowid = `dogs_fts`.docid "
+            + "WHERE `dogs_fts` MATCH ? ORDER BY `dogs`.`name` LIMIT ?";
+
+    private DogsFts() {
+    }
+
+    /**
+     * Creates the index and its triggers, and indexes the dogs already in the table.
+     */
+    static void create(@NonNull SupportSQLiteDatabase database) {
+        for (String statement : CREATE_STATEMENTS) {
+            database.execSQL(statement);
+        }
+        database.execSQL("DELETE FROM `dogs_fts`");
+        database.execSQL("INSERT INTO `dogs_fts`(docid, `name`, `breed`) "
+                + "SELECT rowid, `name`, `breed` FROM `dogs`");
+    }
+
+    /**
+     * Turns what the user typed into a MATCH expression where every word is a prefix, so dogs
+     * show up while their name or breed is still being typed. Characters with a meaning in the
+     * FTS query syntax are dropped.
+     *
+     * @return the expression, or null if text has no words.
+     */
+    @Nullable
+    static String toMatchQuery(@NonNull String text) {
+        StringBuilder match = new StringBuilder();
+        for (String word : text.toLowerCase(Locale.US).split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append(word).append('*');
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+}
@@ -3,21 +3,80 @@ package com.dogbuddy.android.code.test.dogsapp.data.source.local;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import android.arch.lifecycle.LiveData;
+import android.arch.persistence.room.InvalidationTracker;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
 
 import com.dogbuddy.android.code.test.dogsapp.data.Breed;
 import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.dogbuddy.android.code.test.dogsapp.data.DogsFilter;
+import com.dogbuddy.android.code.test.dogsapp.data.source.CancellableDogsDataSource;
 import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDataSource;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDelta;
 import com.dogbuddy.android.code.test.dogsapp.util.AppExecutors;
+import com.dogbuddy.android.code.test.dogsapp.util.CancellationToken;
+import com.dogbuddy.android.code.test.dogsapp.util.PriorityDiskExecutor.Priority;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
  * Concrete implementation of a data source as a db.
+ * <p>
+ * Every operation is run on a disk executor with a {@link Priority}: the reads of what the user
+ * is looking at first, then the next pages, then the writes and the sync. Reads that take a
+ * {@link CancellationToken} are dropped if it's cancelled before they run.
+ * <p>
+ * Writes are serialized on the single thread of {@link AppExecutors#diskIO()}. The database is in
+ * write-ahead logging mode, so reads run on the read pool of {@link AppExecutors}, concurrently
+ * with each other and with a write transaction, see {@link #executeRead}.
  */
-public class DogsLocalDataSource implements DogsDataSource {
+public class DogsLocalDataSource implements CancellableDogsDataSource {
+
+    /**
+     * Notified when the dogs or breeds tables change, whoever wrote to them. Called on a
+     * background thread.
+     */
+    public interface TablesObserver {
+
+        void onDogsTableChanged();
+
+        void onBreedsTableChanged();
+    }
+
+    public interface GetSyncCursorCallback {
+
+        void onSyncCursorLoaded(@Nullable String cursor);
+    }
+
+    public interface ApplyDeltaCallback {
+
+        void onDeltaApplied();
+    }
+
+    /**
+     * Key the cursor of the delta sync of the dogs and breeds is saved under.
+     */
+    static final String SYNC_KEY = "dogs";
+
+    static final String DOGS_TABLE = "dogs";
+
+    static final String BREEDS_TABLE = "breeds";
+
+    /**
+     * Number of ids looked up by one query of {@link #getDogsByIds}, under the 999 arguments
+     * SQLite takes.
+     */
+    static final int MAX_IDS_PER_QUERY = 500;
 
     private static volatile DogsLocalDataSource INSTANCE;
 
@@ -25,31 +84,116 @@ public class DogsLocalDataSource implements DogsDataSource {
 
     private AppExecutors mAppExecutors;
 
+    @Nullable
+    private final InvalidationTracker mInvalidationTracker;
+
+    private final Map<TablesObserver, InvalidationTracker.Observer> mTablesObservers =
+            new HashMap<>();
+
+    private final AtomicLong mLatestSearch = new AtomicLong();
+
+    private final WriteBehindQueue mWrites;
+
     // Prevent direct instantiation.
     private DogsLocalDataSource(@NonNull AppExecutors appExecutors,
-                                @NonNull DogsDao dogsDao) {
+                                @NonNull DogsDao dogsDao,
+                                @Nullable InvalidationTracker invalidationTracker) {
         mAppExecutors = appExecutors;
         mDogsDao = dogsDao;
+        mInvalidationTracker = invalidationTracker;
+        mWrites = new WriteBehindQueue(appExecutors.diskIO(), dogsDao);
     }
 
+    /**
+     * Returns the single instance of this class, creating it if necessary. Table changes are
+     * reported to {@link TablesObserver}s through the database {@link InvalidationTracker}.
+     */
+    public static DogsLocalDataSource getInstance(@NonNull AppExecutors appExecutors,
+                                                  @NonNull DogBuddyDatabase database) {
+        if (INSTANCE == null) {
+            synchronized (DogsLocalDataSource.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new DogsLocalDataSource(appExecutors, database.dogDao(),
+                            database.getInvalidationTracker());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the single instance of this class, creating it if necessary. Table changes are not
+     * reported to {@link TablesObserver}s.
+     */
     public static DogsLocalDataSource getInstance(@NonNull AppExecutors appExecutors,
                                                   @NonNull DogsDao dogsDao) {
         if (INSTANCE == null) {
             synchronized (DogsLocalDataSource.class) {
                 if (INSTANCE == null) {
-                    INSTANCE = new DogsLocalDataSource(appExecutors, dogsDao);
+                    INSTANCE = new DogsLocalDataSource(appExecutors, dogsDao, null);
                 }
             }
         }
         return INSTANCE;
     }
 
+    /**
+     * Starts reporting changes to the dogs and breeds tables to observer, including the ones
+     * made by writes that don't go through this data source.
+     */
+    public void addTablesObserver(@NonNull final TablesObserver observer) {
+        checkNotNull(observer);
+        if (mInvalidationTracker == null) {
+            return;
+        }
+        InvalidationTracker.Observer trackerObserver =
+                new InvalidationTracker.Observer(DOGS_TABLE, BREEDS_TABLE) {
+                    @Override
+                    public void onInvalidated(@NonNull Set<String> tables) {
+                        if (tables.contains(DOGS_TABLE)) {
+                            observer.onDogsTableChanged();
+                        }
+                        if (tables.contains(BREEDS_TABLE)) {
+                            observer.onBreedsTableChanged();
+                        }
+                    }
+                };
+        synchronized (mTablesObservers) {
+            if (mTablesObservers.containsKey(observer)) {
+                return;
+            }
+            mTablesObservers.put(observer, trackerObserver);
+        }
+        mInvalidationTracker.addObserver(trackerObserver);
+    }
+
+    public void removeTablesObserver(@NonNull TablesObserver observer) {
+        InvalidationTracker.Observer trackerObserver;
+        synchronized (mTablesObservers) {
+            trackerObserver = mTablesObservers.remove(checkNotNull(observer));
+        }
+        if (trackerObserver != null && mInvalidationTracker != null) {
+            mInvalidationTracker.removeObserver(trackerObserver);
+        }
+    }
+
     /**
      * Note: {@link LoadDogsCallback#onDataNotAvailable()} is fired if the database doesn't exist
      * or the table is empty.
      */
     @Override
-    public void getDogs(@NonNull final LoadDogsCallback callback) {
+    public void getDogs(@NonNull LoadDogsCallback callback) {
+        getDogs(CancellationToken.NONE, callback);
+    }
+
+    /**
+     * Like {@link #getDogs(LoadDogsCallback)}, dropped without calling back if token is
+     * cancelled first.
+     */
+    @Override
+    public void getDogs(@NonNull final CancellationToken token,
+                        @NonNull final LoadDogsCallback callback) {
+        checkNotNull(token);
         Runnable runnable = new Runnable() {
             @Override
             public void run() {
@@ -57,6 +201,9 @@ public class DogsLocalDataSource implements DogsDataSource {
                 mAppExecutors.mainThread().execute(new Runnable() {
                     @Override
                     public void run() {
+                        if (token.isCancelled()) {
+                            return;
+                        }
                         if (dogs.isEmpty()) {
                             // This will be called if the table is new or just empty.
                             callback.onDataNotAvailable();
@@ -68,7 +215,7 @@ public class DogsLocalDataSource implements DogsDataSource {
             }
         };
 
-        mAppExecutors.diskIO().execute(runnable);
+        executeRead(Priority.UI_READ, token, runnable);
     }
 
     /**
@@ -76,7 +223,18 @@ public class DogsLocalDataSource implements DogsDataSource {
      * found.
      */
     @Override
-    public void getDog(@NonNull final String dogId, @NonNull final GetDogCallback callback) {
+    public void getDog(@NonNull String dogId, @NonNull GetDogCallback callback) {
+        getDog(dogId, CancellationToken.NONE, callback);
+    }
+
+    /**
+     * Like {@link #getDog(String, GetDogCallback)}, dropped without calling back if token is
+     * cancelled first.
+     */
+    @Override
+    public void getDog(@NonNull final String dogId, @NonNull final CancellationToken token,
+                       @NonNull final GetDogCallback callback) {
+        checkNotNull(token);
         Runnable runnable = new Runnable() {
             @Override
             public void run() {
@@ -85,6 +243,9 @@ public class DogsLocalDataSource implements DogsDataSource {
                 mAppExecutors.mainThread().execute(new Runnable() {
                     @Override
                     public void run() {
+                        if (token.isCancelled()) {
+                            return;
+                        }
                         if (dog != null) {
                             callback.onDogLoaded(dog);
                         } else {
@@ -95,66 +256,311 @@ public class DogsLocalDataSource implements DogsDataSource {
             }
         };
 
-        mAppExecutors.diskIO().execute(runnable);
+        executeRead(Priority.UI_READ, token, runnable);
     }
 
+    /**
+     * Looks the dogs up with one query for every {@link #MAX_IDS_PER_QUERY} ids.
+     * <p>
+     * Note: {@link LoadDogsCallback#onDataNotAvailable()} is fired if none of the dogs is found.
+     */
     @Override
-    public void saveDog(@NonNull final Dog dog) {
-        checkNotNull(dog);
-        Runnable saveRunnable = new Runnable() {
+    public void getDogsByIds(@NonNull Collection<String> dogIds,
+                             @NonNull LoadDogsCallback callback) {
+        getDogsByIds(dogIds, CancellationToken.NONE, callback);
+    }
+
+    /**
+     * Like {@link #getDogsByIds(Collection, LoadDogsCallback)}, dropped without calling back if
+     * token is cancelled first.
+     */
+    @Override
+    public void getDogsByIds(@NonNull Collection<String> dogIds,
+                             @NonNull final CancellationToken token,
+                             @NonNull final LoadDogsCallback callback) {
+        final List<String> ids = new ArrayList<>(checkNotNull(dogIds));
+        checkNotNull(token);
+        checkNotNull(callback);
+        Runnable runnable = new Runnable() {
             @Override
             public void run() {
-                mDogsDao.insertDog(dog);
+                final List<Dog> dogs = new ArrayList<>(ids.size());
+                for (int start = 0; start < ids.size(); start += MAX_IDS_PER_QUERY) {
+                    dogs.addAll(mDogsDao.getDogsByIds(
+                            ids.subList(start, Math.min(start + MAX_IDS_PER_QUERY, ids.size()))));
+                }
+                mAppExecutors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (token.isCancelled()) {
+                            return;
+                        }
+                        if (dogs.isEmpty()) {
+                            callback.onDataNotAvailable();
+                        } else {
+                            callback.onDogsLoaded(dogs);
+                        }
+                    }
+                });
             }
         };
-        mAppExecutors.diskIO().execute(saveRunnable);
+
+        executeRead(Priority.UI_READ, token, runnable);
     }
 
+    /**
+     * The first page is read as soon as possible, the next ones are prefetched.
+     * <p>
+     * Note: {@link LoadDogsCallback#onDataNotAvailable()} is fired if there are no dogs after
+     * afterDogId.
+     */
     @Override
-    public void getBreeds(final @NonNull LoadBreedsCallback callback) {
+    public void getDogsPage(@Nullable String afterDogId, int pageSize,
+                            @NonNull LoadDogsCallback callback) {
+        getDogsPage(afterDogId, pageSize, CancellationToken.NONE, callback);
+    }
+
+    /**
+     * Like {@link #getDogsPage(String, int, LoadDogsCallback)}, dropped without calling back if
+     * token is cancelled first.
+     */
+    @Override
+    public void getDogsPage(@Nullable final String afterDogId, final int pageSize,
+                            @NonNull final CancellationToken token,
+                            @NonNull final LoadDogsCallback callback) {
+        checkNotNull(token);
         Runnable runnable = new Runnable() {
             @Override
             public void run() {
-                final List<Breed> breeds = mDogsDao.getBreeds();
+                final List<Dog> dogs = afterDogId == null
+                        ? mDogsDao.getFirstDogsPage(pageSize)
+                        : mDogsDao.getDogsPageAfter(afterDogId, pageSize);
                 mAppExecutors.mainThread().execute(new Runnable() {
                     @Override
                     public void run() {
-                        if (breeds.isEmpty()) {
-                            // This will be called if the table is new or just empty.
+                        if (token.isCancelled()) {
+                            return;
+                        }
+                        if (dogs.isEmpty()) {
                             callback.onDataNotAvailable();
                         } else {
-                            callback.onBreedsLoaded(breeds);
+                            callback.onDogsLoaded(dogs);
                         }
                     }
                 });
             }
         };
 
-        mAppExecutors.diskIO().execute(runnable);
+        executeRead(afterDogId == null ? Priority.UI_READ : Priority.PREFETCH, token,
+                runnable);
     }
 
-    @Override
-    public void saveBreed(final @NonNull Breed breed) {
-        checkNotNull(breed);
-        Runnable saveRunnable = new Runnable() {
+    /**
+     * Runs read on the read pool, or, if writes are pending or committing, on the writer after
+     * committing them, so reads see the writes made before them.
+     */
+    private void executeRead(@NonNull Priority priority, @NonNull CancellationToken token,
+                             @NonNull final Runnable read) {
+        if (mWrites.isIdle()) {
+            mAppExecutors.diskRead(priority, token, read);
+            return;
+        }
+        mAppExecutors.diskIO(priority, token, new Runnable() {
             @Override
             public void run() {
-                mDogsDao.insertBreed(breed);
+                mWrites.flush();
+                read.run();
+            }
+        });
+    }
+
+    /**
+     * Returns a {@link LiveData} backed by the dogs table. Room re-runs the query on the
+     * background and pushes a new list only when the table is invalidated.
+     */
+    public LiveData<List<Dog>> observeDogs() {
+        return mDogsDao.observeDogs();
+    }
+
+    /**
+     * Returns a {@link LiveData} with the dogs that match filter, filtered and sorted by SQLite.
+     */
+    public LiveData<List<Dog>> observeDogs(@NonNull DogsFilter filter) {
+        return mDogsDao.observeDogs(checkNotNull(filter));
+    }
+
+    /**
+     * Searches the dogs by prefixes of their name or breed words. Only the latest search matters
+     * while the user types: a search that is superseded by a newer one before it starts running
+     * is dropped without calling back, so queued keystrokes don't hold the disk executor.
+     * <p>
+     * Note: {@link LoadDogsCallback#onDataNotAvailable()} is fired if no dog matches.
+     */
+    public void searchDogs(@NonNull String text, int limit,
+                           @NonNull LoadDogsCallback callback) {
+        searchDogs(text, limit, CancellationToken.NONE, callback);
+    }
+
+    /**
+     * Like {@link #searchDogs(String, int, LoadDogsCallback)}, dropped without calling back if
+     * token is cancelled first.
+     */
+    public void searchDogs(@NonNull final String text, final int limit,
+                           @NonNull final CancellationToken token,
+                           @NonNull final LoadDogsCallback callback) {
+        checkNotNull(text);
+        checkNotNull(token);
+        checkNotNull(callback);
+        final long search = mLatestSearch.incrementAndGet();
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                if (search != mLatestSearch.get()) {
+                    // Superseded.
+                    return;
+                }
+                final List<Dog> dogs = mDogsDao.searchDogs(text, limit);
+                mAppExecutors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (token.isCancelled()) {
+                            return;
+                        }
+                        if (dogs.isEmpty()) {
+                            callback.onDataNotAvailable();
+                        } else {
+                            callback.onDogsLoaded(dogs);
+                        }
+                    }
+                });
             }
         };
-        mAppExecutors.diskIO().execute(saveRunnable);
+
+        executeRead(Priority.UI_READ, token, runnable);
     }
 
+    /**
+     * Note: {@link LoadDogsCallback#onDataNotAvailable()} is fired if no dog matches filter.
+     */
+    public void getDogs(@NonNull final DogsFilter filter,
+                        @NonNull final LoadDogsCallback callback) {
+        checkNotNull(filter);
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                final List<Dog> dogs = mDogsDao.getDogs(filter);
+                mAppExecutors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (dogs.isEmpty()) {
+                            callback.onDataNotAvailable();
+                        } else {
+                            callback.onDogsLoaded(dogs);
+                        }
+                    }
+                });
+            }
+        };
+
+        executeRead(Priority.UI_READ, CancellationToken.NONE, runnable);
+    }
+
+    /**
+     * Returns a {@link LiveData} that emits the {@link Dog} with dogId, or null if it isn't found.
+     */
+    public LiveData<Dog> observeDog(@NonNull String dogId) {
+        return mDogsDao.observeDogById(checkNotNull(dogId));
+    }
+
+    /**
+     * Returns a {@link LiveData} backed by the breeds table.
+     */
+    public LiveData<List<Breed>> observeBreeds() {
+        return mDogsDao.observeBreeds();
+    }
+
+    /**
+     * Writes are not run one by one: they go through a write-behind queue that merges the pending
+     * writes of the same id and commits them together in one transaction, on the disk executor.
+     * Reads made after a write see it: while writes are pending, reads run on the writer thread,
+     * ahead of the writes, but commit the pending ones first. Call {@link #flush()} when the
+     * writes must be in the database before going on.
+     */
     @Override
-    public void deleteAllBreeds() {
-        Runnable deleteRunnable = new Runnable() {
+    public void saveDog(@NonNull final Dog dog) {
+        mWrites.saveDog(checkNotNull(dog));
+    }
+
+    @Override
+    public void saveDogs(@NonNull final List<Dog> dogs) {
+        mWrites.saveDogs(checkNotNull(dogs));
+    }
+
+    /**
+     * Replaces the content of the dogs table with dogs. The wipe and the inserts are committed in
+     * the same transaction, so readers never see the table empty in between.
+     */
+    public void replaceDogs(@NonNull final List<Dog> dogs) {
+        mWrites.replaceDogs(checkNotNull(dogs));
+    }
+
+    @Override
+    public void getBreeds(@NonNull LoadBreedsCallback callback) {
+        getBreeds(CancellationToken.NONE, callback);
+    }
+
+    /**
+     * Like {@link #getBreeds(LoadBreedsCallback)}, dropped without calling back if token is
+     * cancelled first.
+     */
+    @Override
+    public void getBreeds(@NonNull final CancellationToken token,
+                          @NonNull final LoadBreedsCallback callback) {
+        checkNotNull(token);
+        Runnable runnable = new Runnable() {
             @Override
             public void run() {
-                mDogsDao.deleteBreeds();
+                final List<Breed> breeds = mDogsDao.getBreeds();
+                mAppExecutors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (token.isCancelled()) {
+                            return;
+                        }
+                        if (breeds.isEmpty()) {
+                            // This will be called if the table is new or just empty.
+                            callback.onDataNotAvailable();
+                        } else {
+                            callback.onBreedsLoaded(breeds);
+                        }
+                    }
+                });
             }
         };
 
-        mAppExecutors.diskIO().execute(deleteRunnable);
+        executeRead(Priority.UI_READ, token, runnable);
+    }
+
+    @Override
+    public void saveBreed(final @NonNull Breed breed) {
+        mWrites.saveBreed(checkNotNull(breed));
+    }
+
+    @Override
+    public void saveBreeds(@NonNull final List<Breed> breeds) {
+        mWrites.saveBreeds(checkNotNull(breeds));
+    }
+
+    /**
+     * Replaces the content of the breeds table with breeds, in the same transaction.
+     */
+    public void replaceBreeds(@NonNull final List<Breed> breeds) {
+        mWrites.replaceBreeds(checkNotNull(breeds));
+    }
+
+    @Override
+    public void deleteAllBreeds() {
+        mWrites.deleteAllBreeds();
     }
 
     @Override
@@ -165,26 +571,67 @@ public class DogsLocalDataSource implements DogsDataSource {
 
     @Override
     public void deleteAllDogs() {
-        Runnable deleteRunnable = new Runnable() {
+        mWrites.deleteAllDogs();
+    }
+
+    @Override
+    public void deleteDog(@NonNull final String dogId) {
+        mWrites.deleteDog(checkNotNull(dogId));
+    }
+
+    /**
+     * Loads the cursor the next delta sync starts from, null if the dogs were never synced.
+     */
+    public void getSyncCursor(@NonNull final GetSyncCursorCallback callback) {
+        checkNotNull(callback);
+        Runnable runnable = new Runnable() {
             @Override
             public void run() {
-                mDogsDao.deleteDogs();
+                final String cursor = mDogsDao.getSyncCursor(SYNC_KEY);
+                mAppExecutors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSyncCursorLoaded(cursor);
+                    }
+                });
             }
         };
 
-        mAppExecutors.diskIO().execute(deleteRunnable);
+        mAppExecutors.diskIO(Priority.BACKGROUND_WRITE, CancellationToken.NONE, runnable);
     }
 
-    @Override
-    public void deleteDog(@NonNull final String dogId) {
-        Runnable deleteRunnable = new Runnable() {
+    /**
+     * Applies delta and saves its cursor in one transaction. Pending writes are committed first,
+     * so the delta is applied on top of them.
+     */
+    public void applyDelta(@NonNull final DogsDelta delta,
+                           @NonNull final ApplyDeltaCallback callback) {
+        checkNotNull(delta);
+        checkNotNull(callback);
+        Runnable runnable = new Runnable() {
             @Override
             public void run() {
-                mDogsDao.deleteDogById(dogId);
+                mWrites.flush();
+                mDogsDao.applyDelta(delta, SYNC_KEY);
+                mAppExecutors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onDeltaApplied();
+                    }
+                });
             }
         };
 
-        mAppExecutors.diskIO().execute(deleteRunnable);
+        mAppExecutors.diskIO(Priority.BACKGROUND_WRITE, CancellationToken.NONE, runnable);
+    }
+
+    /**
+     * Commits the pending writes on the calling thread. When this returns, every write made
+     * before the call is in the database. Must not be called on the main thread.
+     */
+    @WorkerThread
+    public void flush() {
+        mWrites.flush();
     }
 
     @VisibleForTesting
@@ -0,0 +1,86 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source.local;
+
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.Query;
+import android.arch.persistence.room.Transaction;
+
+import java.util.List;
+
+/**
+ * Data Access Object for the outbox table.
+ * <p>
+ * Operations are collapsed as they are added: a new operation on an entity replaces the pending
+ * ones on the same entity, and an operation on a whole table replaces every pending operation on
+ * that table. So there is at most one pending operation per entity, and an operation on the whole
+ * table always comes before the others of that table.
+ */
+@Dao
+public abstract class OutboxDao {
+
+    /**
+     * Select the oldest pending operations.
+     *
+     * @param limit maximum number of operations to return.
+     * @return the operations, oldest first.
+     */
+    @Query("SELECT * FROM outbox ORDER BY seq LIMIT :limit")
+    public abstract List<OutboxOp> getPendingOps(int limit);
+
+    /**
+     * Select all the pending operations on an entity type.
+     *
+     * @param entity {@link OutboxOp#ENTITY_DOG} or {@link OutboxOp#ENTITY_BREED}.
+     * @return the operations, oldest first.
+     */
+    @Query("SELECT * FROM outbox WHERE entity = :entity ORDER BY seq")
+    public abstract List<OutboxOp> getPendingOpsFor(String entity);
+
+    @Query("SELECT COUNT(*) FROM outbox")
+    public abstract int countPendingOps();
+
+    @Insert
+    abstract void insertOp(OutboxOp op);
+
+    @Query("DELETE FROM outbox WHERE entity = :entity AND entity_id = :entityId")
+    abstract void deleteOpsOn(String entity, String entityId);
+
+    @Query("DELETE FROM outbox WHERE entity = :entity")
+    abstract void deleteOpsOnTable(String entity);
+
+    /**
+     * Delete the operations that were sent.
+     *
+     * @param seqs the seq of the operations, at most 999 of them.
+     */
+    @Query("DELETE FROM outbox WHERE seq IN (:seqs)")
+    public abstract void deleteOps(List<Long> seqs);
+
+    /**
+     * Add an operation, dropping the pending ones it supersedes.
+     */
+    @Transaction
+    public void enqueue(OutboxOp op) {
+        collapse(op);
+        insertOp(op);
+    }
+
+    /**
+     * Add operations in one transaction, dropping the pending ones they supersede.
+     */
+    @Transaction
+    public void enqueueAll(List<OutboxOp> ops) {
+        for (OutboxOp op : ops) {
+            collapse(op);
+            insertOp(op);
+        }
+    }
+
+    private void collapse(OutboxOp op) {
+        if (op.getEntityId() == null) {
+            deleteOpsOnTable(op.getEntity());
+        } else {
+            deleteOpsOn(op.getEntity(), op.getEntityId());
+        }
+    }
+}
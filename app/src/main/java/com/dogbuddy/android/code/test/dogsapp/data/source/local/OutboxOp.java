@@ -0,0 +1,100 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source.local;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Ignore;
+import android.arch.persistence.room.Index;
+import android.arch.persistence.room.PrimaryKey;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Immutable record of a write made locally that still has to be sent to the remote data source.
+ * <p>
+ * Operations are kept in the order they were made, by seq. The saved entity is stored in payload,
+ * in the JSON of the dogs service written by {@code DogsJson}, which doesn't depend on the field
+ * names a shrinker may rename. An operation on a single entity has its entityId, one on the whole
+ * table doesn't.
+ */
+@Entity(tableName = "outbox", indices = {@Index({"entity", "entity_id"})})
+public final class OutboxOp {
+
+    public static final String ENTITY_DOG = "dog";
+
+    public static final String ENTITY_BREED = "breed";
+
+    public static final String TYPE_SAVE = "save";
+
+    public static final String TYPE_DELETE = "delete";
+
+    public static final String TYPE_DELETE_ALL = "delete_all";
+
+    @PrimaryKey(autoGenerate = true)
+    @ColumnInfo(name = "seq")
+    private final long mSeq;
+
+    @NonNull
+    @ColumnInfo(name = "type")
+    private final String mType;
+
+    @NonNull
+    @ColumnInfo(name = "entity")
+    private final String mEntity;
+
+    @Nullable
+    @ColumnInfo(name = "entity_id")
+    private final String mEntityId;
+
+    @Nullable
+    @ColumnInfo(name = "payload")
+    private final String mPayload;
+
+    public OutboxOp(long seq, @NonNull String type, @NonNull String entity,
+                    @Nullable String entityId, @Nullable String payload) {
+        mSeq = seq;
+        mType = type;
+        mEntity = entity;
+        mEntityId = entityId;
+        mPayload = payload;
+    }
+
+    /**
+     * Use this constructor to create a new operation, numbered when it's inserted.
+     */
+    @Ignore
+    public OutboxOp(@NonNull String type, @NonNull String entity, @Nullable String entityId,
+                    @Nullable String payload) {
+        this(0, checkNotNull(type), checkNotNull(entity), entityId, payload);
+    }
+
+    public long getSeq() {
+        return mSeq;
+    }
+
+    @NonNull
+    public String getType() {
+        return mType;
+    }
+
+    @NonNull
+    public String getEntity() {
+        return mEntity;
+    }
+
+    @Nullable
+    public String getEntityId() {
+        return mEntityId;
+    }
+
+    @Nullable
+    public String getPayload() {
+        return mPayload;
+    }
+
+    @Override
+    public String toString() {
+        return "OutboxOp " + mSeq + " " + mType + " " + mEntity + " " + mEntityId;
+    }
+}
@@ -0,0 +1,38 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source.local;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.PrimaryKey;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Immutable sync cursor of the data synced under a key: where the next delta sync starts.
+ */
+@Entity(tableName = "sync_state")
+public final class SyncState {
+
+    @PrimaryKey
+    @NonNull
+    @ColumnInfo(name = "key")
+    private final String mKey;
+
+    @Nullable
+    @ColumnInfo(name = "cursor")
+    private final String mCursor;
+
+    public SyncState(@NonNull String key, @Nullable String cursor) {
+        mKey = key;
+        mCursor = cursor;
+    }
+
+    @NonNull
+    public String getKey() {
+        return mKey;
+    }
+
+    @Nullable
+    public String getCursor() {
+        return mCursor;
+    }
+}
@@ -0,0 +1,41 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source.local;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Breed;
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+
+import java.util.List;
+
+/**
+ * Writes taken from {@link WriteBehindQueue}, committed in one transaction by
+ * {@link DogsDao#applyWriteBatch(WriteBatch)}. Table wipes run first, then the upserts, then the
+ * deletes: the queue already merged the writes so at most one of them is left per id.
+ */
+final class WriteBatch {
+
+    final boolean deleteAllDogs;
+
+    final List<Dog> dogUpserts;
+
+    final List<String> dogDeletes;
+
+    final boolean deleteAllBreeds;
+
+    final List<Breed> breedUpserts;
+
+    WriteBatch(boolean deleteAllDogs, List<Dog> dogUpserts, List<String> dogDeletes,
+               boolean deleteAllBreeds, List<Breed> breedUpserts) {
+        this.deleteAllDogs = deleteAllDogs;
+        this.dogUpserts = dogUpserts;
+        this.dogDeletes = dogDeletes;
+        this.deleteAllBreeds = deleteAllBreeds;
+        this.breedUpserts = breedUpserts;
+    }
+
+    /**
+     * Number of rows written, counting each table wipe as one.
+     */
+    int size() {
+        return (deleteAllDogs ? 1 : 0) + dogUpserts.size() + dogDeletes.size()
+                + (deleteAllBreeds ? 1 : 0) + breedUpserts.size();
+    }
+}
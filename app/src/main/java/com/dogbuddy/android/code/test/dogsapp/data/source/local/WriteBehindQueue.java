@@ -0,0 +1,197 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source.local;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Breed;
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Write-behind queue for the writes of {@link DogsLocalDataSource}.
+ * <p>
+ * Writes are not run one by one: they are recorded and merged by id, so a dog saved three times
+ * and then deleted ends up as one delete, and the pending writes are committed together in a
+ * single transaction by one task on the disk executor. A burst of edits costs one commit instead
+ * of one per edit.
+ * <p>
+ * The drain task is queued on the disk executor when the first write of a batch is recorded.
+ * Reads that may run ahead of it, like the prioritized reads of {@link DogsLocalDataSource},
+ * {@link #flush()} first, so they still see every write made before them. Reads made while the
+ * queue {@link #isIdle()} can run anywhere, there is nothing for them to miss.
+ */
+final class WriteBehindQueue {
+
+    private final Executor mDiskIO;
+
+    private final DogsDao mDogsDao;
+
+    // Pending writes, guarded by this.
+    private boolean mDeleteAllDogs = false;
+    private final Map<String, Dog> mDogUpserts = new LinkedHashMap<>();
+    private final Set<String> mDogDeletes = new LinkedHashSet<>();
+    private boolean mDeleteAllBreeds = false;
+    private final Map<String, Breed> mBreedUpserts = new LinkedHashMap<>();
+    private boolean mDrainScheduled = false;
+    // Whether a batch was taken and is being committed, guarded by this.
+    private boolean mCommitting = false;
+
+    private long mCommittedWrites = 0;
+    private long mCommittedBatches = 0;
+
+    // Held while a batch is taken and committed, so batches are committed in order.
+    private final Object mDrainLock = new Object();
+
+    private final Runnable mDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    WriteBehindQueue(@NonNull Executor diskIO, @NonNull DogsDao dogsDao) {
+        mDiskIO = checkNotNull(diskIO);
+        mDogsDao = checkNotNull(dogsDao);
+    }
+
+    synchronized void saveDog(@NonNull Dog dog) {
+        mDogDeletes.remove(dog.getId());
+        mDogUpserts.put(dog.getId(), dog);
+        scheduleDrain();
+    }
+
+    synchronized void saveDogs(@NonNull Iterable<Dog> dogs) {
+        for (Dog dog : dogs) {
+            mDogDeletes.remove(dog.getId());
+            mDogUpserts.put(dog.getId(), dog);
+        }
+        scheduleDrain();
+    }
+
+    synchronized void deleteDog(@NonNull String dogId) {
+        mDogUpserts.remove(dogId);
+        mDogDeletes.add(dogId);
+        scheduleDrain();
+    }
+
+    synchronized void deleteAllDogs() {
+        // Pending writes would be wiped anyway.
+        mDogUpserts.clear();
+        mDogDeletes.clear();
+        mDeleteAllDogs = true;
+        scheduleDrain();
+    }
+
+    synchronized void replaceDogs(@NonNull Iterable<Dog> dogs) {
+        deleteAllDogs();
+        saveDogs(dogs);
+    }
+
+    synchronized void saveBreed(@NonNull Breed breed) {
+        mBreedUpserts.put(breed.getId(), breed);
+        scheduleDrain();
+    }
+
+    synchronized void saveBreeds(@NonNull Iterable<Breed> breeds) {
+        for (Breed breed : breeds) {
+            mBreedUpserts.put(breed.getId(), breed);
+        }
+        scheduleDrain();
+    }
+
+    synchronized void deleteAllBreeds() {
+        mBreedUpserts.clear();
+        mDeleteAllBreeds = true;
+        scheduleDrain();
+    }
+
+    synchronized void replaceBreeds(@NonNull Iterable<Breed> breeds) {
+        deleteAllBreeds();
+        saveBreeds(breeds);
+    }
+
+    /**
+     * Commits the pending writes on the calling thread. When this returns, every write recorded
+     * before the call is in the database.
+     */
+    @WorkerThread
+    void flush() {
+        drain();
+    }
+
+    /**
+     * Returns whether every write recorded so far is in the database: none is pending, and none
+     * is being committed.
+     */
+    synchronized boolean isIdle() {
+        return !mCommitting && !mDeleteAllDogs && mDogUpserts.isEmpty() && mDogDeletes.isEmpty()
+                && !mDeleteAllBreeds && mBreedUpserts.isEmpty();
+    }
+
+    /**
+     * Number of writes committed, after merging.
+     */
+    synchronized long getCommittedWrites() {
+        return mCommittedWrites;
+    }
+
+    /**
+     * Number of transactions committed.
+     */
+    synchronized long getCommittedBatches() {
+        return mCommittedBatches;
+    }
+
+    private void scheduleDrain() {
+        if (!mDrainScheduled) {
+            mDrainScheduled = true;
+            mDiskIO.execute(mDrainRunnable);
+        }
+    }
+
+    private void drain() {
+        synchronized (mDrainLock) {
+            WriteBatch batch = takeBatch();
+            if (batch == null) {
+                return;
+            }
+            try {
+                mDogsDao.applyWriteBatch(batch);
+            } finally {
+                synchronized (this) {
+                    mCommitting = false;
+                }
+            }
+            synchronized (this) {
+                mCommittedWrites += batch.size();
+                mCommittedBatches++;
+            }
+        }
+    }
+
+    private synchronized WriteBatch takeBatch() {
+        mDrainScheduled = false;
+        if (!mDeleteAllDogs && mDogUpserts.isEmpty() && mDogDeletes.isEmpty()
+                && !mDeleteAllBreeds && mBreedUpserts.isEmpty()) {
+            return null;
+        }
+        mCommitting = true;
+        WriteBatch batch = new WriteBatch(mDeleteAllDogs, new ArrayList<>(mDogUpserts.values()),
+                new ArrayList<>(mDogDeletes), mDeleteAllBreeds,
+                new ArrayList<>(mBreedUpserts.values()));
+        mDeleteAllDogs = false;
+        mDogUpserts.clear();
+        mDogDeletes.clear();
+        mDeleteAllBreeds = false;
+        mBreedUpserts.clear();
+        return batch;
+    }
+}
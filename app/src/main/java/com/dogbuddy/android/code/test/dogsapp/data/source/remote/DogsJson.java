@@ -0,0 +1,388 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source.remote;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Breed;
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsBatch;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDelta;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes the JSON of the dogs service with Gson's streaming API, field by field, without
+ * reflection or intermediate trees.
+ * <p>
+ * A dog is {@code {"id", "name", "breed", "gender", "birthYear", "size", "version",
+ * "updatedAt"}}, a breed {@code {"id", "breed", "version", "updatedAt"}}. Unknown fields are
+ * skipped, so the server can add some.
+ * <p>
+ * Dogs and breeds are built as their fields are read, never from a buffered response or tree, so
+ * decoding holds the objects read and little else. Responses that may be long, like the changes
+ * of a sync, are asked for in pages to bound how many objects that is.
+ */
+public final class DogsJson {
+
+    private DogsJson() {}
+
+    @NonNull
+    public static Dog readDog(@NonNull JsonReader reader) throws IOException {
+        String id = null;
+        String name = null;
+        String breed = null;
+        String gender = null;
+        Integer birthYear = null;
+        String size = null;
+        long version = 0;
+        long updatedAt = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "name":
+                    name = reader.nextString();
+                    break;
+                case "breed":
+                    breed = reader.nextString();
+                    break;
+                case "gender":
+                    gender = reader.nextString();
+                    break;
+                case "birthYear":
+                    birthYear = reader.nextInt();
+                    break;
+                case "size":
+                    size = reader.nextString();
+                    break;
+                case "version":
+                    version = reader.nextLong();
+                    break;
+                case "updatedAt":
+                    updatedAt = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        if (id == null) {
+            throw new IOException("Dog without id at " + reader.getPath());
+        }
+        return new Dog(id, name, breed, gender, birthYear, size, version, updatedAt);
+    }
+
+    public static void writeDog(@NonNull JsonWriter writer, @NonNull Dog dog) throws IOException {
+        writer.beginObject();
+        writer.name("id").value(dog.getId());
+        writer.name("name").value(dog.getName());
+        writer.name("breed").value(dog.getBreed());
+        writer.name("gender").value(dog.getGender());
+        writer.name("birthYear").value(dog.getBirthYear());
+        writer.name("size").value(dog.getSize());
+        writer.name("version").value(dog.getVersion());
+        writer.name("updatedAt").value(dog.getUpdatedAt());
+        writer.endObject();
+    }
+
+    @NonNull
+    public static List<Dog> readDogs(@NonNull JsonReader reader) throws IOException {
+        List<Dog> dogs = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            dogs.add(readDog(reader));
+        }
+        reader.endArray();
+        return dogs;
+    }
+
+    public static void writeDogs(@NonNull JsonWriter writer, @NonNull List<Dog> dogs)
+            throws IOException {
+        writer.beginArray();
+        for (Dog dog : dogs) {
+            writeDog(writer, dog);
+        }
+        writer.endArray();
+    }
+
+    @NonNull
+    public static Breed readBreed(@NonNull JsonReader reader) throws IOException {
+        String id = null;
+        String breed = null;
+        long version = 0;
+        long updatedAt = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "breed":
+                    breed = reader.nextString();
+                    break;
+                case "version":
+                    version = reader.nextLong();
+                    break;
+                case "updatedAt":
+                    updatedAt = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        if (id == null) {
+            throw new IOException("Breed without id at " + reader.getPath());
+        }
+        return new Breed(breed, id, version, updatedAt);
+    }
+
+    public static void writeBreed(@NonNull JsonWriter writer, @NonNull Breed breed)
+            throws IOException {
+        writer.beginObject();
+        writer.name("id").value(breed.getId());
+        writer.name("breed").value(breed.getBreed());
+        writer.name("version").value(breed.getVersion());
+        writer.name("updatedAt").value(breed.getUpdatedAt());
+        writer.endObject();
+    }
+
+    @NonNull
+    public static List<Breed> readBreeds(@NonNull JsonReader reader) throws IOException {
+        List<Breed> breeds = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            breeds.add(readBreed(reader));
+        }
+        reader.endArray();
+        return breeds;
+    }
+
+    public static void writeBreeds(@NonNull JsonWriter writer, @NonNull List<Breed> breeds)
+            throws IOException {
+        writer.beginArray();
+        for (Breed breed : breeds) {
+            writeBreed(writer, breed);
+        }
+        writer.endArray();
+    }
+
+    /**
+     * Reads {@code {"cursor", "reset", "hasMore", "dogs", "deletedDogIds", "breeds",
+     * "deletedBreedIds"}}.
+     */
+    @NonNull
+    public static DogsDelta readDelta(@NonNull JsonReader reader) throws IOException {
+        String cursor = null;
+        boolean reset = false;
+        boolean hasMore = false;
+        List<Dog> dogs = new ArrayList<>();
+        List<String> deletedDogIds = new ArrayList<>();
+        List<Breed> breeds = new ArrayList<>();
+        List<String> deletedBreedIds = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "cursor":
+                    cursor = reader.nextString();
+                    break;
+                case "reset":
+                    reset = reader.nextBoolean();
+                    break;
+                case "hasMore":
+                    hasMore = reader.nextBoolean();
+                    break;
+                case "dogs":
+                    dogs = readDogs(reader);
+                    break;
+                case "deletedDogIds":
+                    deletedDogIds = readStrings(reader);
+                    break;
+                case "breeds":
+                    breeds = readBreeds(reader);
+                    break;
+                case "deletedBreedIds":
+                    deletedBreedIds = readStrings(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        if (cursor == null) {
+            throw new IOException("Delta without cursor");
+        }
+        return new DogsDelta(cursor, reset, hasMore, dogs, deletedDogIds, breeds,
+                deletedBreedIds);
+    }
+
+    public static void writeDelta(@NonNull JsonWriter writer, @NonNull DogsDelta delta)
+            throws IOException {
+        writer.beginObject();
+        writer.name("cursor").value(delta.getCursor());
+        writer.name("reset").value(delta.isReset());
+        writer.name("hasMore").value(delta.hasMore());
+        writer.name("dogs");
+        writeDogs(writer, delta.getChangedDogs());
+        writer.name("deletedDogIds");
+        writeStrings(writer, delta.getDeletedDogIds());
+        writer.name("breeds");
+        writeBreeds(writer, delta.getChangedBreeds());
+        writer.name("deletedBreedIds");
+        writeStrings(writer, delta.getDeletedBreedIds());
+        writer.endObject();
+    }
+
+    /**
+     * Reads {@code {"deleteAllDogs", "dogs", "deletedDogIds", "deleteAllBreeds", "breeds"}}.
+     */
+    @NonNull
+    public static DogsBatch readBatch(@NonNull JsonReader reader) throws IOException {
+        boolean deleteAllDogs = false;
+        List<Dog> dogs = new ArrayList<>();
+        List<String> deletedDogIds = new ArrayList<>();
+        boolean deleteAllBreeds = false;
+        List<Breed> breeds = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "deleteAllDogs":
+                    deleteAllDogs = reader.nextBoolean();
+                    break;
+                case "dogs":
+                    dogs = readDogs(reader);
+                    break;
+                case "deletedDogIds":
+                    deletedDogIds = readStrings(reader);
+                    break;
+                case "deleteAllBreeds":
+                    deleteAllBreeds = reader.nextBoolean();
+                    break;
+                case "breeds":
+                    breeds = readBreeds(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new DogsBatch(deleteAllDogs, dogs, deletedDogIds, deleteAllBreeds, breeds);
+    }
+
+    public static void writeBatch(@NonNull JsonWriter writer, @NonNull DogsBatch batch)
+            throws IOException {
+        writer.beginObject();
+        writer.name("deleteAllDogs").value(batch.isDeleteAllDogs());
+        writer.name("dogs");
+        writeDogs(writer, batch.getSavedDogs());
+        writer.name("deletedDogIds");
+        writeStrings(writer, batch.getDeletedDogIds());
+        writer.name("deleteAllBreeds").value(batch.isDeleteAllBreeds());
+        writer.name("breeds");
+        writeBreeds(writer, batch.getSavedBreeds());
+        writer.endObject();
+    }
+
+    /**
+     * Returns dog as a JSON string, for storing it.
+     */
+    @NonNull
+    public static String dogToJson(@NonNull Dog dog) {
+        StringWriter json = new StringWriter();
+        try {
+            writeDog(new JsonWriter(json), dog);
+        } catch (IOException e) {
+            // A StringWriter doesn't throw.
+            throw new AssertionError(e);
+        }
+        return json.toString();
+    }
+
+    /**
+     * Reads back a dog stored with {@link #dogToJson(Dog)}.
+     *
+     * @throws IllegalArgumentException if json isn't a dog.
+     */
+    @NonNull
+    public static Dog dogFromJson(@NonNull String json) {
+        try {
+            return readDog(new JsonReader(new StringReader(json)));
+        } catch (IOException | IllegalStateException e) {
+            throw new IllegalArgumentException("Not a dog: " + json, e);
+        }
+    }
+
+    /**
+     * Returns breed as a JSON string, for storing it.
+     */
+    @NonNull
+    public static String breedToJson(@NonNull Breed breed) {
+        StringWriter json = new StringWriter();
+        try {
+            writeBreed(new JsonWriter(json), breed);
+        } catch (IOException e) {
+            // A StringWriter doesn't throw.
+            throw new AssertionError(e);
+        }
+        return json.toString();
+    }
+
+    /**
+     * Reads back a breed stored with {@link #breedToJson(Breed)}.
+     *
+     * @throws IllegalArgumentException if json isn't a breed.
+     */
+    @NonNull
+    public static Breed breedFromJson(@NonNull String json) {
+        try {
+            return readBreed(new JsonReader(new StringReader(json)));
+        } catch (IOException | IllegalStateException e) {
+            throw new IllegalArgumentException("Not a breed: " + json, e);
+        }
+    }
+
+    @NonNull
+    private static List<String> readStrings(@NonNull JsonReader reader) throws IOException {
+        List<String> strings = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            strings.add(reader.nextString());
+        }
+        reader.endArray();
+        return strings;
+    }
+
+    private static void writeStrings(@NonNull JsonWriter writer, @Nullable List<String> strings)
+            throws IOException {
+        writer.beginArray();
+        if (strings != null) {
+            for (String string : strings) {
+                writer.value(string);
+            }
+        }
+        writer.endArray();
+    }
+}
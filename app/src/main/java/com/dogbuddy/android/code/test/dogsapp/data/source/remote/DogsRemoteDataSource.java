@@ -1,69 +1,30 @@
-
 package com.dogbuddy.android.code.test.dogsapp.data.source.remote;
 
 import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.dogbuddy.android.code.test.dogsapp.data.Breed;
 import com.dogbuddy.android.code.test.dogsapp.data.Dog;
-import com.dogbuddy.android.code.test.dogsapp.data.DogBuilder;
-import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDataSource;
-import com.google.common.collect.Lists;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsBatch;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDelta;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsSyncDataSource;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Collection;
+import java.util.List;
 
 /**
- * Implementation of the data source that adds a latency simulating network.
+ * Implementation of the data source that adds a latency simulating network. The data lives in
+ * memory, in {@link DogsServiceData}.
  */
-public class DogsRemoteDataSource implements DogsDataSource {
+public class DogsRemoteDataSource implements DogsSyncDataSource {
 
     private static DogsRemoteDataSource INSTANCE;
 
     private static final int SERVICE_LATENCY_IN_MILLIS = 2000;
 
-    private final static Map<String, Dog> DOGS_SERVICE_DATA;
-    private final static Map<String, Breed> BREEDS_SERVICE_DATA;
-
-    static {
-        DOGS_SERVICE_DATA = new LinkedHashMap<>(2);
-        addDog("Coco", "Labrador Retriever", "0", "Male");
-        addDog("Lola", "German Shepherd", "1", "Female");
-        addDog("Pirate", "Golden Retriever", "2", "Male");
-        addDog("Chester", "French Bulldog", "3", "Male");
-        addDog("Benson", "Beagle", "4", "Male");
-        addDog("Fiona", "Poodle", "5", "Female");
-        addDog("William", "Rottweiler", "6", "Male");
-        addDog("Kiera", "Yorkshire Terrier", "7", "Female");
-        addDog("Daisy", "Pointer", "8", "Female");
-        addDog("Lark", "Boxer", "12", "Male");
-        addDog("Jane", "Siberian Huskie", "13", "Female");
-        addDog("Mary", "Dachshunds", "14", "Female");
-        addDog("William", "Great Danes", "15", "Male");
-        addDog("Olivia", "Doberman", "16", "Female");
-        addDog("Wallace", "Miniature Schnauzer", "17", "Male");
-        addDog("Poppy", "Weimaraner", "18", "Male");
-    }
-
-    static {
-        BREEDS_SERVICE_DATA = new LinkedHashMap<>(2);
-        addBreed("Labrador Retriever", "0");
-        addBreed("German Shepherd", "1");
-        addBreed("Golden Retriever", "2");
-        addBreed("French Bulldog", "3");
-        addBreed("Beagle", "4");
-        addBreed("Poodle", "5");
-        addBreed("Rottweiler", "6");
-        addBreed("Yorkshire Terrier", "7");
-        addBreed("Pointer", "8");
-        addBreed("Boxer", "12");
-        addBreed("Siberian Huskie", "13");
-        addBreed("Dachshunds", "14");
-        addBreed("Great Danes", "15");
-        addBreed("Doberman", "16");
-        addBreed("Miniature Schnauzer", "17");
-        addBreed("Weimaraner", "18");
-    }
+    private final static DogsServiceData SERVICE_DATA = DogsServiceData.seeded();
 
     public static DogsRemoteDataSource getInstance() {
         if (INSTANCE == null) {
@@ -75,21 +36,6 @@ public class DogsRemoteDataSource implements DogsDataSource {
     // Prevent direct instantiation.
     private DogsRemoteDataSource() {}
 
-    private static void addDog(String name, String breed, String id, String gender) {
-        Dog newDog = new DogBuilder()
-                .setName(name)
-                .setBreed(breed)
-                .setId(id)
-                .setGender(gender)
-                .createDog();
-        DOGS_SERVICE_DATA.put(newDog.getId(), newDog);
-    }
-
-    private static void addBreed(String breed, String id) {
-        Breed newBreed = new Breed(breed, id);
-        BREEDS_SERVICE_DATA.put(newBreed.getId(), newBreed);
-    }
-
     /**
      * Note: {@link LoadDogsCallback#onDataNotAvailable()} is never fired. In a real remote data
      * source implementation, this would be fired if the server can't be contacted or the server
@@ -97,36 +43,66 @@ public class DogsRemoteDataSource implements DogsDataSource {
      */
     @Override
     public void getDogs(final @NonNull LoadDogsCallback callback) {
+        final List<Dog> dogs = SERVICE_DATA.getDogs();
+
+        // Simulate network by delaying the execution.
+        Handler handler = new Handler();
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                callback.onDogsLoaded(dogs);
+            }
+        }, SERVICE_LATENCY_IN_MILLIS);
+    }
+
+    @Override
+    public void getDogsPage(@Nullable String afterDogId, int pageSize,
+                            final @NonNull LoadDogsCallback callback) {
+        final List<Dog> page = SERVICE_DATA.getDogsPage(afterDogId, pageSize);
+
         // Simulate network by delaying the execution.
         Handler handler = new Handler();
         handler.postDelayed(new Runnable() {
             @Override
             public void run() {
-                callback.onDogsLoaded(Lists.newArrayList(DOGS_SERVICE_DATA.values()));
+                if (page.isEmpty()) {
+                    callback.onDataNotAvailable();
+                } else {
+                    callback.onDogsLoaded(page);
+                }
             }
         }, SERVICE_LATENCY_IN_MILLIS);
     }
 
     @Override
     public void getBreeds(final @NonNull LoadBreedsCallback callback) {
+        final List<Breed> breeds = SERVICE_DATA.getBreeds();
+
         // Simulate network by delaying the execution.
         Handler handler = new Handler();
         handler.postDelayed(new Runnable() {
             @Override
             public void run() {
-                callback.onBreedsLoaded(Lists.newArrayList(BREEDS_SERVICE_DATA.values()));
+                callback.onBreedsLoaded(breeds);
             }
         }, SERVICE_LATENCY_IN_MILLIS);
     }
 
     @Override
     public void saveBreed(@NonNull Breed breed) {
-        BREEDS_SERVICE_DATA.put(breed.getId(), breed);
+        SERVICE_DATA.putBreed(breed);
+    }
+
+    @Override
+    public void saveBreeds(@NonNull List<Breed> breeds) {
+        for (Breed breed : breeds) {
+            SERVICE_DATA.putBreed(breed);
+        }
     }
 
     @Override
     public void deleteAllBreeds() {
-        BREEDS_SERVICE_DATA.clear();
+        SERVICE_DATA.removeAllBreeds();
     }
 
     /**
@@ -136,7 +112,7 @@ public class DogsRemoteDataSource implements DogsDataSource {
      */
     @Override
     public void getDog(@NonNull String dogId, final @NonNull GetDogCallback callback) {
-        final Dog dog = DOGS_SERVICE_DATA.get(dogId);
+        final Dog dog = SERVICE_DATA.getDog(dogId);
 
         // Simulate network by delaying the execution.
         Handler handler = new Handler();
@@ -148,9 +124,75 @@ public class DogsRemoteDataSource implements DogsDataSource {
         }, SERVICE_LATENCY_IN_MILLIS);
     }
 
+    @Override
+    public void getDogsByIds(@NonNull Collection<String> dogIds,
+                             final @NonNull LoadDogsCallback callback) {
+        final List<Dog> dogs = SERVICE_DATA.getDogs(dogIds);
+
+        // Simulate network by delaying the execution.
+        Handler handler = new Handler();
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (dogs.isEmpty()) {
+                    callback.onDataNotAvailable();
+                } else {
+                    callback.onDogsLoaded(dogs);
+                }
+            }
+        }, SERVICE_LATENCY_IN_MILLIS);
+    }
+
     @Override
     public void saveDog(@NonNull Dog dog) {
-        DOGS_SERVICE_DATA.put(dog.getId(), dog);
+        SERVICE_DATA.putDog(dog);
+    }
+
+    @Override
+    public void saveDogs(@NonNull List<Dog> dogs) {
+        for (Dog dog : dogs) {
+            SERVICE_DATA.putDog(dog);
+        }
+    }
+
+    /**
+     * Note: {@link ApplyBatchCallback#onBatchFailed()} is never fired. In a real remote data
+     * source implementation, this would be fired if the server can't be contacted or rejects the
+     * batch.
+     */
+    @Override
+    public void applyBatch(@NonNull final DogsBatch batch,
+                           @NonNull final ApplyBatchCallback callback) {
+        // Simulate network by delaying the execution. Called from a background thread, which
+        // has no looper.
+        Handler handler = new Handler(Looper.getMainLooper());
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                SERVICE_DATA.applyBatch(batch);
+                callback.onBatchApplied();
+            }
+        }, SERVICE_LATENCY_IN_MILLIS);
+    }
+
+    /**
+     * Note: {@link LoadChangesCallback#onDataNotAvailable()} is never fired. In a real remote data
+     * source implementation, this would be fired if the server can't be contacted or the server
+     * returns an error.
+     */
+    @Override
+    public void getChangesSince(@Nullable String cursor,
+                                final @NonNull LoadChangesCallback callback) {
+        final DogsDelta delta = SERVICE_DATA.getChangesSince(cursor);
+
+        // Simulate network by delaying the execution.
+        Handler handler = new Handler();
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                callback.onChangesLoaded(delta);
+            }
+        }, SERVICE_LATENCY_IN_MILLIS);
     }
 
     @Override
@@ -161,11 +203,11 @@ public class DogsRemoteDataSource implements DogsDataSource {
 
     @Override
     public void deleteAllDogs() {
-        DOGS_SERVICE_DATA.clear();
+        SERVICE_DATA.removeAllDogs();
     }
 
     @Override
     public void deleteDog(@NonNull String dogId) {
-        DOGS_SERVICE_DATA.remove(dogId);
+        SERVICE_DATA.removeDog(dogId);
     }
 }
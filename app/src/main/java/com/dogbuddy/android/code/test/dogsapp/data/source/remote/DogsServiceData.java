@@ -0,0 +1,350 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source.remote;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Breed;
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.dogbuddy.android.code.test.dogsapp.data.DogBuilder;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsBatch;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDelta;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The data of the dogs service, shared by the in-memory {@link DogsRemoteDataSource} and the
+ * {@link LocalDogsServer}. Safe to use from any thread.
+ * <p>
+ * Like a real server, it numbers every change with a global version, so the changes made since a
+ * sync cursor are the dogs and breeds with a greater version, plus the tombstones of the ones
+ * deleted since then. Tombstones are kept forever here; a real server would drop old ones and
+ * answer cursors older than them with a reset.
+ */
+final class DogsServiceData {
+
+    /**
+     * Number of changes returned at once by {@link #getChangesSince(String)}.
+     */
+    static final int CHANGES_PAGE_SIZE = 500;
+
+    private long mVersion = 0;
+
+    // Version and time of the last change to each table, which validate full loads of them.
+    private long mDogsVersion = 0;
+    private long mDogsModifiedAt = 0;
+    private long mBreedsVersion = 0;
+    private long mBreedsModifiedAt = 0;
+
+    private final Map<String, Dog> mDogs = new LinkedHashMap<>();
+    private final Map<String, Breed> mBreeds = new LinkedHashMap<>();
+
+    // Version of the deletion of each deleted dog and breed.
+    private final Map<String, Long> mDogTombstones = new HashMap<>();
+    private final Map<String, Long> mBreedTombstones = new HashMap<>();
+
+    /**
+     * Returns new service data holding the seed dogs and breeds.
+     */
+    static DogsServiceData seeded() {
+        DogsServiceData data = new DogsServiceData();
+        data.addDog("Coco", "Labrador Retriever", "0", "Male");
+        data.addDog("Lola", "German Shepherd", "1", "Female");
+        data.addDog("Pirate", "Golden Retriever", "2", "Male");
+        data.addDog("Chester", "French Bulldog", "3", "Male");
+        data.addDog("Benson", "Beagle", "4", "Male");
+        data.addDog("Fiona", "Poodle", "5", "Female");
+        data.addDog("William", "Rottweiler", "6", "Male");
+        data.addDog("Kiera", "Yorkshire Terrier", "7", "Female");
+        data.addDog("Daisy", "Pointer", "8", "Female");
+        data.addDog("Lark", "Boxer", "12", "Male");
+        data.addDog("Jane", "Siberian Huskie", "13", "Female");
+        data.addDog("Mary", "Dachshunds", "14", "Female");
+        data.addDog("William", "Great Danes", "15", "Male");
+        data.addDog("Olivia", "Doberman", "16", "Female");
+        data.addDog("Wallace", "Miniature Schnauzer", "17", "Male");
+        data.addDog("Poppy", "Weimaraner", "18", "Male");
+
+        data.putBreed(new Breed("Labrador Retriever", "0"));
+        data.putBreed(new Breed("German Shepherd", "1"));
+        data.putBreed(new Breed("Golden Retriever", "2"));
+        data.putBreed(new Breed("French Bulldog", "3"));
+        data.putBreed(new Breed("Beagle", "4"));
+        data.putBreed(new Breed("Poodle", "5"));
+        data.putBreed(new Breed("Rottweiler", "6"));
+        data.putBreed(new Breed("Yorkshire Terrier", "7"));
+        data.putBreed(new Breed("Pointer", "8"));
+        data.putBreed(new Breed("Boxer", "12"));
+        data.putBreed(new Breed("Siberian Huskie", "13"));
+        data.putBreed(new Breed("Dachshunds", "14"));
+        data.putBreed(new Breed("Great Danes", "15"));
+        data.putBreed(new Breed("Doberman", "16"));
+        data.putBreed(new Breed("Miniature Schnauzer", "17"));
+        data.putBreed(new Breed("Weimaraner", "18"));
+        return data;
+    }
+
+    private void addDog(String name, String breed, String id, String gender) {
+        putDog(new DogBuilder()
+                .setName(name)
+                .setBreed(breed)
+                .setId(id)
+                .setGender(gender)
+                .createDog());
+    }
+
+    @NonNull
+    synchronized List<Dog> getDogs() {
+        return new ArrayList<>(mDogs.values());
+    }
+
+    /**
+     * Returns the page of at most pageSize dogs, ordered by id, that follows the dog with
+     * afterDogId, or the first page if it's null.
+     */
+    @NonNull
+    synchronized List<Dog> getDogsPage(@Nullable String afterDogId, int pageSize) {
+        SortedMap<String, Dog> sortedDogs = new TreeMap<>(mDogs);
+        if (afterDogId != null) {
+            // tailMap is inclusive, skip the dog the previous page ended with.
+            sortedDogs = sortedDogs.tailMap(afterDogId + "\0");
+        }
+        List<Dog> page = new ArrayList<>(pageSize);
+        for (Dog dog : sortedDogs.values()) {
+            if (page.size() == pageSize) {
+                break;
+            }
+            page.add(dog);
+        }
+        return page;
+    }
+
+    @Nullable
+    synchronized Dog getDog(@NonNull String dogId) {
+        return mDogs.get(dogId);
+    }
+
+    /**
+     * Returns the dogs with dogIds, in the order of dogIds, leaving out the ones that don't exist.
+     */
+    @NonNull
+    synchronized List<Dog> getDogs(@NonNull Collection<String> dogIds) {
+        List<Dog> dogs = new ArrayList<>(dogIds.size());
+        for (String dogId : dogIds) {
+            Dog dog = mDogs.get(dogId);
+            if (dog != null) {
+                dogs.add(dog);
+            }
+        }
+        return dogs;
+    }
+
+    @NonNull
+    synchronized List<Breed> getBreeds() {
+        return new ArrayList<>(mBreeds.values());
+    }
+
+    /**
+     * Returns the version of the last change to the dogs, which changes whenever
+     * {@link #getDogs()} does.
+     */
+    synchronized long getDogsVersion() {
+        return mDogsVersion;
+    }
+
+    /**
+     * Returns the time of the last change to the dogs.
+     */
+    synchronized long getDogsModifiedAt() {
+        return mDogsModifiedAt;
+    }
+
+    /**
+     * Returns the version of the last change to the breeds, which changes whenever
+     * {@link #getBreeds()} does.
+     */
+    synchronized long getBreedsVersion() {
+        return mBreedsVersion;
+    }
+
+    /**
+     * Returns the time of the last change to the breeds.
+     */
+    synchronized long getBreedsModifiedAt() {
+        return mBreedsModifiedAt;
+    }
+
+    /**
+     * Returns the version of the last change, the cursor a sync that is up to date has.
+     */
+    synchronized long getVersion() {
+        return mVersion;
+    }
+
+    synchronized void putDog(@NonNull Dog dog) {
+        Dog versioned = new Dog(dog.getId(), dog.getName(), dog.getBreed(), dog.getGender(),
+                dog.getBirthYear(), dog.getSize(), ++mVersion, System.currentTimeMillis());
+        mDogs.put(versioned.getId(), versioned);
+        mDogTombstones.remove(versioned.getId());
+        mDogsVersion = versioned.getVersion();
+        mDogsModifiedAt = versioned.getUpdatedAt();
+    }
+
+    synchronized void removeDog(@NonNull String dogId) {
+        if (mDogs.remove(dogId) != null) {
+            mDogTombstones.put(dogId, ++mVersion);
+            mDogsVersion = mVersion;
+            mDogsModifiedAt = System.currentTimeMillis();
+        }
+    }
+
+    synchronized void removeAllDogs() {
+        for (String dogId : new ArrayList<>(mDogs.keySet())) {
+            removeDog(dogId);
+        }
+    }
+
+    synchronized void putBreed(@NonNull Breed breed) {
+        Breed versioned = new Breed(breed.getBreed(), breed.getId(), ++mVersion,
+                System.currentTimeMillis());
+        mBreeds.put(versioned.getId(), versioned);
+        mBreedTombstones.remove(versioned.getId());
+        mBreedsVersion = versioned.getVersion();
+        mBreedsModifiedAt = versioned.getUpdatedAt();
+    }
+
+    synchronized void removeAllBreeds() {
+        for (String breedId : new ArrayList<>(mBreeds.keySet())) {
+            if (mBreeds.remove(breedId) != null) {
+                mBreedTombstones.put(breedId, ++mVersion);
+                mBreedsVersion = mVersion;
+                mBreedsModifiedAt = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * Applies all the writes of batch at once.
+     */
+    synchronized void applyBatch(@NonNull DogsBatch batch) {
+        if (batch.isDeleteAllDogs()) {
+            removeAllDogs();
+        }
+        for (Dog dog : batch.getSavedDogs()) {
+            putDog(dog);
+        }
+        for (String dogId : batch.getDeletedDogIds()) {
+            removeDog(dogId);
+        }
+        if (batch.isDeleteAllBreeds()) {
+            removeAllBreeds();
+        }
+        for (Breed breed : batch.getSavedBreeds()) {
+            putBreed(breed);
+        }
+    }
+
+    /**
+     * Returns the changes made after cursor, oldest first, at most {@link #CHANGES_PAGE_SIZE} of
+     * them. A null cursor gets everything, as a reset delta.
+     *
+     * @throws NumberFormatException if cursor wasn't returned by this service.
+     */
+    @NonNull
+    DogsDelta getChangesSince(@Nullable String cursor) {
+        return getChangesSince(cursor, CHANGES_PAGE_SIZE);
+    }
+
+    /**
+     * Returns the changes made after cursor, oldest first, at most limit of them.
+     *
+     * @throws NumberFormatException if cursor wasn't returned by this service.
+     */
+    @NonNull
+    synchronized DogsDelta getChangesSince(@Nullable String cursor, int limit) {
+        if (limit <= 0) {
+            throw new NumberFormatException("Invalid limit " + limit);
+        }
+        boolean reset = cursor == null;
+        long since = reset ? 0 : Long.parseLong(cursor);
+
+        // Each change has its own version, so sorting by version gives the order they were made.
+        TreeMap<Long, Object> changes = new TreeMap<>();
+        for (Dog dog : mDogs.values()) {
+            if (dog.getVersion() > since) {
+                changes.put(dog.getVersion(), dog);
+            }
+        }
+        for (Breed breed : mBreeds.values()) {
+            if (breed.getVersion() > since) {
+                changes.put(breed.getVersion(), breed);
+            }
+        }
+        if (!reset) {
+            for (Map.Entry<String, Long> tombstone : mDogTombstones.entrySet()) {
+                if (tombstone.getValue() > since) {
+                    changes.put(tombstone.getValue(), new DogTombstone(tombstone.getKey()));
+                }
+            }
+            for (Map.Entry<String, Long> tombstone : mBreedTombstones.entrySet()) {
+                if (tombstone.getValue() > since) {
+                    changes.put(tombstone.getValue(), new BreedTombstone(tombstone.getKey()));
+                }
+            }
+        }
+
+        List<Dog> changedDogs = new ArrayList<>();
+        List<String> deletedDogIds = new ArrayList<>();
+        List<Breed> changedBreeds = new ArrayList<>();
+        List<String> deletedBreedIds = new ArrayList<>();
+        long nextCursor = mVersion;
+        int count = 0;
+        for (Map.Entry<Long, Object> change : changes.entrySet()) {
+            if (count == limit) {
+                break;
+            }
+            Object value = change.getValue();
+            if (value instanceof Dog) {
+                changedDogs.add((Dog) value);
+            } else if (value instanceof Breed) {
+                changedBreeds.add((Breed) value);
+            } else if (value instanceof DogTombstone) {
+                deletedDogIds.add(((DogTombstone) value).id);
+            } else {
+                deletedBreedIds.add(((BreedTombstone) value).id);
+            }
+            nextCursor = change.getKey();
+            count++;
+        }
+        boolean hasMore = changes.size() > count;
+        if (!hasMore) {
+            nextCursor = mVersion;
+        }
+        return new DogsDelta(String.valueOf(nextCursor), reset, hasMore, changedDogs,
+                deletedDogIds, changedBreeds, deletedBreedIds);
+    }
+
+    private static final class DogTombstone {
+
+        final String id;
+
+        DogTombstone(String id) {
+            this.id = id;
+        }
+    }
+
+    private static final class BreedTombstone {
+
+        final String id;
+
+        BreedTombstone(String id) {
+            this.id = id;
+        }
+    }
+}
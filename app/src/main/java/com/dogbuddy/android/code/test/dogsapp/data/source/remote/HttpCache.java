@@ -0,0 +1,215 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source.remote;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.Properties;
+
+/**
+ * On-disk cache of the responses of the dogs service that carry validators, so they can be asked
+ * for again with a conditional request, and read back from disk when the answer is 304 Not
+ * Modified.
+ * <p>
+ * Each resource has its body in a file of the directory, and its ETag and Last-Modified in a
+ * properties file next to them. A body is written while it's being decoded, to a temporary file
+ * that replaces the previous body only once the whole response was read. Safe to use from any
+ * thread.
+ */
+final class HttpCache {
+
+    private static final String VALIDATORS_FILE = "validators.properties";
+
+    private static final String ETAG = ".etag";
+
+    private static final String LAST_MODIFIED = ".lastModified";
+
+    private final File mDirectory;
+
+    // Guarded by this. Loaded from disk on first use.
+    private Properties mValidators;
+
+    HttpCache(@NonNull File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Makes the request of connection conditional, if the response to path is cached.
+     */
+    synchronized void addValidators(@NonNull String path, @NonNull HttpURLConnection connection) {
+        if (!bodyFile(path).isFile()) {
+            return;
+        }
+        String etag = validators().getProperty(path + ETAG);
+        if (etag != null) {
+            connection.setRequestProperty("If-None-Match", etag);
+        }
+        String lastModified = validators().getProperty(path + LAST_MODIFIED);
+        if (lastModified != null) {
+            connection.setRequestProperty("If-Modified-Since", lastModified);
+        }
+    }
+
+    /**
+     * Opens the cached body of the response to path, or returns null if it's gone.
+     */
+    @Nullable
+    synchronized InputStream openBody(@NonNull String path) {
+        try {
+            return new FileInputStream(bodyFile(path));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns an editor that saves the body of the response of connection to path as it's read,
+     * or null if the response has no validators and isn't worth keeping.
+     */
+    @Nullable
+    Editor edit(@NonNull String path, @NonNull HttpURLConnection connection) throws IOException {
+        String etag = connection.getHeaderField("ETag");
+        String lastModified = connection.getHeaderField("Last-Modified");
+        if (etag == null && lastModified == null) {
+            return null;
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return null;
+        }
+        File temporary = File.createTempFile(fileName(path), ".tmp", mDirectory);
+        return new Editor(path, etag, lastModified, temporary);
+    }
+
+    private synchronized void commit(@NonNull Editor editor) throws IOException {
+        File body = bodyFile(editor.mPath);
+        if (!editor.mTemporary.renameTo(body)) {
+            editor.mTemporary.delete();
+            throw new IOException("Can't save " + body);
+        }
+        Properties validators = validators();
+        setOrRemove(validators, editor.mPath + ETAG, editor.mEtag);
+        setOrRemove(validators, editor.mPath + LAST_MODIFIED, editor.mLastModified);
+        OutputStream out = new FileOutputStream(new File(mDirectory, VALIDATORS_FILE));
+        try {
+            validators.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+
+    private Properties validators() {
+        if (mValidators == null) {
+            mValidators = new Properties();
+            try {
+                InputStream in = new FileInputStream(new File(mDirectory, VALIDATORS_FILE));
+                try {
+                    mValidators.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                // Nothing cached yet.
+            }
+        }
+        return mValidators;
+    }
+
+    private File bodyFile(@NonNull String path) {
+        return new File(mDirectory, fileName(path) + ".json");
+    }
+
+    private static String fileName(@NonNull String path) {
+        String name = path.replaceAll("[^A-Za-z0-9]+", "_");
+        // File.createTempFile needs a prefix of three characters at least.
+        return name.length() < 3 ? "res" + name : name;
+    }
+
+    private static void setOrRemove(Properties properties, String key, @Nullable String value) {
+        if (value == null) {
+            properties.remove(key);
+        } else {
+            properties.setProperty(key, value);
+        }
+    }
+
+    /**
+     * Saves one response body. Either {@link #commit()} or {@link #abort()} it.
+     */
+    final class Editor {
+
+        private final String mPath;
+
+        private final String mEtag;
+
+        private final String mLastModified;
+
+        private final File mTemporary;
+
+        private OutputStream mOut;
+
+        private Editor(String path, @Nullable String etag, @Nullable String lastModified,
+                       File temporary) {
+            mPath = path;
+            mEtag = etag;
+            mLastModified = lastModified;
+            mTemporary = temporary;
+        }
+
+        /**
+         * Returns a stream that reads in and copies what it reads to the cache.
+         */
+        InputStream copying(@NonNull InputStream in) throws IOException {
+            mOut = new FileOutputStream(mTemporary);
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) {
+                        mOut.write(b);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(@NonNull byte[] buffer, int offset, int length)
+                        throws IOException {
+                    int count = super.read(buffer, offset, length);
+                    if (count > 0) {
+                        mOut.write(buffer, offset, count);
+                    }
+                    return count;
+                }
+            };
+        }
+
+        /**
+         * Reads what is left of copying, and replaces the cached response with it.
+         */
+        void commit(@NonNull InputStream copying) throws IOException {
+            byte[] buffer = new byte[1024];
+            while (copying.read(buffer) != -1) {
+                // Copied as it's read.
+            }
+            mOut.close();
+            HttpCache.this.commit(this);
+        }
+
+        void abort() {
+            try {
+                if (mOut != null) {
+                    mOut.close();
+                }
+            } catch (IOException e) {
+                // Deleted anyway.
+            }
+            mTemporary.delete();
+        }
+    }
+}
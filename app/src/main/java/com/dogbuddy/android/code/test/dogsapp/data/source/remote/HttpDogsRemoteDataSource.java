@@ -0,0 +1,674 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source.remote;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Breed;
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.dogbuddy.android.code.test.dogsapp.data.source.CancellableDogsDataSource;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsBatch;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDelta;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsSyncDataSource;
+import com.dogbuddy.android.code.test.dogsapp.util.AppExecutors;
+import com.dogbuddy.android.code.test.dogsapp.util.CancellationToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Implementation of the data source that talks to the dogs service over HTTP, see
+ * {@link LocalDogsServer} for its routes.
+ * <p>
+ * Requests run on the network executor and callbacks on the main thread. Responses are parsed
+ * as they are read, with {@link DogsJson}, and always read to the end and closed so the
+ * connection goes back to the keep-alive pool of {@link HttpURLConnection} and is reused by the
+ * next request. Single writes are sent as one-write batches.
+ * <p>
+ * The full lists of dogs and breeds are kept in an {@link HttpCache} and asked for again
+ * conditionally. When the service answers 304 Not Modified, a
+ * {@link ConditionalLoadDogsCallback} is told so and nothing is decoded, other callbacks get the
+ * cached list. The changes since a cursor are asked for with the cursor as validator, and a 304
+ * gives an empty delta.
+ * <p>
+ * A cancelled load is dropped if it didn't start, and its request is aborted if it's in flight:
+ * the connection is closed instead of being read to the end.
+ */
+public class HttpDogsRemoteDataSource implements DogsSyncDataSource, CancellableDogsDataSource {
+
+    /**
+     * Number of changes asked for at once by {@link #getChangesSince}. A page is decoded straight
+     * into the lists the local data source inserts in one transaction, so this bounds the memory
+     * a sync takes, however many dogs there are.
+     */
+    static final int CHANGES_PAGE_SIZE = 500;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+
+    private static final int READ_TIMEOUT_MILLIS = 15000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Decoder<List<Dog>> DOGS_DECODER = new Decoder<List<Dog>>() {
+        @Override
+        public List<Dog> decode(@NonNull JsonReader reader) throws IOException {
+            return DogsJson.readDogs(reader);
+        }
+    };
+
+    private static final Decoder<List<Breed>> BREEDS_DECODER = new Decoder<List<Breed>>() {
+        @Override
+        public List<Breed> decode(@NonNull JsonReader reader) throws IOException {
+            return DogsJson.readBreeds(reader);
+        }
+    };
+
+    private static volatile HttpDogsRemoteDataSource INSTANCE;
+
+    private final String mBaseUrl;
+
+    private final HttpCache mCache;
+
+    private final Executor mNetworkIO;
+
+    private final Executor mMainThread;
+
+    /**
+     * @param cacheDirectory where responses are cached, created if needed
+     */
+    @VisibleForTesting
+    HttpDogsRemoteDataSource(@NonNull String baseUrl, @NonNull File cacheDirectory,
+                             @NonNull Executor networkIO, @NonNull Executor mainThread) {
+        mBaseUrl = checkNotNull(baseUrl);
+        mCache = new HttpCache(checkNotNull(cacheDirectory));
+        mNetworkIO = checkNotNull(networkIO);
+        mMainThread = checkNotNull(mainThread);
+    }
+
+    public static HttpDogsRemoteDataSource getInstance(@NonNull AppExecutors appExecutors,
+                                                       @NonNull String baseUrl,
+                                                       @NonNull File cacheDirectory) {
+        if (INSTANCE == null) {
+            synchronized (HttpDogsRemoteDataSource.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new HttpDogsRemoteDataSource(baseUrl, cacheDirectory,
+                            appExecutors.networkIO(), appExecutors.mainThread());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    @Override
+    public void getDogs(@NonNull LoadDogsCallback callback) {
+        getDogs(CancellationToken.NONE, callback);
+    }
+
+    @Override
+    public void getDogs(@NonNull final CancellationToken token,
+                        @NonNull final LoadDogsCallback callback) {
+        checkNotNull(token);
+        mNetworkIO.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (token.isCancelled()) {
+                    return;
+                }
+                final CachedLoad<List<Dog>> load = getCached("/dogs",
+                        callback instanceof ConditionalLoadDogsCallback, DOGS_DECODER, token);
+                mMainThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (token.isCancelled()) {
+                            return;
+                        }
+                        if (load.mNotModified) {
+                            ((ConditionalLoadDogsCallback) callback).onNotModified();
+                        } else if (load.mValue == null) {
+                            callback.onDataNotAvailable();
+                        } else {
+                            callback.onDogsLoaded(load.mValue);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void getDogsPage(@Nullable String afterDogId, int pageSize,
+                            @NonNull LoadDogsCallback callback) {
+        getDogsPage(afterDogId, pageSize, CancellationToken.NONE, callback);
+    }
+
+    @Override
+    public void getDogsPage(@Nullable final String afterDogId, final int pageSize,
+                            @NonNull final CancellationToken token,
+                            @NonNull final LoadDogsCallback callback) {
+        checkNotNull(token);
+        mNetworkIO.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (token.isCancelled()) {
+                    return;
+                }
+                String path = "/dogs?limit=" + pageSize;
+                if (afterDogId != null) {
+                    path += "&after=" + encode(afterDogId);
+                }
+                final List<Dog> page = getDogsNow(path, token);
+                mMainThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (token.isCancelled()) {
+                            return;
+                        }
+                        if (page == null || page.isEmpty()) {
+                            callback.onDataNotAvailable();
+                        } else {
+                            callback.onDogsLoaded(page);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void getDog(@NonNull String dogId, @NonNull GetDogCallback callback) {
+        getDog(dogId, CancellationToken.NONE, callback);
+    }
+
+    @Override
+    public void getDog(@NonNull final String dogId, @NonNull final CancellationToken token,
+                       @NonNull final GetDogCallback callback) {
+        checkNotNull(token);
+        mNetworkIO.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (token.isCancelled()) {
+                    return;
+                }
+                Dog dog = null;
+                HttpURLConnection connection = null;
+                Runnable abort = null;
+                try {
+                    connection = open("/dogs/" + encode(dogId));
+                    abort = abortOnCancel(connection, token);
+                    if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
+                        JsonReader reader = newReader(connection);
+                        dog = DogsJson.readDog(reader);
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    dog = null;
+                } finally {
+                    if (abort != null) {
+                        token.removeListener(abort);
+                    }
+                    release(connection, token);
+                }
+                final Dog loaded = dog;
+                mMainThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (token.isCancelled()) {
+                            return;
+                        }
+                        if (loaded == null) {
+                            callback.onDataNotAvailable();
+                        } else {
+                            callback.onDogLoaded(loaded);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Asks for all the dogs with one {@code GET /dogs?ids=}. Each id is encoded twice, so the
+     * commas that separate them are still the only ones once the query is decoded.
+     */
+    @Override
+    public void getDogsByIds(@NonNull Collection<String> dogIds,
+                             @NonNull LoadDogsCallback callback) {
+        getDogsByIds(dogIds, CancellationToken.NONE, callback);
+    }
+
+    @Override
+    public void getDogsByIds(@NonNull Collection<String> dogIds,
+                             @NonNull final CancellationToken token,
+                             @NonNull final LoadDogsCallback callback) {
+        final List<String> ids = new ArrayList<>(checkNotNull(dogIds));
+        checkNotNull(token);
+        checkNotNull(callback);
+        mNetworkIO.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (token.isCancelled()) {
+                    return;
+                }
+                StringBuilder path = new StringBuilder("/dogs?ids=");
+                for (int i = 0; i < ids.size(); i++) {
+                    if (i > 0) {
+                        path.append(',');
+                    }
+                    path.append(encode(encode(ids.get(i))));
+                }
+                final List<Dog> dogs = getDogsNow(path.toString(), token);
+                mMainThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (token.isCancelled()) {
+                            return;
+                        }
+                        if (dogs == null || dogs.isEmpty()) {
+                            callback.onDataNotAvailable();
+                        } else {
+                            callback.onDogsLoaded(dogs);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void getBreeds(@NonNull LoadBreedsCallback callback) {
+        getBreeds(CancellationToken.NONE, callback);
+    }
+
+    @Override
+    public void getBreeds(@NonNull final CancellationToken token,
+                          @NonNull final LoadBreedsCallback callback) {
+        checkNotNull(token);
+        mNetworkIO.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (token.isCancelled()) {
+                    return;
+                }
+                final CachedLoad<List<Breed>> load = getCached("/breeds",
+                        callback instanceof ConditionalLoadBreedsCallback, BREEDS_DECODER, token);
+                mMainThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (token.isCancelled()) {
+                            return;
+                        }
+                        if (load.mNotModified) {
+                            ((ConditionalLoadBreedsCallback) callback).onNotModified();
+                        } else if (load.mValue == null) {
+                            callback.onDataNotAvailable();
+                        } else {
+                            callback.onBreedsLoaded(load.mValue);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void getChangesSince(@Nullable final String cursor,
+                                @NonNull final LoadChangesCallback callback) {
+        mNetworkIO.execute(new Runnable() {
+            @Override
+            public void run() {
+                DogsDelta delta = null;
+                HttpURLConnection connection = null;
+                try {
+                    String path = "/changes?limit=" + CHANGES_PAGE_SIZE;
+                    if (cursor != null) {
+                        path += "&since=" + encode(cursor);
+                    }
+                    connection = open(path);
+                    if (cursor != null) {
+                        connection.setRequestProperty("If-None-Match", "\"" + cursor + "\"");
+                    }
+                    int code = connection.getResponseCode();
+                    if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                        delta = new DogsDelta(cursor, false, false, Collections.<Dog>emptyList(),
+                                Collections.<String>emptyList(), Collections.<Breed>emptyList(),
+                                Collections.<String>emptyList());
+                    } else if (code == HttpURLConnection.HTTP_OK) {
+                        delta = DogsJson.readDelta(newReader(connection));
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    delta = null;
+                } finally {
+                    release(connection);
+                }
+                final DogsDelta loaded = delta;
+                mMainThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (loaded == null) {
+                            callback.onDataNotAvailable();
+                        } else {
+                            callback.onChangesLoaded(loaded);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void applyBatch(@NonNull final DogsBatch batch,
+                           @NonNull final ApplyBatchCallback callback) {
+        mNetworkIO.execute(new Runnable() {
+            @Override
+            public void run() {
+                final boolean applied = postBatchNow(batch);
+                mMainThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (applied) {
+                            callback.onBatchApplied();
+                        } else {
+                            callback.onBatchFailed();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void saveDog(@NonNull Dog dog) {
+        postBatch(new DogsBatch(false, Collections.singletonList(dog),
+                Collections.<String>emptyList(), false, Collections.<Breed>emptyList()));
+    }
+
+    @Override
+    public void saveDogs(@NonNull List<Dog> dogs) {
+        postBatch(new DogsBatch(false, dogs, Collections.<String>emptyList(), false,
+                Collections.<Breed>emptyList()));
+    }
+
+    @Override
+    public void deleteDog(@NonNull String dogId) {
+        postBatch(new DogsBatch(false, Collections.<Dog>emptyList(),
+                Collections.singletonList(dogId), false, Collections.<Breed>emptyList()));
+    }
+
+    @Override
+    public void deleteAllDogs() {
+        postBatch(new DogsBatch(true, Collections.<Dog>emptyList(),
+                Collections.<String>emptyList(), false, Collections.<Breed>emptyList()));
+    }
+
+    @Override
+    public void saveBreed(@NonNull Breed breed) {
+        postBatch(new DogsBatch(false, Collections.<Dog>emptyList(),
+                Collections.<String>emptyList(), false, Collections.singletonList(breed)));
+    }
+
+    @Override
+    public void saveBreeds(@NonNull List<Breed> breeds) {
+        postBatch(new DogsBatch(false, Collections.<Dog>emptyList(),
+                Collections.<String>emptyList(), false, breeds));
+    }
+
+    @Override
+    public void deleteAllBreeds() {
+        postBatch(new DogsBatch(false, Collections.<Dog>emptyList(),
+                Collections.<String>emptyList(), true, Collections.<Breed>emptyList()));
+    }
+
+    @Override
+    public void refreshDogs() {
+        // Not required because the {@link DogsRepository} handles the logic of refreshing the
+        // dogs from all the available data sources.
+    }
+
+    /**
+     * Fire and forget, like the writes of the other remote data sources. The outbox is the one
+     * that retries.
+     */
+    private void postBatch(@NonNull final DogsBatch batch) {
+        mNetworkIO.execute(new Runnable() {
+            @Override
+            public void run() {
+                postBatchNow(batch);
+            }
+        });
+    }
+
+    private boolean postBatchNow(@NonNull DogsBatch batch) {
+        HttpURLConnection connection = null;
+        try {
+            connection = open("/batch");
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            // Streamed without buffering the whole body, unlike the default.
+            connection.setChunkedStreamingMode(0);
+            JsonWriter writer = new JsonWriter(new OutputStreamWriter(
+                    new BufferedOutputStream(connection.getOutputStream()), UTF_8));
+            DogsJson.writeBatch(writer, batch);
+            writer.close();
+            int code = connection.getResponseCode();
+            return code >= 200 && code < 300;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            release(connection);
+        }
+    }
+
+    @Nullable
+    private List<Dog> getDogsNow(@NonNull String path, @NonNull CancellationToken token) {
+        HttpURLConnection connection = null;
+        Runnable abort = null;
+        try {
+            connection = open(path);
+            abort = abortOnCancel(connection, token);
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                return null;
+            }
+            return DogsJson.readDogs(newReader(connection));
+        } catch (IOException | IllegalStateException e) {
+            return null;
+        } finally {
+            if (abort != null) {
+                token.removeListener(abort);
+            }
+            release(connection, token);
+        }
+    }
+
+    /**
+     * Loads the resource at path, conditionally if it's cached.
+     *
+     * @param reuse whether the caller can reuse what it has when nothing changed, instead of
+     *              getting the cached resource
+     */
+    @NonNull
+    private <T> CachedLoad<T> getCached(@NonNull String path, boolean reuse,
+                                        @NonNull Decoder<T> decoder,
+                                        @NonNull CancellationToken token) {
+        HttpURLConnection connection = null;
+        Runnable abort = null;
+        HttpCache.Editor editor = null;
+        try {
+            connection = open(path);
+            abort = abortOnCancel(connection, token);
+            mCache.addValidators(path, connection);
+            int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                if (reuse) {
+                    return CachedLoad.notModified();
+                }
+                InputStream cached = mCache.openBody(path);
+                if (cached == null) {
+                    return CachedLoad.failed();
+                }
+                try {
+                    return CachedLoad.of(decoder.decode(new JsonReader(new InputStreamReader(
+                            new BufferedInputStream(cached), UTF_8))));
+                } finally {
+                    cached.close();
+                }
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                return CachedLoad.failed();
+            }
+            editor = mCache.edit(path, connection);
+            if (editor == null) {
+                return CachedLoad.of(decoder.decode(newReader(connection)));
+            }
+            InputStream copying = editor.copying(connection.getInputStream());
+            T value = decoder.decode(new JsonReader(new InputStreamReader(
+                    new BufferedInputStream(copying), UTF_8)));
+            editor.commit(copying);
+            editor = null;
+            return CachedLoad.of(value);
+        } catch (IOException | IllegalStateException e) {
+            return CachedLoad.failed();
+        } finally {
+            if (editor != null) {
+                editor.abort();
+            }
+            if (abort != null) {
+                token.removeListener(abort);
+            }
+            release(connection, token);
+        }
+    }
+
+    private HttpURLConnection open(@NonNull String path) throws IOException {
+        HttpURLConnection connection =
+                (HttpURLConnection) new URL(mBaseUrl + path).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setRequestProperty("Accept", "application/json");
+        return connection;
+    }
+
+    private static JsonReader newReader(@NonNull HttpURLConnection connection)
+            throws IOException {
+        return new JsonReader(new InputStreamReader(
+                new BufferedInputStream(connection.getInputStream()), UTF_8));
+    }
+
+    /**
+     * Disconnects connection if token is cancelled while the request is in flight, which makes
+     * the read or write it's blocked on throw.
+     *
+     * @return the listener to remove from token once the request is done
+     */
+    @NonNull
+    private static Runnable abortOnCancel(@NonNull final HttpURLConnection connection,
+                                          @NonNull CancellationToken token) {
+        Runnable abort = new Runnable() {
+            @Override
+            public void run() {
+                connection.disconnect();
+            }
+        };
+        token.addListener(abort);
+        return abort;
+    }
+
+    private static void release(@Nullable HttpURLConnection connection) {
+        release(connection, CancellationToken.NONE);
+    }
+
+    /**
+     * Reads what is left of the response and closes it, which returns the connection to the
+     * pool. Disconnecting would close the socket instead, which is what is done when token is
+     * cancelled: what is left of an abandoned response isn't worth reading.
+     */
+    private static void release(@Nullable HttpURLConnection connection,
+                                @NonNull CancellationToken token) {
+        if (connection == null) {
+            return;
+        }
+        if (token.isCancelled()) {
+            connection.disconnect();
+            return;
+        }
+        InputStream in = null;
+        try {
+            in = connection.getResponseCode() < HttpURLConnection.HTTP_BAD_REQUEST
+                    ? connection.getInputStream() : connection.getErrorStream();
+            if (in != null) {
+                byte[] buffer = new byte[1024];
+                while (in.read(buffer) != -1) {
+                    // Drain.
+                }
+            }
+        } catch (IOException e) {
+            // The connection is dropped instead of reused.
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing to do.
+                }
+            }
+        }
+    }
+
+    private static String encode(@NonNull String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private interface Decoder<T> {
+
+        T decode(@NonNull JsonReader reader) throws IOException;
+    }
+
+    /**
+     * Outcome of {@link #getCached}: the resource, not modified, or failed if neither.
+     */
+    private static final class CachedLoad<T> {
+
+        @Nullable
+        final T mValue;
+
+        final boolean mNotModified;
+
+        private CachedLoad(@Nullable T value, boolean notModified) {
+            mValue = value;
+            mNotModified = notModified;
+        }
+
+        static <T> CachedLoad<T> of(@NonNull T value) {
+            return new CachedLoad<>(value, false);
+        }
+
+        static <T> CachedLoad<T> notModified() {
+            return new CachedLoad<>(null, true);
+        }
+
+        static <T> CachedLoad<T> failed() {
+            return new CachedLoad<>(null, false);
+        }
+    }
+}
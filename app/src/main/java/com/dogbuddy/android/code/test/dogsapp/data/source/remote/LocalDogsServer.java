@@ -0,0 +1,422 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source.remote;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsBatch;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small HTTP/1.1 server, bound to the loopback interface, that serves the seed dogs and breeds
+ * the way the dogs service does. Lets {@link HttpDogsRemoteDataSource} be run, tested and
+ * benchmarked end to end on a machine with no network.
+ * <p>
+ * Connections are kept alive, so the number of accepted connections tells whether a client
+ * reuses them. The full lists of dogs and breeds carry an ETag and a Last-Modified, and are
+ * answered with 304 Not Modified to a request that has the current ones; so are the changes to a
+ * request whose If-None-Match is the quoted cursor of a sync that is up to date. Routes:
+ * <ul>
+ * <li>{@code GET /dogs}, or one page of them with {@code ?after=<dogId>&limit=<size>}, or the
+ * ones with the comma separated, URL encoded ids of {@code ?ids=<dogId>,<dogId>}</li>
+ * <li>{@code GET /dogs/<dogId>}, 404 if there is no such dog</li>
+ * <li>{@code GET /breeds}</li>
+ * <li>{@code GET /changes?since=<cursor>&limit=<size>}, everything if the cursor is missing,
+ * in pages of at most size changes</li>
+ * <li>{@code POST /batch} with a {@link DogsBatch}, 204 once applied</li>
+ * </ul>
+ */
+public final class LocalDogsServer implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final DogsServiceData mData = DogsServiceData.seeded();
+
+    private final AtomicInteger mConnectionCount = new AtomicInteger();
+
+    private final ExecutorService mConnections = Executors.newCachedThreadPool(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, "local-dogs-server");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private ServerSocket mServerSocket;
+
+    /**
+     * Starts the server on a free port.
+     */
+    public void start() throws IOException {
+        start(0);
+    }
+
+    public synchronized void start(int port) throws IOException {
+        if (mServerSocket != null) {
+            throw new IllegalStateException("Already started");
+        }
+        mServerSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+        final ServerSocket serverSocket = mServerSocket;
+        mConnections.execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections(serverSocket);
+            }
+        });
+    }
+
+    /**
+     * Returns the URL the routes are relative to, like {@code http://127.0.0.1:4242}.
+     */
+    @NonNull
+    public synchronized String getBaseUrl() {
+        if (mServerSocket == null) {
+            throw new IllegalStateException("Not started");
+        }
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the number of connections accepted so far.
+     */
+    public int getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (mServerSocket != null) {
+            mServerSocket.close();
+        }
+        mConnections.shutdownNow();
+    }
+
+    private void acceptConnections(ServerSocket serverSocket) {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                mConnectionCount.incrementAndGet();
+                mConnections.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serveConnection(socket);
+                    }
+                });
+            } catch (IOException e) {
+                // Closed, or the accept failed; the loop checks which.
+            }
+        }
+    }
+
+    private void serveConnection(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            while (serveRequest(in, out)) {
+                out.flush();
+            }
+            out.flush();
+        } catch (SocketException | EOFException e) {
+            // The client went away.
+        } catch (IOException e) {
+            // Nothing to answer to anymore.
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed.
+            }
+        }
+    }
+
+    /**
+     * Reads one request from in and writes its response to out. Returns whether the connection
+     * is kept alive for another request.
+     */
+    private boolean serveRequest(InputStream in, OutputStream out) throws IOException {
+        String requestLine = readLine(in);
+        if (requestLine == null || requestLine.isEmpty()) {
+            return false;
+        }
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(),
+                        line.substring(colon + 1).trim());
+            }
+        }
+        String[] parts = requestLine.split(" ");
+        if (parts.length != 3) {
+            writeResponse(out, 400, null, false);
+            return false;
+        }
+        byte[] body = "chunked".equalsIgnoreCase(headers.get("transfer-encoding"))
+                ? readChunkedBody(in) : readBody(in, headers.get("content-length"));
+        boolean keepAlive = !"close".equalsIgnoreCase(headers.get("connection"))
+                && "HTTP/1.1".equals(parts[2]);
+
+        String method = parts[0];
+        String target = parts[1];
+        int query = target.indexOf('?');
+        String path = query < 0 ? target : target.substring(0, query);
+        Map<String, String> params = parseQuery(query < 0 ? null : target.substring(query + 1));
+
+        try {
+            route(method, path, params, headers, body, out, keepAlive);
+        } catch (NumberFormatException | IllegalStateException e) {
+            writeResponse(out, 400, null, keepAlive);
+        }
+        return keepAlive;
+    }
+
+    private void route(String method, String path, Map<String, String> params,
+                       Map<String, String> headers, byte[] body, OutputStream out,
+                       boolean keepAlive) throws IOException {
+        // Responses carry their length, so they are written to memory before being sent.
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(json, UTF_8));
+        // Validators of full loads. Read before the data, so they are never newer than it.
+        String etag = null;
+        long lastModified = 0;
+        if ("GET".equals(method) && "/dogs".equals(path)) {
+            if (params.containsKey("ids")) {
+                List<String> dogIds = new ArrayList<>();
+                for (String dogId : params.get("ids").split(",")) {
+                    dogIds.add(URLDecoder.decode(dogId, "UTF-8"));
+                }
+                DogsJson.writeDogs(writer, mData.getDogs(dogIds));
+            } else if (params.containsKey("limit")) {
+                DogsJson.writeDogs(writer, mData.getDogsPage(params.get("after"),
+                        Integer.parseInt(params.get("limit"))));
+            } else {
+                etag = "\"dogs-" + mData.getDogsVersion() + "\"";
+                lastModified = mData.getDogsModifiedAt();
+                if (isNotModified(headers, etag, lastModified)) {
+                    writeResponse(out, 304, null, keepAlive, etag, lastModified);
+                    return;
+                }
+                DogsJson.writeDogs(writer, mData.getDogs());
+            }
+        } else if ("GET".equals(method) && path.startsWith("/dogs/")) {
+            Dog dog = mData.getDog(URLDecoder.decode(path.substring("/dogs/".length()), "UTF-8"));
+            if (dog == null) {
+                writeResponse(out, 404, null, keepAlive);
+                return;
+            }
+            DogsJson.writeDog(writer, dog);
+        } else if ("GET".equals(method) && "/breeds".equals(path)) {
+            etag = "\"breeds-" + mData.getBreedsVersion() + "\"";
+            lastModified = mData.getBreedsModifiedAt();
+            if (isNotModified(headers, etag, lastModified)) {
+                writeResponse(out, 304, null, keepAlive, etag, lastModified);
+                return;
+            }
+            DogsJson.writeBreeds(writer, mData.getBreeds());
+        } else if ("GET".equals(method) && "/changes".equals(path)) {
+            // The cursor of a sync that is up to date is the current version.
+            String upToDate = "\"" + mData.getVersion() + "\"";
+            if (upToDate.equals(headers.get("if-none-match"))) {
+                writeResponse(out, 304, null, keepAlive, upToDate, 0);
+                return;
+            }
+            DogsJson.writeDelta(writer, params.containsKey("limit")
+                    ? mData.getChangesSince(params.get("since"),
+                            Integer.parseInt(params.get("limit")))
+                    : mData.getChangesSince(params.get("since")));
+        } else if ("POST".equals(method) && "/batch".equals(path)) {
+            JsonReader reader = new JsonReader(
+                    new InputStreamReader(new ByteArrayInputStream(body), UTF_8));
+            mData.applyBatch(DogsJson.readBatch(reader));
+            writeResponse(out, 204, null, keepAlive);
+            return;
+        } else {
+            writeResponse(out, 404, null, keepAlive);
+            return;
+        }
+        writer.flush();
+        writeResponse(out, 200, json.toByteArray(), keepAlive, etag, lastModified);
+    }
+
+    /**
+     * Whether the validators of a conditional request match the current ones. As in HTTP, an
+     * If-None-Match takes precedence over an If-Modified-Since.
+     */
+    private static boolean isNotModified(Map<String, String> headers, String etag,
+                                         long lastModified) {
+        String ifNoneMatch = headers.get("if-none-match");
+        if (ifNoneMatch != null) {
+            return ifNoneMatch.equals(etag);
+        }
+        String ifModifiedSince = headers.get("if-modified-since");
+        if (ifModifiedSince == null) {
+            return false;
+        }
+        try {
+            // HTTP dates have no milliseconds.
+            return httpDateFormat().parse(ifModifiedSince).getTime() >= lastModified / 1000 * 1000;
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+    private static SimpleDateFormat httpDateFormat() {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format;
+    }
+
+    private static void writeResponse(OutputStream out, int status, @Nullable byte[] body,
+                                      boolean keepAlive) throws IOException {
+        writeResponse(out, status, body, keepAlive, null, 0);
+    }
+
+    private static void writeResponse(OutputStream out, int status, @Nullable byte[] body,
+                                      boolean keepAlive, @Nullable String etag,
+                                      long lastModified) throws IOException {
+        StringBuilder head = new StringBuilder()
+                .append("HTTP/1.1 ").append(status).append(' ').append(reason(status))
+                .append("\r\n");
+        if (body != null) {
+            head.append("Content-Type: application/json; charset=utf-8\r\n");
+        }
+        if (status != 204 && status != 304) {
+            head.append("Content-Length: ").append(body == null ? 0 : body.length)
+                    .append("\r\n");
+        }
+        if (etag != null) {
+            head.append("ETag: ").append(etag).append("\r\n");
+        }
+        if (lastModified > 0) {
+            head.append("Last-Modified: ").append(httpDateFormat().format(new Date(lastModified)))
+                    .append("\r\n");
+        }
+        head.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n")
+                .append("\r\n");
+        out.write(head.toString().getBytes(UTF_8));
+        if (body != null) {
+            out.write(body);
+        }
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 204:
+                return "No Content";
+            case 304:
+                return "Not Modified";
+            case 400:
+                return "Bad Request";
+            default:
+                return "Not Found";
+        }
+    }
+
+    @Nullable
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    private static byte[] readBody(InputStream in, @Nullable String contentLength)
+            throws IOException {
+        int length = contentLength == null ? 0 : Integer.parseInt(contentLength);
+        byte[] body = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int count = in.read(body, read, length - read);
+            if (count == -1) {
+                throw new EOFException();
+            }
+            read += count;
+        }
+        return body;
+    }
+
+    private static byte[] readChunkedBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        while (true) {
+            String sizeLine = readLine(in);
+            if (sizeLine == null) {
+                throw new EOFException();
+            }
+            int extension = sizeLine.indexOf(';');
+            int size = Integer.parseInt(
+                    (extension < 0 ? sizeLine : sizeLine.substring(0, extension)).trim(), 16);
+            if (size == 0) {
+                // Skip the trailers up to the empty line that ends the body.
+                String trailer;
+                while ((trailer = readLine(in)) != null && !trailer.isEmpty()) {
+                    // Ignored.
+                }
+                return body.toByteArray();
+            }
+            body.write(readBody(in, String.valueOf(size)));
+            readLine(in);
+        }
+    }
+
+    private static Map<String, String> parseQuery(@Nullable String query)
+            throws IOException {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+}
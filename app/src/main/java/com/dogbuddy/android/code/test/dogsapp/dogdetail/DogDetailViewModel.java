@@ -15,6 +15,7 @@ import com.dogbuddy.android.code.test.dogsapp.data.Dog;
 import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDataSource;
 import com.dogbuddy.android.code.test.dogsapp.data.source.DogsRepository;
 import com.dogbuddy.android.code.test.dogsapp.dogs.DogsFragment;
+import com.dogbuddy.android.code.test.dogsapp.util.CancellationToken;
 
 
 /**
@@ -33,6 +34,9 @@ public class DogDetailViewModel extends AndroidViewModel implements DogsDataSour
 
     private final SnackbarMessage mSnackbarText = new SnackbarMessage();
 
+    // Cancelled when the ViewModel is cleared, so the loads it started stop.
+    private final CancellationToken mLoads = new CancellationToken();
+
     private boolean mIsDataLoading;
 
     public DogDetailViewModel(Application context, DogsRepository tasksRepository) {
@@ -66,7 +70,7 @@ public class DogDetailViewModel extends AndroidViewModel implements DogsDataSour
     public void start(String dogId) {
         if (dogId != null) {
             mIsDataLoading = true;
-            mDogsRepository.getDog(dogId, this);
+            mDogsRepository.getDog(dogId, mLoads, this);
         }
     }
 
@@ -100,6 +104,11 @@ public class DogDetailViewModel extends AndroidViewModel implements DogsDataSour
         }
     }
 
+    @Override
+    protected void onCleared() {
+        mLoads.cancel();
+    }
+
     @Nullable
     protected String getDogId() {
         return dog.get().getId();
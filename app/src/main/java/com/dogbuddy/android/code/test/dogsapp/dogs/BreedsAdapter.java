@@ -2,7 +2,7 @@
 
 package com.dogbuddy.android.code.test.dogsapp.dogs;
 
-import android.databinding.DataBindingUtil;
+import android.support.annotation.NonNull;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -12,6 +12,7 @@ import android.widget.BaseAdapter;
 import com.dogbuddy.android.code.test.dogsapp.addeditdog.AddEditDogViewModel;
 import com.dogbuddy.android.code.test.dogsapp.data.Breed;
 import com.dogbuddy.android.code.test.dogsapp.databinding.BreedSpinnerItemBinding;
+import com.dogbuddy.android.code.test.dogsapp.util.StableIds;
 
 import java.util.List;
 
@@ -22,6 +23,18 @@ public class BreedsAdapter extends BaseAdapter {
 
     private List<Breed> mBreeds;
 
+    /**
+     * Shares one listener between all the rows, the clicked breed comes from the row binding.
+     */
+    private final RowBinder<Breed, BreedItemUserActionsListener> mRowBinder =
+            new RowBinder<Breed, BreedItemUserActionsListener>(
+                    new BreedItemUserActionsListener() {
+                        @Override
+                        public void onBreedClicked(Breed breed) {
+                            mAddEditDogViewModel.breed.set(breed.getBreed());
+                        }
+                    });
+
     public BreedsAdapter(List<Breed> breeds,
                          AddEditDogViewModel addEditDogViewModel) {
         mAddEditDogViewModel = addEditDogViewModel;
@@ -45,36 +58,32 @@ public class BreedsAdapter extends BaseAdapter {
 
     @Override
     public long getItemId(int position) {
-        return position;
+        return StableIds.of(mBreeds.get(position).getId());
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
     }
 
     @Override
     public View getView(int position, final View view, final ViewGroup viewGroup) {
-        BreedSpinnerItemBinding binding;
+        BreedRow row;
         if (view == null) {
             // Inflate
             LayoutInflater inflater = LayoutInflater.from(viewGroup.getContext());
 
             // Create the binding
-            binding = BreedSpinnerItemBinding.inflate(inflater, viewGroup, false);
+            row = new BreedRow(BreedSpinnerItemBinding.inflate(inflater, viewGroup, false));
+            row.binding.getRoot().setTag(row);
+            mRowBinder.onCreate(row);
         } else {
             // Recycling view
-            binding = DataBindingUtil.getBinding(view);
+            row = (BreedRow) view.getTag();
         }
 
-        BreedItemUserActionsListener userActionsListener = new BreedItemUserActionsListener() {
-            @Override
-            public void onBreedClicked(Breed breed) {
-                mAddEditDogViewModel.breed.set(breed.getBreed());
-            }
-        };
-
-        binding.setBreed(mBreeds.get(position));
-
-        binding.setListener(userActionsListener);
-
-        binding.executePendingBindings();
-        return binding.getRoot();
+        mRowBinder.onBind(row, mBreeds.get(position));
+        return row.binding.getRoot();
     }
 
 
@@ -82,4 +91,26 @@ public class BreedsAdapter extends BaseAdapter {
         mBreeds = breeds;
         notifyDataSetChanged();
     }
+
+    private static final class BreedRow
+            implements RowBinder.Row<Breed, BreedItemUserActionsListener> {
+
+        final BreedSpinnerItemBinding binding;
+
+        BreedRow(BreedSpinnerItemBinding binding) {
+            this.binding = binding;
+        }
+
+        @Override
+        public void setListener(@NonNull BreedItemUserActionsListener listener) {
+            binding.setListener(listener);
+        }
+
+        @Override
+        public void setItem(@NonNull Breed breed) {
+            binding.setBreed(breed);
+
+            binding.executePendingBindings();
+        }
+    }
 }
@@ -15,12 +15,17 @@ import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
 import android.view.MenuItem;
 
+import com.dogbuddy.android.code.test.dogsapp.BuildConfig;
 import com.dogbuddy.android.code.test.dogsapp.R;
 import com.dogbuddy.android.code.test.dogsapp.ViewModelFactory;
 import com.dogbuddy.android.code.test.dogsapp.addeditdog.AddEditDogActivity;
 import com.dogbuddy.android.code.test.dogsapp.credits.CreditsActivity;
 import com.dogbuddy.android.code.test.dogsapp.dogdetail.DogDetailActivity;
 import com.dogbuddy.android.code.test.dogsapp.util.ActivityUtils;
+import com.dogbuddy.android.code.test.dogsapp.util.AppExecutors;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 
 
 public class DogsActivity extends AppCompatActivity implements DogItemNavigator, ItemsNavigator {
@@ -61,6 +66,20 @@ public class DogsActivity extends AppCompatActivity implements DogItemNavigator,
         });
     }
 
+    /**
+     * Debug builds add the executor metrics to
+     * {@code adb shell dumpsys activity com.dogbuddy.android.code.test.dogsapp}.
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        if (BuildConfig.DEBUG) {
+            writer.print(prefix);
+            writer.println("Executors:");
+            AppExecutors.dumpMetrics(prefix + "  ", writer);
+        }
+    }
+
     public static DogsViewModel obtainViewModel(FragmentActivity activity) {
         // Use a Factory to inject dependencies into the ViewModel
         ViewModelFactory factory = ViewModelFactory.getInstance(activity.getApplication());
@@ -1,84 +1,106 @@
-
-
 package com.dogbuddy.android.code.test.dogsapp.dogs;
 
-import android.databinding.DataBindingUtil;
+import android.support.annotation.NonNull;
+import android.support.v7.recyclerview.extensions.ListAdapter;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
-import android.view.View;
 import android.view.ViewGroup;
-import android.widget.BaseAdapter;
 
 import com.dogbuddy.android.code.test.dogsapp.data.Dog;
 import com.dogbuddy.android.code.test.dogsapp.databinding.DogItemBinding;
+import com.dogbuddy.android.code.test.dogsapp.util.StableIds;
 
+import java.util.ArrayList;
 import java.util.List;
 
-
-public class DogsAdapter extends BaseAdapter {
+/**
+ * Adapter of the dogs list. New lists are diffed against the current one on a background thread
+ * and only the rows that changed are rebound, with their animations. If lists are submitted
+ * faster than they are diffed, only the latest one is applied.
+ */
+public class DogsAdapter extends ListAdapter<Dog, DogsAdapter.DogViewHolder> {
+
+    private static final DiffUtil.ItemCallback<Dog> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<Dog>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull Dog oldDog, @NonNull Dog newDog) {
+                    return oldDog.getId().equals(newDog.getId());
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull Dog oldDog, @NonNull Dog newDog) {
+                    return oldDog.equals(newDog);
+                }
+            };
 
     private final DogsViewModel mDogsViewModel;
 
-    private List<Dog> mDogs;
-
-    public DogsAdapter(List<Dog> dogs,
-                       DogsViewModel dogsViewModel) {
+    /**
+     * Shares one listener between all the rows, the clicked dog comes from the row binding.
+     */
+    private final RowBinder<Dog, DogItemUserActionsListener> mRowBinder =
+            new RowBinder<Dog, DogItemUserActionsListener>(new DogItemUserActionsListener() {
+                @Override
+                public void onDogClicked(Dog dog) {
+                    mDogsViewModel.getOpenDogEvent().setValue(dog.getId());
+                }
+            });
+
+    public DogsAdapter(DogsViewModel dogsViewModel) {
+        super(DIFF_CALLBACK);
         mDogsViewModel = dogsViewModel;
-        setList(dogs);
-
+        setHasStableIds(true);
     }
 
     public void replaceData(List<Dog> dogs) {
-        setList(dogs);
+        // The differ needs a list nobody else changes, the view model's list is edited in place.
+        submitList(new ArrayList<>(dogs));
     }
 
+    @NonNull
     @Override
-    public int getCount() {
-        return mDogs != null ? mDogs.size() : 0;
+    public DogViewHolder onCreateViewHolder(@NonNull ViewGroup viewGroup, int viewType) {
+        LayoutInflater inflater = LayoutInflater.from(viewGroup.getContext());
+        DogViewHolder holder =
+                new DogViewHolder(DogItemBinding.inflate(inflater, viewGroup, false));
+        mRowBinder.onCreate(holder);
+        return holder;
     }
 
+    /**
+     * Binding a row only sets its dog, nothing is allocated.
+     */
     @Override
-    public Dog getItem(int position) {
-        return mDogs.get(position);
+    public void onBindViewHolder(@NonNull DogViewHolder holder, int position) {
+        mRowBinder.onBind(holder, getItem(position));
     }
 
     @Override
     public long getItemId(int position) {
-        return position;
+        return StableIds.of(getItem(position).getId());
     }
 
-    @Override
-    public View getView(int position, final View view, final ViewGroup viewGroup) {
-        DogItemBinding binding;
-        if (view == null) {
-            // Inflate
-            LayoutInflater inflater = LayoutInflater.from(viewGroup.getContext());
-
-            // Create the binding
-            binding = DogItemBinding.inflate(inflater, viewGroup, false);
-        } else {
-            // Recycling view
-            binding = DataBindingUtil.getBinding(view);
-        }
+    static class DogViewHolder extends RecyclerView.ViewHolder
+            implements RowBinder.Row<Dog, DogItemUserActionsListener> {
 
-        DogItemUserActionsListener userActionsListener = new DogItemUserActionsListener() {
+        final DogItemBinding binding;
 
-            @Override
-            public void onDogClicked(Dog dog) {
-                mDogsViewModel.getOpenDogEvent().setValue(dog.getId());
-            }
-        };
-
-        binding.setDog(mDogs.get(position));
-
-        binding.setListener(userActionsListener);
+        DogViewHolder(DogItemBinding binding) {
+            super(binding.getRoot());
+            this.binding = binding;
+        }
 
-        binding.executePendingBindings();
-        return binding.getRoot();
-    }
+        @Override
+        public void setListener(@NonNull DogItemUserActionsListener listener) {
+            binding.setListener(listener);
+        }
 
+        @Override
+        public void setItem(@NonNull Dog dog) {
+            binding.setDog(dog);
 
-    private void setList(List<Dog> dogs) {
-        mDogs = dogs;
-        notifyDataSetChanged();
+            binding.executePendingBindings();
+        }
     }
 }
@@ -6,28 +6,33 @@ import android.support.annotation.Nullable;
 import android.support.annotation.StringRes;
 import android.support.v4.app.Fragment;
 import android.support.v4.content.ContextCompat;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.PopupMenu;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ListView;
 
 import com.dogbuddy.android.code.test.dogsapp.R;
 import com.dogbuddy.android.code.test.dogsapp.ScrollChildSwipeRefreshLayout;
 import com.dogbuddy.android.code.test.dogsapp.SnackbarMessage;
 import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.dogbuddy.android.code.test.dogsapp.data.DogsFilter;
 import com.dogbuddy.android.code.test.dogsapp.databinding.DogsFragBinding;
 import com.dogbuddy.android.code.test.dogsapp.util.SnackbarUtils;
 
-import java.util.ArrayList;
-
 /**
  * Display a list of {@link Dog}s.
  */
 public class DogsFragment extends Fragment {
 
+    // How close to either end of the window, in rows, the next page starts loading.
+    private static final int PAGE_PREFETCH_DISTANCE = 10;
+
     private DogsViewModel mDogsViewModel;
 
     private DogsFragBinding mDogsFragBinding;
@@ -69,6 +74,9 @@ public class DogsFragment extends Fragment {
             case R.id.menu_add_dog:
                 showAddNewDog();
                 break;
+            case R.id.menu_filter:
+                showFilteringPopUpMenu();
+                break;
         }
         return true;
     }
@@ -76,6 +84,21 @@ public class DogsFragment extends Fragment {
     @Override
     public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
         inflater.inflate(R.menu.dogs_fragment_menu, menu);
+
+        SearchView searchView = (SearchView) menu.findItem(R.id.menu_search).getActionView();
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                mDogsViewModel.search(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                mDogsViewModel.search(newText);
+                return true;
+            }
+        });
     }
 
     @Override
@@ -86,6 +109,8 @@ public class DogsFragment extends Fragment {
 
         setupListAdapter();
 
+        setupPaging();
+
         setupRefreshLayout();
     }
 
@@ -102,18 +127,75 @@ public class DogsFragment extends Fragment {
         mDogsViewModel.addNewDog();
     }
 
+    private void showFilteringPopUpMenu() {
+        PopupMenu popup = new PopupMenu(getContext(), getActivity().findViewById(R.id.menu_filter));
+        popup.getMenuInflater().inflate(R.menu.filter_dogs, popup.getMenu());
+
+        popup.setOnMenuItemClickListener(new PopupMenu.OnMenuItemClickListener() {
+            public boolean onMenuItemClick(MenuItem item) {
+                DogsFilter.Builder filter = mDogsViewModel.getFiltering().buildUpon();
+                switch (item.getItemId()) {
+                    case R.id.filter_males:
+                        filter.setGender(getString(R.string.male));
+                        break;
+                    case R.id.filter_females:
+                        filter.setGender(getString(R.string.female));
+                        break;
+                    case R.id.sort_by_name:
+                        filter.setSortOrder(DogsFilter.SortOrder.NAME, false);
+                        break;
+                    case R.id.sort_youngest_first:
+                        filter.setSortOrder(DogsFilter.SortOrder.BIRTH_YEAR, true);
+                        break;
+                    default:
+                        filter = new DogsFilter.Builder();
+                        break;
+                }
+                mDogsViewModel.setFiltering(filter.build());
+                return true;
+            }
+        });
+
+        popup.show();
+    }
+
     private void setupListAdapter() {
-        ListView listView =  mDogsFragBinding.dogsList;
+        RecyclerView recyclerView = mDogsFragBinding.dogsList;
 
-        mListAdapter = new DogsAdapter(
-                new ArrayList<Dog>(0),
-                mDogsViewModel
-        );
-        listView.setAdapter(mListAdapter);
+        mListAdapter = new DogsAdapter(mDogsViewModel);
+        recyclerView.setAdapter(mListAdapter);
+    }
+
+    private void setupPaging() {
+        if (!getResources().getBoolean(R.bool.dogs_list_paged)) {
+            return;
+        }
+        mDogsViewModel.setPagedMode(true);
+
+        // Pages inserted above the visible rows don't move them: the layout manager keeps its
+        // anchor row in place when the diff is applied.
+        mDogsFragBinding.dogsList.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                LinearLayoutManager layoutManager =
+                        (LinearLayoutManager) recyclerView.getLayoutManager();
+                int totalItemCount = layoutManager.getItemCount();
+                if (totalItemCount == 0) {
+                    return;
+                }
+                int firstVisibleItem = layoutManager.findFirstVisibleItemPosition();
+                int lastVisibleItem = layoutManager.findLastVisibleItemPosition();
+                if (dy > 0 && lastVisibleItem >= totalItemCount - 1 - PAGE_PREFETCH_DISTANCE) {
+                    mDogsViewModel.loadNextPage();
+                } else if (dy < 0 && firstVisibleItem <= PAGE_PREFETCH_DISTANCE) {
+                    mDogsViewModel.loadPreviousPage();
+                }
+            }
+        });
     }
 
     private void setupRefreshLayout() {
-        ListView listView =  mDogsFragBinding.dogsList;
+        RecyclerView recyclerView = mDogsFragBinding.dogsList;
         final ScrollChildSwipeRefreshLayout swipeRefreshLayout = mDogsFragBinding.refreshLayout;
         swipeRefreshLayout.setColorSchemeColors(
                 ContextCompat.getColor(getActivity(), R.color.primary),
@@ -121,7 +203,7 @@ public class DogsFragment extends Fragment {
                 ContextCompat.getColor(getActivity(), R.color.primary_dark)
         );
         // Set the scrolling view in the custom SwipeRefreshLayout.
-        swipeRefreshLayout.setScrollUpChild(listView);
+        swipeRefreshLayout.setScrollUpChild(recyclerView);
     }
 
 }
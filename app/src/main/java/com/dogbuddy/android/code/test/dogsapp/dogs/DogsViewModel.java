@@ -3,6 +3,8 @@ package com.dogbuddy.android.code.test.dogsapp.dogs;
 
 import android.app.Application;
 import android.arch.lifecycle.AndroidViewModel;
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.Observer;
 import android.content.Context;
 import android.databinding.BaseObservable;
 import android.databinding.Bindable;
@@ -10,17 +12,31 @@ import android.databinding.ObservableArrayList;
 import android.databinding.ObservableBoolean;
 import android.databinding.ObservableField;
 import android.databinding.ObservableList;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 
 import com.dogbuddy.android.code.test.dogsapp.SingleLiveEvent;
 import com.dogbuddy.android.code.test.dogsapp.R;
 import com.dogbuddy.android.code.test.dogsapp.SnackbarMessage;
 import com.dogbuddy.android.code.test.dogsapp.addeditdog.AddEditDogActivity;
 import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.dogbuddy.android.code.test.dogsapp.data.DogsFilter;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsChange;
 import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDataSource;
 import com.dogbuddy.android.code.test.dogsapp.data.source.DogsRepository;
 import com.dogbuddy.android.code.test.dogsapp.dogdetail.DogDetailActivity;
-
+import com.dogbuddy.android.code.test.dogsapp.util.CancellationToken;
+import com.dogbuddy.android.code.test.dogsapp.util.Debouncer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -32,6 +48,33 @@ import java.util.List;
  */
 public class DogsViewModel extends AndroidViewModel {
 
+    /**
+     * Number of dogs requested per page in paged mode.
+     */
+    static final int PAGE_SIZE = 50;
+
+    /**
+     * Maximum number of pages kept in {@link #items} in paged mode. Pages scrolled out of this
+     * window are dropped and loaded again if the user scrolls back.
+     */
+    static final int MAX_PAGES_IN_MEMORY = 5;
+
+    /**
+     * Most rows {@link #showDogs(List)} inserts or moves one by one. Dogs that need more, like the
+     * ones of a new sort order, replace the whole list instead.
+     */
+    static final int MAX_SHOWN_ROW_MOVES = 50;
+
+    /**
+     * Time without keystrokes before a search runs.
+     */
+    static final long SEARCH_DEBOUNCE_MILLIS = 150;
+
+    /**
+     * Maximum number of dogs shown as search results.
+     */
+    static final int SEARCH_LIMIT = 200;
+
     // These observable fields will update Views automatically
     public final ObservableList<Dog> items = new ObservableArrayList<>();
 
@@ -55,25 +98,294 @@ public class DogsViewModel extends AndroidViewModel {
 
     private final SingleLiveEvent<Void> mNewDogEvent = new SingleLiveEvent<>();
 
+    private final Observer<List<Dog>> mDogsObserver = new Observer<List<Dog>>() {
+        @Override
+        public void onChanged(@Nullable List<Dog> dogs) {
+            dataLoading.set(false);
+            if (dogs == null) {
+                return;
+            }
+            mIsDataLoadingError.set(false);
+            if (!mSearching) {
+                showDogs(dogs);
+            }
+        }
+    };
+
+    private LiveData<List<Dog>> mObservedDogs;
+
+    private final DogsRepository.DogsChangeListener mDogsChangeListener =
+            new DogsRepository.DogsChangeListener() {
+                @Override
+                public void onDogsChanged(@NonNull DogsChange change) {
+                    applyDogsChange(change);
+                }
+            };
+
+    // Version of the last change of the repository applied to items.
+    private long mDogsVersion;
+
+    private final Debouncer mSearchDebouncer;
+
+    // Cancelled when the ViewModel is cleared, so the loads it started stop.
+    private final CancellationToken mLoads = new CancellationToken();
+
+    // While searching, items holds the search results instead of the observed dogs.
+    private boolean mSearching = false;
+
+    // Incremented by every search, so results of superseded searches are ignored.
+    private int mSearchGeneration = 0;
+
+    // Null while all the dogs are listed.
+    @Nullable
+    private DogsFilter mFilter;
+
+    private boolean mPagedMode = false;
+
+    // Pages currently held in items, in display order.
+    private final ArrayDeque<Page> mPages = new ArrayDeque<>();
+
+    // Pages dropped from the head of the window, the most recently dropped first.
+    private final ArrayDeque<Page> mDroppedPages = new ArrayDeque<>();
+
+    private boolean mPageLoading = false;
+
+    private boolean mLastPageLoaded = false;
+
+    // Incremented when the window is reset, so loads started before are ignored.
+    private int mPagesGeneration = 0;
+
     public DogsViewModel(
             Application context,
             DogsRepository repository) {
+        this(context, repository, new Debouncer(SEARCH_DEBOUNCE_MILLIS));
+    }
+
+    @VisibleForTesting
+    DogsViewModel(
+            Application context,
+            DogsRepository repository,
+            Debouncer searchDebouncer) {
         super(context);
         mContext = context.getApplicationContext(); // Force use of Application Context.
         mDogsRepository = repository;
+        mSearchDebouncer = searchDebouncer;
+
+        mDogsVersion = mDogsRepository.getDogsVersion();
+        mDogsRepository.addDogsChangeListener(mDogsChangeListener);
 
         noDogsLabel.set(mContext.getResources().getString(R.string.no_dogs_yet));
         dogsAddViewVisible.set(true);
     }
 
+    /**
+     * Subscribes to the dogs stream of the repository. It's safe to call this every time the
+     * screen is resumed: the subscription is only made once and new snapshots are pushed when the
+     * dogs change.
+     */
     public void start() {
-        loadDogs(false);
+        if (mPagedMode) {
+            if (mPages.isEmpty() && mDroppedPages.isEmpty()) {
+                loadNextPage();
+            }
+            return;
+        }
+        if (mObservedDogs != null) {
+            // Already subscribed, changes will be pushed.
+            return;
+        }
+        dataLoading.set(true);
+        mObservedDogs = mFilter == null
+                ? mDogsRepository.observeDogs()
+                : mDogsRepository.observeDogs(mFilter);
+        mObservedDogs.observeForever(mDogsObserver);
+    }
+
+    /**
+     * Lists only the dogs that match filter, in its order. Filtering and sorting run in SQL on
+     * the dogs indices. Only applies to the full list, paged mode lists all the dogs.
+     */
+    public void setFiltering(@NonNull DogsFilter filter) {
+        DogsFilter newFilter = DogsFilter.ALL.equals(filter) ? null : filter;
+        if (newFilter == null ? mFilter == null : newFilter.equals(mFilter)) {
+            return;
+        }
+        mFilter = newFilter;
+        noDogsLabel.set(mContext.getResources().getString(
+                mFilter == null ? R.string.no_dogs_yet : R.string.no_dogs_match_filter));
+        dogsAddViewVisible.set(mFilter == null);
+
+        if (mObservedDogs != null) {
+            // Already subscribed, move the subscription to the new query.
+            mObservedDogs.removeObserver(mDogsObserver);
+            mObservedDogs = null;
+            start();
+        }
+    }
+
+    @NonNull
+    public DogsFilter getFiltering() {
+        return mFilter == null ? DogsFilter.ALL : mFilter;
+    }
+
+    /**
+     * Shows the dogs whose name or breed match what the user typed so far. Meant to be called on
+     * every keystroke: the search only runs once typing pauses, and results of searches
+     * superseded by a newer one are dropped. An empty text goes back to the full list.
+     */
+    public void search(@Nullable final String text) {
+        final int generation = ++mSearchGeneration;
+        if (text == null || text.trim().isEmpty()) {
+            mSearchDebouncer.cancel();
+            if (mSearching) {
+                mSearching = false;
+                if (mObservedDogs != null && mObservedDogs.getValue() != null) {
+                    showDogs(mObservedDogs.getValue());
+                }
+            }
+            return;
+        }
+        mSearching = true;
+
+        mSearchDebouncer.submit(new Runnable() {
+            @Override
+            public void run() {
+                mDogsRepository.searchDogs(text, SEARCH_LIMIT, mLoads,
+                        new DogsDataSource.LoadDogsCallback() {
+                            @Override
+                            public void onDogsLoaded(List<Dog> dogs) {
+                                if (generation == mSearchGeneration) {
+                                    showDogs(dogs);
+                                }
+                            }
+
+                            @Override
+                            public void onDataNotAvailable() {
+                                if (generation == mSearchGeneration) {
+                                    showDogs(new ArrayList<Dog>(0));
+                                }
+                            }
+                        });
+            }
+        });
     }
 
     public void loadDogs(boolean forceUpdate) {
+        if (mPagedMode) {
+            if (forceUpdate) {
+                resetPages();
+            }
+            loadNextPage();
+            return;
+        }
         loadDogs(forceUpdate, true);
     }
 
+    /**
+     * Switches the list to paged loading: instead of holding every dog, {@link #items} holds a
+     * bounded window of pages that moves as the user scrolls. Must be called before
+     * {@link #start()}.
+     */
+    public void setPagedMode(boolean pagedMode) {
+        mPagedMode = pagedMode;
+    }
+
+    /**
+     * Loads the page that follows the last dog in {@link #items}, dropping the first page of the
+     * window if it grows over {@link #MAX_PAGES_IN_MEMORY}.
+     */
+    public void loadNextPage() {
+        if (mPageLoading || mLastPageLoaded) {
+            return;
+        }
+        final String afterDogId = items.isEmpty() ? null : items.get(items.size() - 1).getId();
+        final int generation = mPagesGeneration;
+        mPageLoading = true;
+        if (items.isEmpty()) {
+            dataLoading.set(true);
+        }
+
+        mDogsRepository.getDogsPage(afterDogId, PAGE_SIZE, mLoads,
+                new DogsDataSource.LoadDogsCallback() {
+                    @Override
+                    public void onDogsLoaded(List<Dog> dogs) {
+                        if (generation != mPagesGeneration) {
+                            return;
+                        }
+                        mPageLoading = false;
+                        dataLoading.set(false);
+                        mIsDataLoadingError.set(false);
+                        mLastPageLoaded = dogs.size() < PAGE_SIZE;
+
+                        items.addAll(dogs);
+                        mPages.addLast(new Page(afterDogId, dogs.size()));
+                        if (mPages.size() > MAX_PAGES_IN_MEMORY) {
+                            Page first = mPages.removeFirst();
+                            items.subList(0, first.size).clear();
+                            mDroppedPages.push(first);
+                        }
+                        empty.set(items.isEmpty() && mDroppedPages.isEmpty());
+                    }
+
+                    @Override
+                    public void onDataNotAvailable() {
+                        if (generation != mPagesGeneration) {
+                            return;
+                        }
+                        mPageLoading = false;
+                        mLastPageLoaded = true;
+                        dataLoading.set(false);
+                        empty.set(items.isEmpty() && mDroppedPages.isEmpty());
+                    }
+                });
+    }
+
+    /**
+     * Loads again the last page dropped from the head of the window, dropping the last page of the
+     * window if it grows over {@link #MAX_PAGES_IN_MEMORY}.
+     */
+    public void loadPreviousPage() {
+        if (mPageLoading || mDroppedPages.isEmpty()) {
+            return;
+        }
+        final Page dropped = mDroppedPages.peek();
+        final int generation = mPagesGeneration;
+        mPageLoading = true;
+
+        mDogsRepository.getDogsPage(dropped.afterDogId, PAGE_SIZE, mLoads,
+                new DogsDataSource.LoadDogsCallback() {
+                    @Override
+                    public void onDogsLoaded(List<Dog> dogs) {
+                        if (generation != mPagesGeneration) {
+                            return;
+                        }
+                        mPageLoading = false;
+                        mDroppedPages.pop();
+                        prependPage(dropped.afterDogId, dogs);
+                    }
+
+                    @Override
+                    public void onDataNotAvailable() {
+                        if (generation != mPagesGeneration) {
+                            return;
+                        }
+                        mPageLoading = false;
+                        mDroppedPages.pop();
+                        prependPage(dropped.afterDogId, new ArrayList<Dog>(0));
+                    }
+                });
+    }
+
+    @Override
+    protected void onCleared() {
+        mLoads.cancel();
+        mDogsRepository.removeDogsChangeListener(mDogsChangeListener);
+        mSearchDebouncer.shutdown();
+        if (mObservedDogs != null) {
+            mObservedDogs.removeObserver(mDogsObserver);
+        }
+    }
+
     SnackbarMessage getSnackbarMessage() {
         return mSnackbarText;
     }
@@ -122,11 +434,11 @@ public class DogsViewModel extends AndroidViewModel {
             dataLoading.set(true);
         }
         if (forceUpdate) {
-
-            mDogsRepository.refreshDogs();
+            refreshDogs(showLoadingUI);
+            return;
         }
 
-        mDogsRepository.getDogs(new DogsDataSource.LoadDogsCallback() {
+        mDogsRepository.getDogs(mLoads, new DogsDataSource.LoadDogsCallback() {
             @Override
             public void onDogsLoaded(List<Dog> dogs) {
                 if (showLoadingUI) {
@@ -134,9 +446,7 @@ public class DogsViewModel extends AndroidViewModel {
                 }
                 mIsDataLoadingError.set(false);
 
-                items.clear();
-                items.addAll(dogs);
-                empty.set(items.isEmpty());
+                showDogs(dogs);
             }
 
             @Override
@@ -145,4 +455,261 @@ public class DogsViewModel extends AndroidViewModel {
             }
         });
     }
+
+    /**
+     * Shows the dogs already known right away and keeps the loading icon until the refresh from
+     * the network finishes, so the list is never emptied while refreshing.
+     */
+    private void refreshDogs(final boolean showLoadingUI) {
+        mDogsRepository.getDogsRevalidating(mLoads, new DogsRepository.RevalidateDogsCallback() {
+            @Override
+            public void onDogsLoaded(@NonNull List<Dog> dogs, boolean stale) {
+                if (showLoadingUI && !stale) {
+                    dataLoading.set(false);
+                }
+                mIsDataLoadingError.set(false);
+
+                showDogs(dogs);
+            }
+
+            @Override
+            public void onDogsUnchanged() {
+                if (showLoadingUI) {
+                    dataLoading.set(false);
+                }
+            }
+
+            @Override
+            public void onDataNotAvailable() {
+                if (showLoadingUI) {
+                    dataLoading.set(false);
+                }
+                mIsDataLoadingError.set(true);
+            }
+        });
+    }
+
+    /**
+     * Patches items in place with a change made through the repository, so only the rows that
+     * changed are touched. If a change was missed, items are reloaded instead.
+     * <p>
+     * New dogs are only added to the full list: they may not match a filter or a search, and in
+     * paged mode they show up when their page is loaded.
+     */
+    private void applyDogsChange(DogsChange change) {
+        if (change.getVersion() != mDogsVersion + 1) {
+            mDogsVersion = change.getVersion();
+            reloadDogs();
+            return;
+        }
+        mDogsVersion = change.getVersion();
+
+        if (change.isAllRemoved()) {
+            if (mPagedMode) {
+                resetPages();
+            }
+            items.clear();
+            empty.set(true);
+            return;
+        }
+
+        Map<String, Integer> positions = new HashMap<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            positions.put(items.get(i).getId(), i);
+        }
+        boolean addNewDogs = !mPagedMode && !mSearching && mFilter == null;
+        List<Dog> added = new ArrayList<>();
+        for (Dog dog : change.getUpdated()) {
+            Integer position = positions.get(dog.getId());
+            if (position != null) {
+                items.set(position, dog);
+            } else if (addNewDogs) {
+                added.add(dog);
+            }
+        }
+        if (addNewDogs) {
+            for (Dog dog : change.getInserted()) {
+                if (!positions.containsKey(dog.getId())) {
+                    added.add(dog);
+                }
+            }
+        }
+
+        List<Integer> removedPositions = new ArrayList<>();
+        for (String dogId : change.getRemovedIds()) {
+            Integer position = positions.get(dogId);
+            if (position != null) {
+                removedPositions.add(position);
+            }
+        }
+        // From the bottom up, so the positions still to remove don't move.
+        Collections.sort(removedPositions, Collections.<Integer>reverseOrder());
+        for (int position : removedPositions) {
+            items.remove(position);
+            if (mPagedMode) {
+                removeFromPage(position);
+            }
+        }
+
+        items.addAll(added);
+        empty.set(items.isEmpty() && mDroppedPages.isEmpty());
+    }
+
+    private void reloadDogs() {
+        if (mPagedMode) {
+            resetPages();
+            loadNextPage();
+        } else if (!mSearching) {
+            loadDogs(false, false);
+        }
+    }
+
+    /**
+     * Shrinks the page that held the dog removed from position.
+     */
+    private void removeFromPage(int position) {
+        int pageStart = 0;
+        Page[] pages = mPages.toArray(new Page[mPages.size()]);
+        mPages.clear();
+        for (Page page : pages) {
+            boolean holdsPosition = position >= pageStart && position < pageStart + page.size;
+            pageStart += page.size;
+            mPages.addLast(holdsPosition ? new Page(page.afterDogId, page.size - 1) : page);
+        }
+    }
+
+    private void prependPage(String afterDogId, List<Dog> dogs) {
+        // Dogs might have been added since the page was dropped, only keep the ones that still
+        // come before the current window.
+        List<Dog> page = new ArrayList<>(dogs.size());
+        String firstId = items.isEmpty() ? null : items.get(0).getId();
+        for (Dog dog : dogs) {
+            if (firstId != null && dog.getId().compareTo(firstId) >= 0) {
+                break;
+            }
+            page.add(dog);
+        }
+
+        items.addAll(0, page);
+        mPages.addFirst(new Page(afterDogId, page.size()));
+        if (mPages.size() > MAX_PAGES_IN_MEMORY) {
+            Page last = mPages.removeLast();
+            items.subList(items.size() - last.size, items.size()).clear();
+            mLastPageLoaded = false;
+        }
+    }
+
+    private void resetPages() {
+        mPagesGeneration++;
+        mPageLoading = false;
+        mPages.clear();
+        mDroppedPages.clear();
+        mLastPageLoaded = false;
+        items.clear();
+    }
+
+    /**
+     * Shows dogs, touching only the rows that differ from the ones shown, matched by id. The
+     * snapshot pushed after a change already patched in place then costs nothing, or a move if the
+     * query puts a new dog elsewhere than at the end. Dogs that would need more than
+     * {@link #MAX_SHOWN_ROW_MOVES} removals and moves replace the whole list instead.
+     */
+    private void showDogs(List<Dog> dogs) {
+        if (items.isEmpty()) {
+            replaceShownDogs(dogs);
+            return;
+        }
+        Set<String> ids = new HashSet<>(dogs.size());
+        for (Dog dog : dogs) {
+            ids.add(dog.getId());
+        }
+        int moves = 0;
+        for (Dog shownDog : items) {
+            if (!ids.contains(shownDog.getId())) {
+                moves++;
+            }
+        }
+        if (moves > MAX_SHOWN_ROW_MOVES) {
+            replaceShownDogs(dogs);
+            return;
+        }
+        // From the bottom up, so the positions still to check don't move.
+        for (int i = items.size() - 1; i >= 0; i--) {
+            if (!ids.contains(items.get(i).getId())) {
+                items.remove(i);
+            }
+        }
+
+        // The rows left, in order, with their positions by id. A dog moved up is marked, so the
+        // row of the ones below it is worked out from the few moved, without searching the rows.
+        List<Dog> shown = new ArrayList<>(items);
+        Map<String, Integer> shownPositions = new HashMap<>(shown.size());
+        for (int k = 0; k < shown.size(); k++) {
+            shownPositions.put(shown.get(k).getId(), k);
+        }
+        boolean[] moved = new boolean[shown.size()];
+        List<Integer> movedPositions = new ArrayList<>();
+        // Position in shown of the dog in row i.
+        int next = 0;
+        for (int i = 0; i < dogs.size(); i++) {
+            while (next < shown.size() && moved[next]) {
+                next++;
+            }
+            Dog dog = dogs.get(i);
+            if (next < shown.size() && shown.get(next).getId().equals(dog.getId())) {
+                if (!items.get(i).equals(dog)) {
+                    items.set(i, dog);
+                }
+                next++;
+                continue;
+            }
+            if (++moves > MAX_SHOWN_ROW_MOVES) {
+                replaceShownDogs(dogs);
+                return;
+            }
+            Integer from = shownPositions.get(dog.getId());
+            if (from != null && from > next && !moved[from]) {
+                items.remove(rowOf(from, i, next, movedPositions));
+                moved[from] = true;
+                movedPositions.add(from);
+            }
+            items.add(i, dog);
+        }
+        empty.set(items.isEmpty());
+    }
+
+    /**
+     * Returns the row of the dog at position from of the rows left by showDogs, when row i holds
+     * the one at position next and the ones at movedPositions were moved up already.
+     */
+    private static int rowOf(int from, int i, int next, List<Integer> movedPositions) {
+        int row = i + from - next;
+        for (int movedPosition : movedPositions) {
+            if (movedPosition > next && movedPosition < from) {
+                row--;
+            }
+        }
+        return row;
+    }
+
+    private void replaceShownDogs(List<Dog> dogs) {
+        items.clear();
+        items.addAll(dogs);
+        empty.set(items.isEmpty());
+    }
+
+    /**
+     * A page of dogs held in the window, identified by the key it was loaded from.
+     */
+    private static final class Page {
+
+        final String afterDogId;
+
+        final int size;
+
+        Page(String afterDogId, int size) {
+            this.afterDogId = afterDogId;
+            this.size = size;
+        }
+    }
 }
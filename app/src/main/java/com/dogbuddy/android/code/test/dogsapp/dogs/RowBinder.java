@@ -0,0 +1,42 @@
+package com.dogbuddy.android.code.test.dogsapp.dogs;
+
+import android.support.annotation.NonNull;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Binds the items of a list adapter to its rows. The listener shared by all the rows is handed to
+ * a row once, when it's created, and the row passes it its item when clicked; binding a row then
+ * only hands it its item, so nothing is allocated per bind.
+ * <p>
+ * Rows are behind {@link Row}, so the bind path runs without Views in JVM tests.
+ *
+ * @param <T> the type of the items.
+ * @param <L> the type of the listener shared by the rows.
+ */
+final class RowBinder<T, L> {
+
+    /**
+     * A row of the list, usually the data binding of a view.
+     */
+    interface Row<T, L> {
+
+        void setListener(@NonNull L listener);
+
+        void setItem(@NonNull T item);
+    }
+
+    private final L mListener;
+
+    RowBinder(@NonNull L listener) {
+        mListener = checkNotNull(listener);
+    }
+
+    void onCreate(@NonNull Row<T, L> row) {
+        row.setListener(mListener);
+    }
+
+    void onBind(@NonNull Row<T, L> row, @NonNull T item) {
+        row.setItem(item);
+    }
+}
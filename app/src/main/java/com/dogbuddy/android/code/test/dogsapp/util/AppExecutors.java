@@ -21,41 +21,130 @@ import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 
+import java.io.PrintWriter;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Global executor pools for the whole application.
  * <p>
  * Grouping tasks like this avoids the effects of dog starvation (e.g. disk reads don't wait behind
  * webservice requests).
+ * <p>
+ * Disk tasks are run by priority, see {@link PriorityDiskExecutor}: the writes one at a time on
+ * diskIO, the reads of the database on a small pool of their own, diskRead. The executors are
+ * instrumented, see {@link InstrumentedExecutor}. What they measure is shared by all the
+ * instances, per pool, and can be printed with {@link #dumpMetrics(String, PrintWriter)}.
+ * <p>
+ * The scheduler runs the timeouts of asynchronous loads. Its tasks only fail the loads that took
+ * too long, they must not do any work of their own. It's a single thread shared by all the
+ * instances, started the first time it's asked for.
  */
 public class AppExecutors {
 
     private static final int THREAD_COUNT = 3;
 
+    /**
+     * Threads reading the database. SQLite in write-ahead logging mode runs reads concurrently with
+     * each other and with the writer, on a pool of a few connections.
+     */
+    private static final int DISK_READ_THREAD_COUNT = 3;
+
+    private static final ExecutorMetrics DISK_IO_METRICS = new ExecutorMetrics("diskIO");
+
+    private static final ExecutorMetrics DISK_READ_METRICS = new ExecutorMetrics("diskRead");
+
+    private static final ExecutorMetrics NETWORK_IO_METRICS = new ExecutorMetrics("networkIO");
+
+    private static final ExecutorMetrics MAIN_THREAD_METRICS = new ExecutorMetrics("mainThread");
+
     private final Executor diskIO;
 
+    private final Executor diskRead;
+
     private final Executor networkIO;
 
     private final Executor mainThread;
 
+    /**
+     * Reads run on diskIO too.
+     */
     @VisibleForTesting
     AppExecutors(Executor diskIO, Executor networkIO, Executor mainThread) {
+        this(diskIO, diskIO, networkIO, mainThread);
+    }
+
+    private AppExecutors(Executor diskIO, Executor diskRead, Executor networkIO,
+                         Executor mainThread) {
         this.diskIO = diskIO;
+        this.diskRead = diskRead;
         this.networkIO = networkIO;
         this.mainThread = mainThread;
     }
 
     public AppExecutors() {
-        this(new DiskIOThreadExecutor(), Executors.newFixedThreadPool(THREAD_COUNT),
-                new MainThreadExecutor());
+        this(new PriorityDiskExecutor(DISK_IO_METRICS),
+                new PriorityDiskExecutor(DISK_READ_METRICS, DISK_READ_THREAD_COUNT),
+                new InstrumentedExecutor(Executors.newFixedThreadPool(THREAD_COUNT),
+                        NETWORK_IO_METRICS),
+                new InstrumentedExecutor(new MainThreadExecutor(), MAIN_THREAD_METRICS));
+    }
+
+    /**
+     * Prints the queue depth, wait time and run time of the tasks of each pool.
+     */
+    public static void dumpMetrics(@NonNull String prefix, @NonNull PrintWriter writer) {
+        DISK_IO_METRICS.dump(prefix, writer);
+        DISK_READ_METRICS.dump(prefix, writer);
+        NETWORK_IO_METRICS.dump(prefix, writer);
+        MAIN_THREAD_METRICS.dump(prefix, writer);
     }
 
     public Executor diskIO() {
         return diskIO;
     }
 
+    /**
+     * Runs command on the disk executor ahead of the tasks of lower priority, unless token is
+     * cancelled before it starts. Disk executors without priorities, like the ones of tests, run
+     * it in turn.
+     */
+    public void diskIO(@NonNull PriorityDiskExecutor.Priority priority,
+                       @NonNull CancellationToken token, @NonNull Runnable command) {
+        execute(diskIO, priority, token, command);
+    }
+
+    /**
+     * Like {@link #diskIO(PriorityDiskExecutor.Priority, CancellationToken, Runnable)}, on the
+     * pool of threads that only read the database, so reads don't wait for the writes of diskIO
+     * nor for each other. A read run there doesn't see the writes queued on diskIO that didn't
+     * commit yet.
+     */
+    public void diskRead(@NonNull PriorityDiskExecutor.Priority priority,
+                         @NonNull CancellationToken token, @NonNull Runnable command) {
+        execute(diskRead, priority, token, command);
+    }
+
+    private static void execute(@NonNull Executor executor,
+                                @NonNull PriorityDiskExecutor.Priority priority,
+                                @NonNull final CancellationToken token,
+                                @NonNull final Runnable command) {
+        if (executor instanceof PriorityDiskExecutor) {
+            ((PriorityDiskExecutor) executor).execute(priority, token, command);
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!token.isCancelled()) {
+                    command.run();
+                }
+            }
+        });
+    }
+
     public Executor networkIO() {
         return networkIO;
     }
@@ -64,6 +153,26 @@ public class AppExecutors {
         return mainThread;
     }
 
+    public ScheduledExecutorService scheduler() {
+        return SchedulerHolder.SCHEDULER;
+    }
+
+    /**
+     * Holds the scheduler, so it's only created when the class is first used, by
+     * {@link #scheduler()}.
+     */
+    private static class SchedulerHolder {
+        static final ScheduledExecutorService SCHEDULER =
+                Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NonNull Runnable runnable) {
+                        Thread thread = new Thread(runnable, "scheduler");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
     private static class MainThreadExecutor implements Executor {
         private Handler mainThreadHandler = new Handler(Looper.getMainLooper());
 
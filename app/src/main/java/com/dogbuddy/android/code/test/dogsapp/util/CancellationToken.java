@@ -0,0 +1,125 @@
+package com.dogbuddy.android.code.test.dogsapp.util;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Tells work queued on behalf of someone, like a ViewModel, that its result is no longer wanted,
+ * so it can be dropped before it runs. Cancelling can't be undone. Safe to use from any thread.
+ * <p>
+ * Work already running can stop too: it either checks {@link #isCancelled()} between steps, or
+ * adds a listener that aborts it, like a request in flight.
+ */
+public final class CancellationToken {
+
+    /**
+     * A token that is never cancelled, for work nobody can cancel.
+     */
+    public static final CancellationToken NONE = new CancellationToken(false);
+
+    private final boolean mCancellable;
+
+    private volatile boolean mCancelled = false;
+
+    // Guarded by this. Emptied once cancelled.
+    private final List<Runnable> mListeners = new ArrayList<>(0);
+
+    public CancellationToken() {
+        this(true);
+    }
+
+    private CancellationToken(boolean cancellable) {
+        mCancellable = cancellable;
+    }
+
+    /**
+     * Returns a token cancelled once every one of tokens is, for work shared by many callers.
+     * Never cancelled if one of them is {@link #NONE}.
+     */
+    @NonNull
+    public static CancellationToken allOf(@NonNull Collection<CancellationToken> tokens) {
+        if (tokens.isEmpty() || tokens.contains(NONE)) {
+            return NONE;
+        }
+        final CancellationToken all = new CancellationToken();
+        final AtomicInteger remaining = new AtomicInteger(tokens.size());
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                if (remaining.decrementAndGet() == 0) {
+                    all.cancel();
+                }
+            }
+        };
+        for (CancellationToken token : tokens) {
+            token.addListener(listener);
+        }
+        return all;
+    }
+
+    /**
+     * Cancels the work of this token and runs its listeners on the calling thread. Does nothing
+     * on {@link #NONE} or if already cancelled.
+     */
+    public void cancel() {
+        if (!mCancellable) {
+            return;
+        }
+        List<Runnable> listeners;
+        synchronized (this) {
+            if (mCancelled) {
+                return;
+            }
+            mCancelled = true;
+            listeners = new ArrayList<>(mListeners);
+            mListeners.clear();
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Runs listener when this token is cancelled, right away on the calling thread if it already
+     * is. Listeners are never run for {@link #NONE}.
+     */
+    public void addListener(@NonNull Runnable listener) {
+        checkNotNull(listener);
+        if (!mCancellable) {
+            return;
+        }
+        synchronized (this) {
+            if (!mCancelled) {
+                mListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * Stops listening, once the work listener would stop is done.
+     */
+    public synchronized void removeListener(@NonNull Runnable listener) {
+        mListeners.remove(checkNotNull(listener));
+    }
+
+    /**
+     * Number of listeners waiting for this token to be cancelled.
+     */
+    @VisibleForTesting
+    public synchronized int getListenerCount() {
+        return mListeners.size();
+    }
+}
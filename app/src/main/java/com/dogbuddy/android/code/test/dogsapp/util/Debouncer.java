@@ -0,0 +1,70 @@
+package com.dogbuddy.android.code.test.dogsapp.util;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Runs only the last of a burst of tasks, once no new task was submitted for a given delay.
+ * Useful to react to what the user types without doing the work for every keystroke.
+ * <p>
+ * Tasks run on a background thread owned by the debouncer.
+ */
+public class Debouncer {
+
+    private final ScheduledExecutorService mScheduler;
+
+    private final long mDelayMillis;
+
+    private ScheduledFuture<?> mPending;
+
+    public Debouncer(long delayMillis) {
+        this(Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "debouncer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }), delayMillis);
+    }
+
+    public Debouncer(@NonNull ScheduledExecutorService scheduler, long delayMillis) {
+        mScheduler = checkNotNull(scheduler);
+        mDelayMillis = delayMillis;
+    }
+
+    /**
+     * Schedules task to run after the delay, cancelling the task submitted before if it didn't
+     * run yet.
+     */
+    public synchronized void submit(@NonNull Runnable task) {
+        checkNotNull(task);
+        cancel();
+        mPending = mScheduler.schedule(task, mDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels the pending task, if any.
+     */
+    public synchronized void cancel() {
+        if (mPending != null) {
+            mPending.cancel(false);
+            mPending = null;
+        }
+    }
+
+    /**
+     * Cancels the pending task and releases the thread. The debouncer can't be used afterwards.
+     */
+    public synchronized void shutdown() {
+        cancel();
+        mScheduler.shutdown();
+    }
+}
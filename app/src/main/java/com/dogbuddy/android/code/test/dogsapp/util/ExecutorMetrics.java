@@ -0,0 +1,181 @@
+package com.dogbuddy.android.code.test.dogsapp.util;
+
+import android.support.annotation.NonNull;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * What an {@link InstrumentedExecutor} or a {@link PriorityDiskExecutor} measured: how many tasks
+ * were waiting to run when each task was submitted, and, per task label, how long tasks waited
+ * between being submitted and starting, and how long they ran. Times are in microseconds. Safe
+ * to use from any thread.
+ */
+public final class ExecutorMetrics {
+
+    /**
+     * Wait and run times of the tasks with the same label.
+     */
+    public static final class TaskMetrics {
+
+        private final Log2Histogram mWaitMicros = new Log2Histogram();
+
+        private final Log2Histogram mRunMicros = new Log2Histogram();
+
+        @NonNull
+        public Log2Histogram getWaitMicros() {
+            return mWaitMicros;
+        }
+
+        @NonNull
+        public Log2Histogram getRunMicros() {
+            return mRunMicros;
+        }
+    }
+
+    private final String mName;
+
+    private final AtomicInteger mQueued = new AtomicInteger();
+
+    private final AtomicInteger mRunning = new AtomicInteger();
+
+    private final AtomicLong mCancelled = new AtomicLong();
+
+    private final Log2Histogram mQueueDepth = new Log2Histogram();
+
+    private final ConcurrentMap<String, TaskMetrics> mTasks = new ConcurrentHashMap<>();
+
+    public ExecutorMetrics(@NonNull String name) {
+        mName = checkNotNull(name);
+    }
+
+    @NonNull
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Number of tasks submitted that didn't start yet.
+     */
+    public int getQueued() {
+        return mQueued.get();
+    }
+
+    /**
+     * Number of tasks running.
+     */
+    public int getRunning() {
+        return mRunning.get();
+    }
+
+    /**
+     * Number of tasks dropped before they started because their work was cancelled.
+     */
+    public long getCancelled() {
+        return mCancelled.get();
+    }
+
+    /**
+     * Number of tasks already waiting when each task was submitted.
+     */
+    @NonNull
+    public Log2Histogram getQueueDepth() {
+        return mQueueDepth;
+    }
+
+    /**
+     * Returns the metrics of the tasks with label, created on first use.
+     */
+    @NonNull
+    public TaskMetrics getTask(@NonNull String label) {
+        TaskMetrics task = mTasks.get(checkNotNull(label));
+        if (task == null) {
+            TaskMetrics created = new TaskMetrics();
+            task = mTasks.putIfAbsent(label, created);
+            if (task == null) {
+                task = created;
+            }
+        }
+        return task;
+    }
+
+    /**
+     * Returns the metrics of every label seen, sorted by label.
+     */
+    @NonNull
+    public Map<String, TaskMetrics> getTasks() {
+        return new TreeMap<>(mTasks);
+    }
+
+    void onSubmitted() {
+        mQueueDepth.record(mQueued.getAndIncrement());
+    }
+
+    void onRejected() {
+        mQueued.decrementAndGet();
+    }
+
+    void onCancelled() {
+        mQueued.decrementAndGet();
+        mCancelled.incrementAndGet();
+    }
+
+    void onStarted(@NonNull TaskMetrics task, long waitNanos) {
+        mQueued.decrementAndGet();
+        mRunning.incrementAndGet();
+        task.mWaitMicros.record(waitNanos / 1000);
+    }
+
+    void onFinished(@NonNull TaskMetrics task, long runNanos) {
+        mRunning.decrementAndGet();
+        task.mRunMicros.record(runNanos / 1000);
+    }
+
+    /**
+     * Prints the metrics, a line for the queue and one per task label, e.g. for dumpsys.
+     */
+    public void dump(@NonNull String prefix, @NonNull PrintWriter writer) {
+        writer.print(prefix);
+        writer.print(mName);
+        writer.print(": queued=");
+        writer.print(mQueued.get());
+        writer.print(" running=");
+        writer.print(mRunning.get());
+        writer.print(" cancelled=");
+        writer.print(mCancelled.get());
+        writer.print(" depth");
+        dump(mQueueDepth, writer);
+        writer.println();
+        for (Map.Entry<String, TaskMetrics> entry : getTasks().entrySet()) {
+            writer.print(prefix);
+            writer.print("  ");
+            writer.print(entry.getKey());
+            writer.print(": waitUs");
+            dump(entry.getValue().mWaitMicros, writer);
+            writer.print(" runUs");
+            dump(entry.getValue().mRunMicros, writer);
+            writer.println();
+        }
+    }
+
+    private static void dump(@NonNull Log2Histogram histogram, @NonNull PrintWriter writer) {
+        writer.print("[n=");
+        writer.print(histogram.getCount());
+        writer.print(" mean=");
+        writer.print(histogram.getMean());
+        writer.print(" p50<=");
+        writer.print(histogram.getPercentile(0.5));
+        writer.print(" p99<=");
+        writer.print(histogram.getPercentile(0.99));
+        writer.print(" max=");
+        writer.print(histogram.getMax());
+        writer.print(']');
+    }
+}
@@ -0,0 +1,66 @@
+package com.dogbuddy.android.code.test.dogsapp.util;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Executor that runs tasks on another one and records in {@link ExecutorMetrics} how many were
+ * queued, how long each waited to start and how long it ran.
+ * <p>
+ * Tasks are labelled with their class name unless a label is given, which for the anonymous
+ * runnables of the data sources names the method that posted them, e.g.
+ * {@code DogsLocalDataSource$5}.
+ */
+public class InstrumentedExecutor implements Executor {
+
+    private final Executor mDelegate;
+
+    private final ExecutorMetrics mMetrics;
+
+    public InstrumentedExecutor(@NonNull Executor delegate, @NonNull ExecutorMetrics metrics) {
+        mDelegate = checkNotNull(delegate);
+        mMetrics = checkNotNull(metrics);
+    }
+
+    @NonNull
+    public ExecutorMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        execute(labelOf(command), command);
+    }
+
+    public void execute(@NonNull String label, @NonNull final Runnable command) {
+        checkNotNull(command);
+        final ExecutorMetrics.TaskMetrics task = mMetrics.getTask(label);
+        final long submittedAt = System.nanoTime();
+        mMetrics.onSubmitted();
+        try {
+            mDelegate.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long startedAt = System.nanoTime();
+                    mMetrics.onStarted(task, startedAt - submittedAt);
+                    try {
+                        command.run();
+                    } finally {
+                        mMetrics.onFinished(task, System.nanoTime() - startedAt);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            mMetrics.onRejected();
+            throw e;
+        }
+    }
+
+    static String labelOf(@NonNull Runnable command) {
+        String name = command.getClass().getName();
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+}
@@ -0,0 +1,79 @@
+package com.dogbuddy.android.code.test.dogsapp.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non-negative values with a bucket per power of two: bucket 0 counts the values
+ * under 1, and bucket i the values from 2^(i-1) to 2^i - 1. Recording a value is a few atomic
+ * increments and never allocates or blocks, so it can be done on every task of an executor.
+ * Percentiles are only known within a factor of two, which is enough to tell 1 ms from 100 ms.
+ */
+public final class Log2Histogram {
+
+    static final int BUCKET_COUNT = 64;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong mCount = new AtomicLong();
+
+    private final AtomicLong mSum = new AtomicLong();
+
+    private final AtomicLong mMax = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        mBuckets.incrementAndGet(bucketOf(value));
+        mCount.incrementAndGet();
+        mSum.addAndGet(value);
+        long max;
+        do {
+            max = mMax.get();
+        } while (value > max && !mMax.compareAndSet(max, value));
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getMax() {
+        return mMax.get();
+    }
+
+    public long getMean() {
+        long count = mCount.get();
+        return count == 0 ? 0 : mSum.get() / count;
+    }
+
+    /**
+     * Returns an upper bound of the value under which fraction of the values fall, 0 if nothing
+     * was recorded.
+     *
+     * @param fraction between 0 and 1, e.g. 0.99 for the 99th percentile.
+     */
+    public long getPercentile(double fraction) {
+        long count = mCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += mBuckets.get(bucket);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(bucket), mMax.get());
+            }
+        }
+        return mMax.get();
+    }
+
+    static int bucketOf(long value) {
+        return value <= 0 ? 0 : Math.min(64 - Long.numberOfLeadingZeros(value), BUCKET_COUNT - 1);
+    }
+
+    private static long upperBoundOf(int bucket) {
+        return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+}
@@ -0,0 +1,148 @@
+package com.dogbuddy.android.code.test.dogsapp.util;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Disk executor that runs the queued tasks by {@link Priority} instead of in the order they were
+ * submitted: the reads of the screen the user is looking at don't wait behind prefetches or a
+ * burst of background writes. Tasks of the same priority run in the order they were submitted,
+ * and tasks submitted with {@link #execute(Runnable)} are background writes, so the callers that
+ * don't give a priority keep their order.
+ * <p>
+ * With a single thread, like {@link DiskIOThreadExecutor}, tasks also run one at a time, which
+ * suits writes. With more, tasks of the same priority start in order but run concurrently, which
+ * suits reads of a database in write-ahead logging mode.
+ * <p>
+ * A task whose {@link CancellationToken} is cancelled before it starts is dropped. What the
+ * executor does is recorded in {@link ExecutorMetrics}, with tasks labelled by priority.
+ */
+public class PriorityDiskExecutor implements Executor {
+
+    /**
+     * Priority classes, most urgent first.
+     */
+    public enum Priority {
+        UI_READ,
+        PREFETCH,
+        BACKGROUND_WRITE
+    }
+
+    private final PriorityBlockingQueue<Task> mQueue = new PriorityBlockingQueue<>();
+
+    private final AtomicLong mSequence = new AtomicLong();
+
+    private final ExecutorMetrics mMetrics;
+
+    private final String mName;
+
+    private final Runnable mWorker = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                Task task;
+                try {
+                    task = mQueue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                runTask(task);
+            }
+        }
+    };
+
+    public PriorityDiskExecutor(@NonNull ExecutorMetrics metrics) {
+        this(metrics, 1);
+    }
+
+    public PriorityDiskExecutor(@NonNull ExecutorMetrics metrics, int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount < 1: " + threadCount);
+        }
+        mMetrics = checkNotNull(metrics);
+        mName = metrics.getName();
+        for (int i = 0; i < threadCount; i++) {
+            startWorker();
+        }
+    }
+
+    @NonNull
+    public ExecutorMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        execute(Priority.BACKGROUND_WRITE, CancellationToken.NONE, command);
+    }
+
+    public void execute(@NonNull Priority priority, @NonNull CancellationToken token,
+                        @NonNull Runnable command) {
+        Task task = new Task(checkNotNull(priority), checkNotNull(token), checkNotNull(command),
+                mSequence.getAndIncrement(), System.nanoTime());
+        mMetrics.onSubmitted();
+        mQueue.add(task);
+    }
+
+    private void runTask(@NonNull Task task) {
+        if (task.mToken.isCancelled()) {
+            mMetrics.onCancelled();
+            return;
+        }
+        ExecutorMetrics.TaskMetrics metrics = mMetrics.getTask(
+                task.mPriority + " " + InstrumentedExecutor.labelOf(task.mCommand));
+        long startedAt = System.nanoTime();
+        mMetrics.onStarted(metrics, startedAt - task.mSubmittedAt);
+        try {
+            task.mCommand.run();
+        } catch (RuntimeException | Error e) {
+            // Like a thread pool, replace the worker the task kills.
+            startWorker();
+            throw e;
+        } finally {
+            mMetrics.onFinished(metrics, System.nanoTime() - startedAt);
+        }
+    }
+
+    private void startWorker() {
+        Thread thread = new Thread(mWorker, mName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static final class Task implements Comparable<Task> {
+
+        private final Priority mPriority;
+
+        private final CancellationToken mToken;
+
+        private final Runnable mCommand;
+
+        private final long mSequence;
+
+        private final long mSubmittedAt;
+
+        Task(Priority priority, CancellationToken token, Runnable command, long sequence,
+             long submittedAt) {
+            mPriority = priority;
+            mToken = token;
+            mCommand = command;
+            mSequence = sequence;
+            mSubmittedAt = submittedAt;
+        }
+
+        @Override
+        public int compareTo(@NonNull Task other) {
+            int byPriority = mPriority.compareTo(other.mPriority);
+            if (byPriority != 0) {
+                return byPriority;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+}
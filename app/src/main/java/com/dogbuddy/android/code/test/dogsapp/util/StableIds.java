@@ -0,0 +1,32 @@
+package com.dogbuddy.android.code.test.dogsapp.util;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Derives the stable adapter ids of list items from their string ids.
+ */
+public final class StableIds {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private StableIds() {
+    }
+
+    /**
+     * Returns the 64 bit FNV-1a hash of id. It's computed from the chars of id directly, so
+     * binding a row doesn't allocate, unlike hashing its UTF-8 bytes would.
+     */
+    public static long of(@NonNull String id) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0, length = id.length(); i < length; i++) {
+            char c = id.charAt(i);
+            hash ^= c & 0xff;
+            hash *= FNV_PRIME;
+            hash ^= c >>> 8;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
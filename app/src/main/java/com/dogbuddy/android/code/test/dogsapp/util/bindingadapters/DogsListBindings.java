@@ -2,7 +2,7 @@
 package com.dogbuddy.android.code.test.dogsapp.util.bindingadapters;
 
 import android.databinding.BindingAdapter;
-import android.widget.ListView;
+import android.support.v7.widget.RecyclerView;
 
 import com.dogbuddy.android.code.test.dogsapp.data.Dog;
 import com.dogbuddy.android.code.test.dogsapp.dogs.DogsAdapter;
@@ -16,8 +16,8 @@ public class DogsListBindings {
 
     @SuppressWarnings("unchecked")
     @BindingAdapter("app:items")
-    public static void setItems(ListView listView, List<Dog> items) {
-        DogsAdapter adapter = (DogsAdapter) listView.getAdapter();
+    public static void setItems(RecyclerView recyclerView, List<Dog> items) {
+        DogsAdapter adapter = (DogsAdapter) recyclerView.getAdapter();
         if (adapter != null)
         {
             adapter.replaceData(items);
@@ -22,6 +22,7 @@ import android.support.annotation.NonNull;
 import com.dogbuddy.android.code.test.dogsapp.data.FakeDogsRemoteDataSource;
 import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDataSource;
 import com.dogbuddy.android.code.test.dogsapp.data.source.DogsRepository;
+import com.dogbuddy.android.code.test.dogsapp.data.source.OutboxDogsDataSource;
 import com.dogbuddy.android.code.test.dogsapp.data.source.local.DogBuddyDatabase;
 import com.dogbuddy.android.code.test.dogsapp.data.source.local.DogsLocalDataSource;
 import com.dogbuddy.android.code.test.dogsapp.util.AppExecutors;
@@ -38,8 +39,11 @@ public class Injection {
     public static DogsRepository provideTasksRepository(@NonNull Context context) {
         checkNotNull(context);
         DogBuddyDatabase database = DogBuddyDatabase.getInstance(context);
-        return DogsRepository.getInstance(FakeDogsRemoteDataSource.getInstance(),
-                DogsLocalDataSource.getInstance(new AppExecutors(),
-                        database.dogDao()));
+        AppExecutors appExecutors = new AppExecutors();
+        return DogsRepository.getInstance(
+                OutboxDogsDataSource.getInstance(appExecutors,
+                        FakeDogsRemoteDataSource.getInstance(), database.outboxDao()),
+                DogsLocalDataSource.getInstance(appExecutors, database),
+                appExecutors.mainThread());
     }
 }
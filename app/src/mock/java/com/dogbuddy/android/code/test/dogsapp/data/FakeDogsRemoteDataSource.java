@@ -2,19 +2,27 @@
 package com.dogbuddy.android.code.test.dogsapp.data;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
 
-import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDataSource;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsBatch;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDelta;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsSyncDataSource;
 import com.google.common.collect.Lists;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Implementation of a remote data source with static access to the data for easy testing.
  */
-public class FakeDogsRemoteDataSource implements DogsDataSource {
+public class FakeDogsRemoteDataSource implements DogsSyncDataSource {
 
     private static FakeDogsRemoteDataSource INSTANCE;
 
@@ -36,12 +44,48 @@ public class FakeDogsRemoteDataSource implements DogsDataSource {
         callback.onDogsLoaded(Lists.newArrayList(DOGS_SERVICE_DATA.values()));
     }
 
+    @Override
+    public void getDogsPage(@Nullable String afterDogId, int pageSize,
+                            @NonNull LoadDogsCallback callback) {
+        List<Dog> page = new ArrayList<>(pageSize);
+        for (Dog dog : new TreeMap<>(DOGS_SERVICE_DATA).values()) {
+            if (page.size() == pageSize) {
+                break;
+            }
+            if (afterDogId == null || dog.getId().compareTo(afterDogId) > 0) {
+                page.add(dog);
+            }
+        }
+        if (page.isEmpty()) {
+            callback.onDataNotAvailable();
+        } else {
+            callback.onDogsLoaded(page);
+        }
+    }
+
     @Override
     public void getDog(@NonNull String taskId, @NonNull GetDogCallback callback) {
         Dog dog = DOGS_SERVICE_DATA.get(taskId);
         callback.onDogLoaded(dog);
     }
 
+    @Override
+    public void getDogsByIds(@NonNull Collection<String> dogIds,
+                             @NonNull LoadDogsCallback callback) {
+        List<Dog> dogs = new ArrayList<>(dogIds.size());
+        for (String dogId : dogIds) {
+            Dog dog = DOGS_SERVICE_DATA.get(dogId);
+            if (dog != null) {
+                dogs.add(dog);
+            }
+        }
+        if (dogs.isEmpty()) {
+            callback.onDataNotAvailable();
+        } else {
+            callback.onDogsLoaded(dogs);
+        }
+    }
+
     @Override
     public void getBreeds(@NonNull LoadBreedsCallback callback) {
         callback.onBreedsLoaded(Lists.newArrayList(BREEDS_SERVICE_DATA.values()));
@@ -57,6 +101,50 @@ public class FakeDogsRemoteDataSource implements DogsDataSource {
         BREEDS_SERVICE_DATA.put(breed.getId(), breed);
     }
 
+    @Override
+    public void saveDogs(@NonNull List<Dog> dogs) {
+        for (Dog dog : dogs) {
+            DOGS_SERVICE_DATA.put(dog.getId(), dog);
+        }
+    }
+
+    @Override
+    public void saveBreeds(@NonNull List<Breed> breeds) {
+        for (Breed breed : breeds) {
+            BREEDS_SERVICE_DATA.put(breed.getId(), breed);
+        }
+    }
+
+    @Override
+    public void applyBatch(@NonNull DogsBatch batch, @NonNull ApplyBatchCallback callback) {
+        if (batch.isDeleteAllDogs()) {
+            DOGS_SERVICE_DATA.clear();
+        }
+        for (Dog dog : batch.getSavedDogs()) {
+            DOGS_SERVICE_DATA.put(dog.getId(), dog);
+        }
+        for (String dogId : batch.getDeletedDogIds()) {
+            DOGS_SERVICE_DATA.remove(dogId);
+        }
+        if (batch.isDeleteAllBreeds()) {
+            BREEDS_SERVICE_DATA.clear();
+        }
+        for (Breed breed : batch.getSavedBreeds()) {
+            BREEDS_SERVICE_DATA.put(breed.getId(), breed);
+        }
+        callback.onBatchApplied();
+    }
+
+    /**
+     * Doesn't track changes: always answers with everything, as a reset.
+     */
+    @Override
+    public void getChangesSince(@Nullable String cursor, @NonNull LoadChangesCallback callback) {
+        callback.onChangesLoaded(new DogsDelta("0", true, false, DOGS_SERVICE_DATA.values(),
+                Collections.<String>emptyList(), BREEDS_SERVICE_DATA.values(),
+                Collections.<String>emptyList()));
+    }
+
     public void refreshDogs() {
         // Not required because the {@link DogsRepository} handles the logic of refreshing the
         // tasks from all the available data sources.
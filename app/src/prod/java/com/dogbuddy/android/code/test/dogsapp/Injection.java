@@ -4,11 +4,16 @@ import android.content.Context;
 import android.support.annotation.NonNull;
 
 import com.dogbuddy.android.code.test.dogsapp.data.source.DogsRepository;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsSyncDataSource;
+import com.dogbuddy.android.code.test.dogsapp.data.source.OutboxDogsDataSource;
 import com.dogbuddy.android.code.test.dogsapp.data.source.local.DogsLocalDataSource;
 import com.dogbuddy.android.code.test.dogsapp.data.source.local.DogBuddyDatabase;
 import com.dogbuddy.android.code.test.dogsapp.data.source.remote.DogsRemoteDataSource;
+import com.dogbuddy.android.code.test.dogsapp.data.source.remote.HttpDogsRemoteDataSource;
 import com.dogbuddy.android.code.test.dogsapp.util.AppExecutors;
 
+import java.io.File;
+
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -20,8 +25,14 @@ public class Injection {
     public static DogsRepository provideDogsRepository(@NonNull Context context) {
         checkNotNull(context);
         DogBuddyDatabase database = DogBuddyDatabase.getInstance(context);
-        return DogsRepository.getInstance(DogsRemoteDataSource.getInstance(),
-                DogsLocalDataSource.getInstance(new AppExecutors(),
-                        database.dogDao()));
+        AppExecutors appExecutors = new AppExecutors();
+        DogsSyncDataSource remote = BuildConfig.DOGS_API_URL.isEmpty()
+                ? DogsRemoteDataSource.getInstance()
+                : HttpDogsRemoteDataSource.getInstance(appExecutors, BuildConfig.DOGS_API_URL,
+                        new File(context.getCacheDir(), "dogs-http"));
+        return DogsRepository.getInstance(
+                OutboxDogsDataSource.getInstance(appExecutors, remote, database.outboxDao()),
+                DogsLocalDataSource.getInstance(appExecutors, database),
+                appExecutors.mainThread());
     }
 }
@@ -5,10 +5,12 @@ package com.dogbuddy.android.code.test.dogsapp.addeditdog;
 import android.app.Application;
 import android.arch.core.executor.testing.InstantTaskExecutorRule;
 
+import com.dogbuddy.android.code.test.dogsapp.data.Breed;
 import com.dogbuddy.android.code.test.dogsapp.data.Dog;
 import com.dogbuddy.android.code.test.dogsapp.data.DogBuilder;
 import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDataSource;
 import com.dogbuddy.android.code.test.dogsapp.data.source.DogsRepository;
+import com.dogbuddy.android.code.test.dogsapp.util.CancellationToken;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -18,8 +20,12 @@ import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.Collections;
+
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
@@ -44,6 +50,12 @@ public class AddEditDogViewModelTest {
     @Captor
     private ArgumentCaptor<DogsDataSource.GetDogCallback> mGetTaskCallbackCaptor;
 
+    @Captor
+    private ArgumentCaptor<DogsDataSource.LoadBreedsCallback> mLoadBreedsCallbackCaptor;
+
+    @Captor
+    private ArgumentCaptor<CancellationToken> mTokenCaptor;
+
     private AddEditDogViewModel mAddEditDogViewModel;
 
     @Before
@@ -80,14 +92,35 @@ public class AddEditDogViewModelTest {
         // When the ViewModel is asked to populate an existing dog
         mAddEditDogViewModel.start(testDog.getId());
 
-        // Then the dog repository is queried and the view updated
-        verify(mDogsRepository).getDog(eq(testDog.getId()), mGetTaskCallbackCaptor.capture());
+        // Then the breeds and the dog are queried at once
+        verify(mDogsRepository).getBreeds(any(CancellationToken.class),
+                mLoadBreedsCallbackCaptor.capture());
+        verify(mDogsRepository).getDog(eq(testDog.getId()), any(CancellationToken.class),
+                mGetTaskCallbackCaptor.capture());
 
-        // Simulate callback
+        // Simulate callbacks, the view waits for both
         mGetTaskCallbackCaptor.getValue().onDogLoaded(testDog);
+        assertTrue(mAddEditDogViewModel.dataLoading.get());
+        mLoadBreedsCallbackCaptor.getValue().onBreedsLoaded(Collections.<Breed>emptyList());
 
         // Verify the fields were updated
+        assertFalse(mAddEditDogViewModel.dataLoading.get());
         assertThat(mAddEditDogViewModel.name.get(), is(testDog.getName()));
         assertThat(mAddEditDogViewModel.breed.get(), is(testDog.getBreed()));
     }
+
+    @Test
+    public void clearedWhileLoading_cancelsLoads() {
+        mAddEditDogViewModel.start("1");
+        verify(mDogsRepository).getBreeds(mTokenCaptor.capture(),
+                any(DogsDataSource.LoadBreedsCallback.class));
+        verify(mDogsRepository).getDog(eq("1"), mTokenCaptor.capture(),
+                any(DogsDataSource.GetDogCallback.class));
+
+        mAddEditDogViewModel.onCleared();
+
+        for (CancellationToken token : mTokenCaptor.getAllValues()) {
+            assertTrue(token.isCancelled());
+        }
+    }
 }
@@ -1,33 +1,63 @@
 
 package com.dogbuddy.android.code.test.dogsapp.data.source;
 
+import android.arch.core.executor.testing.InstantTaskExecutorRule;
+import android.arch.lifecycle.MutableLiveData;
+import android.arch.lifecycle.Observer;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Breed;
 import com.dogbuddy.android.code.test.dogsapp.data.Dog;
 import com.dogbuddy.android.code.test.dogsapp.data.DogBuilder;
+import com.dogbuddy.android.code.test.dogsapp.data.source.local.DogsLocalDataSource;
+import com.dogbuddy.android.code.test.dogsapp.util.CancellationToken;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * Unit tests for the implementation of the in-memory repository with cache.
  */
 public class DogRepositoryTest {
 
+    // Executes each LiveData update synchronously using Architecture Components.
+    @Rule
+    public InstantTaskExecutorRule instantExecutorRule = new InstantTaskExecutorRule();
+
     private final static String DOG_NAME = "name";
 
     private final static String DOG_NAME2 = "name2";
@@ -43,7 +73,7 @@ public class DogRepositoryTest {
     private DogsDataSource mDogsRemoteDataSource;
 
     @Mock
-    private DogsDataSource mDogsLocalDataSource;
+    private DogsLocalDataSource mDogsLocalDataSource;
 
     @Mock
     private DogsDataSource.GetDogCallback mGetDogCallback;
@@ -54,8 +84,6 @@ public class DogRepositoryTest {
     @Captor
     private ArgumentCaptor<DogsDataSource.LoadDogsCallback> mDogsCallbackCaptor;
 
-    @Captor
-    private ArgumentCaptor<DogsDataSource.GetDogCallback> mDogCallbackCaptor;
 
     @Before
     public void setupDogsRepository() {
@@ -83,6 +111,17 @@ public class DogRepositoryTest {
         verify(mDogsRemoteDataSource).getDogs(any(DogsDataSource.LoadDogsCallback.class));
     }
 
+    @Test
+    public void getDogs_recordsListCacheHitsAndMisses() {
+        // When two calls are issued to the dogs repository
+        twoDogsLoadCallsToRepository(mLoadDogsCallback);
+
+        // Then the first one missed the cache and the second one was served by it
+        CacheStats stats = mDogsRepository.getDogsCacheStats();
+        assertThat(stats.missCount(), is(1L));
+        assertThat(stats.hitCount(), is(1L));
+    }
+
     @Test
     public void getDogs_requestsAllDogsFromLocalDataSource() {
         // When dogs are requested from the dogs repository
@@ -106,14 +145,26 @@ public class DogRepositoryTest {
         assertThat(mDogsRepository.mCachedDogs.size(), is(1));
     }
 
+    @Test
+    public void saveDogs_savesBatchToServiceAPIAndUpdatesCache() {
+        // When a batch of dogs is saved to the dogs repository
+        mDogsRepository.saveDogs(DOGS);
+
+        // Then the batch is handed to both data sources in one call and the cache is updated
+        verify(mDogsRemoteDataSource).saveDogs(DOGS);
+        verify(mDogsLocalDataSource).saveDogs(DOGS);
+        verify(mDogsLocalDataSource, never()).saveDog(any(Dog.class));
+        assertThat(mDogsRepository.mCachedDogs.size(), is(DOGS.size()));
+    }
+
     @Test
     public void getDog_requestsSingleDogFromLocalDataSource() {
         // When a dog is requested from the dogs repository
         mDogsRepository.getDog(DOG_NAME, mGetDogCallback);
 
         // Then the dog is loaded from the database
-        verify(mDogsLocalDataSource).getDog(eq(DOG_NAME), any(
-                DogsDataSource.GetDogCallback.class));
+        verify(mDogsLocalDataSource).getDogsByIds(eq(Collections.singletonList(DOG_NAME)),
+                any(DogsDataSource.LoadDogsCallback.class));
     }
     
     @Test
@@ -227,8 +278,546 @@ public class DogRepositoryTest {
         // Make the remote data source return data
         setDogsAvailable(mDogsRemoteDataSource, DOGS);
 
-        // Verify that the data fetched from the remote data source was saved in local.
-        verify(mDogsLocalDataSource, times(DOGS.size())).saveDog(any(Dog.class));
+        // Verify that the data fetched from the remote data source replaced the local data in one
+        // batch.
+        verify(mDogsLocalDataSource).replaceDogs(DOGS);
+        verify(mDogsLocalDataSource, never()).saveDog(any(Dog.class));
+    }
+
+    @Test
+    public void getDogsWithDirtyCache_syncDataSource_appliesOnlyTheChanges() {
+        // Given a remote data source that tells what changed since the last sync
+        DogsRepository.destroyInstance();
+        DogsSyncDataSource syncDataSource = mock(DogsSyncDataSource.class);
+        mDogsRepository = DogsRepository.getInstance(syncDataSource, mDogsLocalDataSource);
+
+        // When calling getDogs in the repository with a dirty cache
+        mDogsRepository.refreshDogs();
+        mDogsRepository.getDogs(mLoadDogsCallback);
+
+        // Then the changes since the saved cursor are requested
+        ArgumentCaptor<DogsLocalDataSource.GetSyncCursorCallback> cursorCaptor =
+                ArgumentCaptor.forClass(DogsLocalDataSource.GetSyncCursorCallback.class);
+        verify(mDogsLocalDataSource).getSyncCursor(cursorCaptor.capture());
+        cursorCaptor.getValue().onSyncCursorLoaded("7");
+        ArgumentCaptor<DogsSyncDataSource.LoadChangesCallback> changesCaptor =
+                ArgumentCaptor.forClass(DogsSyncDataSource.LoadChangesCallback.class);
+        verify(syncDataSource).getChangesSince(eq("7"), changesCaptor.capture());
+
+        // And each page of changes is applied locally before the next one is requested
+        DogsDelta firstPage = new DogsDelta("9", false, true, DOGS,
+                Collections.<String>emptyList(), Collections.<Breed>emptyList(),
+                Collections.<String>emptyList());
+        changesCaptor.getValue().onChangesLoaded(firstPage);
+        ArgumentCaptor<DogsLocalDataSource.ApplyDeltaCallback> appliedCaptor =
+                ArgumentCaptor.forClass(DogsLocalDataSource.ApplyDeltaCallback.class);
+        verify(mDogsLocalDataSource).applyDelta(eq(firstPage), appliedCaptor.capture());
+        appliedCaptor.getValue().onDeltaApplied();
+
+        verify(syncDataSource).getChangesSince(eq("9"), changesCaptor.capture());
+        DogsDelta lastPage = new DogsDelta("10", false, false, Collections.<Dog>emptyList(),
+                Collections.singletonList("gone"), Collections.<Breed>emptyList(),
+                Collections.<String>emptyList());
+        changesCaptor.getValue().onChangesLoaded(lastPage);
+        verify(mDogsLocalDataSource).applyDelta(eq(lastPage), appliedCaptor.capture());
+        appliedCaptor.getValue().onDeltaApplied();
+
+        // And the dogs are reloaded from the local data source, never fetched in full
+        setDogsAvailable(mDogsLocalDataSource, DOGS);
+        verify(mLoadDogsCallback).onDogsLoaded(DOGS);
+        verify(syncDataSource, never()).getDogs(any(DogsDataSource.LoadDogsCallback.class));
+        verify(mDogsLocalDataSource, never()).replaceDogs(any(List.class));
+    }
+
+    @Test
+    public void getDogsWithDirtyCache_notModified_keepsLocalDogsWithoutWrites() {
+        // When calling getDogs in the repository with dirty cache
+        mDogsRepository.refreshDogs();
+        mDogsRepository.getDogs(mLoadDogsCallback);
+
+        // And the remote data source finds the dogs didn't change
+        verify(mDogsRemoteDataSource).getDogs(mDogsCallbackCaptor.capture());
+        ((DogsDataSource.ConditionalLoadDogsCallback) mDogsCallbackCaptor.getValue())
+                .onNotModified();
+
+        // Then the dogs of the local data source are returned, and nothing is written
+        setDogsAvailable(mDogsLocalDataSource, DOGS);
+        verify(mLoadDogsCallback).onDogsLoaded(DOGS);
+        verify(mDogsLocalDataSource, never()).replaceDogs(any(List.class));
+        verify(mDogsLocalDataSource, never()).saveDogs(any(List.class));
+    }
+
+    @Test
+    public void getDogsWithDirtyCache_syncDataSource_noChanges_writesNothing() {
+        // Given a remote data source that tells what changed since the last sync
+        DogsRepository.destroyInstance();
+        DogsSyncDataSource syncDataSource = mock(DogsSyncDataSource.class);
+        mDogsRepository = DogsRepository.getInstance(syncDataSource, mDogsLocalDataSource);
+
+        // When calling getDogs in the repository with a dirty cache
+        mDogsRepository.refreshDogs();
+        mDogsRepository.getDogs(mLoadDogsCallback);
+
+        // And nothing changed since the saved cursor
+        ArgumentCaptor<DogsLocalDataSource.GetSyncCursorCallback> cursorCaptor =
+                ArgumentCaptor.forClass(DogsLocalDataSource.GetSyncCursorCallback.class);
+        verify(mDogsLocalDataSource).getSyncCursor(cursorCaptor.capture());
+        cursorCaptor.getValue().onSyncCursorLoaded("7");
+        ArgumentCaptor<DogsSyncDataSource.LoadChangesCallback> changesCaptor =
+                ArgumentCaptor.forClass(DogsSyncDataSource.LoadChangesCallback.class);
+        verify(syncDataSource).getChangesSince(eq("7"), changesCaptor.capture());
+        changesCaptor.getValue().onChangesLoaded(new DogsDelta("7", false, false,
+                Collections.<Dog>emptyList(), Collections.<String>emptyList(),
+                Collections.<Breed>emptyList(), Collections.<String>emptyList()));
+
+        // Then the dogs are reloaded from the local data source without applying anything
+        setDogsAvailable(mDogsLocalDataSource, DOGS);
+        verify(mLoadDogsCallback).onDogsLoaded(DOGS);
+        verify(mDogsLocalDataSource, never()).applyDelta(any(DogsDelta.class),
+                any(DogsLocalDataSource.ApplyDeltaCallback.class));
+    }
+
+    @Test
+    public void getDogsWithDirtyCache_syncDataSource_noChanges_servesCachedDogs() {
+        // Given a remote data source that tells what changed since the last sync
+        DogsRepository.destroyInstance();
+        DogsSyncDataSource syncDataSource = mock(DogsSyncDataSource.class);
+        mDogsRepository = DogsRepository.getInstance(syncDataSource, mDogsLocalDataSource);
+        // And dogs cached from the local data source
+        mDogsRepository.getDogs(mLoadDogsCallback);
+        setDogsAvailable(mDogsLocalDataSource, DOGS);
+
+        // When calling getDogs in the repository with a dirty cache
+        mDogsRepository.refreshDogs();
+        mDogsRepository.getDogs(mLoadDogsCallback);
+
+        // And nothing changed since the saved cursor
+        ArgumentCaptor<DogsLocalDataSource.GetSyncCursorCallback> cursorCaptor =
+                ArgumentCaptor.forClass(DogsLocalDataSource.GetSyncCursorCallback.class);
+        verify(mDogsLocalDataSource).getSyncCursor(cursorCaptor.capture());
+        cursorCaptor.getValue().onSyncCursorLoaded("7");
+        ArgumentCaptor<DogsSyncDataSource.LoadChangesCallback> changesCaptor =
+                ArgumentCaptor.forClass(DogsSyncDataSource.LoadChangesCallback.class);
+        verify(syncDataSource).getChangesSince(eq("7"), changesCaptor.capture());
+        changesCaptor.getValue().onChangesLoaded(new DogsDelta("7", false, false,
+                Collections.<Dog>emptyList(), Collections.<String>emptyList(),
+                Collections.<Breed>emptyList(), Collections.<String>emptyList()));
+
+        // Then the cached dogs are returned without reading the local data source again
+        verify(mLoadDogsCallback, times(2)).onDogsLoaded(DOGS);
+        verify(mDogsLocalDataSource, times(1))
+                .getDogs(any(DogsDataSource.LoadDogsCallback.class));
+    }
+
+    @Test
+    public void observeDogs_emptyLocalDataSource_fetchesFromRemoteOnce() {
+        // Given a local data source stream
+        MutableLiveData<List<Dog>> localDogs = new MutableLiveData<>();
+        when(mDogsLocalDataSource.observeDogs()).thenReturn(localDogs);
+        Observer<List<Dog>> observer = mock(Observer.class);
+        mDogsRepository.observeDogs().observeForever(observer);
+
+        // When the local data source is empty
+        localDogs.setValue(Collections.<Dog>emptyList());
+
+        // And the remote data source has data available
+        setDogsAvailable(mDogsRemoteDataSource, DOGS);
+
+        // Then the remote dogs are pushed to the subscriber
+        verify(observer).onChanged(DOGS);
+
+        // And a later empty snapshot doesn't trigger another remote fetch
+        localDogs.setValue(Collections.<Dog>emptyList());
+        verify(mDogsRemoteDataSource, times(1)).getDogs(any(DogsDataSource.LoadDogsCallback.class));
+    }
+
+    @Test
+    public void observeDogs_localChangesArePushedToSubscribers() {
+        // Given a subscriber to the dogs stream
+        MutableLiveData<List<Dog>> localDogs = new MutableLiveData<>();
+        when(mDogsLocalDataSource.observeDogs()).thenReturn(localDogs);
+        Observer<List<Dog>> observer = mock(Observer.class);
+        mDogsRepository.observeDogs().observeForever(observer);
+
+        // When the dogs table changes
+        localDogs.setValue(DOGS);
+
+        // Then the new snapshot is pushed and cached, without querying the remote data source
+        verify(observer).onChanged(DOGS);
+        assertThat(mDogsRepository.mCachedDogs.size(), is(DOGS.size()));
+        verify(mDogsRemoteDataSource, never()).getDogs(any(DogsDataSource.LoadDogsCallback.class));
+    }
+
+    @Test
+    public void getDogsPage_shortLocalPageBeforeFirstSync_isMergedWithRemotePage() {
+        // Given a remote data source that syncs, and dogs never synced
+        DogsRepository.destroyInstance();
+        DogsSyncDataSource syncDataSource = mock(DogsSyncDataSource.class);
+        mDogsRepository = DogsRepository.getInstance(syncDataSource, mDogsLocalDataSource);
+        Dog dogA = new DogBuilder().setId("a").setName(DOG_NAME).setBreed("Breed").createDog();
+        Dog dogB = new DogBuilder().setId("b").setName(DOG_NAME2).setBreed("Breed").createDog();
+        Dog dogC = new DogBuilder().setId("c").setName(DOG_NAME3).setBreed("Breed").createDog();
+        Dog remoteDogC = new DogBuilder().setId("c").setName("remote").setBreed("Breed")
+                .createDog();
+
+        // When the first page is requested from the repository
+        mDogsRepository.getDogsPage(null, 3, mLoadDogsCallback);
+
+        // And the local data source can't fill it
+        verify(mDogsLocalDataSource).getDogsPage(eq((String) null), eq(3),
+                mDogsCallbackCaptor.capture());
+        mDogsCallbackCaptor.getValue().onDogsLoaded(Lists.newArrayList(dogA, dogC));
+        ArgumentCaptor<DogsLocalDataSource.GetSyncCursorCallback> cursorCaptor =
+                ArgumentCaptor.forClass(DogsLocalDataSource.GetSyncCursorCallback.class);
+        verify(mDogsLocalDataSource).getSyncCursor(cursorCaptor.capture());
+        cursorCaptor.getValue().onSyncCursorLoaded(null);
+
+        // Then the same page is requested from the remote data source
+        verify(syncDataSource).getDogsPage(eq((String) null), eq(3),
+                mDogsCallbackCaptor.capture());
+        mDogsCallbackCaptor.getValue().onDogsLoaded(Lists.newArrayList(dogB, remoteDogC));
+
+        // And the pages are merged in id order, remote dogs winning, but only the sync persists
+        // remote dogs
+        verify(mLoadDogsCallback).onDogsLoaded(Lists.newArrayList(dogA, dogB, remoteDogC));
+        verify(mDogsLocalDataSource, never()).saveDogs(any(List.class));
+    }
+
+    @Test
+    public void getDogsPage_shortLocalPageAfterSync_isTheLastPage() {
+        // Given a remote data source that syncs, and dogs already synced
+        DogsRepository.destroyInstance();
+        DogsSyncDataSource syncDataSource = mock(DogsSyncDataSource.class);
+        mDogsRepository = DogsRepository.getInstance(syncDataSource, mDogsLocalDataSource);
+
+        // When a page is requested and the local data source can't fill it
+        mDogsRepository.getDogsPage("a", DOGS.size() + 1, mLoadDogsCallback);
+        verify(mDogsLocalDataSource).getDogsPage(eq("a"), eq(DOGS.size() + 1),
+                mDogsCallbackCaptor.capture());
+        mDogsCallbackCaptor.getValue().onDogsLoaded(DOGS);
+        ArgumentCaptor<DogsLocalDataSource.GetSyncCursorCallback> cursorCaptor =
+                ArgumentCaptor.forClass(DogsLocalDataSource.GetSyncCursorCallback.class);
+        verify(mDogsLocalDataSource).getSyncCursor(cursorCaptor.capture());
+        cursorCaptor.getValue().onSyncCursorLoaded("7");
+
+        // Then the local page is returned and the remote data source isn't queried
+        verify(mLoadDogsCallback).onDogsLoaded(DOGS);
+        verify(syncDataSource, never()).getDogsPage(any(String.class), anyInt(),
+                any(DogsDataSource.LoadDogsCallback.class));
+    }
+
+    @Test
+    public void getDogsPage_shortLocalPage_withoutSync_doesNotQueryRemote() {
+        // When a page is requested and the local data source can't fill it
+        mDogsRepository.getDogsPage("a", DOGS.size() + 1, mLoadDogsCallback);
+        verify(mDogsLocalDataSource).getDogsPage(eq("a"), eq(DOGS.size() + 1),
+                mDogsCallbackCaptor.capture());
+        mDogsCallbackCaptor.getValue().onDogsLoaded(DOGS);
+
+        // Then it's the last page, the remote data source is only asked for empty pages
+        verify(mLoadDogsCallback).onDogsLoaded(DOGS);
+        verify(mDogsRemoteDataSource, never()).getDogsPage(any(String.class), anyInt(),
+                any(DogsDataSource.LoadDogsCallback.class));
+    }
+
+    @Test
+    public void getDogsPage_fullLocalPage_doesNotQueryRemote() {
+        // When a page is requested and the local data source fills it
+        mDogsRepository.getDogsPage("a", DOGS.size(), mLoadDogsCallback);
+        verify(mDogsLocalDataSource).getDogsPage(eq("a"), eq(DOGS.size()),
+                mDogsCallbackCaptor.capture());
+        mDogsCallbackCaptor.getValue().onDogsLoaded(DOGS);
+
+        // Then the local page is returned and the remote data source isn't queried
+        verify(mLoadDogsCallback).onDogsLoaded(DOGS);
+        verify(mDogsRemoteDataSource, never()).getDogsPage(any(String.class), anyInt(),
+                any(DogsDataSource.LoadDogsCallback.class));
+    }
+
+    @Test
+    public void getDogs_concurrentCallsAreCoalescedIntoOneLoad() {
+        DogsDataSource.LoadDogsCallback secondCallback =
+                mock(DogsDataSource.LoadDogsCallback.class);
+
+        // When dogs are requested twice before the first load finishes
+        mDogsRepository.getDogs(mLoadDogsCallback);
+        mDogsRepository.getDogs(secondCallback);
+
+        // Then the local data source is queried only once
+        setDogsAvailable(mDogsLocalDataSource, DOGS);
+
+        // And both callers are completed with its result
+        verify(mLoadDogsCallback).onDogsLoaded(DOGS);
+        verify(secondCallback).onDogsLoaded(DOGS);
+        assertThat(mDogsRepository.getStartedLoadCount(), is(1L));
+        assertThat(mDogsRepository.getCoalescedLoadCount(), is(1L));
+    }
+
+    @Test
+    public void getDogs_sharedLoadIsCancelledOnlyOnceEveryCallerCancels() {
+        CancellationToken firstToken = new CancellationToken();
+        CancellationToken secondToken = new CancellationToken();
+        DogsDataSource.LoadDogsCallback secondCallback =
+                mock(DogsDataSource.LoadDogsCallback.class);
+        ArgumentCaptor<CancellationToken> loadToken =
+                ArgumentCaptor.forClass(CancellationToken.class);
+
+        // Given two callers waiting for the same load
+        mDogsRepository.getDogs(firstToken, mLoadDogsCallback);
+        mDogsRepository.getDogs(secondToken, secondCallback);
+        verify(mDogsLocalDataSource).getDogs(loadToken.capture(),
+                any(DogsDataSource.LoadDogsCallback.class));
+
+        // When one of them cancels, the load goes on for the other
+        firstToken.cancel();
+        assertFalse(loadToken.getValue().isCancelled());
+
+        // When the other cancels too, the load is cancelled
+        secondToken.cancel();
+        assertTrue(loadToken.getValue().isCancelled());
+        assertThat(mDogsRepository.getAbandonedLoadCount(), is(1L));
+    }
+
+    @Test
+    public void getDogs_cancelledCallerIsNotCalledBack() {
+        CancellationToken token = new CancellationToken();
+        DogsDataSource.LoadDogsCallback secondCallback =
+                mock(DogsDataSource.LoadDogsCallback.class);
+
+        // Given two callers waiting for the same load, one of which cancels
+        mDogsRepository.getDogs(token, mLoadDogsCallback);
+        mDogsRepository.getDogs(secondCallback);
+        token.cancel();
+
+        // When the load finishes
+        verify(mDogsLocalDataSource).getDogs(any(CancellationToken.class),
+                mDogsCallbackCaptor.capture());
+        mDogsCallbackCaptor.getValue().onDogsLoaded(DOGS);
+
+        // Then only the caller still waiting gets the dogs
+        verify(mLoadDogsCallback, never()).onDogsLoaded(any(List.class));
+        verify(secondCallback).onDogsLoaded(DOGS);
+        assertThat(mDogsRepository.getAbandonedLoadCount(), is(0L));
+    }
+
+    @Test
+    public void getDogs_completedLoadStopsListeningToTheCallerToken() {
+        CancellationToken token = new CancellationToken();
+
+        // When a load made with a long lived token completes
+        mDogsRepository.getDogs(token, mLoadDogsCallback);
+        verify(mDogsLocalDataSource).getDogs(any(CancellationToken.class),
+                mDogsCallbackCaptor.capture());
+        mDogsCallbackCaptor.getValue().onDogsLoaded(DOGS);
+
+        // Then nothing is left listening to the token
+        verify(mLoadDogsCallback).onDogsLoaded(any(List.class));
+        assertThat(token.getListenerCount(), is(0));
+    }
+
+    @Test
+    public void getDogRacing_firstDataSourceToFindTheDogWins() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        Dog dog = new DogBuilder().setId("a").setName(DOG_NAME).setBreed("Breed").createDog();
+        ArgumentCaptor<DogsDataSource.GetDogCallback> localCallback =
+                ArgumentCaptor.forClass(DogsDataSource.GetDogCallback.class);
+        try {
+            // When a dog is raced from both data sources
+            ListenableFuture<Dog> racing =
+                    mDogsRepository.getDogRacing("a", 1, TimeUnit.MINUTES, scheduler);
+            verify(mDogsLocalDataSource).getDog(eq("a"), any(CancellationToken.class),
+                    localCallback.capture());
+            verify(mDogsRemoteDataSource).getDog(eq("a"),
+                    any(DogsDataSource.GetDogCallback.class));
+
+            // And the local data source finds it first
+            localCallback.getValue().onDogLoaded(dog);
+
+            // Then the dog is loaded and cached
+            assertThat(Futures.getDone(racing), is(dog));
+            assertThat(Futures.getDone(
+                    mDogsRepository.getDogRacing("a", 1, TimeUnit.MINUTES, scheduler)), is(dog));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void getDogRacing_neitherDataSourceAnswers_timesOutAndCancelsBothLookups()
+            throws Exception {
+        // Given a remote data source whose lookups can be cancelled
+        CancellableDogsDataSource remoteDataSource = mock(CancellableDogsDataSource.class);
+        DogsRepository.destroyInstance();
+        mDogsRepository = DogsRepository.getInstance(remoteDataSource, mDogsLocalDataSource);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        ArgumentCaptor<CancellationToken> localToken =
+                ArgumentCaptor.forClass(CancellationToken.class);
+        ArgumentCaptor<CancellationToken> remoteToken =
+                ArgumentCaptor.forClass(CancellationToken.class);
+
+        // When a dog is raced and neither data source answers in time
+        ListenableFuture<Dog> racing =
+                mDogsRepository.getDogRacing("a", 10, TimeUnit.MILLISECONDS, scheduler);
+        try {
+            racing.get(1, TimeUnit.MINUTES);
+            fail("The race didn't time out");
+        } catch (ExecutionException e) {
+            // Then the race fails with a timeout
+            assertThat(e.getCause(), is(instanceOf(TimeoutException.class)));
+        }
+        // The timeout cancels the lookups after failing the race, wait for it to be done
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(1, TimeUnit.MINUTES));
+
+        // And both lookups are cancelled
+        verify(mDogsLocalDataSource).getDog(eq("a"), localToken.capture(),
+                any(DogsDataSource.GetDogCallback.class));
+        verify(remoteDataSource).getDog(eq("a"), remoteToken.capture(),
+                any(DogsDataSource.GetDogCallback.class));
+        assertTrue(localToken.getValue().isCancelled());
+        assertTrue(remoteToken.getValue().isCancelled());
+    }
+
+    @Test
+    public void getDog_missesOfTheSameBatchAreLoadedTogether() {
+        // Given a repository that runs the batches of dogs when told to
+        final List<Runnable> batches = new ArrayList<>();
+        DogsRepository.destroyInstance();
+        mDogsRepository = DogsRepository.getInstance(mDogsRemoteDataSource, mDogsLocalDataSource,
+                new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        batches.add(command);
+                    }
+                });
+        Dog dogA = new DogBuilder().setId("a").setName(DOG_NAME).setBreed("Breed").createDog();
+        Dog dogB = new DogBuilder().setId("b").setName(DOG_NAME2).setBreed("Breed").createDog();
+        DogsDataSource.GetDogCallback callbackB = mock(DogsDataSource.GetDogCallback.class);
+        DogsDataSource.GetDogCallback callbackC = mock(DogsDataSource.GetDogCallback.class);
+
+        // When three dogs are requested before the batch runs
+        mDogsRepository.getDog("a", mGetDogCallback);
+        mDogsRepository.getDog("b", callbackB);
+        mDogsRepository.getDog("c", callbackC);
+        assertThat(batches.size(), is(1));
+        batches.get(0).run();
+
+        // Then the local data source is queried once for all of them
+        verify(mDogsLocalDataSource).getDogsByIds(eq(Lists.newArrayList("a", "b", "c")),
+                mDogsCallbackCaptor.capture());
+        mDogsCallbackCaptor.getValue().onDogsLoaded(Collections.singletonList(dogA));
+
+        // And the remote data source once for the ones it doesn't have
+        verify(mDogsRemoteDataSource).getDogsByIds(eq(Lists.newArrayList("b", "c")),
+                mDogsCallbackCaptor.capture());
+        mDogsCallbackCaptor.getValue().onDogsLoaded(Collections.singletonList(dogB));
+
+        // And each caller gets its own dog
+        verify(mGetDogCallback).onDogLoaded(dogA);
+        verify(callbackB).onDogLoaded(dogB);
+        verify(callbackC).onDataNotAvailable();
+    }
+
+    @Test
+    public void getDog_concurrentCallsForSameIdAreCoalesced() {
+        Dog dog = new DogBuilder().setName(DOG_NAME).setBreed("Some Dog Breed").createDog();
+        DogsDataSource.GetDogCallback secondCallback = mock(DogsDataSource.GetDogCallback.class);
+
+        // When the same dog is requested twice before the first load finishes
+        mDogsRepository.getDog(dog.getId(), mGetDogCallback);
+        mDogsRepository.getDog(dog.getId(), secondCallback);
+
+        // Then both data sources are queried only once
+        setDogNotAvailable(mDogsLocalDataSource, dog.getId());
+        setDogNotAvailable(mDogsRemoteDataSource, dog.getId());
+
+        // And both callers are notified
+        verify(mGetDogCallback).onDataNotAvailable();
+        verify(secondCallback).onDataNotAvailable();
+
+        // And a later call starts a new load
+        mDogsRepository.getDog(dog.getId(), mGetDogCallback);
+        verify(mDogsLocalDataSource, times(2)).getDogsByIds(
+                eq(Collections.singletonList(dog.getId())),
+                any(DogsDataSource.LoadDogsCallback.class));
+    }
+
+    @Test
+    public void getDogsRevalidating_deliversLocalDogsThenOnlyChanges() {
+        DogsRepository.RevalidateDogsCallback callback =
+                mock(DogsRepository.RevalidateDogsCallback.class);
+
+        // When dogs are requested in stale-while-revalidate mode
+        mDogsRepository.getDogsRevalidating(callback);
+
+        // Then the local dogs are delivered as stale without waiting for the remote data source
+        setDogsAvailable(mDogsLocalDataSource, DOGS);
+        verify(callback).onDogsLoaded(DOGS, true);
+
+        // And when the remote data source returns the same dogs, no second update is pushed
+        setDogsAvailable(mDogsRemoteDataSource, Lists.reverse(DOGS));
+        verify(callback).onDogsUnchanged();
+        verify(callback, never()).onDogsLoaded(any(List.class), eq(false));
+    }
+
+    @Test
+    public void dogsTableChanged_reloadsCacheFromLocalDataSourceOnly() {
+        // Given dogs cached from the local data source
+        mDogsRepository.getDogs(mLoadDogsCallback);
+        setDogsAvailable(mDogsLocalDataSource, DOGS);
+
+        // When the dogs table is changed behind the repository
+        ArgumentCaptor<DogsLocalDataSource.TablesObserver> observerCaptor =
+                ArgumentCaptor.forClass(DogsLocalDataSource.TablesObserver.class);
+        verify(mDogsLocalDataSource).addTablesObserver(observerCaptor.capture());
+        observerCaptor.getValue().onDogsTableChanged();
+
+        // Then the next load goes to the local data source again, not to the remote one
+        mDogsRepository.getDogs(mLoadDogsCallback);
+        verify(mDogsLocalDataSource, times(2)).getDogs(any(DogsDataSource.LoadDogsCallback.class));
+        verify(mDogsRemoteDataSource, never()).getDogs(any(DogsDataSource.LoadDogsCallback.class));
+    }
+
+    @Test
+    public void noOpDelete_thenOutsideChange_reloadsCacheFromLocalDataSource() {
+        // Given dogs cached from the local data source
+        mDogsRepository.getDogs(mLoadDogsCallback);
+        setDogsAvailable(mDogsLocalDataSource, DOGS);
+
+        // When the repository deletes a dog that isn't stored, which Room doesn't report
+        mDogsRepository.deleteDog("missing");
+
+        // And the dogs table is then changed behind the repository
+        ArgumentCaptor<DogsLocalDataSource.TablesObserver> observerCaptor =
+                ArgumentCaptor.forClass(DogsLocalDataSource.TablesObserver.class);
+        verify(mDogsLocalDataSource).addTablesObserver(observerCaptor.capture());
+        observerCaptor.getValue().onDogsTableChanged();
+
+        // Then the change isn't taken for the repository's, the next load reads the table again
+        mDogsRepository.getDogs(mLoadDogsCallback);
+        verify(mDogsLocalDataSource, times(2)).getDogs(any(DogsDataSource.LoadDogsCallback.class));
+    }
+
+    @Test
+    public void saveAndDeleteDog_publishVersionedChanges() {
+        DogsRepository.DogsChangeListener listener = mock(DogsRepository.DogsChangeListener.class);
+        ArgumentCaptor<DogsChange> changeCaptor = ArgumentCaptor.forClass(DogsChange.class);
+        mDogsRepository.addDogsChangeListener(listener);
+        Dog dog = new DogBuilder().setName(DOG_NAME).setBreed("Some Dog Breed").createDog();
+
+        // When a dog is saved twice and then deleted
+        mDogsRepository.saveDog(dog);
+        mDogsRepository.saveDog(dog);
+        mDogsRepository.deleteDog(dog.getId());
+
+        // Then an insert, an update and a removal are published with consecutive versions
+        verify(listener, times(3)).onDogsChanged(changeCaptor.capture());
+        List<DogsChange> changes = changeCaptor.getAllValues();
+        assertThat(changes.get(0).getInserted(), is(Collections.singletonList(dog)));
+        assertThat(changes.get(1).getUpdated(), is(Collections.singletonList(dog)));
+        assertThat(changes.get(2).getRemovedIds(), is(Collections.singletonList(dog.getId())));
+        assertThat(changes.get(2).getVersion(), is(3L));
+        assertThat(mDogsRepository.getDogsVersion(), is(3L));
     }
 
     /**
@@ -265,12 +854,14 @@ public class DogRepositoryTest {
     }
 
     private void setDogNotAvailable(DogsDataSource dataSource, String dogId) {
-        verify(dataSource).getDog(eq(dogId), mDogCallbackCaptor.capture());
-        mDogCallbackCaptor.getValue().onDataNotAvailable();
+        verify(dataSource).getDogsByIds(eq(Collections.singletonList(dogId)),
+                mDogsCallbackCaptor.capture());
+        mDogsCallbackCaptor.getValue().onDataNotAvailable();
     }
 
     private void setDogAvailable(DogsDataSource dataSource, Dog dog) {
-        verify(dataSource).getDog(eq(dog.getId()), mDogCallbackCaptor.capture());
-        mDogCallbackCaptor.getValue().onDogLoaded(dog);
+        verify(dataSource).getDogsByIds(eq(Collections.singletonList(dog.getId())),
+                mDogsCallbackCaptor.capture());
+        mDogsCallbackCaptor.getValue().onDogsLoaded(Collections.singletonList(dog));
     }
 }
@@ -0,0 +1,73 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for {@link DogsFutures}.
+ */
+public class DogsFuturesTest {
+
+    private final SettableFuture<String> mFirst = SettableFuture.create();
+
+    private final SettableFuture<String> mSecond = SettableFuture.create();
+
+    @Test
+    public void firstSuccessful_firstToSucceedWins_andCancelsTheOthers() throws Exception {
+        ListenableFuture<String> race =
+                DogsFutures.firstSuccessful(Arrays.asList(mFirst, mSecond));
+
+        mFirst.setException(new IllegalStateException());
+        assertFalse(race.isDone());
+        mSecond.set("second");
+
+        assertThat(Futures.getDone(race), is("second"));
+
+        SettableFuture<String> slow = SettableFuture.create();
+        ListenableFuture<String> won =
+                DogsFutures.firstSuccessful(Arrays.asList(mSecond, slow));
+
+        assertThat(Futures.getDone(won), is("second"));
+        assertTrue(slow.isCancelled());
+    }
+
+    @Test
+    public void firstSuccessful_noneSucceeds_failsLikeTheLast() {
+        ListenableFuture<String> race =
+                DogsFutures.firstSuccessful(Arrays.asList(mFirst, mSecond));
+
+        mFirst.setException(new IllegalStateException());
+        mSecond.setException(new DogsFutures.DataNotAvailableException());
+
+        try {
+            Futures.getDone(race);
+            fail("The race must fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(DogsFutures.DataNotAvailableException.class));
+        }
+    }
+
+    @Test
+    public void firstSuccessful_cancelled_cancelsAll() {
+        ListenableFuture<String> race =
+                DogsFutures.firstSuccessful(Arrays.asList(mFirst, mSecond));
+
+        race.cancel(false);
+
+        assertTrue(mFirst.isCancelled());
+        assertTrue(mSecond.isCancelled());
+    }
+}
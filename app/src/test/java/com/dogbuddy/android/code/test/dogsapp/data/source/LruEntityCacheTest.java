@@ -0,0 +1,103 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.dogbuddy.android.code.test.dogsapp.data.DogBuilder;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Weigher;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit tests for {@link LruEntityCache}.
+ */
+public class LruEntityCacheTest {
+
+    private static final Dog DOG1 = new DogBuilder().setId("1").setName("Name1").setBreed("Breed1")
+            .createDog();
+
+    private static final Dog DOG2 = new DogBuilder().setId("2").setName("Name2").setBreed("Breed2")
+            .createDog();
+
+    private static final Dog DOG3 = new DogBuilder().setId("3").setName("Name3").setBreed("Breed3")
+            .createDog();
+
+    @Test
+    public void maximumSize_evictsLeastRecentlyUsed() {
+        LruEntityCache<Dog> cache = new LruEntityCache.Builder<Dog>().setMaximumSize(2).build();
+        cache.put(DOG1.getId(), DOG1);
+        cache.put(DOG2.getId(), DOG2);
+
+        // When the first dog is used and a third one is added
+        cache.get(DOG1.getId());
+        cache.put(DOG3.getId(), DOG3);
+
+        // Then the least recently used dog is evicted
+        assertThat(cache.get(DOG2.getId()), is(nullValue()));
+        assertThat(cache.get(DOG1.getId()), is(DOG1));
+        assertThat(cache.stats().evictionCount(), is(1L));
+        assertThat(cache.stats().hitCount(), is(2L));
+        assertThat(cache.stats().missCount(), is(1L));
+    }
+
+    @Test
+    public void maximumWeight_boundsTotalWeight() {
+        LruEntityCache<Dog> cache = new LruEntityCache.Builder<Dog>()
+                .setMaximumWeight(10, new Weigher<String, Dog>() {
+                    @Override
+                    public int weigh(String id, Dog dog) {
+                        return dog.getName().length();
+                    }
+                })
+                .build();
+
+        // When dogs weighing 15 in total are added
+        cache.put(DOG1.getId(), DOG1);
+        cache.put(DOG2.getId(), DOG2);
+        cache.put(DOG3.getId(), DOG3);
+
+        // Then only the ones that fit are kept
+        assertThat(cache.size(), is(2L));
+    }
+
+    @Test
+    public void expireAfterWrite_expiresEntries() {
+        FakeTicker ticker = new FakeTicker();
+        LruEntityCache<Dog> cache = new LruEntityCache.Builder<Dog>()
+                .setMaximumSize(10)
+                .setExpireAfterWrite(1, TimeUnit.MINUTES)
+                .setTicker(ticker)
+                .build();
+        cache.put(DOG1.getId(), DOG1);
+
+        ticker.advance(TimeUnit.SECONDS.toNanos(59));
+        assertThat(cache.get(DOG1.getId()), is(DOG1));
+
+        ticker.advance(TimeUnit.SECONDS.toNanos(1));
+        assertThat(cache.get(DOG1.getId()), is(nullValue()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void build_withoutBound_fails() {
+        new LruEntityCache.Builder<Dog>().build();
+    }
+
+    private static class FakeTicker extends Ticker {
+
+        private long mNanos = 0;
+
+        @Override
+        public long read() {
+            return mNanos;
+        }
+
+        void advance(long nanos) {
+            mNanos += nanos;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Breed;
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.dogbuddy.android.code.test.dogsapp.data.DogBuilder;
+import com.dogbuddy.android.code.test.dogsapp.data.source.local.OutboxDao;
+import com.dogbuddy.android.code.test.dogsapp.data.source.local.OutboxOp;
+import com.dogbuddy.android.code.test.dogsapp.data.source.remote.DogsJson;
+import com.google.common.collect.Lists;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for the replay of the outbox by {@link OutboxDogsDataSource}.
+ */
+public class OutboxDogsDataSourceTest {
+
+    private static final Dog DOG1 = new DogBuilder().setId("1").setName("Name1").setBreed("Breed1")
+            .createDog();
+
+    private static final Dog DOG2 = new DogBuilder().setId("2").setName("Name2").setBreed("Breed2")
+            .createDog();
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Mock
+    private DogsSyncDataSource mRemote;
+
+    @Mock
+    private OutboxDao mOutboxDao;
+
+    @Mock
+    private ScheduledExecutorService mScheduler;
+
+    @Mock
+    private ScheduledFuture<?> mRetry;
+
+    @Captor
+    private ArgumentCaptor<DogsBatch> mBatchCaptor;
+
+    @Captor
+    private ArgumentCaptor<DogsSyncDataSource.ApplyBatchCallback> mApplyCallbackCaptor;
+
+    @Captor
+    private ArgumentCaptor<Runnable> mRetryCaptor;
+
+    private OutboxDogsDataSource mOutbox;
+
+    @Before
+    public void setupOutbox() {
+        MockitoAnnotations.initMocks(this);
+        doReturn(mRetry).when(mScheduler)
+                .schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        mOutbox = new OutboxDogsDataSource(mRemote, mOutboxDao, DIRECT, DIRECT, DIRECT,
+                mScheduler);
+    }
+
+    @Test
+    public void pendingOps_areReplayedInOneBatchAndDeleted() {
+        when(mOutboxDao.getPendingOps(anyInt())).thenReturn(
+                Lists.newArrayList(saveOp(1, DOG1), deleteOp(2, DOG2.getId())),
+                Collections.<OutboxOp>emptyList());
+
+        // When a dog is saved
+        mOutbox.saveDog(DOG1);
+
+        // Then it's recorded and the pending ops are sent in one batch
+        verify(mOutboxDao).enqueue(any(OutboxOp.class));
+        verify(mRemote).applyBatch(mBatchCaptor.capture(), mApplyCallbackCaptor.capture());
+        assertThat(mBatchCaptor.getValue().getSavedDogs(), is(Collections.singletonList(DOG1)));
+        assertThat(mBatchCaptor.getValue().getDeletedDogIds(),
+                is(Collections.singletonList(DOG2.getId())));
+
+        // And once the batch is applied the sent ops are deleted
+        mApplyCallbackCaptor.getValue().onBatchApplied();
+        verify(mOutboxDao).deleteOps(Lists.newArrayList(1L, 2L));
+    }
+
+    @Test
+    public void failedBatch_isRetriedWithBackoff() {
+        when(mOutboxDao.getPendingOps(anyInt())).thenReturn(
+                Lists.newArrayList(saveOp(1, DOG1)));
+        mOutbox.saveDog(DOG1);
+        verify(mRemote).applyBatch(any(DogsBatch.class), mApplyCallbackCaptor.capture());
+
+        // When the batch fails
+        mApplyCallbackCaptor.getValue().onBatchFailed();
+
+        // Then it's retried after the initial backoff, and not before
+        verify(mScheduler).schedule(mRetryCaptor.capture(),
+                eq(OutboxDogsDataSource.INITIAL_BACKOFF_MILLIS), eq(TimeUnit.MILLISECONDS));
+        mOutbox.saveDog(DOG2);
+        verify(mRemote, times(1)).applyBatch(any(DogsBatch.class),
+                any(DogsSyncDataSource.ApplyBatchCallback.class));
+        mRetryCaptor.getValue().run();
+        verify(mRemote, times(2)).applyBatch(any(DogsBatch.class),
+                any(DogsSyncDataSource.ApplyBatchCallback.class));
+    }
+
+    @Test
+    public void undecodableOp_isDroppedAndTheOthersAreSent() {
+        OutboxOp corrupt = new OutboxOp(1, OutboxOp.TYPE_SAVE, OutboxOp.ENTITY_DOG, "0", "{");
+        when(mOutboxDao.getPendingOps(anyInt())).thenReturn(
+                Lists.newArrayList(corrupt, saveOp(2, DOG1)),
+                Lists.newArrayList(saveOp(2, DOG1)));
+
+        // When the outbox holds an op whose payload can't be decoded
+        mOutbox.saveDog(DOG1);
+
+        // Then it's dropped, and the ops queued after it are still sent
+        verify(mOutboxDao).deleteOps(Collections.singletonList(1L));
+        verify(mRemote).applyBatch(mBatchCaptor.capture(),
+                any(DogsSyncDataSource.ApplyBatchCallback.class));
+        assertThat(mBatchCaptor.getValue().getSavedDogs(), is(Collections.singletonList(DOG1)));
+    }
+
+    @Test
+    public void throwingRemote_isRetriedLikeAFailedBatch() {
+        when(mOutboxDao.getPendingOps(anyInt())).thenReturn(
+                Lists.newArrayList(saveOp(1, DOG1)));
+        doThrow(new IllegalStateException()).doNothing().when(mRemote).applyBatch(
+                any(DogsBatch.class), any(DogsSyncDataSource.ApplyBatchCallback.class));
+
+        // When sending the batch throws
+        mOutbox.saveDog(DOG1);
+
+        // Then it's retried after the backoff, the outbox doesn't stay stuck replaying
+        verify(mScheduler).schedule(mRetryCaptor.capture(),
+                eq(OutboxDogsDataSource.INITIAL_BACKOFF_MILLIS), eq(TimeUnit.MILLISECONDS));
+        mRetryCaptor.getValue().run();
+        verify(mRemote, times(2)).applyBatch(any(DogsBatch.class),
+                any(DogsSyncDataSource.ApplyBatchCallback.class));
+    }
+
+    @Test
+    public void backoff_doublesUpToMaximum() {
+        assertThat(OutboxDogsDataSource.backoffMillis(0),
+                is(OutboxDogsDataSource.INITIAL_BACKOFF_MILLIS));
+        assertThat(OutboxDogsDataSource.backoffMillis(3),
+                is(8 * OutboxDogsDataSource.INITIAL_BACKOFF_MILLIS));
+        assertThat(OutboxDogsDataSource.backoffMillis(100),
+                is(OutboxDogsDataSource.MAX_BACKOFF_MILLIS));
+    }
+
+    @Test
+    public void pendingOps_areAppliedOnTopOfRemoteDogs() {
+        Dog renamed = new DogBuilder().setId("1").setName("Renamed").setBreed("Breed1")
+                .createDog();
+        Dog added = new DogBuilder().setId("3").setName("Name3").setBreed("Breed3").createDog();
+        List<OutboxOp> pending = Lists.newArrayList(saveOp(1, renamed),
+                deleteOp(2, DOG2.getId()), saveOp(3, added));
+
+        List<Dog> dogs = OutboxDogsDataSource.applyPendingDogs(
+                Lists.newArrayList(DOG1, DOG2), pending, true);
+        assertThat(dogs, is((List<Dog>) Lists.newArrayList(renamed, added)));
+
+        // Pages only update the dogs they hold
+        List<Dog> page = OutboxDogsDataSource.applyPendingDogs(
+                Lists.newArrayList(DOG1, DOG2), pending, false);
+        assertThat(page, is((List<Dog>) Lists.newArrayList(renamed)));
+    }
+
+    @Test
+    public void deleteAll_isSentBeforeTheWritesThatFollowIt() {
+        DogsBatch batch = OutboxDogsDataSource.toBatch(Lists.newArrayList(
+                new OutboxOp(1, OutboxOp.TYPE_DELETE_ALL, OutboxOp.ENTITY_DOG, null, null),
+                saveOp(2, DOG1)));
+
+        assertThat(batch.isDeleteAllDogs(), is(true));
+        assertThat(batch.getSavedDogs(), is(Collections.singletonList(DOG1)));
+        assertThat(batch.isDeleteAllBreeds(), is(false));
+    }
+
+    @Test
+    public void pendingOps_winOverDeltaFromServer() {
+        Dog renamed = new DogBuilder().setId("1").setName("Renamed").setBreed("Breed1")
+                .createDog();
+        DogsDelta delta = new DogsDelta("5", false, false, Lists.newArrayList(DOG1, DOG2),
+                Collections.singletonList("3"), Collections.<Breed>emptyList(),
+                Collections.<String>emptyList());
+
+        // When the first dog was edited, the second deleted and the third saved locally
+        DogsDelta result = OutboxDogsDataSource.applyPendingOps(delta,
+                Lists.newArrayList(saveOp(1, renamed), deleteOp(2, DOG2.getId()),
+                        saveOp(3, new DogBuilder().setId("3").setName("Name3")
+                                .setBreed("Breed3").createDog())),
+                Collections.<OutboxOp>emptyList());
+
+        // Then the delta carries the local writes instead of the server ones
+        assertThat(result.getCursor(), is("5"));
+        assertThat(result.getChangedDogs().size(), is(2));
+        assertThat(result.getChangedDogs().get(0), is(renamed));
+        assertThat(result.getDeletedDogIds(), is(Collections.singletonList(DOG2.getId())));
+    }
+
+    private static OutboxOp saveOp(long seq, Dog dog) {
+        return new OutboxOp(seq, OutboxOp.TYPE_SAVE, OutboxOp.ENTITY_DOG, dog.getId(),
+                DogsJson.dogToJson(dog));
+    }
+
+    private static OutboxOp deleteOp(long seq, String dogId) {
+        return new OutboxOp(seq, OutboxOp.TYPE_DELETE, OutboxOp.ENTITY_DOG, dogId, null);
+    }
+}
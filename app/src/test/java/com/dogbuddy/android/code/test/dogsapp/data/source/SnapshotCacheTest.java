@@ -0,0 +1,163 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source;
+
+import android.support.annotation.NonNull;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.dogbuddy.android.code.test.dogsapp.data.DogBuilder;
+import com.google.common.base.Ticker;
+import com.google.common.collect.Lists;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit tests for {@link SnapshotCache}.
+ */
+public class SnapshotCacheTest {
+
+    private static final Dog DOG1 = new DogBuilder().setId("1").setName("Name1").setBreed("Breed1")
+            .createDog();
+
+    private static final Dog DOG2 = new DogBuilder().setId("2").setName("Name2").setBreed("Breed2")
+            .createDog();
+
+    private static final SnapshotCache.KeyFunction<Dog> DOG_ID =
+            new SnapshotCache.KeyFunction<Dog>() {
+                @NonNull
+                @Override
+                public String keyOf(@NonNull Dog dog) {
+                    return dog.getId();
+                }
+            };
+
+    private SnapshotCache<Dog> mCache;
+
+    @Before
+    public void setupCache() {
+        mCache = new SnapshotCache<>(DOG_ID);
+    }
+
+    @Test
+    public void emptyCache_isNotFilled() {
+        assertThat(mCache.getAll(), is(nullValue()));
+        assertThat(mCache.size(), is(0));
+    }
+
+    @Test
+    public void clear_leavesFilledEmptyCache() {
+        mCache.clear();
+
+        assertThat(mCache.getAll().isEmpty(), is(true));
+    }
+
+    @Test
+    public void getAll_returnsSharedSnapshotWithoutCopying() {
+        mCache.replaceAll(Lists.newArrayList(DOG1, DOG2));
+
+        assertThat(mCache.getAll(), is(sameInstance(mCache.getAll())));
+    }
+
+    @Test
+    public void writes_doNotChangeSnapshotsAlreadyHandedOut() {
+        // Given a reader holding a snapshot
+        mCache.replaceAll(Lists.newArrayList(DOG1, DOG2));
+        List<Dog> snapshot = mCache.getAll();
+
+        // When the cache is written
+        mCache.remove(DOG1.getId());
+
+        // Then the reader still sees a consistent view, and new readers see the new version
+        assertThat(snapshot, is((List<Dog>) Lists.newArrayList(DOG1, DOG2)));
+        assertThat(mCache.getAll(), is((List<Dog>) Lists.newArrayList(DOG2)));
+        assertThat(mCache.containsKey(DOG1.getId()), is(false));
+    }
+
+    @Test
+    public void concurrentWriters_doNotLoseUpdates() throws InterruptedException {
+        final int writers = 4;
+        final int dogsPerWriter = 250;
+        Thread[] threads = new Thread[writers];
+        for (int i = 0; i < writers; i++) {
+            final int writer = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < dogsPerWriter; j++) {
+                        mCache.put(new DogBuilder().setId(writer + "-" + j).setName("Name")
+                                .setBreed("Breed").createDog());
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(mCache.size(), is(writers * dogsPerWriter));
+    }
+
+    @Test
+    public void contentOverMaximumSize_isReturnedButNotKept() {
+        SnapshotCache<Dog> cache = new SnapshotCache<>(DOG_ID, 1, Long.MAX_VALUE, new FakeTicker());
+
+        List<Dog> dogs = cache.replaceAll(Lists.newArrayList(DOG1, DOG2));
+
+        assertThat(dogs, is((List<Dog>) Lists.newArrayList(DOG1, DOG2)));
+        assertThat(cache.getAll(), is(nullValue()));
+        assertThat(cache.stats().evictionCount(), is(1L));
+    }
+
+    @Test
+    public void expireAfterWrite_evictsTheWholeSnapshot() {
+        FakeTicker ticker = new FakeTicker();
+        SnapshotCache<Dog> cache =
+                new SnapshotCache<>(DOG_ID, 10, TimeUnit.MINUTES.toNanos(1), ticker);
+        cache.replaceAll(Lists.newArrayList(DOG1));
+
+        // Patches don't extend the life of the content they patch
+        ticker.advance(TimeUnit.SECONDS.toNanos(59));
+        cache.put(DOG2);
+        assertThat(cache.size(), is(2));
+
+        ticker.advance(TimeUnit.SECONDS.toNanos(1));
+        assertThat(cache.getAll(), is(nullValue()));
+        assertThat(cache.stats().evictionCount(), is(1L));
+    }
+
+    @Test
+    public void evictedCache_isNotFilledAgainByPatches() {
+        SnapshotCache<Dog> cache = new SnapshotCache<>(DOG_ID, 1, Long.MAX_VALUE, new FakeTicker());
+        cache.replaceAll(Lists.newArrayList(DOG1, DOG2));
+
+        // When a dog is written to the evicted cache
+        cache.put(DOG1);
+
+        // Then it doesn't pass for all the dogs, until the cache is replaced in full
+        assertThat(cache.getAll(), is(nullValue()));
+        cache.replaceAll(Lists.newArrayList(DOG1));
+        assertThat(cache.getAll(), is((List<Dog>) Lists.newArrayList(DOG1)));
+    }
+
+    private static class FakeTicker extends Ticker {
+
+        private long mNanos = 0;
+
+        @Override
+        public long read() {
+            return mNanos;
+        }
+
+        void advance(long nanos) {
+            mNanos += nanos;
+        }
+    }
+}
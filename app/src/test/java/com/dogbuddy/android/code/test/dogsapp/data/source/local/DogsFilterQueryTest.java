@@ -0,0 +1,40 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source.local;
+
+import android.arch.persistence.db.SupportSQLiteQuery;
+
+import com.dogbuddy.android.code.test.dogsapp.data.DogsFilter;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit tests for {@link DogsFilterQuery}.
+ */
+public class DogsFilterQueryTest {
+
+    @Test
+    public void allDogs_hasNoWhereClause() {
+        SupportSQLiteQuery query = DogsFilterQuery.of(DogsFilter.ALL);
+
+        assertThat(query.getSql(),
+                is("SELECT * FROM dogs ORDER BY name ASC, entryid ASC"));
+        assertThat(query.getArgCount(), is(0));
+    }
+
+    @Test
+    public void onlySetCriteria_areBound() {
+        DogsFilter filter = new DogsFilter.Builder()
+                .setGender("Female")
+                .setBirthYearRange(2010, null)
+                .setSortOrder(DogsFilter.SortOrder.BIRTH_YEAR, true)
+                .build();
+
+        SupportSQLiteQuery query = DogsFilterQuery.of(filter);
+
+        assertThat(query.getSql(), is("SELECT * FROM dogs WHERE gender = ? AND birthYear >= ?"
+                + " ORDER BY birthYear DESC, entryid DESC"));
+        assertThat(query.getArgCount(), is(2));
+    }
+}
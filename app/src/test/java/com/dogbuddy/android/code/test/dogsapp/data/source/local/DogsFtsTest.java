@@ -0,0 +1,28 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source.local;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit tests for the MATCH expressions built by {@link DogsFts}.
+ */
+public class DogsFtsTest {
+
+    @Test
+    public void everyWordIsAPrefix() {
+        assertThat(DogsFts.toMatchQuery("Golden ret"), is("golden* ret*"));
+    }
+
+    @Test
+    public void queryOperators_areDropped() {
+        assertThat(DogsFts.toMatchQuery("\"coco\" OR-lo*"), is("coco* or* lo*"));
+    }
+
+    @Test
+    public void textWithoutWords_hasNoQuery() {
+        assertThat(DogsFts.toMatchQuery(" \"* "), is(nullValue()));
+    }
+}
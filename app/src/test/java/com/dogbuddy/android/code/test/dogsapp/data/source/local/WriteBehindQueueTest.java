@@ -0,0 +1,144 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source.local;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Breed;
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.dogbuddy.android.code.test.dogsapp.data.DogBuilder;
+import com.google.common.collect.Lists;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for {@link WriteBehindQueue}.
+ */
+public class WriteBehindQueueTest {
+
+    private static final Dog DOG1 = new DogBuilder().setId("1").setName("Name1").setBreed("Breed1")
+            .createDog();
+
+    private static final Dog DOG1_RENAMED = new DogBuilder().setId("1").setName("Renamed")
+            .setBreed("Breed1").createDog();
+
+    private static final Dog DOG2 = new DogBuilder().setId("2").setName("Name2").setBreed("Breed2")
+            .createDog();
+
+    @Mock
+    private DogsDao mDogsDao;
+
+    private final List<Runnable> mDiskTasks = new ArrayList<>();
+
+    private final Executor mDiskIO = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mDiskTasks.add(command);
+        }
+    };
+
+    private WriteBehindQueue mWrites;
+
+    @Before
+    public void setupWriteBehindQueue() {
+        MockitoAnnotations.initMocks(this);
+        mWrites = new WriteBehindQueue(mDiskIO, mDogsDao);
+    }
+
+    @Test
+    public void burstOfWrites_isMergedAndCommittedOnce() {
+        // When a dog is saved twice, another one saved then deleted and a breed saved
+        mWrites.saveDog(DOG1);
+        mWrites.saveDog(DOG1_RENAMED);
+        mWrites.saveDog(DOG2);
+        mWrites.deleteDog(DOG2.getId());
+        mWrites.saveBreed(new Breed("Breed1", "b1"));
+
+        // Then a single drain is scheduled
+        assertThat(mDiskTasks.size(), is(1));
+        runDiskTasks();
+
+        // And the merged writes are committed in one batch
+        WriteBatch batch = captureBatch();
+        assertThat(batch.deleteAllDogs, is(false));
+        assertThat(batch.dogUpserts, is(Collections.singletonList(DOG1_RENAMED)));
+        assertThat(batch.dogDeletes, is(Collections.singletonList(DOG2.getId())));
+        assertThat(batch.breedUpserts.size(), is(1));
+        assertThat(mWrites.getCommittedBatches(), is(1L));
+        assertThat(mWrites.getCommittedWrites(), is(3L));
+    }
+
+    @Test
+    public void replaceDogs_dropsPendingWritesOfTheTable() {
+        mWrites.saveDog(DOG1);
+        mWrites.deleteDog("3");
+
+        // When the dogs are replaced before the pending writes are committed
+        mWrites.replaceDogs(Lists.newArrayList(DOG2));
+        runDiskTasks();
+
+        // Then the wipe and the new content are committed together, without the writes before it
+        WriteBatch batch = captureBatch();
+        assertThat(batch.deleteAllDogs, is(true));
+        assertThat(batch.dogUpserts, is(Collections.singletonList(DOG2)));
+        assertThat(batch.dogDeletes.isEmpty(), is(true));
+    }
+
+    @Test
+    public void flush_commitsOnCallingThread() {
+        mWrites.saveDog(DOG1);
+
+        // When flushing before the disk executor ran
+        mWrites.flush();
+
+        // Then the write is committed and the scheduled drain has nothing left to do
+        verify(mDogsDao).applyWriteBatch(any(WriteBatch.class));
+        runDiskTasks();
+        verify(mDogsDao, times(1)).applyWriteBatch(any(WriteBatch.class));
+    }
+
+    @Test
+    public void writesAfterDrain_scheduleAnotherDrain() {
+        mWrites.saveDog(DOG1);
+        runDiskTasks();
+
+        mWrites.saveDog(DOG2);
+
+        assertThat(mDiskTasks.size(), is(1));
+        runDiskTasks();
+        verify(mDogsDao, times(2)).applyWriteBatch(any(WriteBatch.class));
+    }
+
+    @Test
+    public void nothingPending_commitsNothing() {
+        mWrites.flush();
+
+        verify(mDogsDao, never()).applyWriteBatch(any(WriteBatch.class));
+    }
+
+    private void runDiskTasks() {
+        List<Runnable> tasks = new ArrayList<>(mDiskTasks);
+        mDiskTasks.clear();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+
+    private WriteBatch captureBatch() {
+        ArgumentCaptor<WriteBatch> captor = ArgumentCaptor.forClass(WriteBatch.class);
+        verify(mDogsDao).applyWriteBatch(captor.capture());
+        return captor.getValue();
+    }
+}
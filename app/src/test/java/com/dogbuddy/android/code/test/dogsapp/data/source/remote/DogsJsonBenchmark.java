@@ -0,0 +1,129 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source.remote;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark of the streaming decode of {@link DogsJson} against decoding through a tree of the
+ * whole response. It prints its figures instead of asserting them, they depend on the machine and
+ * on the garbage collector, so it's ignored in the unit tests and run by hand.
+ */
+@Ignore("Benchmark, run by hand")
+public class DogsJsonBenchmark {
+
+    private static final int DOG_COUNT = 100000;
+
+    /**
+     * Decodes {@link #DOG_COUNT} dogs both ways. The streaming decode holds the dogs read, while
+     * the tree decode holds the whole response, then its tree, before building the first dog.
+     */
+    @Test
+    public void streamingAgainstTree() throws IOException {
+        // Streaming, from a response that is generated as it's read, like one off the network.
+        long start = System.nanoTime();
+        List<Dog> streamed =
+                DogsJson.readDogs(new JsonReader(new GeneratedDogsReader(DOG_COUNT)));
+        long streamingMillis = (System.nanoTime() - start) / 1000000;
+        long streamingLiveBytes = liveBytes();
+        int streamedCount = streamed.size();
+        streamed = null; // Collected before the tree decode is measured.
+
+        // Tree, from the response buffered in a string.
+        start = System.nanoTime();
+        String response = readFully(new GeneratedDogsReader(DOG_COUNT));
+        JsonArray tree = new JsonParser().parse(response).getAsJsonArray();
+        List<Dog> built = new ArrayList<>(tree.size());
+        for (JsonElement element : tree) {
+            JsonObject object = element.getAsJsonObject();
+            built.add(new Dog(object.get("id").getAsString(), object.get("name").getAsString(),
+                    object.get("breed").getAsString(), object.get("gender").getAsString(),
+                    object.get("birthYear").getAsInt(), object.get("size").getAsString(),
+                    object.get("version").getAsLong(), object.get("updatedAt").getAsLong()));
+        }
+        long treeMillis = (System.nanoTime() - start) / 1000000;
+        long treeLiveBytes = liveBytes();
+
+        // The sizes keep what each decode held reachable until it's measured.
+        System.out.println("Decoding " + streamedCount + " dogs: streaming " + streamingMillis
+                + " ms, " + streamingLiveBytes / 1024 + " KiB live; tree of "
+                + response.length() / 1024 + " KiB and " + tree.size() + " elements to "
+                + built.size() + " dogs: " + treeMillis + " ms, " + treeLiveBytes / 1024
+                + " KiB live");
+    }
+
+    private static long liveBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static String readFully(Reader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[8192];
+        int count;
+        while ((count = reader.read(buffer)) != -1) {
+            text.append(buffer, 0, count);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Produces a JSON array of dogs a few at a time, without holding it.
+     */
+    private static final class GeneratedDogsReader extends Reader {
+
+        private final int mCount;
+
+        private int mNext = 0;
+
+        private String mPending = "[";
+
+        private int mPendingOffset = 0;
+
+        GeneratedDogsReader(int count) {
+            mCount = count;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (mPendingOffset == mPending.length()) {
+                if (mNext > mCount) {
+                    return -1;
+                }
+                mPending = nextChunk();
+                mPendingOffset = 0;
+            }
+            int count = Math.min(length, mPending.length() - mPendingOffset);
+            mPending.getChars(mPendingOffset, mPendingOffset + count, buffer, offset);
+            mPendingOffset += count;
+            return count;
+        }
+
+        private String nextChunk() {
+            int i = mNext++;
+            if (i == mCount) {
+                return "]";
+            }
+            return (i == 0 ? "" : ",") + "{\"id\":\"dog-" + i + "\",\"name\":\"Name " + i
+                    + "\",\"breed\":\"Breed " + (i % 100) + "\",\"gender\":\"Female\","
+                    + "\"birthYear\":" + (2000 + i % 20) + ",\"size\":\"Small\",\"version\":"
+                    + i + ",\"updatedAt\":" + (1500000000000L + i) + "}";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
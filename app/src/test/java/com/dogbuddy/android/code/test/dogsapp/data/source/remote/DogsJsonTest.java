@@ -0,0 +1,83 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source.remote;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Breed;
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.dogbuddy.android.code.test.dogsapp.data.DogBuilder;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsBatch;
+import com.google.common.collect.Lists;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit tests for {@link DogsJson}.
+ */
+public class DogsJsonTest {
+
+    @Test
+    public void dog_roundTrips() {
+        Dog dog = new DogBuilder().setId("1").setName("Coco").setBreed("Boxer")
+                .setGender("Male").setBirthYear(2015).setSize("Big").setVersion(7)
+                .setUpdatedAt(42).createDog();
+
+        assertThat(DogsJson.dogFromJson(DogsJson.dogToJson(dog)), is(dog));
+    }
+
+    @Test
+    public void dog_withNullsAndUnknownFields_isRead() {
+        Dog dog = DogsJson.dogFromJson("{\"id\":\"1\",\"name\":\"Coco\",\"gender\":null,"
+                + "\"owner\":{\"name\":\"Ann\",\"pets\":[1,2]}}");
+
+        assertThat(dog.getId(), is("1"));
+        assertThat(dog.getName(), is("Coco"));
+        assertThat(dog.getGender(), is(nullValue()));
+        assertThat(dog.getBirthYear(), is(nullValue()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void dog_withoutId_isRejected() {
+        DogsJson.dogFromJson("{\"name\":\"Coco\"}");
+    }
+
+    @Test
+    public void batch_roundTrips() throws IOException {
+        Dog dog = new DogBuilder().setId("1").setName("Coco").setBreed("Boxer").createDog();
+        DogsBatch batch = new DogsBatch(true, Collections.singletonList(dog),
+                Collections.singletonList("2"), false,
+                Collections.singletonList(new Breed("Boxer", "3")));
+        StringWriter json = new StringWriter();
+        DogsJson.writeBatch(new JsonWriter(json), batch);
+
+        DogsBatch read = DogsJson.readBatch(new JsonReader(new StringReader(json.toString())));
+
+        assertThat(read.isDeleteAllDogs(), is(true));
+        assertThat(read.getSavedDogs(), is(Collections.singletonList(dog)));
+        assertThat(read.getDeletedDogIds(), is(Collections.singletonList("2")));
+        assertThat(read.isDeleteAllBreeds(), is(false));
+        assertThat(read.getSavedBreeds().get(0).getBreed(), is("Boxer"));
+    }
+
+    @Test
+    public void dogs_areReadInOrder() throws IOException {
+        List<Dog> dogs = DogsJson.readDogs(new JsonReader(new StringReader(
+                "[{\"id\":\"a\"},{\"id\":\"b\"},{\"id\":\"c\"}]")));
+
+        List<String> ids = new ArrayList<>();
+        for (Dog dog : dogs) {
+            ids.add(dog.getId());
+        }
+        assertThat(ids, is((List<String>) Lists.newArrayList("a", "b", "c")));
+    }
+}
@@ -0,0 +1,208 @@
+package com.dogbuddy.android.code.test.dogsapp.data.source.remote;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Breed;
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.dogbuddy.android.code.test.dogsapp.data.DogBuilder;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsBatch;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDataSource;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDelta;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsSyncDataSource;
+import com.google.common.collect.Lists;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Runs {@link HttpDogsRemoteDataSource} against a {@link LocalDogsServer}, on the test thread.
+ */
+public class HttpDogsRemoteDataSourceTest {
+
+    private static final int SEEDED_COUNT = 16;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder mCacheDirectory = new TemporaryFolder();
+
+    @Mock
+    private DogsDataSource.LoadDogsCallback mLoadDogsCallback;
+
+    @Mock
+    private DogsDataSource.ConditionalLoadDogsCallback mConditionalLoadDogsCallback;
+
+    @Mock
+    private DogsDataSource.GetDogCallback mGetDogCallback;
+
+    @Mock
+    private DogsSyncDataSource.ApplyBatchCallback mApplyBatchCallback;
+
+    @Mock
+    private DogsSyncDataSource.LoadChangesCallback mLoadChangesCallback;
+
+    @Captor
+    private ArgumentCaptor<List<Dog>> mDogsCaptor;
+
+    @Captor
+    private ArgumentCaptor<DogsDelta> mDeltaCaptor;
+
+    private LocalDogsServer mServer;
+
+    private HttpDogsRemoteDataSource mRemote;
+
+    @Before
+    public void startServer() throws IOException {
+        MockitoAnnotations.initMocks(this);
+        mServer = new LocalDogsServer();
+        mServer.start();
+        mRemote = new HttpDogsRemoteDataSource(mServer.getBaseUrl(), mCacheDirectory.getRoot(),
+                DIRECT, DIRECT);
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        mServer.close();
+    }
+
+    @Test
+    public void getDogs_returnsSeededDogs() {
+        mRemote.getDogs(mLoadDogsCallback);
+
+        verify(mLoadDogsCallback).onDogsLoaded(mDogsCaptor.capture());
+        assertThat(mDogsCaptor.getValue().size(), is(SEEDED_COUNT));
+    }
+
+    @Test
+    public void getDogsAgain_unchanged_isNotModified() {
+        mRemote.getDogs(mConditionalLoadDogsCallback);
+        verify(mConditionalLoadDogsCallback).onDogsLoaded(anyListOf(Dog.class));
+
+        // When the dogs are loaded again and nothing changed
+        mRemote.getDogs(mConditionalLoadDogsCallback);
+
+        // Then the callback is told so, and doesn't get the dogs a second time
+        verify(mConditionalLoadDogsCallback).onNotModified();
+        verify(mConditionalLoadDogsCallback).onDogsLoaded(anyListOf(Dog.class));
+    }
+
+    @Test
+    public void getDogsAgain_unchanged_isReadFromCache() {
+        mRemote.getDogs(mConditionalLoadDogsCallback);
+
+        // When a callback that can't reuse the dogs loads them again
+        mRemote.getDogs(mLoadDogsCallback);
+
+        // Then it gets them from the cache
+        verify(mLoadDogsCallback).onDogsLoaded(mDogsCaptor.capture());
+        assertThat(mDogsCaptor.getValue().size(), is(SEEDED_COUNT));
+    }
+
+    @Test
+    public void getDogsAgain_changed_isLoaded() {
+        mRemote.getDogs(mConditionalLoadDogsCallback);
+        mRemote.deleteDog("0");
+
+        mRemote.getDogs(mConditionalLoadDogsCallback);
+
+        verify(mConditionalLoadDogsCallback, never()).onNotModified();
+        verify(mConditionalLoadDogsCallback, times(2))
+                .onDogsLoaded(mDogsCaptor.capture());
+        assertThat(mDogsCaptor.getValue().size(), is(SEEDED_COUNT - 1));
+    }
+
+    @Test
+    public void savedDog_isReturnedByGetDog() {
+        Dog dog = new DogBuilder().setId("new").setName("Rex").setBreed("Boxer").createDog();
+
+        mRemote.applyBatch(new DogsBatch(false, Collections.singletonList(dog),
+                Collections.<String>emptyList(), false, Collections.<Breed>emptyList()),
+                mApplyBatchCallback);
+        verify(mApplyBatchCallback).onBatchApplied();
+
+        ArgumentCaptor<Dog> dogCaptor = ArgumentCaptor.forClass(Dog.class);
+        mRemote.getDog("new", mGetDogCallback);
+        verify(mGetDogCallback).onDogLoaded(dogCaptor.capture());
+        assertThat(dogCaptor.getValue().getName(), is("Rex"));
+    }
+
+    @Test
+    public void getDog_missing_isNotAvailable() {
+        mRemote.getDog("missing", mGetDogCallback);
+
+        verify(mGetDogCallback).onDataNotAvailable();
+    }
+
+    @Test
+    public void getDogsByIds_returnsTheOnesFound() {
+        Dog dog = new DogBuilder().setId("a,b").setName("Rex").setBreed("Boxer").createDog();
+        mRemote.saveDog(dog);
+
+        mRemote.getDogsByIds(Lists.newArrayList("0", "a,b", "missing"), mLoadDogsCallback);
+
+        verify(mLoadDogsCallback).onDogsLoaded(mDogsCaptor.capture());
+        assertThat(mDogsCaptor.getValue().size(), is(2));
+        assertThat(mDogsCaptor.getValue().get(0).getId(), is("0"));
+        assertThat(mDogsCaptor.getValue().get(1), is(dog));
+    }
+
+    @Test
+    public void getChangesSince_noCursor_returnsReset() {
+        mRemote.getChangesSince(null, mLoadChangesCallback);
+
+        verify(mLoadChangesCallback).onChangesLoaded(mDeltaCaptor.capture());
+        DogsDelta delta = mDeltaCaptor.getValue();
+        assertThat(delta.isReset(), is(true));
+        assertThat(delta.getChangedDogs().size(), is(SEEDED_COUNT));
+        assertThat(delta.getChangedBreeds().size(), is(SEEDED_COUNT));
+    }
+
+    @Test
+    public void getChangesSince_upToDateCursor_isEmpty() {
+        mRemote.getChangesSince(null, mLoadChangesCallback);
+        verify(mLoadChangesCallback).onChangesLoaded(mDeltaCaptor.capture());
+        String cursor = mDeltaCaptor.getValue().getCursor();
+
+        mRemote.getChangesSince(cursor, mLoadChangesCallback);
+
+        verify(mLoadChangesCallback, times(2))
+                .onChangesLoaded(mDeltaCaptor.capture());
+        DogsDelta delta = mDeltaCaptor.getValue();
+        assertThat(delta.size(), is(0));
+        assertThat(delta.isReset(), is(false));
+        assertThat(delta.getCursor(), is(cursor));
+    }
+
+    @Test
+    public void requests_reuseConnections() {
+        int requests = 10;
+        for (int i = 0; i < requests; i++) {
+            mRemote.getDogsPage(null, 5, mLoadDogsCallback);
+        }
+
+        assertTrue(mServer.getConnectionCount() < requests);
+    }
+}
@@ -12,6 +12,7 @@ import com.dogbuddy.android.code.test.dogsapp.data.Dog;
 import com.dogbuddy.android.code.test.dogsapp.data.DogBuilder;
 import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDataSource;
 import com.dogbuddy.android.code.test.dogsapp.data.source.DogsRepository;
+import com.dogbuddy.android.code.test.dogsapp.util.CancellationToken;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -26,6 +27,7 @@ import static junit.framework.Assert.assertFalse;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -116,7 +118,8 @@ public class DogDetailViewModelTest {
         mDogDetailViewModel.start(mDog.getId());
 
         // Use a captor to get a reference for the callback.
-        verify(mDogsRepository).getDog(eq(mDog.getId()), mGetDogCallbackCaptor.capture());
+        verify(mDogsRepository).getDog(eq(mDog.getId()), any(CancellationToken.class),
+                mGetDogCallbackCaptor.capture());
 
         // When the repository returns an error
         mGetDogCallbackCaptor.getValue().onDataNotAvailable(); // Trigger callback error
@@ -146,7 +149,8 @@ public class DogDetailViewModelTest {
         mDogDetailViewModel.start(mDog.getId());
 
         // Use a captor to get a reference for the callback.
-        verify(mDogsRepository).getDog(eq(mDog.getId()), mGetDogCallbackCaptor.capture());
+        verify(mDogsRepository).getDog(eq(mDog.getId()), any(CancellationToken.class),
+                mGetDogCallbackCaptor.capture());
 
         mGetDogCallbackCaptor.getValue().onDogLoaded(mDog); // Trigger callback
     }
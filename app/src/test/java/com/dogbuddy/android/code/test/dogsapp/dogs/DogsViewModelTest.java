@@ -3,17 +3,23 @@ package com.dogbuddy.android.code.test.dogsapp.dogs;
 
 import android.app.Application;
 import android.arch.core.executor.testing.InstantTaskExecutorRule;
+import android.arch.lifecycle.MutableLiveData;
 import android.arch.lifecycle.Observer;
 import android.content.res.Resources;
+import android.databinding.ObservableList;
 
 import com.dogbuddy.android.code.test.dogsapp.R;
 import com.dogbuddy.android.code.test.dogsapp.TestUtils;
 import com.dogbuddy.android.code.test.dogsapp.addeditdog.AddEditDogActivity;
 import com.dogbuddy.android.code.test.dogsapp.data.Dog;
 import com.dogbuddy.android.code.test.dogsapp.data.DogBuilder;
+import com.dogbuddy.android.code.test.dogsapp.data.DogsFilter;
+import com.dogbuddy.android.code.test.dogsapp.data.source.DogsChange;
 import com.dogbuddy.android.code.test.dogsapp.data.source.DogsDataSource.LoadDogsCallback;
 import com.dogbuddy.android.code.test.dogsapp.data.source.DogsRepository;
 import com.dogbuddy.android.code.test.dogsapp.dogdetail.DogDetailActivity;
+import com.dogbuddy.android.code.test.dogsapp.util.CancellationToken;
+import com.dogbuddy.android.code.test.dogsapp.util.Debouncer;
 import com.google.common.collect.Lists;
 
 import org.junit.Before;
@@ -24,6 +30,8 @@ import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import static com.dogbuddy.android.code.test.dogsapp.R.string.successfully_deleted_dog_message;
@@ -31,7 +39,12 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -55,6 +68,9 @@ public class DogsViewModelTest {
     @Captor
     private ArgumentCaptor<LoadDogsCallback> mLoadDogsCallbackCaptor;
 
+    @Captor
+    private ArgumentCaptor<DogsRepository.RevalidateDogsCallback> mRevalidateDogsCallbackCaptor;
+
     private DogsViewModel mDogsViewModel;
 
     @Before
@@ -92,10 +108,11 @@ public class DogsViewModelTest {
     public void loadAllDogsFromRepository_dataLoaded() {
         // Given an initialized DogsViewModel with initialized dogs
         // When loading of Dogs is requested
-        mDogsViewModel.loadDogs(true);
+        mDogsViewModel.loadDogs(false);
 
         // Callback is captured and invoked with stubbed dogs
-        verify(mDogsRepository).getDogs(mLoadDogsCallbackCaptor.capture());
+        verify(mDogsRepository).getDogs(any(CancellationToken.class),
+                mLoadDogsCallbackCaptor.capture());
 
 
         // Then progress indicator is shown
@@ -110,6 +127,228 @@ public class DogsViewModelTest {
         assertTrue(mDogsViewModel.items.size() == 3);
     }
 
+    @Test
+    public void forceLoad_showsStaleDogsWhileRefreshing() {
+        // When a refresh is requested
+        mDogsViewModel.loadDogs(true);
+        verify(mDogsRepository).getDogsRevalidating(any(CancellationToken.class),
+                mRevalidateDogsCallbackCaptor.capture());
+
+        // And stale dogs are delivered
+        mRevalidateDogsCallbackCaptor.getValue().onDogsLoaded(DOGS, true);
+
+        // Then they are shown and the progress indicator is kept
+        assertThat(mDogsViewModel.items.size(), is(3));
+        assertTrue(mDogsViewModel.dataLoading.get());
+
+        // When the refresh finds no change
+        mRevalidateDogsCallbackCaptor.getValue().onDogsUnchanged();
+
+        // Then the progress indicator is hidden and the list is kept
+        assertFalse(mDogsViewModel.dataLoading.get());
+        assertThat(mDogsViewModel.items.size(), is(3));
+    }
+
+    @Test
+    public void start_subscribesOnceAndShowsPushedDogs() {
+        // Given a dogs stream in the repository
+        MutableLiveData<List<Dog>> dogs = new MutableLiveData<>();
+        when(mDogsRepository.observeDogs()).thenReturn(dogs);
+
+        // When the screen is resumed twice
+        mDogsViewModel.start();
+        mDogsViewModel.start();
+
+        // Then the stream is only subscribed once and the progress indicator is shown
+        verify(mDogsRepository, times(1)).observeDogs();
+        assertTrue(mDogsViewModel.dataLoading.get());
+
+        // When the repository pushes a snapshot
+        dogs.setValue(DOGS);
+
+        // Then progress indicator is hidden and data loaded
+        assertFalse(mDogsViewModel.dataLoading.get());
+        assertThat(mDogsViewModel.items.size(), is(3));
+    }
+
+    @Test
+    public void setFiltering_movesSubscriptionToFilteredQuery() {
+        // Given a subscribed view model
+        MutableLiveData<List<Dog>> allDogs = new MutableLiveData<>();
+        MutableLiveData<List<Dog>> females = new MutableLiveData<>();
+        DogsFilter filter = new DogsFilter.Builder().setGender("Female").build();
+        when(mDogsRepository.observeDogs()).thenReturn(allDogs);
+        when(mDogsRepository.observeDogs(filter)).thenReturn(females);
+        mDogsViewModel.start();
+
+        // When a filter is set
+        mDogsViewModel.setFiltering(filter);
+
+        // Then the filtered query is observed instead of the full list
+        assertFalse(allDogs.hasObservers());
+        assertTrue(females.hasObservers());
+        assertThat(mDogsViewModel.getFiltering(), is(filter));
+    }
+
+    @Test
+    public void search_onlyShowsResultsOfLatestSearch() {
+        Debouncer debouncer = mock(Debouncer.class);
+        DogsViewModel viewModel = new DogsViewModel(mContext, mDogsRepository, debouncer);
+        ArgumentCaptor<Runnable> searchCaptor = ArgumentCaptor.forClass(Runnable.class);
+
+        // When two searches are typed and both end up running
+        viewModel.search("co");
+        viewModel.search("coc");
+        verify(debouncer, times(2)).submit(searchCaptor.capture());
+        searchCaptor.getAllValues().get(0).run();
+        searchCaptor.getAllValues().get(1).run();
+        verify(mDogsRepository).searchDogs(eq("co"), anyInt(), any(CancellationToken.class),
+                mLoadDogsCallbackCaptor.capture());
+        verify(mDogsRepository).searchDogs(eq("coc"), anyInt(), any(CancellationToken.class),
+                mLoadDogsCallbackCaptor.capture());
+
+        // And the superseded one finishes last
+        mLoadDogsCallbackCaptor.getAllValues().get(1).onDogsLoaded(DOGS.subList(0, 1));
+        mLoadDogsCallbackCaptor.getAllValues().get(0).onDogsLoaded(DOGS);
+
+        // Then only the results of the latest search are shown
+        assertThat(viewModel.items.size(), is(1));
+    }
+
+    @Test
+    public void dogsChange_patchesItemsInPlace() {
+        ArgumentCaptor<DogsRepository.DogsChangeListener> listenerCaptor =
+                ArgumentCaptor.forClass(DogsRepository.DogsChangeListener.class);
+        verify(mDogsRepository).addDogsChangeListener(listenerCaptor.capture());
+        mDogsViewModel.items.addAll(DOGS);
+        Dog renamed = new DogBuilder().setId(DOGS.get(1).getId()).setName("Renamed")
+                .setBreed("Breed2").createDog();
+        Dog added = new DogBuilder().setName("Name4").setBreed("Breed4").createDog();
+
+        // When a dog is renamed, another one is added and the first one is deleted
+        listenerCaptor.getValue().onDogsChanged(DogsChange.saved(1,
+                Collections.singletonList(added), Collections.singletonList(renamed)));
+        listenerCaptor.getValue().onDogsChanged(
+                DogsChange.removed(2, Collections.singletonList(DOGS.get(0).getId())));
+
+        // Then the list is patched without querying the repository
+        assertThat(mDogsViewModel.items,
+                is((List<Dog>) Lists.newArrayList(renamed, DOGS.get(2), added)));
+        verify(mDogsRepository, never()).getDogs(any(CancellationToken.class),
+                any(LoadDogsCallback.class));
+    }
+
+    @Test
+    public void dogsChange_thenMatchingSnapshot_doesNotReplaceItems() {
+        // Given the full list shown from the dogs stream
+        MutableLiveData<List<Dog>> dogs = new MutableLiveData<>();
+        when(mDogsRepository.observeDogs()).thenReturn(dogs);
+        mDogsViewModel.start();
+        dogs.setValue(DOGS);
+        ArgumentCaptor<DogsRepository.DogsChangeListener> listenerCaptor =
+                ArgumentCaptor.forClass(DogsRepository.DogsChangeListener.class);
+        verify(mDogsRepository).addDogsChangeListener(listenerCaptor.capture());
+        Dog added = new DogBuilder().setName("Name4").setBreed("Breed4").createDog();
+
+        // When a dog is added, then the query pushes the dogs in table order
+        listenerCaptor.getValue().onDogsChanged(DogsChange.saved(1,
+                Collections.singletonList(added), Collections.<Dog>emptyList()));
+        RowChanges changes = new RowChanges();
+        mDogsViewModel.items.addOnListChangedCallback(changes);
+        List<Dog> snapshot = Lists.newArrayList(DOGS.get(0), added, DOGS.get(1), DOGS.get(2));
+        dogs.setValue(snapshot);
+
+        // Then the list isn't replaced, only the new dog is moved to its place
+        assertThat(mDogsViewModel.items, is(snapshot));
+        assertThat(changes.rows, is(2));
+    }
+
+    @Test
+    public void snapshotDroppingMostRows_replacesItemsAtOnce() {
+        // Given more dogs shown than showDogs removes one by one
+        MutableLiveData<List<Dog>> dogs = new MutableLiveData<>();
+        when(mDogsRepository.observeDogs()).thenReturn(dogs);
+        mDogsViewModel.start();
+        List<Dog> shown = new ArrayList<>();
+        for (int i = 0; i <= DogsViewModel.MAX_SHOWN_ROW_MOVES + 1; i++) {
+            shown.add(new DogBuilder().setId("id" + i).setName("Name" + i).setBreed("Breed")
+                    .createDog());
+        }
+        dogs.setValue(shown);
+
+        // When the stream pushes a snapshot that keeps only one of them
+        RowChanges changes = new RowChanges();
+        mDogsViewModel.items.addOnListChangedCallback(changes);
+        List<Dog> snapshot = Collections.singletonList(shown.get(0));
+        dogs.setValue(snapshot);
+
+        // Then the list is replaced with one removal and one insertion, not row by row
+        assertThat(mDogsViewModel.items, is(snapshot));
+        assertThat(changes.notifications, is(2));
+    }
+
+    @Test
+    public void dogsChange_missedVersion_reloadsDogs() {
+        ArgumentCaptor<DogsRepository.DogsChangeListener> listenerCaptor =
+                ArgumentCaptor.forClass(DogsRepository.DogsChangeListener.class);
+        verify(mDogsRepository).addDogsChangeListener(listenerCaptor.capture());
+
+        // When a change arrives after one was missed
+        listenerCaptor.getValue().onDogsChanged(DogsChange.allRemoved(2));
+
+        // Then the dogs are reloaded
+        verify(mDogsRepository).getDogs(any(CancellationToken.class), any(LoadDogsCallback.class));
+    }
+
+    @Test
+    public void pagedMode_keepsBoundedWindowOfPages() {
+        // Given a ViewModel in paged mode
+        mDogsViewModel.setPagedMode(true);
+        mDogsViewModel.start();
+
+        // When one page more than the window can hold is loaded
+        verify(mDogsRepository).getDogsPage(eq((String) null), eq(DogsViewModel.PAGE_SIZE),
+                any(CancellationToken.class), mLoadDogsCallbackCaptor.capture());
+        mLoadDogsCallbackCaptor.getValue().onDogsLoaded(createPage(0));
+        for (int page = 1; page <= DogsViewModel.MAX_PAGES_IN_MEMORY; page++) {
+            mDogsViewModel.loadNextPage();
+            verify(mDogsRepository).getDogsPage(eq(pageId(page * DogsViewModel.PAGE_SIZE - 1)),
+                    eq(DogsViewModel.PAGE_SIZE), any(CancellationToken.class),
+                    mLoadDogsCallbackCaptor.capture());
+            mLoadDogsCallbackCaptor.getValue().onDogsLoaded(createPage(page));
+        }
+
+        // Then the first page was dropped
+        assertThat(mDogsViewModel.items.size(),
+                is(DogsViewModel.MAX_PAGES_IN_MEMORY * DogsViewModel.PAGE_SIZE));
+        assertThat(mDogsViewModel.items.get(0).getId(), is(pageId(DogsViewModel.PAGE_SIZE)));
+
+        // When scrolling back to the top
+        mDogsViewModel.loadPreviousPage();
+        verify(mDogsRepository, times(2)).getDogsPage(eq((String) null),
+                eq(DogsViewModel.PAGE_SIZE), any(CancellationToken.class),
+                mLoadDogsCallbackCaptor.capture());
+        mLoadDogsCallbackCaptor.getValue().onDogsLoaded(createPage(0));
+
+        // Then the first page is back and the last one was dropped instead
+        assertThat(mDogsViewModel.items.size(),
+                is(DogsViewModel.MAX_PAGES_IN_MEMORY * DogsViewModel.PAGE_SIZE));
+        assertThat(mDogsViewModel.items.get(0).getId(), is(pageId(0)));
+    }
+
+    private static List<Dog> createPage(int page) {
+        List<Dog> dogs = new ArrayList<>(DogsViewModel.PAGE_SIZE);
+        for (int i = 0; i < DogsViewModel.PAGE_SIZE; i++) {
+            dogs.add(new DogBuilder().setId(pageId(page * DogsViewModel.PAGE_SIZE + i))
+                    .setName("Name").setBreed("Breed").createDog());
+        }
+        return dogs;
+    }
+
+    private static String pageId(int index) {
+        return String.format("%06d", index);
+    }
+
     @Test
     public void clickOnFab_ShowsAddDogUi() {
 
@@ -173,4 +412,45 @@ public class DogsViewModelTest {
         // Then the "Add dog" action is visible
         assertThat(mDogsViewModel.dogsAddViewVisible.get(), is(true));
     }
+
+    /**
+     * Counts the rows of a list touched by its changes.
+     */
+    private static final class RowChanges
+            extends ObservableList.OnListChangedCallback<ObservableList<Dog>> {
+
+        int rows = 0;
+
+        int notifications = 0;
+
+        @Override
+        public void onChanged(ObservableList<Dog> sender) {
+            rows += sender.size();
+            notifications++;
+        }
+
+        @Override
+        public void onItemRangeChanged(ObservableList<Dog> sender, int start, int count) {
+            rows += count;
+            notifications++;
+        }
+
+        @Override
+        public void onItemRangeInserted(ObservableList<Dog> sender, int start, int count) {
+            rows += count;
+            notifications++;
+        }
+
+        @Override
+        public void onItemRangeMoved(ObservableList<Dog> sender, int from, int to, int count) {
+            rows += count;
+            notifications++;
+        }
+
+        @Override
+        public void onItemRangeRemoved(ObservableList<Dog> sender, int start, int count) {
+            rows += count;
+            notifications++;
+        }
+    }
 }
@@ -0,0 +1,130 @@
+package com.dogbuddy.android.code.test.dogsapp.dogs;
+
+import com.dogbuddy.android.code.test.dogsapp.data.Dog;
+import com.dogbuddy.android.code.test.dogsapp.data.DogBuilder;
+import com.dogbuddy.android.code.test.dogsapp.util.StableIds;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Unit tests for {@link RowBinder}, the bind path of {@link DogsAdapter} and
+ * {@link BreedsAdapter}.
+ */
+public class RowBinderTest {
+
+    private static final int ROWS = 10;
+
+    private static final int DOGS = 1000;
+
+    private static final int ROUNDS = 100;
+
+    private final List<Dog> mClicked = new ArrayList<>();
+
+    private final RowBinder<Dog, DogItemUserActionsListener> mRowBinder =
+            new RowBinder<Dog, DogItemUserActionsListener>(new DogItemUserActionsListener() {
+                @Override
+                public void onDogClicked(Dog dog) {
+                    mClicked.add(dog);
+                }
+            });
+
+    // Keeps the computed ids alive, so the loop isn't optimized away.
+    private long mLastId;
+
+    @Test
+    public void rows_shareOneListener_thatGetsTheDogBoundLast() {
+        FakeRow first = new FakeRow();
+        FakeRow second = new FakeRow();
+        mRowBinder.onCreate(first);
+        mRowBinder.onCreate(second);
+        Dog dog = new DogBuilder().setName("Name1").setBreed("Breed").createDog();
+        Dog recycledDog = new DogBuilder().setName("Name2").setBreed("Breed").createDog();
+
+        // When a row is bound, then recycled for another dog and clicked
+        mRowBinder.onBind(first, dog);
+        mRowBinder.onBind(first, recycledDog);
+        first.click();
+
+        // Then the listener shared by the rows gets the dog of the row
+        assertThat(second.mListener, is(sameInstance(first.mListener)));
+        assertThat(mClicked, is(Collections.singletonList(recycledDog)));
+    }
+
+    @Test
+    public void bindingRows_allocatesNothing() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        FakeRow[] rows = new FakeRow[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            rows[i] = new FakeRow();
+            mRowBinder.onCreate(rows[i]);
+        }
+        List<Dog> dogs = new ArrayList<>(DOGS);
+        for (int i = 0; i < DOGS; i++) {
+            dogs.add(new DogBuilder().setName("Name" + i).setBreed("Breed").createDog());
+        }
+        // Warm up, so class loading and compilation don't count.
+        bindAll(rows, dogs);
+
+        // Binds like a fling does, recycling a few rows over many dogs. The counter is read
+        // around many binds, so its own allocations and JIT noise round down to zero.
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int round = 0; round < ROUNDS; round++) {
+            bindAll(rows, dogs);
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertThat(allocated / (ROUNDS * DOGS), is(0L));
+    }
+
+    /**
+     * Binds each dog like the adapter does: gets its stable id and binds it to a recycled row.
+     */
+    private void bindAll(FakeRow[] rows, List<Dog> dogs) {
+        for (int position = 0; position < dogs.size(); position++) {
+            Dog dog = dogs.get(position);
+            mLastId = StableIds.of(dog.getId());
+            mRowBinder.onBind(rows[position % rows.length], dog);
+        }
+    }
+
+    /**
+     * Stands for the data binding of a dog row, clicks call the listener like the layout does.
+     */
+    private static final class FakeRow implements RowBinder.Row<Dog, DogItemUserActionsListener> {
+
+        DogItemUserActionsListener mListener;
+
+        Dog mDog;
+
+        @Override
+        public void setListener(DogItemUserActionsListener listener) {
+            mListener = listener;
+        }
+
+        @Override
+        public void setItem(Dog dog) {
+            mDog = dog;
+        }
+
+        void click() {
+            mListener.onDogClicked(mDog);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.dogbuddy.android.code.test.dogsapp.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link CancellationToken}.
+ */
+public class CancellationTokenTest {
+
+    private final List<String> mRun = new ArrayList<>();
+
+    @Test
+    public void cancel_runsListenersOnce() {
+        CancellationToken token = new CancellationToken();
+        token.addListener(record("first"));
+        token.addListener(record("second"));
+
+        token.cancel();
+        token.cancel();
+
+        assertTrue(token.isCancelled());
+        assertThat(mRun, is(Arrays.asList("first", "second")));
+    }
+
+    @Test
+    public void addListener_runsRightAwayOnceCancelled() {
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+
+        token.addListener(record("late"));
+
+        assertThat(mRun, is(Arrays.asList("late")));
+    }
+
+    @Test
+    public void removeListener_isNotRun() {
+        CancellationToken token = new CancellationToken();
+        Runnable listener = record("removed");
+        token.addListener(listener);
+
+        token.removeListener(listener);
+        token.cancel();
+
+        assertTrue(mRun.isEmpty());
+    }
+
+    @Test
+    public void none_isNeverCancelled() {
+        CancellationToken.NONE.addListener(record("none"));
+
+        CancellationToken.NONE.cancel();
+
+        assertFalse(CancellationToken.NONE.isCancelled());
+        assertTrue(mRun.isEmpty());
+    }
+
+    @Test
+    public void allOf_isCancelledOnceEveryTokenIs() {
+        CancellationToken first = new CancellationToken();
+        CancellationToken second = new CancellationToken();
+        CancellationToken all = CancellationToken.allOf(Arrays.asList(first, second));
+
+        first.cancel();
+        assertFalse(all.isCancelled());
+
+        second.cancel();
+        assertTrue(all.isCancelled());
+    }
+
+    @Test
+    public void allOf_withNone_isNone() {
+        CancellationToken token = new CancellationToken();
+
+        assertThat(CancellationToken.allOf(Arrays.asList(token, CancellationToken.NONE)),
+                is(CancellationToken.NONE));
+    }
+
+    private Runnable record(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                mRun.add(name);
+            }
+        };
+    }
+}
@@ -0,0 +1,153 @@
+package com.dogbuddy.android.code.test.dogsapp.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for {@link InstrumentedExecutor} and the {@link Log2Histogram}s it fills.
+ */
+public class InstrumentedExecutorTest {
+
+    private final List<Runnable> mQueue = new ArrayList<>();
+
+    private ExecutorMetrics mMetrics;
+
+    private InstrumentedExecutor mExecutor;
+
+    @Before
+    public void setUp() {
+        mMetrics = new ExecutorMetrics("test");
+        // Runs the tasks when the test says so.
+        mExecutor = new InstrumentedExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mQueue.add(command);
+            }
+        }, mMetrics);
+    }
+
+    @Test
+    public void queueDepth_isRecordedOnSubmit() {
+        mExecutor.execute("a", new Sleep(0));
+        mExecutor.execute("a", new Sleep(0));
+        mExecutor.execute("a", new Sleep(0));
+
+        assertThat(mMetrics.getQueued(), is(3));
+        // The tasks found 0, 1 and 2 tasks waiting.
+        assertThat(mMetrics.getQueueDepth().getCount(), is(3L));
+        assertThat(mMetrics.getQueueDepth().getMax(), is(2L));
+
+        runQueue();
+
+        assertThat(mMetrics.getQueued(), is(0));
+        assertThat(mMetrics.getRunning(), is(0));
+    }
+
+    @Test
+    public void waitAndRunTimes_areRecordedPerLabel() throws InterruptedException {
+        mExecutor.execute("slow", new Sleep(20));
+        mExecutor.execute("fast", new Sleep(0));
+        Thread.sleep(20);
+
+        runQueue();
+
+        ExecutorMetrics.TaskMetrics slow = mMetrics.getTask("slow");
+        ExecutorMetrics.TaskMetrics fast = mMetrics.getTask("fast");
+        assertThat(slow.getRunMicros().getCount(), is(1L));
+        assertTrue(slow.getRunMicros().getMax() >= 20000);
+        assertTrue(fast.getRunMicros().getMax() < slow.getRunMicros().getMax());
+        // The fast task waited for the slow one to run.
+        assertTrue(fast.getWaitMicros().getMax() >= 40000);
+    }
+
+    @Test
+    public void unlabelledTasks_areLabelledWithTheirClass() {
+        mExecutor.execute(new Sleep(0));
+
+        assertThat(mMetrics.getTasks().keySet().iterator().next(),
+                is("InstrumentedExecutorTest$Sleep"));
+    }
+
+    @Test
+    public void rejectedTask_isNotQueued() {
+        InstrumentedExecutor rejecting = new InstrumentedExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        }, mMetrics);
+
+        try {
+            rejecting.execute(new Sleep(0));
+            fail();
+        } catch (RejectedExecutionException e) {
+            assertThat(mMetrics.getQueued(), is(0));
+        }
+    }
+
+    @Test
+    public void histogram_percentilesAreBoundedByPowersOfTwo() {
+        Log2Histogram histogram = new Log2Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+
+        assertThat(histogram.getMean(), is(50L));
+        assertThat(histogram.getMax(), is(100L));
+        // 50 is in [32, 63], 99 in [64, 127] which is capped by the max.
+        assertThat(histogram.getPercentile(0.5), is(63L));
+        assertThat(histogram.getPercentile(0.99), is(100L));
+    }
+
+    @Test
+    public void dump_printsEveryLabel() {
+        mExecutor.execute("read", new Sleep(0));
+        mExecutor.execute("write", new Sleep(0));
+        runQueue();
+        StringWriter out = new StringWriter();
+
+        mMetrics.dump("", new PrintWriter(out));
+
+        assertThat(out.toString(), containsString("test: queued=0 running=0"));
+        assertThat(out.toString(), containsString("  read: waitUs[n=1"));
+        assertThat(out.toString(), containsString("  write: waitUs[n=1"));
+    }
+
+    private void runQueue() {
+        for (Runnable task : mQueue) {
+            task.run();
+        }
+        mQueue.clear();
+    }
+
+    private static class Sleep implements Runnable {
+
+        private final long mMillis;
+
+        Sleep(long millis) {
+            mMillis = millis;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Thread.sleep(mMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
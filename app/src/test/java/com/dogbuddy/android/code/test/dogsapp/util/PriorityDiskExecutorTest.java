@@ -0,0 +1,172 @@
+package com.dogbuddy.android.code.test.dogsapp.util;
+
+import com.dogbuddy.android.code.test.dogsapp.util.PriorityDiskExecutor.Priority;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link PriorityDiskExecutor}. Each test blocks the disk thread while it queues
+ * tasks, then lets them run.
+ */
+public class PriorityDiskExecutorTest {
+
+    private final List<String> mRun = Collections.synchronizedList(new ArrayList<String>());
+
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+
+    private ExecutorMetrics mMetrics;
+
+    private PriorityDiskExecutor mExecutor;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        mMetrics = new ExecutorMetrics("disk");
+        mExecutor = new PriorityDiskExecutor(mMetrics);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        mExecutor.execute(Priority.UI_READ, CancellationToken.NONE, new Runnable() {
+            @Override
+            public void run() {
+                blocked.countDown();
+                try {
+                    mRelease.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        blocked.await();
+    }
+
+    @Test
+    public void tasks_runByPriorityThenInOrder() throws InterruptedException {
+        mExecutor.execute(record("write1"));
+        submit(Priority.PREFETCH, CancellationToken.NONE, "prefetch");
+        mExecutor.execute(record("write2"));
+        submit(Priority.UI_READ, CancellationToken.NONE, "read1");
+        submit(Priority.UI_READ, CancellationToken.NONE, "read2");
+
+        runAll();
+
+        assertThat(mRun, is((List<String>) newList("read1", "read2", "prefetch", "write1",
+                "write2")));
+    }
+
+    @Test
+    public void cancelledTask_isDropped() throws InterruptedException {
+        CancellationToken token = new CancellationToken();
+        submit(Priority.UI_READ, token, "cancelled");
+        submit(Priority.UI_READ, CancellationToken.NONE, "kept");
+
+        token.cancel();
+        runAll();
+
+        assertThat(mRun, is((List<String>) newList("kept")));
+        assertThat(mMetrics.getCancelled(), is(1L));
+        assertThat(mMetrics.getQueued(), is(0));
+    }
+
+    @Test
+    public void none_cantBeCancelled() {
+        CancellationToken.NONE.cancel();
+
+        assertThat(CancellationToken.NONE.isCancelled(), is(false));
+    }
+
+    @Test
+    public void failingTask_doesNotStopTheExecutor() throws InterruptedException {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("Expected by the test");
+            }
+        });
+        mExecutor.execute(record("after"));
+
+        runAll();
+
+        assertThat(mRun, is((List<String>) newList("after")));
+    }
+
+    @Test
+    public void tasks_areLabelledByPriority() throws InterruptedException {
+        submit(Priority.PREFETCH, CancellationToken.NONE, "prefetch");
+
+        runAll();
+
+        boolean labelled = false;
+        for (String label : mMetrics.getTasks().keySet()) {
+            labelled |= label.startsWith("PREFETCH PriorityDiskExecutorTest$");
+        }
+        assertTrue(labelled);
+    }
+
+    @Test
+    public void pool_runsTasksConcurrently() throws InterruptedException {
+        PriorityDiskExecutor pool = new PriorityDiskExecutor(new ExecutorMetrics("reads"), 2);
+        final CountDownLatch bothRunning = new CountDownLatch(2);
+        final CountDownLatch done = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            pool.execute(Priority.UI_READ, CancellationToken.NONE, new Runnable() {
+                @Override
+                public void run() {
+                    bothRunning.countDown();
+                    try {
+                        // Only returns if the other task runs at the same time
+                        if (bothRunning.await(5, TimeUnit.SECONDS)) {
+                            done.countDown();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    private void submit(Priority priority, CancellationToken token, String name) {
+        mExecutor.execute(priority, token, record(name));
+    }
+
+    private Runnable record(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                mRun.add(name);
+            }
+        };
+    }
+
+    /**
+     * Unblocks the disk thread and waits for everything queued so far to run.
+     */
+    private void runAll() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        mRelease.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    private static List<String> newList(String... names) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, names);
+        return list;
+    }
+}
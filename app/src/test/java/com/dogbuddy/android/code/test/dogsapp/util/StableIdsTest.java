@@ -0,0 +1,19 @@
+package com.dogbuddy.android.code.test.dogsapp.util;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit tests for {@link StableIds}.
+ */
+public class StableIdsTest {
+
+    @Test
+    public void sameId_sameStableId() {
+        assertThat(StableIds.of("dog-1"), is(StableIds.of(new String("dog-1"))));
+        assertThat(StableIds.of("dog-1"), is(not(StableIds.of("dog-2"))));
+    }
+}